@@ -0,0 +1,54 @@
+package com.example.agentpattern.knowledge.base;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 查询结果缓存的统计信息
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStats {
+
+    /**
+     * 命中次数
+     */
+    private long hitCount;
+
+    /**
+     * 未命中次数
+     */
+    private long missCount;
+
+    /**
+     * 因容量或内存上限被淘汰的条目数
+     */
+    private long evictionCount;
+
+    /**
+     * 因访问频率低于淘汰候选而未被写入的条目数
+     */
+    private long rejectionCount;
+
+    /**
+     * 当前条目数
+     */
+    private int size;
+
+    /**
+     * 当前估算占用的内存（字节）
+     */
+    private long weightBytes;
+
+    /**
+     * 命中率
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0.0 : (double) hitCount / requests;
+    }
+}
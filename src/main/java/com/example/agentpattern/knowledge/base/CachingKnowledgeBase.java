@@ -0,0 +1,144 @@
+package com.example.agentpattern.knowledge.base;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带查询结果缓存的知识库装饰器
+ * 搜索先按 (知识库, 版本, 规范化查询, topK) 查找缓存，未命中时再委托给被装饰的知识库。
+ * 版本号为被装饰知识库的版本与经本装饰器写入的次数之和，任何写入都会使旧条目失效。
+ */
+public class CachingKnowledgeBase implements KnowledgeBase {
+
+    private final KnowledgeBase delegate;
+    private final SearchResultCache cache;
+
+    /**
+     * 经本装饰器执行的写入次数，保证未实现版本号的知识库在写入后同样不会命中旧结果
+     */
+    private final AtomicLong writes = new AtomicLong();
+
+    public CachingKnowledgeBase(KnowledgeBase delegate, SearchResultCache cache) {
+        if (delegate == null || cache == null) {
+            throw new IllegalArgumentException("Delegate and cache cannot be null");
+        }
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    /**
+     * 获取被装饰的知识库
+     */
+    public KnowledgeBase getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public KnowledgeBase unwrap() {
+        return delegate.unwrap();
+    }
+
+    /**
+     * 获取使用的缓存
+     */
+    public SearchResultCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public String getDescription() {
+        return delegate.getDescription();
+    }
+
+    @Override
+    public String getType() {
+        return delegate.getType();
+    }
+
+    @Override
+    public SearchResult search(String query, int topK) {
+        long startTime = System.currentTimeMillis();
+        String normalized = SearchResultCache.normalize(query);
+
+        // 先读取版本再检索：并发写入时结果最多被记在旧版本下，不会以新版本提供旧数据
+        long version = getVersion();
+        SearchResult cached = cache.get(getName(), version, normalized, topK);
+        if (cached != null) {
+            return SearchResultCache.copyOf(cached, System.currentTimeMillis() - startTime);
+        }
+
+        SearchResult result = delegate.search(query, topK);
+        cache.put(getName(), version, normalized, topK, SearchResultCache.copyOf(result, result.getSearchTimeMs()));
+        return result;
+    }
+
+    @Override
+    public SearchResult search(String query, int topK, Filter filter) {
+        if (filter == null) {
+            return search(query, topK);
+        }
+        long startTime = System.currentTimeMillis();
+        // 过滤条件的规范形式作为查询键的一部分
+        String key = SearchResultCache.normalize(query) + "\u0001" + filter.canonical();
+
+        long version = getVersion();
+        SearchResult cached = cache.get(getName(), version, key, topK);
+        if (cached != null) {
+            return SearchResultCache.copyOf(cached, System.currentTimeMillis() - startTime);
+        }
+
+        SearchResult result = delegate.search(query, topK, filter);
+        cache.put(getName(), version, key, topK, SearchResultCache.copyOf(result, result.getSearchTimeMs()));
+        return result;
+    }
+
+    @Override
+    public void addDocument(Document document) {
+        delegate.addDocument(document);
+        writes.incrementAndGet();
+    }
+
+    @Override
+    public void addDocuments(List<Document> documents) {
+        delegate.addDocuments(documents);
+        writes.incrementAndGet();
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return delegate.getDocumentCount();
+    }
+
+    @Override
+    public Document getDocument(String id) {
+        return delegate.getDocument(id);
+    }
+
+    @Override
+    public void deleteDocument(String id) {
+        delegate.deleteDocument(id);
+        writes.incrementAndGet();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        writes.incrementAndGet();
+        cache.invalidate(getName());
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return delegate.isInitialized();
+    }
+
+    @Override
+    public long getVersion() {
+        return delegate.getVersion() + writes.get();
+    }
+}
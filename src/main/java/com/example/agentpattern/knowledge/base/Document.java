@@ -45,9 +45,14 @@ public class Document {
     private String source;
 
     /**
-     * 向量表示（可选）
+     * 所属原文档的ID（长文档在入库前被切分为段落时设置，见 PassageChunker），整篇文档为null
      */
-    private double[] embedding;
+    private String parentId;
+
+    /**
+     * 稠密向量表示（可选，由嵌入模型生成，见 EmbeddingPipeline）
+     */
+    private float[] embedding;
 
     /**
      * 创建时间
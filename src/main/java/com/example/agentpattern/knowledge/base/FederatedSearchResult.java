@@ -0,0 +1,87 @@
+package com.example.agentpattern.knowledge.base;
+
+import com.example.agentpattern.knowledge.snippet.SnippetExtractor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 跨知识库搜索结果
+ * 各知识库并行检索后合并为一个全局排序的TopK列表
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FederatedSearchResult {
+
+    /**
+     * 查询文本
+     */
+    private String query;
+
+    /**
+     * 全局排序后的前K个文档，分数为各知识库在同一区间[0, 1]上的原始分数，每个文档记录了来源知识库
+     */
+    private List<SearchResult.ScoredDocument> documents;
+
+    /**
+     * 在截止时间内完成的各知识库原始结果
+     */
+    private Map<String, SearchResult> knowledgeBaseResults;
+
+    /**
+     * 未在截止时间内完成的知识库
+     */
+    @Builder.Default
+    private List<String> timedOutKnowledgeBases = new ArrayList<>();
+
+    /**
+     * 检索出错的知识库
+     */
+    @Builder.Default
+    private List<String> failedKnowledgeBases = new ArrayList<>();
+
+    /**
+     * 搜索耗时（毫秒）
+     */
+    private long searchTimeMs;
+
+    /**
+     * 是否只包含部分知识库的结果
+     */
+    public boolean isPartial() {
+        return !timedOutKnowledgeBases.isEmpty() || !failedKnowledgeBases.isEmpty();
+    }
+
+    /**
+     * 格式化为文本（供LLM使用），包含每个文档的全部内容
+     */
+    public String formatForLLM() {
+        return formatForLLM(null);
+    }
+
+    /**
+     * 格式化为文本（供LLM使用），每个文档只保留与查询相关的摘要
+     *
+     * @param extractor 摘要提取器，为null时包含全部内容
+     * @see SearchResult#formatForLLM(SnippetExtractor)
+     */
+    public String formatForLLM(SnippetExtractor extractor) {
+        String formatted = SearchResult.builder()
+                .query(query)
+                .documents(documents)
+                .build()
+                .formatForLLM(extractor);
+
+        if (!timedOutKnowledgeBases.isEmpty()) {
+            formatted += "注意: 以下知识库未在时限内返回结果: " + String.join(", ", timedOutKnowledgeBases) + "\n";
+        }
+        return formatted;
+    }
+}
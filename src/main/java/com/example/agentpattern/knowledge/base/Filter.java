@@ -0,0 +1,168 @@
+package com.example.agentpattern.knowledge.base;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * 文档元数据过滤条件
+ * 基于 {@link Document#getMetadata()} 的等值、多值、与、或、非组合。
+ * 取值比较前统一转为去除首尾空白的小写字符串；元数据值为集合时，任一元素匹配即视为匹配。
+ * <p>
+ * 支持元数据索引的知识库在打分前按过滤条件筛选文档，其余知识库回退为多取结果后过滤。
+ */
+public interface Filter {
+
+    /**
+     * 文档是否满足条件
+     */
+    boolean matches(Document document);
+
+    /**
+     * 规范化的文本表示，相同语义的过滤条件得到相同的字符串（用作缓存键）
+     */
+    String canonical();
+
+    /**
+     * 元数据 key 等于 value
+     */
+    static Filter eq(String key, Object value) {
+        return new In(key, Set.of(normalize(value)));
+    }
+
+    /**
+     * 元数据 key 等于 values 中任一值
+     */
+    static Filter in(String key, Collection<?> values) {
+        return new In(key, values.stream().map(Filter::normalize).collect(Collectors.toCollection(TreeSet::new)));
+    }
+
+    static Filter and(Filter... filters) {
+        return new And(List.of(filters));
+    }
+
+    static Filter or(Filter... filters) {
+        return new Or(List.of(filters));
+    }
+
+    static Filter not(Filter filter) {
+        return new Not(filter);
+    }
+
+    /**
+     * 从JSON对象解析过滤条件，各键之间为“与”关系：
+     * <pre>
+     * {"brand": "Reolink", "category": ["battery-camera", "doorbell"], "$not": {"language": "en"}}
+     * </pre>
+     * 值为数组时表示其中任一值；"$and" / "$or" 接受条件数组，"$not" 接受一个条件对象。
+     */
+    @SuppressWarnings("unchecked")
+    static Filter fromMap(Map<String, Object> map) {
+        List<Filter> filters = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            switch (key) {
+                case "$and", "$or" -> {
+                    if (!(value instanceof List<?> list)) {
+                        throw new IllegalArgumentException(key + " expects an array of filters");
+                    }
+                    Filter[] children = new Filter[list.size()];
+                    for (int i = 0; i < children.length; i++) {
+                        if (!(list.get(i) instanceof Map<?, ?> child)) {
+                            throw new IllegalArgumentException(key + " expects an array of filter objects");
+                        }
+                        children[i] = fromMap((Map<String, Object>) child);
+                    }
+                    filters.add("$and".equals(key) ? and(children) : or(children));
+                }
+                case "$not" -> {
+                    if (!(value instanceof Map<?, ?> child)) {
+                        throw new IllegalArgumentException("$not expects a filter object");
+                    }
+                    filters.add(not(fromMap((Map<String, Object>) child)));
+                }
+                default -> filters.add(value instanceof Collection<?> values ? in(key, values) : eq(key, value));
+            }
+        }
+        return filters.size() == 1 ? filters.get(0) : new And(filters);
+    }
+
+    /**
+     * 元数据值的规范形式
+     */
+    static String normalize(Object value) {
+        return value == null ? "" : value.toString().trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * key 的取值属于 values
+     */
+    record In(String key, Set<String> values) implements Filter {
+
+        @Override
+        public boolean matches(Document document) {
+            Object value = document.getMetadata(key);
+            if (value instanceof Collection<?> collection) {
+                for (Object element : collection) {
+                    if (values.contains(normalize(element))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return value != null && values.contains(normalize(value));
+        }
+
+        @Override
+        public String canonical() {
+            return key + " in " + new TreeSet<>(values);
+        }
+    }
+
+    record And(List<Filter> filters) implements Filter {
+
+        @Override
+        public boolean matches(Document document) {
+            return filters.stream().allMatch(f -> f.matches(document));
+        }
+
+        @Override
+        public String canonical() {
+            return filters.stream().map(Filter::canonical).sorted()
+                    .collect(Collectors.joining(" and ", "(", ")"));
+        }
+    }
+
+    record Or(List<Filter> filters) implements Filter {
+
+        @Override
+        public boolean matches(Document document) {
+            return filters.stream().anyMatch(f -> f.matches(document));
+        }
+
+        @Override
+        public String canonical() {
+            return filters.stream().map(Filter::canonical).sorted()
+                    .collect(Collectors.joining(" or ", "(", ")"));
+        }
+    }
+
+    record Not(Filter filter) implements Filter {
+
+        @Override
+        public boolean matches(Document document) {
+            return !filter.matches(document);
+        }
+
+        @Override
+        public String canonical() {
+            return "not " + filter.canonical();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.agentpattern.knowledge.base;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -32,6 +33,57 @@ public interface KnowledgeBase {
      */
     SearchResult search(String query, int topK);
 
+    /**
+     * 获取最内层的知识库实现，装饰器（如缓存）返回被装饰的知识库
+     */
+    default KnowledgeBase unwrap() {
+        return this;
+    }
+
+    /**
+     * 只在满足元数据过滤条件的文档中搜索
+     * 默认实现逐步扩大结果数后按条件过滤；维护了 {@link MetadataIndex} 的实现应覆盖此方法，在打分前过滤
+     *
+     * @param query  查询文本
+     * @param topK   返回前K个结果
+     * @param filter 过滤条件，为null时等同于 {@link #search(String, int)}
+     * @return 搜索结果
+     */
+    default SearchResult search(String query, int topK, Filter filter) {
+        if (filter == null) {
+            return search(query, topK);
+        }
+        int total = Math.max(getDocumentCount(), topK);
+        int fetch = Math.min(topK * 4, total);
+        while (true) {
+            SearchResult result = search(query, fetch);
+            List<SearchResult.ScoredDocument> kept = new ArrayList<>(topK);
+            for (SearchResult.ScoredDocument doc : result.getDocuments()) {
+                if (filter.matches(doc.getDocument())) {
+                    kept.add(SearchResult.ScoredDocument.builder()
+                            .document(doc.getDocument())
+                            .score(doc.getScore())
+                            .rank(kept.size() + 1)
+                            .knowledgeBaseName(doc.getKnowledgeBaseName())
+                            .build());
+                    if (kept.size() == topK) {
+                        break;
+                    }
+                }
+            }
+            if (kept.size() == topK || fetch >= total || result.getDocuments().size() < fetch) {
+                // 底层结果可能来自缓存，不能就地修改
+                return SearchResult.builder()
+                        .query(result.getQuery())
+                        .documents(kept)
+                        .searchTimeMs(result.getSearchTimeMs())
+                        .knowledgeBaseName(result.getKnowledgeBaseName())
+                        .build();
+            }
+            fetch = (int) Math.min((long) fetch * 4, total);
+        }
+    }
+
     /**
      * 搜索相关文档（默认返回前3个）
      */
@@ -79,4 +131,13 @@ public interface KnowledgeBase {
      * 知识库是否已初始化
      */
     boolean isInitialized();
+
+    /**
+     * 数据版本号
+     * 每次添加、删除文档或清空后单调递增，查询结果缓存据此判断条目是否过期。
+     * 内容可变的实现应覆盖此方法
+     */
+    default long getVersion() {
+        return 0L;
+    }
 }
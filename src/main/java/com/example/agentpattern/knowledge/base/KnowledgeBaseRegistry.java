@@ -1,10 +1,18 @@
 package com.example.agentpattern.knowledge.base;
 
+import com.example.agentpattern.knowledge.chunk.ChunkingConfig;
+import com.example.agentpattern.knowledge.chunk.ParentCollapsingKnowledgeBase;
+import com.example.agentpattern.knowledge.chunk.PassageChunker;
+import com.example.agentpattern.util.TopKHeap;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 知识库注册表
@@ -17,13 +25,91 @@ public class KnowledgeBaseRegistry {
     private final Map<String, KnowledgeBase> knowledgeBases = new ConcurrentHashMap<>();
 
     /**
-     * 注册知识库
+     * 跨知识库搜索的默认截止时间（毫秒）
+     */
+    @Value("${knowledge.search.timeout-ms:2000}")
+    private long searchTimeoutMs = 2000;
+
+    /**
+     * 同时执行的知识库检索数量上限
+     */
+    @Value("${knowledge.search.max-concurrency:8}")
+    private int maxConcurrency = 8;
+
+    /**
+     * 是否为注册的知识库启用查询结果缓存
+     */
+    @Value("${knowledge.cache.enabled:true}")
+    private boolean cacheEnabled = true;
+
+    /**
+     * 查询结果缓存的最大条目数（所有知识库共享）
+     */
+    @Value("${knowledge.cache.max-entries:1000}")
+    private int cacheMaxEntries = 1000;
+
+    /**
+     * 查询结果缓存的最大估算内存（MB）
+     */
+    @Value("${knowledge.cache.max-memory-mb:16}")
+    private long cacheMaxMemoryMb = 16;
+
+    /**
+     * 文档是否切分为段落入库（与 KnowledgeBaseFactory 使用同一配置）
+     */
+    @Value("${knowledge.chunking.enabled:true}")
+    private boolean chunkingEnabled = true;
+
+    /**
+     * 检索结果是否按原文档合并段落
+     */
+    @Value("${knowledge.chunking.collapse:true}")
+    private boolean collapseEnabled = true;
+
+    /**
+     * 合并后每个原文档保留的段落数
+     */
+    @Value("${knowledge.chunking.max-passages-per-parent:2}")
+    private int maxPassagesPerParent = 2;
+
+    /**
+     * 经注册表写入的文档切分段落时的最大词项数和重叠词项数（与 KnowledgeBaseFactory 使用同一配置）
+     */
+    @Value("${knowledge.chunking.max-tokens:200}")
+    private int chunkMaxTokens = 200;
+
+    @Value("${knowledge.chunking.overlap-tokens:40}")
+    private int chunkOverlapTokens = 40;
+
+    private volatile ExecutorService searchExecutor;
+    private volatile Semaphore searchPermits;
+    private volatile SearchResultCache searchCache;
+
+    /**
+     * 注册知识库，按原文档合并段落时用 {@link ParentCollapsingKnowledgeBase} 包装，
+     * 启用缓存时再用 {@link CachingKnowledgeBase} 包装（缓存合并后的结果）。
+     * 同名知识库已存在时替换它，并清除其缓存的查询结果
      */
     public void registerKnowledgeBase(KnowledgeBase knowledgeBase) {
         if (knowledgeBase == null || knowledgeBase.getName() == null) {
             throw new IllegalArgumentException("KnowledgeBase and name cannot be null");
         }
-        knowledgeBases.put(knowledgeBase.getName(), knowledgeBase);
+        if (chunkingEnabled && collapseEnabled && !(knowledgeBase instanceof ParentCollapsingKnowledgeBase)
+                && !(knowledgeBase instanceof CachingKnowledgeBase)) {
+            PassageChunker chunker = new PassageChunker(ChunkingConfig.builder()
+                    .maxTokens(chunkMaxTokens)
+                    .overlapTokens(chunkOverlapTokens)
+                    .build());
+            knowledgeBase = new ParentCollapsingKnowledgeBase(knowledgeBase, chunker, maxPassagesPerParent);
+        }
+        if (cacheEnabled && !(knowledgeBase instanceof CachingKnowledgeBase)) {
+            knowledgeBase = new CachingKnowledgeBase(knowledgeBase, searchCache());
+        }
+        KnowledgeBase previous = knowledgeBases.put(knowledgeBase.getName(), knowledgeBase);
+        if (previous != null && searchCache != null) {
+            // 新知识库可能经过相同的写入序列达到相同的版本号，旧知识库的缓存条目不能再命中
+            searchCache.invalidate(knowledgeBase.getName());
+        }
         log.info("Registered knowledge base: {} (type: {}, documents: {})",
                 knowledgeBase.getName(),
                 knowledgeBase.getType(),
@@ -56,6 +142,9 @@ public class KnowledgeBaseRegistry {
      */
     public void unregisterKnowledgeBase(String name) {
         knowledgeBases.remove(name);
+        if (searchCache != null) {
+            searchCache.invalidate(name);
+        }
         log.info("Unregistered knowledge base: {}", name);
     }
 
@@ -87,22 +176,210 @@ public class KnowledgeBaseRegistry {
     }
 
     /**
-     * 搜索所有知识库
+     * 并行搜索所有知识库，使用默认截止时间
+     *
+     * @param query 查询文本
+     * @param topK 返回的结果总数
+     * @return 全局排序后的搜索结果
+     */
+    public FederatedSearchResult searchAll(String query, int topK) {
+        return searchAll(query, topK, Duration.ofMillis(searchTimeoutMs), null);
+    }
+
+    /**
+     * 并行搜索所有知识库，只返回满足元数据过滤条件的文档，使用默认截止时间
+     *
+     * @param query 查询文本
+     * @param topK 返回的结果总数
+     * @param filter 过滤条件，可为null
+     * @return 全局排序后的搜索结果
+     */
+    public FederatedSearchResult searchAll(String query, int topK, Filter filter) {
+        return searchAll(query, topK, Duration.ofMillis(searchTimeoutMs), filter);
+    }
+
+    /**
+     * 并行搜索所有知识库，合并为全局TopK
      *
      * @param query 查询文本
-     * @param topK 每个知识库返回的结果数
-     * @return 所有知识库的搜索结果
+     * @param topK 返回的结果总数
+     * @param timeout 本次查询的截止时间
+     * @return 全局排序后的搜索结果
      */
-    public Map<String, SearchResult> searchAll(String query, int topK) {
-        Map<String, SearchResult> results = new HashMap<>();
+    public FederatedSearchResult searchAll(String query, int topK, Duration timeout) {
+        return searchAll(query, topK, timeout, null);
+    }
+
+    /**
+     * 并行搜索所有知识库，合并为全局TopK
+     * 未在截止时间内完成的知识库会被取消并记录在结果中，不返回其命中；结果只包含按时完成的知识库，
+     * 此时 {@link FederatedSearchResult#isPartial()} 为true
+     *
+     * @param query 查询文本
+     * @param topK 返回的结果总数
+     * @param timeout 本次查询的截止时间
+     * @param filter 元数据过滤条件，可为null
+     * @return 全局排序后的搜索结果
+     */
+    public FederatedSearchResult searchAll(String query, int topK, Duration timeout, Filter filter) {
+        long startTime = System.currentTimeMillis();
+        long deadline = System.nanoTime() + timeout.toNanos();
+
+        ExecutorService executor = executor();
+        Semaphore permits = searchPermits;
+        Map<String, Future<SearchResult>> futures = new LinkedHashMap<>();
         for (KnowledgeBase kb : knowledgeBases.values()) {
+            futures.put(kb.getName(), executor.submit(() -> {
+                permits.acquire();
+                try {
+                    return kb.search(query, topK, filter);
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+
+        Map<String, SearchResult> results = new LinkedHashMap<>();
+        List<String> timedOut = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, Future<SearchResult>> entry : futures.entrySet()) {
             try {
-                SearchResult result = kb.search(query, topK);
-                results.put(kb.getName(), result);
-            } catch (Exception e) {
-                log.error("Error searching knowledge base: {}", kb.getName(), e);
+                long remaining = deadline - System.nanoTime();
+                results.put(entry.getKey(), entry.getValue().get(Math.max(remaining, 0), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                timedOut.add(entry.getKey());
+                log.warn("Knowledge base '{}' missed the search deadline of {}ms", entry.getKey(), timeout.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                entry.getValue().cancel(true);
+                timedOut.add(entry.getKey());
+            } catch (ExecutionException e) {
+                failed.add(entry.getKey());
+                log.error("Error searching knowledge base: {}", entry.getKey(), e.getCause());
             }
         }
-        return results;
+
+        return FederatedSearchResult.builder()
+                .query(query)
+                .documents(mergeTopK(results, topK))
+                .knowledgeBaseResults(results)
+                .timedOutKnowledgeBases(timedOut)
+                .failedKnowledgeBases(failed)
+                .searchTimeMs(System.currentTimeMillis() - startTime)
+                .build();
+    }
+
+    /**
+     * 合并各知识库的结果为全局TopK
+     * 所有知识库的分数都在同一尺度[0, 1]上：基于词项的知识库使用
+     * vectorWeight * 余弦 + (1 - vectorWeight) * min(BM25 / 饱和值, 1) 的融合分数，
+     * 稠密向量知识库（HNSW、量化）使用截断到[0, 1]的余弦相似度，因此直接按原始分数合并。
+     * 不在各库内按该库最高分归一化，否则每个库的第一名都得1分，弱匹配会排在其他库的强匹配之前
+     */
+    private List<SearchResult.ScoredDocument> mergeTopK(Map<String, SearchResult> results, int topK) {
+        List<SearchResult.ScoredDocument> candidates = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        TopKHeap heap = new TopKHeap(topK);
+        for (Map.Entry<String, SearchResult> entry : results.entrySet()) {
+            List<SearchResult.ScoredDocument> documents = entry.getValue().getDocuments();
+            if (documents == null) {
+                continue;
+            }
+            for (SearchResult.ScoredDocument doc : documents) {
+                heap.offer(candidates.size(), (float) clampScore(doc.getScore()));
+                candidates.add(doc);
+                sources.add(entry.getKey());
+            }
+        }
+
+        heap.sortDescending();
+        List<SearchResult.ScoredDocument> top = new ArrayList<>(heap.size());
+        for (int i = 0; i < heap.size(); i++) {
+            int id = heap.id(i);
+            top.add(SearchResult.ScoredDocument.builder()
+                    .document(candidates.get(id).getDocument())
+                    .score(clampScore(candidates.get(id).getScore()))
+                    .rank(i + 1)
+                    .knowledgeBaseName(sources.get(id))
+                    .build());
+        }
+        return top;
+    }
+
+    /**
+     * 将分数限制在所有知识库共用的区间[0, 1]内
+     */
+    private static double clampScore(double score) {
+        return Math.min(Math.max(score, 0.0), 1.0);
+    }
+
+    /**
+     * 查询结果缓存的统计信息，未启用缓存时返回null
+     */
+    public CacheStats getCacheStats() {
+        SearchResultCache cache = searchCache;
+        return cache == null ? null : cache.getStats();
+    }
+
+    /**
+     * 所有知识库共享的查询结果缓存，首次使用时按配置创建
+     */
+    private SearchResultCache searchCache() {
+        SearchResultCache cache = searchCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = searchCache;
+                if (cache == null) {
+                    cache = new SearchResultCache(cacheMaxEntries, cacheMaxMemoryMb * 1024 * 1024);
+                    searchCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 检索线程池：运行在支持虚拟线程的JDK上时每个检索使用一个虚拟线程，否则使用固定大小的守护线程池。
+     * 两种情况下并发检索数都受 maxConcurrency 限制
+     */
+    private ExecutorService executor() {
+        ExecutorService executor = searchExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = searchExecutor;
+                if (executor == null) {
+                    searchPermits = new Semaphore(maxConcurrency);
+                    executor = createExecutor();
+                    searchExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private ExecutorService createExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.info("Knowledge base search uses virtual threads (max concurrency: {})", maxConcurrency);
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            log.info("Knowledge base search uses a fixed thread pool of {} threads", maxConcurrency);
+            return Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+                Thread thread = new Thread(runnable, "kb-search-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (searchExecutor != null) {
+            searchExecutor.shutdownNow();
+        }
     }
 }
@@ -0,0 +1,213 @@
+package com.example.agentpattern.knowledge.base;
+
+import com.example.agentpattern.util.CompressedBitmap;
+import com.example.agentpattern.util.PersistentHashMap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 文档元数据的位图索引
+ * 对每个 (元数据键, 规范化取值) 维护一个文档序号的 {@link CompressedBitmap}，
+ * 过滤条件按位图的交、并、差求值，得到允许参与打分的文档序号集合。
+ * <p>
+ * 文档序号由调用方分配；非线程安全，由调用方负责同步。
+ * <p>
+ * 键值到位图的映射是 {@link PersistentHashMap}，{@link #copy()} 与原索引共享映射和位图，
+ * 副本第一次修改某个位图时才复制它（位图本身也只复制被修改的容器），因此复制和单次增删的代价与文档数无关。
+ */
+public class MetadataIndex {
+
+    private PersistentHashMap<String, PersistentHashMap<String, CompressedBitmap>> bitmaps = new PersistentHashMap<>();
+
+    /**
+     * 所有有效文档，删除时清除对应位，因此键值位图中残留的已删除序号不会出现在求值结果中
+     */
+    private CompressedBitmap live = new CompressedBitmap();
+
+    /**
+     * 本索引创建或复制的位图及取值映射，可以原地修改；其余的与其他版本共享，修改前先复制
+     */
+    private final Set<Object> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public void add(int ord, Map<String, Object> metadata) {
+        live = writable(live);
+        live.add(ord);
+        if (metadata == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            PersistentHashMap<String, CompressedBitmap> values = values(entry.getKey(), true);
+            if (entry.getValue() instanceof Collection<?> collection) {
+                for (Object element : collection) {
+                    addTo(values, Filter.normalize(element), ord);
+                }
+            } else {
+                addTo(values, Filter.normalize(entry.getValue()), ord);
+            }
+        }
+    }
+
+    public void remove(int ord, Map<String, Object> metadata) {
+        live = writable(live);
+        live.remove(ord);
+        if (metadata == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            PersistentHashMap<String, CompressedBitmap> values = values(entry.getKey(), false);
+            if (values == null) {
+                continue;
+            }
+            if (entry.getValue() instanceof Collection<?> collection) {
+                for (Object element : collection) {
+                    removeFrom(values, Filter.normalize(element), ord);
+                }
+            } else {
+                removeFrom(values, Filter.normalize(entry.getValue()), ord);
+            }
+        }
+    }
+
+    /**
+     * 副本与原索引互不影响，两者共享的映射和位图在各自第一次修改时才复制
+     */
+    public MetadataIndex copy() {
+        MetadataIndex copy = new MetadataIndex();
+        copy.bitmaps = bitmaps.copy();
+        copy.live = live;
+        owned.clear();
+        return copy;
+    }
+
+    public void clear() {
+        bitmaps = new PersistentHashMap<>();
+        live = new CompressedBitmap();
+        owned.clear();
+    }
+
+    /**
+     * 有效文档数
+     */
+    public int size() {
+        return live.cardinality();
+    }
+
+    /**
+     * 求满足过滤条件的文档序号集合
+     *
+     * @return 新的位图；过滤条件包含索引不支持的类型时返回null
+     */
+    public CompressedBitmap evaluate(Filter filter) {
+        CompressedBitmap result = evaluateNode(filter);
+        return result == null ? null : CompressedBitmap.and(result, live);
+    }
+
+    /**
+     * 位图占用的内存估计（字节）
+     */
+    public long sizeInBytes() {
+        long[] bytes = {live.sizeInBytes()};
+        bitmaps.forEach((key, values) -> values.forEach((value, bitmap) -> bytes[0] += bitmap.sizeInBytes()));
+        return bytes[0];
+    }
+
+    private CompressedBitmap evaluateNode(Filter filter) {
+        if (filter instanceof Filter.In in) {
+            PersistentHashMap<String, CompressedBitmap> values = bitmaps.get(in.key());
+            CompressedBitmap result = new CompressedBitmap();
+            for (String value : in.values()) {
+                CompressedBitmap bitmap = values == null ? null : values.get(value);
+                if (bitmap != null) {
+                    result = CompressedBitmap.or(result, bitmap);
+                }
+            }
+            return result;
+        }
+        if (filter instanceof Filter.And and) {
+            CompressedBitmap result = live;
+            for (Filter child : and.filters()) {
+                CompressedBitmap bitmap = evaluateNode(child);
+                if (bitmap == null) {
+                    return null;
+                }
+                result = CompressedBitmap.and(result, bitmap);
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        }
+        if (filter instanceof Filter.Or or) {
+            CompressedBitmap result = new CompressedBitmap();
+            for (Filter child : or.filters()) {
+                CompressedBitmap bitmap = evaluateNode(child);
+                if (bitmap == null) {
+                    return null;
+                }
+                result = CompressedBitmap.or(result, bitmap);
+            }
+            return result;
+        }
+        if (filter instanceof Filter.Not not) {
+            CompressedBitmap bitmap = evaluateNode(not.filter());
+            return bitmap == null ? null : CompressedBitmap.andNot(live, bitmap);
+        }
+        return null;
+    }
+
+    /**
+     * 元数据键的取值映射，可以原地修改；不存在时按 create 创建或返回null
+     */
+    private PersistentHashMap<String, CompressedBitmap> values(String key, boolean create) {
+        PersistentHashMap<String, CompressedBitmap> values = bitmaps.get(key);
+        if (values == null && !create) {
+            return null;
+        }
+        if (values == null || !owned.contains(values)) {
+            values = values == null ? new PersistentHashMap<>() : values.copy();
+            owned.add(values);
+            bitmaps.put(key, values);
+        }
+        return values;
+    }
+
+    private void addTo(PersistentHashMap<String, CompressedBitmap> values, String value, int ord) {
+        CompressedBitmap bitmap = values.get(value);
+        if (bitmap == null || !owned.contains(bitmap)) {
+            bitmap = bitmap == null ? new CompressedBitmap() : bitmap.copy();
+            owned.add(bitmap);
+            values.put(value, bitmap);
+        }
+        bitmap.add(ord);
+    }
+
+    private void removeFrom(PersistentHashMap<String, CompressedBitmap> values, String value, int ord) {
+        CompressedBitmap bitmap = values.get(value);
+        if (bitmap == null || !bitmap.contains(ord)) {
+            return;
+        }
+        if (!owned.contains(bitmap)) {
+            bitmap = bitmap.copy();
+            owned.add(bitmap);
+            values.put(value, bitmap);
+        }
+        bitmap.remove(ord);
+        if (bitmap.isEmpty()) {
+            values.remove(value);
+            owned.remove(bitmap);
+        }
+    }
+
+    private CompressedBitmap writable(CompressedBitmap bitmap) {
+        if (owned.contains(bitmap)) {
+            return bitmap;
+        }
+        CompressedBitmap copy = bitmap.copy();
+        owned.add(copy);
+        return copy;
+    }
+}
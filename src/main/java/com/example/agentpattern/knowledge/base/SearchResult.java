@@ -1,5 +1,6 @@
 package com.example.agentpattern.knowledge.base;
 
+import com.example.agentpattern.knowledge.snippet.SnippetExtractor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -58,26 +59,56 @@ public class SearchResult {
          * 排名
          */
         private int rank;
+
+        /**
+         * 来源知识库名称（跨知识库合并结果时设置）
+         */
+        private String knowledgeBaseName;
     }
 
     /**
-     * 格式化为文本（供LLM使用）
+     * 格式化为文本（供LLM使用），包含每个文档的全部内容
      */
     public String formatForLLM() {
+        return formatForLLM(null);
+    }
+
+    /**
+     * 格式化为文本（供LLM使用），每个文档只保留与查询相关的摘要
+     * 摘要受单条结果和本次格式化合计的字符预算限制，预算用完后其余结果只列出标题
+     *
+     * @param extractor 摘要提取器，为null时包含全部内容
+     */
+    public String formatForLLM(SnippetExtractor extractor) {
         if (documents == null || documents.isEmpty()) {
             return "未找到相关信息。";
         }
 
+        List<String> terms = extractor != null ? extractor.queryTerms(query) : null;
+        int remaining = extractor != null ? extractor.getConfig().getMaxCharsTotal() : Integer.MAX_VALUE;
+
         StringBuilder sb = new StringBuilder();
         sb.append("找到 ").append(documents.size()).append(" 条相关信息:\n\n");
 
         for (ScoredDocument scoredDoc : documents) {
             Document doc = scoredDoc.getDocument();
             sb.append("【").append(doc.getTitle()).append("】\n");
-            sb.append(doc.getContent()).append("\n");
+            if (extractor == null) {
+                sb.append(doc.getContent()).append("\n");
+            } else if (remaining > 0) {
+                SnippetExtractor.Snippet snippet = extractor.extract(terms, doc.getContent(),
+                        Math.min(extractor.getConfig().getMaxCharsPerResult(), remaining));
+                sb.append(snippet.text()).append("\n");
+                remaining -= snippet.length();
+            } else {
+                sb.append("（内容已省略）\n");
+            }
             if (doc.getSource() != null) {
                 sb.append("来源: ").append(doc.getSource()).append("\n");
             }
+            if (scoredDoc.getKnowledgeBaseName() != null) {
+                sb.append("知识库: ").append(scoredDoc.getKnowledgeBaseName()).append("\n");
+            }
             sb.append("相关度: ").append(String.format("%.2f", scoredDoc.getScore() * 100)).append("%\n");
             sb.append("\n");
         }
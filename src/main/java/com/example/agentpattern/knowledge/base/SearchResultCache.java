@@ -0,0 +1,311 @@
+package com.example.agentpattern.knowledge.base;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 知识库查询结果缓存
+ * 以 (知识库名称, 知识库版本, 规范化查询, topK) 为键，可由多个知识库共享。
+ * 知识库每次写入都会提升版本号，旧版本的条目不会再被命中，随后按LRU自然淘汰。
+ * <p>
+ * 容量同时受条目数和估算内存限制。缓存已满时采用TinyLFU准入策略：
+ * 用计数草图估计访问频率，只有新查询比LRU淘汰候选更常被访问时才替换它，
+ * 避免一次性查询把高频查询挤出缓存。
+ * <p>
+ * 线程安全。
+ */
+public class SearchResultCache {
+
+    /**
+     * 每个条目的固定开销估算：键、值、链表节点及结果对象头
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    /**
+     * 每个结果文档的开销估算。文档本身与知识库共享，不计入
+     */
+    private static final int SCORED_DOCUMENT_BYTES = 48;
+
+    private final int maxEntries;
+    private final long maxWeightBytes;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final FrequencySketch sketch;
+
+    private long weightBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long rejectionCount;
+
+    /**
+     * @param maxEntries     最大条目数
+     * @param maxWeightBytes 最大估算内存（字节）
+     */
+    public SearchResultCache(int maxEntries, long maxWeightBytes) {
+        if (maxEntries <= 0 || maxWeightBytes <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeightBytes = maxWeightBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    /**
+     * 规范化查询：去除首尾空白、合并连续空白并转为小写
+     */
+    public static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(query.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c) || c == '　') {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(c);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 查找缓存结果
+     *
+     * @return 缓存的结果，未命中时返回null
+     */
+    public synchronized SearchResult get(String knowledgeBase, long version, String normalizedQuery, int topK) {
+        Key key = new Key(knowledgeBase, version, normalizedQuery, topK);
+        sketch.increment(key.frequencyHash);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.result;
+    }
+
+    /**
+     * 写入查询结果，缓存已满且新查询访问频率不高于淘汰候选时放弃写入
+     */
+    public synchronized void put(String knowledgeBase, long version, String normalizedQuery, int topK,
+                                 SearchResult result) {
+        Key key = new Key(knowledgeBase, version, normalizedQuery, topK);
+        long weight = weigh(normalizedQuery, result);
+        if (weight > maxWeightBytes) {
+            rejectionCount++;
+            return;
+        }
+
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            weightBytes -= previous.weight;
+        }
+
+        // TinyLFU准入：缓存已满时，新查询必须比LRU淘汰候选更常被访问
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        if (previous == null && isFull(weight) && it.hasNext()) {
+            Key victim = it.next().getKey();
+            if (sketch.frequency(victim.frequencyHash) > sketch.frequency(key.frequencyHash)) {
+                rejectionCount++;
+                return;
+            }
+            it = entries.entrySet().iterator();
+        }
+
+        while (isFull(weight) && it.hasNext()) {
+            Map.Entry<Key, Entry> victim = it.next();
+            weightBytes -= victim.getValue().weight;
+            it.remove();
+            evictionCount++;
+        }
+
+        entries.put(key, new Entry(result, weight));
+        weightBytes += weight;
+    }
+
+    /**
+     * 移除某个知识库的全部条目
+     */
+    public synchronized void invalidate(String knowledgeBase) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (entry.getKey().knowledgeBase.equals(knowledgeBase)) {
+                weightBytes -= entry.getValue().weight;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 清空缓存（统计计数保留）
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weightBytes = 0;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public synchronized CacheStats getStats() {
+        return CacheStats.builder()
+                .hitCount(hitCount)
+                .missCount(missCount)
+                .evictionCount(evictionCount)
+                .rejectionCount(rejectionCount)
+                .size(entries.size())
+                .weightBytes(weightBytes)
+                .build();
+    }
+
+    private boolean isFull(long incomingWeight) {
+        return entries.size() >= maxEntries || weightBytes + incomingWeight > maxWeightBytes;
+    }
+
+    private static long weigh(String normalizedQuery, SearchResult result) {
+        int documents = result.getDocuments() == null ? 0 : result.getDocuments().size();
+        return ENTRY_OVERHEAD_BYTES + 2L * normalizedQuery.length() + (long) SCORED_DOCUMENT_BYTES * documents;
+    }
+
+    /**
+     * 复制结果，避免调用方修改缓存中的对象
+     */
+    static SearchResult copyOf(SearchResult result, long searchTimeMs) {
+        List<SearchResult.ScoredDocument> documents = null;
+        if (result.getDocuments() != null) {
+            documents = new ArrayList<>(result.getDocuments().size());
+            for (SearchResult.ScoredDocument doc : result.getDocuments()) {
+                documents.add(SearchResult.ScoredDocument.builder()
+                        .document(doc.getDocument())
+                        .score(doc.getScore())
+                        .rank(doc.getRank())
+                        .knowledgeBaseName(doc.getKnowledgeBaseName())
+                        .build());
+            }
+        }
+        return SearchResult.builder()
+                .query(result.getQuery())
+                .documents(documents)
+                .searchTimeMs(searchTimeMs)
+                .knowledgeBaseName(result.getKnowledgeBaseName())
+                .build();
+    }
+
+    private static final class Key {
+        private final String knowledgeBase;
+        private final long version;
+        private final String query;
+        private final int topK;
+        private final int hash;
+
+        /**
+         * 频率统计不区分版本，知识库更新后高频查询仍能保留准入优势
+         */
+        private final int frequencyHash;
+
+        private Key(String knowledgeBase, long version, String query, int topK) {
+            this.knowledgeBase = knowledgeBase;
+            this.version = version;
+            this.query = query;
+            this.topK = topK;
+            this.frequencyHash = Objects.hash(knowledgeBase, query, topK);
+            this.hash = 31 * frequencyHash + Long.hashCode(version);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return version == other.version && topK == other.topK
+                    && knowledgeBase.equals(other.knowledgeBase) && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final SearchResult result;
+        private final long weight;
+
+        private Entry(SearchResult result, long weight) {
+            this.result = result;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 访问频率的计数草图（Count-Min Sketch）
+     * 每个键映射到4行中的各一个计数器，估计值取最小者。计数上限15，
+     * 累计增量达到采样上限后所有计数减半，使频率随时间衰减。
+     */
+    private static final class FrequencySketch {
+
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int maxEntries) {
+            int width = Integer.highestOneBit(Math.max(maxEntries, 16) * 2 - 1) << 1;
+            this.counters = new byte[width * DEPTH];
+            this.mask = width - 1;
+            this.sampleSize = Math.max(maxEntries, 16) * 10;
+        }
+
+        private void increment(int hash) {
+            boolean added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int i = index(hash, row);
+                if (counters[i] < MAX_COUNT) {
+                    counters[i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int frequency(int hash) {
+            int min = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counters[index(hash, row)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+            h ^= h >>> 16;
+            return row * (mask + 1) + (h & mask);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.agentpattern.knowledge.chunk;
+
+import com.example.agentpattern.knowledge.vector.CjkBigramTokenizer;
+import com.example.agentpattern.knowledge.vector.Tokenizer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 段落切分配置
+ * 长度均以分词器产生的词项数计，与索引使用同一个分词器时即为段落参与打分的长度
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkingConfig {
+
+    /**
+     * 用于统计长度的分词器
+     */
+    @Builder.Default
+    private Tokenizer tokenizer = CjkBigramTokenizer.INSTANCE;
+
+    /**
+     * 段落的最大长度，内容不超过该长度的文档不切分
+     */
+    @Builder.Default
+    private int maxTokens = 200;
+
+    /**
+     * 同一小节内相邻段落重叠的最大长度
+     */
+    @Builder.Default
+    private int overlapTokens = 40;
+
+    /**
+     * 段落短于该长度时不在小节标题处断开，而是与下一小节合并
+     */
+    @Builder.Default
+    private int minTokens = 40;
+
+    public static ChunkingConfig defaults() {
+        return ChunkingConfig.builder().build();
+    }
+}
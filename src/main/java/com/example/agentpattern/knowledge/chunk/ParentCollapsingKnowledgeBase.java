@@ -0,0 +1,295 @@
+package com.example.agentpattern.knowledge.chunk;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.Filter;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.base.SearchResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按原文档合并段落结果的知识库装饰器
+ * 被装饰的知识库中保存的是 {@link PassageChunker} 切出的段落，本装饰器对段落检索，
+ * 再把同一原文档的段落合并为一条结果，内容为得分最高的至多 maxPassagesPerParent 个段落
+ * （按原文顺序，以省略号分隔），结果中的文档ID为原文档ID。
+ * 原文档的分数综合它所有命中的段落：1 - Π(1 - 段落分数)，不低于最高段落的分数，其他命中的段落继续提高分数，
+ * 结果仍在 [0, 1] 内。只按最高段落排序时，答案与查询中的其他词分在相邻段落的原文档会输给单个段落碰巧命中更多词的文档。
+ * 合并后结果数会少于段落数，因此按 topK 的若干倍（至少 {@link #MIN_FETCH} 个）检索段落，原文档不足时逐步扩大。
+ * <p>
+ * 经本装饰器写入的整篇文档（没有 parentId）先切分为段落，并删除同一文档旧版本中多出的段落；
+ * 已是段落的文档原样写入。
+ */
+public class ParentCollapsingKnowledgeBase implements KnowledgeBase {
+
+    private static final int FETCH_FACTOR = 3;
+
+    /**
+     * 至少检索的段落数。原文档的分数综合它命中的所有段落，topK 较小时也要取到候选原文档的大部分段落，
+     * 否则排名取决于恰好被取到的一两个段落
+     */
+    private static final int MIN_FETCH = 32;
+    private static final int MAX_ROUNDS = 4;
+    private static final String PASSAGE_SEPARATOR = "\n…\n";
+
+    private final KnowledgeBase delegate;
+    private final PassageChunker chunker;
+    private final int maxPassagesPerParent;
+
+    public ParentCollapsingKnowledgeBase(KnowledgeBase delegate, int maxPassagesPerParent) {
+        this(delegate, new PassageChunker(ChunkingConfig.defaults()), maxPassagesPerParent);
+    }
+
+    public ParentCollapsingKnowledgeBase(KnowledgeBase delegate, PassageChunker chunker, int maxPassagesPerParent) {
+        if (delegate == null || chunker == null) {
+            throw new IllegalArgumentException("Delegate and chunker cannot be null");
+        }
+        if (maxPassagesPerParent < 1) {
+            throw new IllegalArgumentException("maxPassagesPerParent must be positive");
+        }
+        this.delegate = delegate;
+        this.chunker = chunker;
+        this.maxPassagesPerParent = maxPassagesPerParent;
+    }
+
+    /**
+     * 获取被装饰的知识库
+     */
+    public KnowledgeBase getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public KnowledgeBase unwrap() {
+        return delegate.unwrap();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public String getDescription() {
+        return delegate.getDescription();
+    }
+
+    @Override
+    public String getType() {
+        return delegate.getType();
+    }
+
+    @Override
+    public SearchResult search(String query, int topK) {
+        return search(query, topK, null);
+    }
+
+    @Override
+    public SearchResult search(String query, int topK, Filter filter) {
+        long startTime = System.currentTimeMillis();
+        int total = Math.max(delegate.getDocumentCount(), topK);
+        int fetch = Math.min(Math.max(topK * FETCH_FACTOR, MIN_FETCH), total);
+        for (int round = 1; ; round++) {
+            SearchResult passages = filter == null
+                    ? delegate.search(query, fetch)
+                    : delegate.search(query, fetch, filter);
+            List<SearchResult.ScoredDocument> collapsed = collapse(passages.getDocuments(), topK);
+            if (collapsed.size() == topK || round == MAX_ROUNDS || fetch >= total
+                    || passages.getDocuments().size() < fetch) {
+                // 被装饰的知识库返回的结果可能来自缓存，不能就地修改
+                return SearchResult.builder()
+                        .query(passages.getQuery())
+                        .documents(collapsed)
+                        .searchTimeMs(System.currentTimeMillis() - startTime)
+                        .knowledgeBaseName(passages.getKnowledgeBaseName())
+                        .build();
+            }
+            fetch = (int) Math.min((long) fetch * FETCH_FACTOR, total);
+        }
+    }
+
+    /**
+     * 按原文档分组，按综合所有命中段落的分数保留前 topK 个原文档
+     */
+    private List<SearchResult.ScoredDocument> collapse(List<SearchResult.ScoredDocument> passages, int topK) {
+        // 段落已按分数降序排列，每组先加入的段落分数更高
+        Map<String, Group> groups = new LinkedHashMap<>();
+        // 排名靠后的段落只计入分数，内容只取排名前 topK * FETCH_FACTOR 的段落（每个原文档至少保留最高的段落）
+        int contentPassages = topK * FETCH_FACTOR;
+        for (int i = 0; i < passages.size(); i++) {
+            SearchResult.ScoredDocument passage = passages.get(i);
+            groups.computeIfAbsent(parentId(passage.getDocument()), id -> new Group(id, maxPassagesPerParent))
+                    .add(passage, i < contentPassages);
+        }
+        List<Group> ranked = new ArrayList<>(groups.values());
+        // 稳定排序：分数相同时保持最高段落的先后顺序
+        ranked.sort(Comparator.comparingDouble(Group::score).reversed());
+
+        List<SearchResult.ScoredDocument> collapsed = new ArrayList<>(Math.min(topK, ranked.size()));
+        for (Group group : ranked) {
+            if (collapsed.size() == topK) {
+                break;
+            }
+            SearchResult.ScoredDocument best = group.passages.get(0);
+            collapsed.add(SearchResult.ScoredDocument.builder()
+                    .document(merge(group.parentId, group.passages))
+                    .score(group.score())
+                    .rank(collapsed.size() + 1)
+                    .knowledgeBaseName(best.getKnowledgeBaseName())
+                    .build());
+        }
+        return collapsed;
+    }
+
+    private static Document merge(String parentId, List<SearchResult.ScoredDocument> group) {
+        Document best = group.get(0).getDocument();
+        if (group.size() == 1 && parentId.equals(best.getId())) {
+            return best;
+        }
+
+        List<Document> ordered = new ArrayList<>(group.size());
+        for (SearchResult.ScoredDocument passage : group) {
+            ordered.add(passage.getDocument());
+        }
+        ordered.sort(Comparator.comparingInt(ParentCollapsingKnowledgeBase::chunkIndex));
+
+        StringBuilder content = new StringBuilder();
+        for (Document passage : ordered) {
+            if (content.length() > 0) {
+                content.append(PASSAGE_SEPARATOR);
+            }
+            content.append(passage.getContent().strip());
+        }
+
+        Map<String, Object> metadata = best.getMetadata() == null
+                ? new HashMap<>() : new HashMap<>(best.getMetadata());
+        metadata.remove(PassageChunker.CHUNK_KEY);
+        return Document.builder()
+                .id(parentId)
+                .title(best.getTitle())
+                .content(content.toString())
+                .source(best.getSource())
+                .metadata(metadata)
+                .createdAt(best.getCreatedAt())
+                .build();
+    }
+
+    /**
+     * 同一原文档命中的段落
+     */
+    private static final class Group {
+
+        private final String parentId;
+        private final int maxPassages;
+
+        /**
+         * 内容中保留的得分最高的段落
+         */
+        private final List<SearchResult.ScoredDocument> passages;
+
+        /**
+         * Π(1 - 段落分数)，包括未保留在内容中的段落
+         */
+        private double miss = 1.0;
+
+        private Group(String parentId, int maxPassages) {
+            this.parentId = parentId;
+            this.maxPassages = maxPassages;
+            this.passages = new ArrayList<>(maxPassages);
+        }
+
+        /**
+         * @param content 段落是否可以放入合并后的内容
+         */
+        private void add(SearchResult.ScoredDocument passage, boolean content) {
+            if (passages.isEmpty() || content && passages.size() < maxPassages) {
+                passages.add(passage);
+            }
+            miss *= 1.0 - Math.max(0.0, Math.min(passage.getScore(), 1.0));
+        }
+
+        private double score() {
+            return 1.0 - miss;
+        }
+    }
+
+    private static String parentId(Document document) {
+        return document.getParentId() != null ? document.getParentId() : document.getId();
+    }
+
+    private static int chunkIndex(Document document) {
+        Object chunk = document.getMetadata(PassageChunker.CHUNK_KEY);
+        return chunk instanceof Number number ? number.intValue() : 0;
+    }
+
+    /**
+     * 添加文档，整篇文档先切分为段落
+     */
+    @Override
+    public void addDocument(Document document) {
+        if (document == null) {
+            delegate.addDocument(null);
+            return;
+        }
+        addDocuments(List.of(document));
+    }
+
+    /**
+     * 批量添加文档，整篇文档先切分为段落，并删除其旧版本中多出的段落
+     */
+    @Override
+    public void addDocuments(List<Document> documents) {
+        if (documents == null || documents.isEmpty()) {
+            delegate.addDocuments(documents);
+            return;
+        }
+        List<Document> passages = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            if (document != null && document.getParentId() == null) {
+                passages.addAll(chunker.split(document));
+            } else {
+                passages.add(document);
+            }
+        }
+        PassageChunker.deleteStalePassages(delegate, documents, passages);
+        delegate.addDocuments(passages);
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return delegate.getDocumentCount();
+    }
+
+    @Override
+    public Document getDocument(String id) {
+        return delegate.getDocument(id);
+    }
+
+    /**
+     * 删除文档，同时删除由它切出的段落
+     */
+    @Override
+    public void deleteDocument(String id) {
+        delegate.deleteDocument(id);
+        PassageChunker.deletePassages(delegate, id, 0);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return delegate.isInitialized();
+    }
+
+    @Override
+    public long getVersion() {
+        return delegate.getVersion();
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.agentpattern.knowledge.chunk;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.vector.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 段落切分器
+ * 在入库前把长文档切分为较短的段落，检索时对段落打分，命中的只是相关的一段而不是整篇文章。
+ * <p>
+ * 先按小节标题（"【夜视功能】"、Markdown的"#"标题）划分小节，小节内按空行划分自然段，
+ * 超长的自然段再按行、超长的行再按长度切开；然后把这些片段依次装入不超过 maxTokens 的段落，
+ * 同一小节内相邻段落重叠末尾不超过 overlapTokens 的片段。每个段落以所在小节的标题开头。
+ * <p>
+ * 段落ID为 "原文档ID#序号"，{@link Document#getParentId()} 为原文档ID，标题、来源和元数据沿用原文档，
+ * 元数据中另加 {@link #SECTION_KEY}（小节标题）和 {@link #CHUNK_KEY}（段落序号）。
+ * 内容不超过 maxTokens 或没有ID的文档原样返回。线程安全。
+ */
+public class PassageChunker {
+
+    public static final String SECTION_KEY = "section";
+    public static final String CHUNK_KEY = "chunk";
+
+    /**
+     * 段落ID中原文档ID与序号的分隔符
+     */
+    public static final String ID_SEPARATOR = "#";
+
+    private static final Pattern HEADING = Pattern.compile("^(【[^】]+】|#{1,6}\\s+\\S.*)$");
+
+    private final ChunkingConfig config;
+
+    public PassageChunker(ChunkingConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * 切分一批文档，保持原有顺序
+     */
+    public List<Document> split(List<Document> documents) {
+        List<Document> passages = new ArrayList<>(documents.size());
+        TokenBuffer buffer = new TokenBuffer();
+        for (Document document : documents) {
+            passages.addAll(split(document, buffer));
+        }
+        return passages;
+    }
+
+    /**
+     * 切分一个文档
+     */
+    public List<Document> split(Document document) {
+        return split(document, new TokenBuffer());
+    }
+
+    /**
+     * 段落 i 的ID
+     */
+    public static String passageId(String parentId, int index) {
+        return parentId + ID_SEPARATOR + index;
+    }
+
+    /**
+     * 删除原文档从序号 from 开始的所有段落（段落序号连续，遇到第一个不存在的序号即停止）
+     */
+    public static void deletePassages(KnowledgeBase kb, String parentId, int from) {
+        for (int i = from; kb.getDocument(passageId(parentId, i)) != null; i++) {
+            kb.deleteDocument(passageId(parentId, i));
+        }
+    }
+
+    /**
+     * 重新写入原文档前删除其旧版本中不会被新段落覆盖的部分：
+     * 新版本切分出的段落少于旧版本时多出的旧段落，以及旧版本未切分、新版本切分后的整篇文档（反之亦然）。
+     * 与新段落同ID的旧段落由写入直接替换，因此这些段落在写入期间始终可查
+     *
+     * @param kb       知识库
+     * @param parents  切分前的文档，已有 parentId 的文档（段落）忽略
+     * @param passages 对 parents 切分的结果
+     */
+    public static void deleteStalePassages(KnowledgeBase kb, List<Document> parents, List<Document> passages) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Document passage : passages) {
+            if (passage != null && passage.getParentId() != null) {
+                counts.merge(passage.getParentId(), 1, Integer::sum);
+            }
+        }
+        for (Document parent : parents) {
+            if (parent == null || parent.getId() == null || parent.getParentId() != null) {
+                continue;
+            }
+            int count = counts.getOrDefault(parent.getId(), 0);
+            if (count > 0 && kb.getDocument(parent.getId()) != null) {
+                kb.deleteDocument(parent.getId());
+            }
+            deletePassages(kb, parent.getId(), count);
+        }
+    }
+
+    private List<Document> split(Document document, TokenBuffer buffer) {
+        String content = document.getContent();
+        if (document.getId() == null || content == null || countTokens(content, buffer) <= config.getMaxTokens()) {
+            return List.of(document);
+        }
+
+        List<Document> passages = new ArrayList<>();
+        List<Piece> current = new ArrayList<>();
+        int tokens = 0;
+        for (Piece piece : pieces(content, buffer)) {
+            boolean sectionBoundary = piece.sectionStart() && tokens >= config.getMinTokens();
+            if (!current.isEmpty() && (sectionBoundary || tokens + piece.tokens() > config.getMaxTokens())) {
+                passages.add(passage(document, passages.size(), current));
+                current = sectionBoundary ? new ArrayList<>() : overlap(current, piece);
+                tokens = current.stream().mapToInt(Piece::tokens).sum();
+            }
+            current.add(piece);
+            tokens += piece.tokens();
+        }
+        if (!current.isEmpty()) {
+            passages.add(passage(document, passages.size(), current));
+        }
+        return passages;
+    }
+
+    /**
+     * 把文本切成不超过 maxTokens 的片段：小节 -> 自然段 -> 行 -> 定长
+     */
+    private List<Piece> pieces(String content, TokenBuffer buffer) {
+        List<Piece> pieces = new ArrayList<>();
+        String heading = null;
+        int section = 0;
+        boolean sectionStart = false;
+        StringBuilder paragraph = new StringBuilder();
+
+        for (String rawLine : content.split("\n")) {
+            String line = rawLine.strip();
+            boolean isHeading = HEADING.matcher(line).matches();
+            if (line.isEmpty() || isHeading) {
+                if (paragraph.length() > 0) {
+                    addParagraph(pieces, paragraph.toString(), heading, section, sectionStart, buffer);
+                    paragraph.setLength(0);
+                    sectionStart = false;
+                }
+                if (isHeading) {
+                    heading = line;
+                    section++;
+                    sectionStart = true;
+                }
+                continue;
+            }
+            if (paragraph.length() > 0) {
+                paragraph.append('\n');
+            }
+            paragraph.append(line);
+        }
+        if (paragraph.length() > 0) {
+            addParagraph(pieces, paragraph.toString(), heading, section, sectionStart, buffer);
+        }
+        return pieces;
+    }
+
+    private void addParagraph(List<Piece> pieces, String paragraph, String heading, int section,
+                              boolean sectionStart, TokenBuffer buffer) {
+        int tokens = countTokens(paragraph, buffer);
+        if (tokens <= config.getMaxTokens()) {
+            pieces.add(new Piece(paragraph, tokens, heading, section, sectionStart));
+            return;
+        }
+        boolean first = sectionStart;
+        for (String line : paragraph.split("\n")) {
+            int lineTokens = countTokens(line, buffer);
+            if (lineTokens <= config.getMaxTokens()) {
+                pieces.add(new Piece(line, lineTokens, heading, section, first));
+                first = false;
+                continue;
+            }
+            // 超长的行按字符数近似切开（CJK二元组分词下词项数约等于字符数）
+            int step = Math.max(1, (int) ((long) line.length() * config.getMaxTokens() / lineTokens));
+            for (int start = 0; start < line.length(); start += step) {
+                String part = line.substring(start, Math.min(line.length(), start + step));
+                pieces.add(new Piece(part, countTokens(part, buffer), heading, section, first));
+                first = false;
+            }
+        }
+    }
+
+    /**
+     * 下一个段落开头重复的片段：上一段末尾同一小节内、总长不超过 overlapTokens 的片段，
+     * 且加上下一个片段后不超过 maxTokens；不会重复上一段的全部片段
+     */
+    private List<Piece> overlap(List<Piece> previous, Piece next) {
+        List<Piece> overlap = new ArrayList<>();
+        int tokens = 0;
+        for (int i = previous.size() - 1; i > 0; i--) {
+            Piece piece = previous.get(i);
+            if (piece.section() != next.section()
+                    || tokens + piece.tokens() > config.getOverlapTokens()
+                    || tokens + piece.tokens() + next.tokens() > config.getMaxTokens()) {
+                break;
+            }
+            overlap.add(0, piece);
+            tokens += piece.tokens();
+        }
+        return overlap;
+    }
+
+    private Document passage(Document parent, int index, List<Piece> pieces) {
+        StringBuilder content = new StringBuilder();
+        int section = -1;
+        for (Piece piece : pieces) {
+            if (piece.section() != section && piece.heading() != null) {
+                content.append(piece.heading()).append('\n');
+            }
+            section = piece.section();
+            content.append(piece.text()).append('\n');
+        }
+
+        Map<String, Object> metadata = parent.getMetadata() == null
+                ? new HashMap<>() : new HashMap<>(parent.getMetadata());
+        String heading = pieces.get(0).heading();
+        if (heading != null) {
+            metadata.put(SECTION_KEY, heading.replaceAll("^#+\\s*|[【】]", ""));
+        }
+        metadata.put(CHUNK_KEY, index);
+
+        return Document.builder()
+                .id(passageId(parent.getId(), index))
+                .parentId(parent.getId())
+                .title(parent.getTitle())
+                .content(content.toString())
+                .source(parent.getSource())
+                .metadata(metadata)
+                .createdAt(parent.getCreatedAt())
+                .build();
+    }
+
+    private int countTokens(String text, TokenBuffer buffer) {
+        buffer.clear();
+        config.getTokenizer().tokenize(text, buffer);
+        return buffer.size();
+    }
+
+    /**
+     * 切分的最小单位
+     *
+     * @param sectionStart 是否为小节的第一个片段
+     */
+    private record Piece(String text, int tokens, String heading, int section, boolean sectionStart) {
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.agentpattern.knowledge.controller;
+
+import com.example.agentpattern.knowledge.base.CacheStats;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.base.KnowledgeBaseRegistry;
+import com.example.agentpattern.knowledge.loader.BulkDocumentIngester;
+import com.example.agentpattern.knowledge.loader.BulkIngestReport;
+import com.example.agentpattern.knowledge.quantized.QuantizedKnowledgeBase;
+import com.example.agentpattern.knowledge.quantized.VectorStoreStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 知识库API控制器
+ * 提供知识库运行状态和批量导入的HTTP接口
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/knowledge")
+public class KnowledgeBaseController {
+
+    private final KnowledgeBaseRegistry knowledgeBaseRegistry;
+    private final BulkDocumentIngester bulkDocumentIngester;
+
+    public KnowledgeBaseController(KnowledgeBaseRegistry knowledgeBaseRegistry,
+                                   BulkDocumentIngester bulkDocumentIngester) {
+        this.knowledgeBaseRegistry = knowledgeBaseRegistry;
+        this.bulkDocumentIngester = bulkDocumentIngester;
+    }
+
+    /**
+     * 以NDJSON流批量导入文档（每行一个JSON对象），知识库不存在时创建
+     * POST /api/knowledge/{name}/documents/bulk?batchSize=1000
+     * Content-Type: application/x-ndjson
+     * 输入格式错误时返回400，出错行之前的文档已经写入
+     */
+    @PostMapping("/{name}/documents/bulk")
+    public ResponseEntity<BulkIngestReport> bulkIngest(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "0") int batchSize,
+            @RequestParam(required = false) String description,
+            InputStream body) throws IOException {
+        log.info("Bulk ingest into knowledge base: {}", name);
+        BulkIngestReport report = bulkDocumentIngester.ingest(name, description, body, batchSize);
+        return report.isCompleted() ? ResponseEntity.ok(report) : ResponseEntity.badRequest().body(report);
+    }
+
+    /**
+     * 获取查询结果缓存统计
+     * GET /api/knowledge/cache/stats
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<CacheStats> getCacheStats() {
+        CacheStats stats = knowledgeBaseRegistry.getCacheStats();
+        if (stats == null) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * 获取量化向量知识库的内存占用和召回率
+     * GET /api/knowledge/vector-stats?sampleQueries=20&k=10
+     */
+    @GetMapping("/vector-stats")
+    public ResponseEntity<List<VectorStoreStats>> getVectorStats(
+            @RequestParam(defaultValue = "20") int sampleQueries,
+            @RequestParam(defaultValue = "10") int k) {
+        List<VectorStoreStats> stats = new ArrayList<>();
+        for (KnowledgeBase kb : knowledgeBaseRegistry.getAllKnowledgeBases()) {
+            if (kb.unwrap() instanceof QuantizedKnowledgeBase quantized) {
+                stats.add(quantized.getStats(sampleQueries, k));
+            }
+        }
+        return ResponseEntity.ok(stats);
+    }
+}
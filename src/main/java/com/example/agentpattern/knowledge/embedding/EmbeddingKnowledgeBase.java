@@ -0,0 +1,15 @@
+package com.example.agentpattern.knowledge.embedding;
+
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+
+/**
+ * 基于稠密向量检索的知识库
+ * 文档入库时需要嵌入向量，批量导入应经过 {@link EmbeddingPipeline}
+ */
+public interface EmbeddingKnowledgeBase extends KnowledgeBase {
+
+    /**
+     * 知识库使用的嵌入模型（查询和文档使用同一个模型）
+     */
+    EmbeddingModel getEmbeddingModel();
+}
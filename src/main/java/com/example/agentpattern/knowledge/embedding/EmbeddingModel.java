@@ -0,0 +1,38 @@
+package com.example.agentpattern.knowledge.embedding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文本嵌入模型
+ * 将文本映射为固定维度的稠密向量，供基于向量的知识库使用
+ */
+public interface EmbeddingModel {
+
+    /**
+     * 向量维度
+     */
+    int dimension();
+
+    /**
+     * 计算文本的嵌入向量
+     *
+     * @param text 文本
+     * @return 长度为 {@link #dimension()} 的向量
+     */
+    float[] embed(String text);
+
+    /**
+     * 批量计算嵌入向量。远程模型可覆盖此方法，以一次请求处理整批文本
+     *
+     * @param texts 文本列表
+     * @return 与 texts 一一对应的向量
+     */
+    default List<float[]> embedBatch(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embed(text));
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.agentpattern.knowledge.embedding;
+
+import com.example.agentpattern.knowledge.base.Document;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 文档嵌入流水线
+ * 将文档按批次交给嵌入模型异步计算向量，向量写回 {@link Document#setEmbedding(float[])} 后再把整批文档交给下游（通常是知识库的写入方法）。
+ * <p>
+ * 同时计算的批次数不超过 maxConcurrency；已提交但未完成的批次数不超过 maxPendingBatches，
+ * 超出时 {@link #submit} 阻塞调用方，防止大批量导入时把所有文档堆积在内存中。
+ * 查询不经过流水线：排队中的文档只是暂时检索不到，不会让查询等待嵌入计算。
+ */
+@Slf4j
+public class EmbeddingPipeline implements AutoCloseable {
+
+    private final EmbeddingModel model;
+    private final int batchSize;
+    private final ExecutorService executor;
+    private final Semaphore pendingBatches;
+    private final AtomicInteger pendingDocuments = new AtomicInteger();
+
+    public EmbeddingPipeline(EmbeddingModel model, int batchSize, int maxConcurrency) {
+        this(model, batchSize, maxConcurrency, maxConcurrency * 4);
+    }
+
+    public EmbeddingPipeline(EmbeddingModel model, int batchSize, int maxConcurrency, int maxPendingBatches) {
+        if (batchSize <= 0 || maxConcurrency <= 0 || maxPendingBatches <= 0) {
+            throw new IllegalArgumentException("batchSize, maxConcurrency and maxPendingBatches must be positive");
+        }
+        this.model = model;
+        this.batchSize = batchSize;
+        this.pendingBatches = new Semaphore(maxPendingBatches);
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "kb-embed-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交文档。已带有维度匹配的向量的文档不再重新计算
+     *
+     * @param documents 文档列表
+     * @param sink      每批文档的向量写回后调用，在流水线线程上执行，需线程安全
+     * @return 全部批次交给 sink 后完成，结果为文档数；任一批次失败时以该异常完成
+     */
+    public CompletableFuture<Integer> submit(List<Document> documents, Consumer<List<Document>> sink) {
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int from = 0; from < documents.size(); from += batchSize) {
+            List<Document> batch = List.copyOf(documents.subList(from, Math.min(from + batchSize, documents.size())));
+            try {
+                pendingBatches.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batches.add(CompletableFuture.failedFuture(e));
+                break;
+            }
+
+            pendingDocuments.addAndGet(batch.size());
+            CompletableFuture<Void> future;
+            try {
+                future = CompletableFuture.runAsync(() -> {
+                    embed(batch);
+                    sink.accept(batch);
+                }, executor);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            batches.add(future.whenComplete((ignored, error) -> {
+                pendingDocuments.addAndGet(-batch.size());
+                pendingBatches.release();
+                if (error != null) {
+                    log.error("Embedding batch of {} documents failed", batch.size(), error);
+                }
+            }));
+        }
+
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> documents.size());
+    }
+
+    /**
+     * 已提交但尚未交给下游的文档数
+     */
+    public int getPendingDocuments() {
+        return pendingDocuments.get();
+    }
+
+    public EmbeddingModel getModel() {
+        return model;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void embed(List<Document> batch) {
+        List<Document> missing = new ArrayList<>(batch.size());
+        List<String> texts = new ArrayList<>(batch.size());
+        for (Document doc : batch) {
+            float[] embedding = doc.getEmbedding();
+            if (embedding == null || embedding.length != model.dimension()) {
+                missing.add(doc);
+                texts.add(embeddingText(doc));
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        List<float[]> vectors = model.embedBatch(texts);
+        for (int i = 0; i < missing.size(); i++) {
+            missing.get(i).setEmbedding(vectors.get(i));
+        }
+    }
+
+    /**
+     * 参与嵌入计算的文本（标题 + 内容）
+     */
+    public static String embeddingText(Document doc) {
+        String title = doc.getTitle() == null ? "" : doc.getTitle();
+        String content = doc.getContent() == null ? "" : doc.getContent();
+        return title + "\n" + content;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.agentpattern.knowledge.embedding;
+
+import com.example.agentpattern.knowledge.vector.CjkBigramTokenizer;
+import com.example.agentpattern.knowledge.vector.TokenBuffer;
+import com.example.agentpattern.knowledge.vector.Tokenizer;
+import com.example.agentpattern.util.VectorKernels;
+
+/**
+ * 本地确定性嵌入模型
+ * 对分词结果做带符号的特征哈希：每个词项按哈希映射到 {@code projections} 个维度并以 ±1 累加，
+ * 等价于用稀疏随机投影矩阵把词项计数向量降到固定维度，最后做L2归一化。
+ * <p>
+ * 不依赖外部服务，相同文本在任何进程中都得到相同向量，适合离线运行、测试以及作为真实模型不可用时的兜底。
+ * 向量只反映词项重叠，不具备语义泛化能力。线程安全。
+ */
+public class HashingEmbeddingModel implements EmbeddingModel {
+
+    private static final ThreadLocal<TokenBuffer> BUFFER = ThreadLocal.withInitial(TokenBuffer::new);
+
+    private final int dimension;
+    private final int projections;
+    private final int seed;
+    private final Tokenizer tokenizer;
+
+    public HashingEmbeddingModel(int dimension) {
+        this(dimension, 2, 0x9E3779B9, CjkBigramTokenizer.INSTANCE);
+    }
+
+    /**
+     * @param dimension   向量维度
+     * @param projections 每个词项映射到的维度数，越大哈希冲突的影响越小
+     * @param seed        哈希种子，种子不同的模型生成的向量不可比较
+     * @param tokenizer   分词器
+     */
+    public HashingEmbeddingModel(int dimension, int projections, int seed, Tokenizer tokenizer) {
+        if (dimension <= 0 || projections <= 0) {
+            throw new IllegalArgumentException("dimension and projections must be positive");
+        }
+        this.dimension = dimension;
+        this.projections = projections;
+        this.seed = seed;
+        this.tokenizer = tokenizer;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        TokenBuffer buffer = BUFFER.get();
+        buffer.clear();
+        tokenizer.tokenize(text, buffer);
+
+        float[] vector = new float[dimension];
+        for (int i = 0; i < buffer.size(); i++) {
+            int h = buffer.hash(i);
+            for (int p = 0; p < projections; p++) {
+                int mixed = mix(h ^ (seed + p * 0x85EBCA6B));
+                int slot = (mixed >>> 1) % dimension;
+                vector[slot] += (mixed & 1) == 0 ? 1f : -1f;
+            }
+        }
+
+        VectorKernels.normalizeInPlace(vector);
+        return vector;
+    }
+
+    /**
+     * MurmurHash3 的 fmix32，使相近的输入得到充分打散的输出
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.agentpattern.knowledge.hnsw;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * HNSW索引参数
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HnswConfig {
+
+    /**
+     * 每个节点在上层保留的邻居数，第0层保留 2M 个。越大召回率越高，内存和建索引耗时也越高
+     */
+    @Builder.Default
+    private int m = 16;
+
+    /**
+     * 插入时候选列表的大小
+     */
+    @Builder.Default
+    private int efConstruction = 200;
+
+    /**
+     * 查询时候选列表的大小（不小于topK），越大召回率越高、查询越慢
+     */
+    @Builder.Default
+    private int efSearch = 64;
+
+    /**
+     * 默认参数
+     */
+    public static HnswConfig defaults() {
+        return HnswConfig.builder().build();
+    }
+}
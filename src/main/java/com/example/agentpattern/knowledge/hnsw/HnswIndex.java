@@ -0,0 +1,586 @@
+package com.example.agentpattern.knowledge.hnsw;
+
+import com.example.agentpattern.util.TopKHeap;
+import com.example.agentpattern.util.VectorKernels;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HNSW（Hierarchical Navigable Small World）近似最近邻索引
+ * 向量在插入时归一化，相似度为内积（即余弦相似度），由 {@link VectorKernels} 计算。
+ * 向量按节点ID顺序连续存放在固定大小的页中，精确查询按页批量计算。每个节点随机分配层数，
+ * 查询从最高层的入口点贪心下降，在第0层以 ef 大小的候选列表做最佳优先搜索。
+ * 邻居按启发式规则挑选（保留彼此不相近的方向），以提高图的连通性和召回率。
+ * <p>
+ * 支持并发插入和查询：邻居列表的读写在各自节点上同步，
+ * 只有新节点的层数超过当前最高层时才持有全局锁完成插入。
+ * 删除只做墓碑标记，被删除的节点仍参与图的遍历，但不会出现在结果中。
+ */
+public class HnswIndex {
+
+    /**
+     * 每页存放的向量数
+     */
+    private static final int PAGE_SIZE = 256;
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+
+    /**
+     * 按节点ID排列的节点和向量页，扩容和写入新槽位都在 growLock 内进行
+     */
+    private volatile Node[] nodes = new Node[1024];
+    private volatile float[][] pages = new float[4][];
+    private int size;
+    private final Object growLock = new Object();
+
+    /**
+     * 保护入口点和最高层的切换
+     */
+    private final Object entryLock = new Object();
+    private volatile int entryPoint = -1;
+    private volatile int maxLevel = -1;
+
+    private final AtomicInteger deletedCount = new AtomicInteger();
+
+    private final ThreadLocal<SearchContext> contexts;
+
+    public HnswIndex(int dimension, HnswConfig config) {
+        if (dimension <= 0 || config.getM() < 2) {
+            throw new IllegalArgumentException("Dimension must be positive and M must be at least 2");
+        }
+        this.dimension = dimension;
+        this.m = config.getM();
+        this.maxM0 = 2 * config.getM();
+        this.efConstruction = Math.max(config.getEfConstruction(), config.getM());
+        this.levelMultiplier = 1.0 / Math.log(config.getM());
+        this.contexts = ThreadLocal.withInitial(() -> new SearchContext(maxM0));
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 已插入的节点数（包括已删除的）
+     */
+    public int size() {
+        synchronized (growLock) {
+            return size;
+        }
+    }
+
+    /**
+     * 已删除的节点数
+     */
+    public int deletedCount() {
+        return deletedCount.get();
+    }
+
+    /**
+     * 插入向量（会复制并归一化）
+     *
+     * @return 新节点的ID
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+        }
+        float[] normalized = normalize(vector);
+        int level = randomLevel();
+
+        int id;
+        Node node;
+        synchronized (growLock) {
+            id = size;
+            if (id == nodes.length) {
+                nodes = Arrays.copyOf(nodes, id * 2);
+            }
+            int pageIndex = id / PAGE_SIZE;
+            if (pageIndex == pages.length) {
+                pages = Arrays.copyOf(pages, pageIndex * 2);
+            }
+            if (pages[pageIndex] == null) {
+                pages[pageIndex] = new float[PAGE_SIZE * dimension];
+            }
+            int offset = (id % PAGE_SIZE) * dimension;
+            System.arraycopy(normalized, 0, pages[pageIndex], offset, dimension);
+            node = new Node(pages[pageIndex], offset, level, m, maxM0);
+            nodes[id] = node;
+            size++;
+        }
+
+        int entry;
+        int top;
+        synchronized (entryLock) {
+            if (entryPoint < 0) {
+                entryPoint = id;
+                maxLevel = level;
+                return id;
+            }
+            entry = entryPoint;
+            top = maxLevel;
+        }
+
+        if (level <= top) {
+            connect(id, node, normalized, entry, top);
+            return id;
+        }
+
+        // 新节点将成为入口点：持有全局锁完成插入，避免其他插入使用尚未连通的入口点
+        synchronized (entryLock) {
+            connect(id, node, normalized, entryPoint, maxLevel);
+            if (level > maxLevel) {
+                entryPoint = id;
+                maxLevel = level;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * 标记删除节点
+     *
+     * @return 节点之前是否未被删除
+     */
+    public boolean markDeleted(int id) {
+        Node node = node(id);
+        if (node.deleted) {
+            return false;
+        }
+        node.deleted = true;
+        deletedCount.incrementAndGet();
+        return true;
+    }
+
+    public boolean isDeleted(int id) {
+        return node(id).deleted;
+    }
+
+    /**
+     * 节点的归一化向量（副本）
+     */
+    public float[] vector(int id) {
+        Node node = node(id);
+        return Arrays.copyOfRange(node.page, node.offset, node.offset + dimension);
+    }
+
+    /**
+     * 近似最近邻查询
+     *
+     * @param query   查询向量
+     * @param k       返回数量
+     * @param ef      候选列表大小，小于 k 时按 k 处理
+     * @param results 输出：相似度最高的 k 个未删除节点（调用方随后可调用 sortDescending）
+     */
+    public void search(float[] query, int k, int ef, TopKHeap results) {
+        results.reset(k);
+        int entry = entryPoint;
+        if (entry < 0 || k <= 0) {
+            return;
+        }
+        float[] q = normalize(query);
+        SearchContext ctx = contexts.get();
+
+        int current = entry;
+        for (int level = maxLevel; level > 0; level--) {
+            current = greedyClosest(q, current, level, ctx);
+        }
+
+        TopKHeap candidates = ctx.results;
+        searchLayer(q, current, Math.max(ef, k), 0, true, ctx);
+        for (int i = 0; i < candidates.size(); i++) {
+            results.offer(candidates.id(i), candidates.score(i));
+        }
+    }
+
+    /**
+     * 精确查询（线性扫描所有未删除节点），用于评估近似查询的召回率
+     */
+    public void exactSearch(float[] query, int k, TopKHeap results) {
+        results.reset(k);
+        float[] q = normalize(query);
+        int n = size();
+        Node[] snapshot = nodes;
+        float[][] pageSnapshot = pages;
+        float[] scores = new float[PAGE_SIZE];
+        for (int first = 0; first < n; first += PAGE_SIZE) {
+            int count = Math.min(PAGE_SIZE, n - first);
+            VectorKernels.dotBlock(q, pageSnapshot[first / PAGE_SIZE], 0, count, scores);
+            for (int j = 0; j < count; j++) {
+                if (!snapshot[first + j].deleted) {
+                    results.offer(first + j, scores[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 将新节点连接到图中
+     */
+    private void connect(int id, Node node, float[] v, int entry, int top) {
+        SearchContext ctx = contexts.get();
+
+        int current = entry;
+        for (int level = top; level > node.level; level--) {
+            current = greedyClosest(v, current, level, ctx);
+        }
+
+        for (int level = Math.min(node.level, top); level >= 0; level--) {
+            searchLayer(v, current, efConstruction, level, false, ctx);
+            TopKHeap found = ctx.results;
+            found.sortDescending();
+            int[] candidateIds = new int[found.size()];
+            float[] candidateSims = new float[found.size()];
+            int count = 0;
+            for (int i = 0; i < found.size(); i++) {
+                // 并发插入的节点可能已经链接到本节点，排除自身
+                if (found.id(i) != id) {
+                    candidateIds[count] = found.id(i);
+                    candidateSims[count] = found.score(i);
+                    count++;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            current = candidateIds[0];
+
+            int maxConnections = level == 0 ? maxM0 : m;
+            int[] selected = selectNeighbors(candidateIds, candidateSims, count, m);
+            synchronized (node) {
+                System.arraycopy(selected, 0, node.neighbors[level], 0, selected.length);
+                node.counts[level] = selected.length;
+            }
+            for (int neighbor : selected) {
+                addLink(neighbor, id, level, maxConnections);
+            }
+        }
+    }
+
+    /**
+     * 为已有节点添加一条到新节点的边，邻居已满时按启发式规则重新挑选
+     */
+    private void addLink(int from, int to, int level, int maxConnections) {
+        Node node = node(from);
+        synchronized (node) {
+            int[] neighbors = node.neighbors[level];
+            int count = node.counts[level];
+            if (count < maxConnections) {
+                neighbors[count] = to;
+                node.counts[level] = count + 1;
+                return;
+            }
+
+            // 候选：现有邻居 + 新节点，按与本节点的相似度降序排列
+            int[] ids = Arrays.copyOf(neighbors, count + 1);
+            ids[count] = to;
+            float[] sims = new float[count + 1];
+            for (int i = 0; i <= count; i++) {
+                sims[i] = similarity(node, node(ids[i]));
+            }
+            sortDescending(ids, sims);
+
+            int[] selected = selectNeighbors(ids, sims, ids.length, maxConnections);
+            System.arraycopy(selected, 0, neighbors, 0, selected.length);
+            node.counts[level] = selected.length;
+        }
+    }
+
+    /**
+     * 启发式邻居选择：按相似度从高到低考察候选，只有当候选与基准点的相似度高于它与所有已选邻居的相似度时才选入；
+     * 不足 max 个时用被跳过的候选按顺序补足
+     *
+     * @param ids   按相似度降序排列的候选
+     * @param sims  候选与基准点的相似度
+     */
+    private int[] selectNeighbors(int[] ids, float[] sims, int count, int max) {
+        if (count <= max) {
+            return Arrays.copyOf(ids, count);
+        }
+        int[] selected = new int[max];
+        int n = 0;
+        boolean[] skipped = new boolean[count];
+        for (int i = 0; i < count && n < max; i++) {
+            Node candidate = node(ids[i]);
+            boolean keep = true;
+            for (int j = 0; j < n; j++) {
+                if (similarity(candidate, node(selected[j])) > sims[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[n++] = ids[i];
+            } else {
+                skipped[i] = true;
+            }
+        }
+        for (int i = 0; i < count && n < max; i++) {
+            if (skipped[i]) {
+                selected[n++] = ids[i];
+            }
+        }
+        return n == max ? selected : Arrays.copyOf(selected, n);
+    }
+
+    /**
+     * 在指定层从 current 出发贪心移动到与 q 最相似的节点
+     */
+    private int greedyClosest(float[] q, int current, int level, SearchContext ctx) {
+        float best = similarity(q, node(current));
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int count = ctx.copyNeighbors(node(current), level);
+            for (int i = 0; i < count; i++) {
+                int neighbor = ctx.neighbors[i];
+                float sim = similarity(q, node(neighbor));
+                if (sim > best) {
+                    best = sim;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在指定层做最佳优先搜索，结果写入 ctx.results（最多 ef 个）
+     *
+     * @param skipDeleted 结果中是否排除已删除节点（已删除节点仍会被遍历）
+     */
+    private void searchLayer(float[] q, int entry, int ef, int level, boolean skipDeleted, SearchContext ctx) {
+        ctx.beginSearch(size());
+        TopKHeap results = ctx.results;
+        results.reset(ef);
+        CandidateQueue candidates = ctx.candidates;
+        candidates.clear();
+
+        float entrySim = similarity(q, node(entry));
+        ctx.visit(entry);
+        candidates.push(entry, entrySim);
+        if (!skipDeleted || !node(entry).deleted) {
+            results.offer(entry, entrySim);
+        }
+
+        while (!candidates.isEmpty()) {
+            float sim = candidates.peekSim();
+            if (results.size() >= ef && sim < results.threshold()) {
+                break;
+            }
+            int current = candidates.pop();
+
+            int count = ctx.copyNeighbors(node(current), level);
+            for (int i = 0; i < count; i++) {
+                int neighbor = ctx.neighbors[i];
+                if (!ctx.visit(neighbor)) {
+                    continue;
+                }
+                Node neighborNode = node(neighbor);
+                float neighborSim = similarity(q, neighborNode);
+                if (results.size() < ef || neighborSim > results.threshold()) {
+                    candidates.push(neighbor, neighborSim);
+                    if (!skipDeleted || !neighborNode.deleted) {
+                        results.offer(neighbor, neighborSim);
+                    }
+                }
+            }
+        }
+    }
+
+    private Node node(int id) {
+        return nodes[id];
+    }
+
+    private int randomLevel() {
+        double r = ThreadLocalRandom.current().nextDouble();
+        return (int) (-Math.log(1.0 - r) * levelMultiplier);
+    }
+
+    private float[] normalize(float[] vector) {
+        float[] normalized = vector.clone();
+        VectorKernels.normalizeInPlace(normalized);
+        return normalized;
+    }
+
+    private float similarity(float[] q, Node node) {
+        return VectorKernels.dot(q, 0, node.page, node.offset, dimension);
+    }
+
+    private float similarity(Node a, Node b) {
+        return VectorKernels.dot(a.page, a.offset, b.page, b.offset, dimension);
+    }
+
+    /**
+     * 按相似度降序对 (ids, sims) 插入排序（邻居列表很短）
+     */
+    private static void sortDescending(int[] ids, float[] sims) {
+        for (int i = 1; i < ids.length; i++) {
+            int id = ids[i];
+            float sim = sims[i];
+            int j = i - 1;
+            while (j >= 0 && sims[j] < sim) {
+                ids[j + 1] = ids[j];
+                sims[j + 1] = sims[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            sims[j + 1] = sim;
+        }
+    }
+
+    /**
+     * 图节点：归一化向量 + 每层的邻居列表
+     */
+    private static final class Node {
+        /**
+         * 向量所在的页及起始位置
+         */
+        private final float[] page;
+        private final int offset;
+        private final int level;
+        private final int[][] neighbors;
+        private final int[] counts;
+        private volatile boolean deleted;
+
+        private Node(float[] page, int offset, int level, int m, int maxM0) {
+            this.page = page;
+            this.offset = offset;
+            this.level = level;
+            this.neighbors = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                neighbors[l] = new int[l == 0 ? maxM0 : m];
+            }
+            this.counts = new int[level + 1];
+        }
+    }
+
+    /**
+     * 每个线程复用的搜索状态：访问标记、候选队列、结果堆和邻居缓冲区
+     */
+    private static final class SearchContext {
+        private int[] visited = new int[1024];
+        private int generation;
+        private final CandidateQueue candidates = new CandidateQueue();
+        private final TopKHeap results = new TopKHeap(64);
+        private final int[] neighbors;
+
+        private SearchContext(int maxNeighbors) {
+            this.neighbors = new int[maxNeighbors];
+        }
+
+        private void beginSearch(int nodeCount) {
+            if (nodeCount > visited.length) {
+                visited = new int[Math.max(nodeCount, visited.length * 2)];
+                generation = 0;
+            }
+            if (++generation == 0) {
+                Arrays.fill(visited, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * 标记节点已访问
+         *
+         * @return 节点此前是否未被访问
+         */
+        private boolean visit(int id) {
+            if (id >= visited.length) {
+                // 搜索期间有并发插入的新节点
+                visited = Arrays.copyOf(visited, Math.max(id + 1, visited.length * 2));
+            }
+            if (visited[id] == generation) {
+                return false;
+            }
+            visited[id] = generation;
+            return true;
+        }
+
+        /**
+         * 在节点锁内复制某一层的邻居，返回邻居数
+         */
+        private int copyNeighbors(Node node, int level) {
+            if (level > node.level) {
+                return 0;
+            }
+            synchronized (node) {
+                int count = node.counts[level];
+                System.arraycopy(node.neighbors[level], 0, neighbors, 0, count);
+                return count;
+            }
+        }
+    }
+
+    /**
+     * 按相似度从高到低弹出的候选队列（二叉最大堆）
+     */
+    private static final class CandidateQueue {
+        private int[] ids = new int[64];
+        private float[] sims = new float[64];
+        private int size;
+
+        private void clear() {
+            size = 0;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private float peekSim() {
+            return sims[0];
+        }
+
+        private void push(int id, float sim) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                sims = Arrays.copyOf(sims, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (sims[parent] >= sim) {
+                    break;
+                }
+                ids[i] = ids[parent];
+                sims[i] = sims[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            sims[i] = sim;
+        }
+
+        private int pop() {
+            int top = ids[0];
+            int lastId = ids[--size];
+            float lastSim = sims[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && sims[child + 1] > sims[child]) {
+                    child++;
+                }
+                if (sims[child] <= lastSim) {
+                    break;
+                }
+                ids[i] = ids[child];
+                sims[i] = sims[child];
+                i = child;
+            }
+            ids[i] = lastId;
+            sims[i] = lastSim;
+            return top;
+        }
+    }
+}
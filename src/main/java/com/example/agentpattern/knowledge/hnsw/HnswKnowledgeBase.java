@@ -0,0 +1,223 @@
+package com.example.agentpattern.knowledge.hnsw;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.SearchResult;
+import com.example.agentpattern.knowledge.embedding.EmbeddingKnowledgeBase;
+import com.example.agentpattern.knowledge.embedding.EmbeddingModel;
+import com.example.agentpattern.knowledge.embedding.EmbeddingPipeline;
+import com.example.agentpattern.util.TopKHeap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于HNSW稠密向量索引的知识库
+ * 文档使用自带的 {@link Document#getEmbedding()}（维度与嵌入模型一致时），否则由嵌入模型根据标题和内容计算。
+ * 查询向量与文档向量的余弦相似度作为分数（负值记为0）。
+ * <p>
+ * 写入无需全局锁，可由多个线程并发添加文档；删除和更新只在索引中做墓碑标记。
+ */
+@Slf4j
+public class HnswKnowledgeBase implements EmbeddingKnowledgeBase {
+
+    private static final ThreadLocal<TopKHeap> TOP_K = ThreadLocal.withInitial(() -> new TopKHeap(16));
+
+    private final String name;
+    private final String description;
+    private final EmbeddingModel embeddingModel;
+    private final HnswConfig config;
+    private final HnswIndex index;
+
+    /**
+     * 文档ID -> 节点ID，节点ID -> 文档
+     */
+    private final Map<String, Integer> nodeIds = new ConcurrentHashMap<>();
+    private final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    public HnswKnowledgeBase(String name, String description, EmbeddingModel embeddingModel) {
+        this(name, description, embeddingModel, HnswConfig.defaults());
+    }
+
+    public HnswKnowledgeBase(String name, String description, EmbeddingModel embeddingModel, HnswConfig config) {
+        this.name = name;
+        this.description = description;
+        this.embeddingModel = embeddingModel;
+        this.config = config;
+        this.index = new HnswIndex(embeddingModel.dimension(), config);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public EmbeddingModel getEmbeddingModel() {
+        return embeddingModel;
+    }
+
+    @Override
+    public String getType() {
+        return "VECTOR_HNSW";
+    }
+
+    @Override
+    public SearchResult search(String query, int topK) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            TopKHeap heap = TOP_K.get();
+            index.search(embeddingModel.embed(query), topK, config.getEfSearch(), heap);
+            heap.sortDescending();
+
+            List<SearchResult.ScoredDocument> topResults = new ArrayList<>(heap.size());
+            for (int i = 0; i < heap.size(); i++) {
+                Document doc = documents.get(heap.id(i));
+                if (doc == null) {
+                    // 节点刚被删除
+                    continue;
+                }
+                topResults.add(SearchResult.ScoredDocument.builder()
+                        .document(doc)
+                        .score(Math.max(heap.score(i), 0f))
+                        .rank(topResults.size() + 1)
+                        .build());
+            }
+
+            long searchTime = System.currentTimeMillis() - startTime;
+            log.debug("Search completed in {}ms, found {} results", searchTime, topResults.size());
+
+            return SearchResult.builder()
+                    .query(query)
+                    .documents(topResults)
+                    .searchTimeMs(searchTime)
+                    .knowledgeBaseName(name)
+                    .build();
+
+        } catch (Exception e) {
+            log.error("Error searching knowledge base '{}'", name, e);
+            return SearchResult.builder()
+                    .query(query)
+                    .documents(Collections.emptyList())
+                    .searchTimeMs(System.currentTimeMillis() - startTime)
+                    .knowledgeBaseName(name)
+                    .build();
+        }
+    }
+
+    @Override
+    public void addDocument(Document document) {
+        if (document == null || document.getId() == null) {
+            throw new IllegalArgumentException("Document and document ID cannot be null");
+        }
+
+        int node = index.add(embed(document));
+        documents.put(node, document);
+        Integer previous = nodeIds.put(document.getId(), node);
+        if (previous != null) {
+            remove(previous);
+        }
+        version.incrementAndGet();
+
+        log.debug("Added document '{}' to knowledge base '{}'", document.getId(), name);
+    }
+
+    @Override
+    public void addDocuments(List<Document> docs) {
+        if (docs == null || docs.isEmpty()) {
+            return;
+        }
+        for (Document doc : docs) {
+            if (doc != null && doc.getId() != null) {
+                addDocument(doc);
+            }
+        }
+        log.info("Added {} documents to knowledge base '{}'", docs.size(), name);
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return nodeIds.size();
+    }
+
+    @Override
+    public Document getDocument(String id) {
+        Integer node = nodeIds.get(id);
+        return node == null ? null : documents.get(node);
+    }
+
+    /**
+     * 获取知识库中的所有文档（只读视图）
+     */
+    public Collection<Document> getDocuments() {
+        return Collections.unmodifiableCollection(documents.values());
+    }
+
+    @Override
+    public void deleteDocument(String id) {
+        Integer node = nodeIds.remove(id);
+        if (node != null) {
+            remove(node);
+            version.incrementAndGet();
+            log.debug("Deleted document '{}' from knowledge base '{}'", id, name);
+        }
+    }
+
+    /**
+     * 逐个删除所有文档。索引中的节点只做墓碑标记，如需回收内存请重建知识库
+     */
+    @Override
+    public void clear() {
+        for (String id : new ArrayList<>(nodeIds.keySet())) {
+            deleteDocument(id);
+        }
+        version.incrementAndGet();
+        log.info("Cleared knowledge base '{}'", name);
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return !nodeIds.isEmpty();
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 底层HNSW索引
+     */
+    public HnswIndex getIndex() {
+        return index;
+    }
+
+    private void remove(int node) {
+        index.markDeleted(node);
+        documents.remove(node);
+    }
+
+    /**
+     * 文档自带维度匹配的嵌入向量时直接使用，否则由嵌入模型计算
+     */
+    private float[] embed(Document document) {
+        float[] embedding = document.getEmbedding();
+        if (embedding != null && embedding.length == embeddingModel.dimension()) {
+            return embedding;
+        }
+        return embeddingModel.embed(EmbeddingPipeline.embeddingText(document));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.agentpattern.knowledge.loader;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.base.KnowledgeBaseRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量文档导入
+ * 从NDJSON流中逐个读取文档，每凑满一批调用一次 {@link KnowledgeBaseFactory#ingest}：
+ * 内存知识库对整批文档并行分词后只发布一次新快照，不会为每个文档复制一次索引。
+ * 任意时刻只有一批文档驻留内存，因此可以导入远大于内存的输入。
+ */
+@Slf4j
+@Component
+public class BulkDocumentIngester {
+
+    private static final int MAX_ERRORS = 20;
+
+    private final KnowledgeBaseRegistry registry;
+    private final KnowledgeBaseFactory factory;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 默认每批文档数
+     */
+    @Value("${knowledge.ingest.batch-size:1000}")
+    private int defaultBatchSize = 1000;
+
+    /**
+     * 每批文档数上限
+     */
+    @Value("${knowledge.ingest.max-batch-size:10000}")
+    private int maxBatchSize = 10000;
+
+    public BulkDocumentIngester(KnowledgeBaseRegistry registry, KnowledgeBaseFactory factory,
+                                ObjectMapper objectMapper) {
+        this.registry = registry;
+        this.factory = factory;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 把NDJSON输入导入指定知识库，知识库不存在时按当前存储配置创建并注册
+     *
+     * @param name        知识库名称
+     * @param description 新建知识库时使用的描述
+     * @param in          NDJSON输入，读完后不关闭
+     * @param batchSize   每批文档数，不大于0时使用默认值
+     * @return 导入结果；输入格式错误时停止读取，出错位置之前的文档已经写入
+     * @throws IOException 读取输入失败（如客户端断开），此前完成的批次已经写入
+     */
+    public BulkIngestReport ingest(String name, String description, InputStream in, int batchSize)
+            throws IOException {
+        int size = batchSize > 0 ? Math.min(batchSize, maxBatchSize) : defaultBatchSize;
+        KnowledgeBase kb = knowledgeBase(name, description);
+        BulkIngestReport report = BulkIngestReport.builder().knowledgeBase(kb.getName()).build();
+        long start = System.nanoTime();
+
+        NdjsonDocumentReader reader = new NdjsonDocumentReader(in, objectMapper);
+        List<Document> batch = new ArrayList<>(size);
+        try {
+            Document doc;
+            while ((doc = reader.next()) != null) {
+                if (doc.getContent() == null || doc.getContent().isBlank()) {
+                    report.setRejected(report.getRejected() + 1);
+                    addError(report, "line " + reader.getLineNumber() + ": document '" + doc.getId()
+                            + "' has no content");
+                    continue;
+                }
+                batch.add(doc);
+                if (batch.size() == size) {
+                    // 先换上新批次再写入：写入失败时 finally 不会再次写入同一批文档并掩盖原始异常
+                    List<Document> full = batch;
+                    batch = new ArrayList<>(size);
+                    commit(kb, full, report);
+                }
+            }
+            report.setCompleted(true);
+        } catch (JsonProcessingException e) {
+            addError(report, "line " + reader.getLineNumber() + ": " + e.getOriginalMessage());
+            log.warn("Bulk ingest into '{}' stopped at line {}: {}",
+                    kb.getName(), reader.getLineNumber(), e.getOriginalMessage());
+        } finally {
+            // 出错位置之前已完整读取的文档仍然写入
+            if (!batch.isEmpty()) {
+                commit(kb, batch, report);
+            }
+        }
+
+        report.setElapsedMs((System.nanoTime() - start) / 1_000_000);
+        report.setDocumentsPerSecond(rate(report.getDocuments(), System.nanoTime() - start));
+        log.info("Bulk ingested {} documents ({} indexed, {} rejected) into '{}' in {} batches, {}ms ({} docs/s)",
+                report.getDocuments(), report.getIndexed(), report.getRejected(), kb.getName(),
+                report.getBatches().size(), report.getElapsedMs(), Math.round(report.getDocumentsPerSecond()));
+        return report;
+    }
+
+    /**
+     * 获取已注册的知识库，不存在时创建并注册（串行化，避免并发导入重复创建）
+     */
+    private synchronized KnowledgeBase knowledgeBase(String name, String description) {
+        return registry.getKnowledgeBase(name).orElseGet(() -> {
+            registry.registerKnowledgeBase(factory.create(name, description != null ? description : ""));
+            log.info("Created knowledge base '{}' for bulk ingest", name);
+            return registry.getKnowledgeBase(name).orElseThrow();
+        });
+    }
+
+    private void commit(KnowledgeBase kb, List<Document> batch, BulkIngestReport report) {
+        long start = System.nanoTime();
+        int indexed = factory.ingest(kb, batch);
+        long elapsed = System.nanoTime() - start;
+
+        BulkIngestReport.BatchStats stats = BulkIngestReport.BatchStats.builder()
+                .batch(report.getBatches().size() + 1)
+                .documents(batch.size())
+                .indexed(indexed)
+                .elapsedMs(elapsed / 1_000_000)
+                .documentsPerSecond(rate(batch.size(), elapsed))
+                .build();
+        report.getBatches().add(stats);
+        report.setDocuments(report.getDocuments() + batch.size());
+        report.setIndexed(report.getIndexed() + indexed);
+        log.info("Bulk ingest into '{}': batch {} with {} documents committed in {}ms ({} docs/s), {} total",
+                kb.getName(), stats.getBatch(), stats.getDocuments(), stats.getElapsedMs(),
+                Math.round(stats.getDocumentsPerSecond()), report.getDocuments());
+    }
+
+    private static void addError(BulkIngestReport report, String error) {
+        if (report.getErrors().size() < MAX_ERRORS) {
+            report.getErrors().add(error);
+        }
+    }
+
+    private static double rate(long documents, long nanos) {
+        return nanos > 0 ? documents * 1e9 / nanos : 0;
+    }
+}
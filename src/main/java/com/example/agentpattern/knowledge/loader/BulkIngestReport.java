@@ -0,0 +1,100 @@
+package com.example.agentpattern.knowledge.loader;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入结果
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkIngestReport {
+
+    /**
+     * 目标知识库名称
+     */
+    private String knowledgeBase;
+
+    /**
+     * 是否读完了全部输入；输入格式错误时为false，出错位置之前的批次已经写入
+     */
+    private boolean completed;
+
+    /**
+     * 写入的文档数
+     */
+    private long documents;
+
+    /**
+     * 写入索引的条目数（启用段落切分时为段落数）
+     */
+    private long indexed;
+
+    /**
+     * 因缺少内容被跳过的文档数
+     */
+    private long rejected;
+
+    /**
+     * 总耗时（毫秒）
+     */
+    private long elapsedMs;
+
+    /**
+     * 平均吞吐量（文档/秒）
+     */
+    private double documentsPerSecond;
+
+    /**
+     * 每批的写入统计
+     */
+    @Builder.Default
+    private List<BatchStats> batches = new ArrayList<>();
+
+    /**
+     * 错误信息（含行号），最多保留前若干条
+     */
+    @Builder.Default
+    private List<String> errors = new ArrayList<>();
+
+    /**
+     * 单批写入统计
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BatchStats {
+        /**
+         * 批次序号（从1开始）
+         */
+        private int batch;
+
+        /**
+         * 本批文档数
+         */
+        private int documents;
+
+        /**
+         * 本批写入索引的条目数
+         */
+        private int indexed;
+
+        /**
+         * 本批写入耗时（毫秒），不含读取和解析输入的时间
+         */
+        private long elapsedMs;
+
+        /**
+         * 本批写入吞吐量（文档/秒）
+         */
+        private double documentsPerSecond;
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.agentpattern.knowledge.loader;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.chunk.ChunkingConfig;
+import com.example.agentpattern.knowledge.chunk.PassageChunker;
+import com.example.agentpattern.knowledge.embedding.EmbeddingKnowledgeBase;
+import com.example.agentpattern.knowledge.embedding.EmbeddingModel;
+import com.example.agentpattern.knowledge.embedding.EmbeddingPipeline;
+import com.example.agentpattern.knowledge.embedding.HashingEmbeddingModel;
+import com.example.agentpattern.knowledge.hnsw.HnswKnowledgeBase;
+import com.example.agentpattern.knowledge.quantized.QuantizationType;
+import com.example.agentpattern.knowledge.quantized.QuantizedKnowledgeBase;
+import com.example.agentpattern.knowledge.segment.SegmentKnowledgeBase;
+import com.example.agentpattern.knowledge.vector.InMemoryVectorKnowledgeBase;
+import com.example.agentpattern.knowledge.vector.VectorSearchConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 知识库工厂
+ * 按 knowledge.storage.type 创建内存知识库（memory）、基于内存映射段文件的持久化知识库（segment）、
+ * 基于稠密向量的HNSW知识库（hnsw）或量化向量知识库（quantized）。
+ * 持久化知识库保存在 knowledge.storage.directory 下以知识库名称命名的子目录中，重启后直接打开已有数据。
+ * 稠密向量知识库的文档经 {@link EmbeddingPipeline} 异步计算向量后入库，嵌入模型为本地的 {@link HashingEmbeddingModel}。
+ * 启用 knowledge.chunking 时，初始文档先经 {@link PassageChunker} 切分为段落再入库。
+ * 基于词项的知识库（memory、segment）的检索参数取自 knowledge.search，
+ * 可按知识库名称在 knowledge.search.overrides.&lt;名称&gt; 下单独覆盖。
+ */
+@Slf4j
+@Component
+public class KnowledgeBaseFactory implements EnvironmentAware {
+
+    private static final String SEARCH_OVERRIDES = "knowledge.search.overrides.";
+
+    @Value("${knowledge.storage.type:memory}")
+    private String storageType = "memory";
+
+    @Value("${knowledge.storage.directory:data/knowledge}")
+    private String storageDirectory = "data/knowledge";
+
+    @Value("${knowledge.embedding.dimension:256}")
+    private int embeddingDimension = 256;
+
+    @Value("${knowledge.embedding.batch-size:32}")
+    private int embeddingBatchSize = 32;
+
+    @Value("${knowledge.embedding.max-concurrency:2}")
+    private int embeddingMaxConcurrency = 2;
+
+    @Value("${knowledge.embedding.quantization:int8}")
+    private String quantization = "int8";
+
+    @Value("${knowledge.embedding.rerank-factor:4}")
+    private int rerankFactor = 4;
+
+    @Value("${knowledge.embedding.exact-vectors:memory}")
+    private String exactVectors = "memory";
+
+    /**
+     * 入库前是否把长文档切分为段落
+     */
+    @Value("${knowledge.chunking.enabled:true}")
+    private boolean chunkingEnabled = true;
+
+    /**
+     * 段落的最大词项数
+     */
+    @Value("${knowledge.chunking.max-tokens:200}")
+    private int chunkMaxTokens = 200;
+
+    /**
+     * 相邻段落重叠的最大词项数
+     */
+    @Value("${knowledge.chunking.overlap-tokens:40}")
+    private int chunkOverlapTokens = 40;
+
+    /**
+     * BM25词频饱和参数 k1
+     */
+    @Value("${knowledge.search.bm25-k1:1.5}")
+    private double bm25K1 = 1.5;
+
+    /**
+     * BM25文档长度归一化参数 b
+     */
+    @Value("${knowledge.search.bm25-b:0.75}")
+    private double bm25B = 0.75;
+
+    /**
+     * 融合打分中TF-IDF余弦相似度的权重
+     */
+    @Value("${knowledge.search.vector-weight:0.6}")
+    private double vectorWeight = 0.6;
+
+    /**
+     * BM25分数的饱和值
+     */
+    @Value("${knowledge.search.bm25-saturation:10.0}")
+    private double bm25Saturation = 10.0;
+
+    /**
+     * 文档向量缓存允许的最大IDF漂移
+     */
+    @Value("${knowledge.search.idf-drift-threshold:0.1}")
+    private double idfDriftThreshold = 0.1;
+
+    /**
+     * 用于读取按知识库覆盖的检索参数，不经Spring使用工厂时为null
+     */
+    private Environment environment;
+
+    private volatile EmbeddingPipeline embeddingPipeline;
+
+    private final List<AutoCloseable> opened = new CopyOnWriteArrayList<>();
+
+    /**
+     * 创建（或打开已持久化的）知识库
+     */
+    public KnowledgeBase create(String name, String description) {
+        if ("segment".equalsIgnoreCase(storageType)) {
+            SegmentKnowledgeBase kb = SegmentKnowledgeBase.open(
+                    name, description, Path.of(storageDirectory, name), searchConfig(name));
+            opened.add(kb);
+            return kb;
+        }
+        if ("hnsw".equalsIgnoreCase(storageType)) {
+            return new HnswKnowledgeBase(name, description, embeddingPipeline().getModel());
+        }
+        if ("quantized".equalsIgnoreCase(storageType)) {
+            Path exactDirectory = "disk".equalsIgnoreCase(exactVectors) ? Path.of(storageDirectory, name) : null;
+            QuantizedKnowledgeBase kb = new QuantizedKnowledgeBase(name, description, embeddingPipeline().getModel(),
+                    QuantizationType.parse(quantization), rerankFactor, exactDirectory);
+            opened.add(kb);
+            return kb;
+        }
+        return new InMemoryVectorKnowledgeBase(name, description, searchConfig(name));
+    }
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * 知识库的检索配置：knowledge.search 下的全局参数，被 knowledge.search.overrides.&lt;知识库名称&gt; 下的同名参数覆盖
+     */
+    public VectorSearchConfig searchConfig(String name) {
+        return VectorSearchConfig.builder()
+                .bm25K1(searchParameter(name, "bm25-k1", bm25K1))
+                .bm25B(searchParameter(name, "bm25-b", bm25B))
+                .vectorWeight(searchParameter(name, "vector-weight", vectorWeight))
+                .bm25Saturation(searchParameter(name, "bm25-saturation", bm25Saturation))
+                .idfDriftThreshold(searchParameter(name, "idf-drift-threshold", idfDriftThreshold))
+                .build();
+    }
+
+    private double searchParameter(String name, String key, double defaultValue) {
+        if (environment == null) {
+            return defaultValue;
+        }
+        return environment.getProperty(SEARCH_OVERRIDES + name + "." + key, Double.class, defaultValue);
+    }
+
+    /**
+     * 向新建的知识库写入初始文档，已有数据的持久化知识库保持不变，各加载器无需自行检查。
+     * 启用段落切分时先切分再入库；需要嵌入向量的知识库经嵌入流水线异步入库，方法立即返回，文档在计算完成后逐批可查
+     */
+    public void populate(KnowledgeBase kb, List<Document> documents) {
+        // 持久化知识库已有数据时无需重新建索引
+        if (kb.isInitialized()) {
+            return;
+        }
+        if (chunkingEnabled) {
+            int count = documents.size();
+            documents = chunker().split(documents);
+            log.info("Split {} documents into {} passages for knowledge base '{}'",
+                    count, documents.size(), kb.getName());
+        }
+        if (kb instanceof EmbeddingKnowledgeBase) {
+            embeddingPipeline().submit(documents, kb::addDocuments)
+                    .thenAccept(count -> log.info("Embedded and indexed {} documents into knowledge base '{}'",
+                            count, kb.getName()));
+            return;
+        }
+        kb.addDocuments(documents);
+    }
+
+    /**
+     * 向知识库写入一批文档并等待写入完成（启用时先切分段落，需要嵌入向量的知识库经嵌入流水线计算向量）。
+     * 切分段落时先删除同一文档旧版本中不会被新段落覆盖的段落。
+     * 用于批量导入，调用方逐批调用时每批最多占用一批文档的内存
+     *
+     * @return 实际写入的文档数（切分后的段落数）
+     */
+    public int ingest(KnowledgeBase kb, List<Document> documents) {
+        List<Document> prepared = documents;
+        if (chunkingEnabled) {
+            prepared = chunker().split(documents);
+            PassageChunker.deleteStalePassages(kb, documents, prepared);
+        }
+        if (kb.unwrap() instanceof EmbeddingKnowledgeBase) {
+            return embeddingPipeline().submit(prepared, kb::addDocuments).join();
+        }
+        kb.addDocuments(prepared);
+        return prepared.size();
+    }
+
+    /**
+     * 设置入库前是否切分段落（不经Spring配置使用工厂时）
+     */
+    public void setChunkingEnabled(boolean chunkingEnabled) {
+        this.chunkingEnabled = chunkingEnabled;
+    }
+
+    /**
+     * 段落切分器
+     */
+    public PassageChunker chunker() {
+        return new PassageChunker(ChunkingConfig.builder()
+                .maxTokens(chunkMaxTokens)
+                .overlapTokens(chunkOverlapTokens)
+                .build());
+    }
+
+    /**
+     * 共享的嵌入流水线，首次使用时创建
+     */
+    public EmbeddingPipeline embeddingPipeline() {
+        EmbeddingPipeline pipeline = embeddingPipeline;
+        if (pipeline == null) {
+            synchronized (this) {
+                pipeline = embeddingPipeline;
+                if (pipeline == null) {
+                    EmbeddingModel model = new HashingEmbeddingModel(embeddingDimension);
+                    pipeline = new EmbeddingPipeline(model, embeddingBatchSize, embeddingMaxConcurrency);
+                    embeddingPipeline = pipeline;
+                }
+            }
+        }
+        return pipeline;
+    }
+
+    /**
+     * 停止嵌入流水线和持久化知识库的后台合并，释放堆外向量存储
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (embeddingPipeline != null) {
+            embeddingPipeline.close();
+        }
+        for (AutoCloseable kb : opened) {
+            try {
+                kb.close();
+            } catch (Exception e) {
+                log.warn("Failed to close knowledge base", e);
+            }
+        }
+        opened.clear();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.agentpattern.knowledge.loader;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * NDJSON文档流读取器
+ * 用Jackson的流式解析器逐个读取输入中的JSON对象（每行一个文档），内存占用与输入总长度无关。
+ * 识别的字段：id、title、content、source、parentId（或 parent_id）、metadata（对象），其余字段忽略；
+ * 没有id的文档分配随机ID。
+ */
+public class NdjsonDocumentReader implements Closeable {
+
+    private final JsonParser parser;
+
+    public NdjsonDocumentReader(InputStream in, ObjectMapper objectMapper) throws IOException {
+        this.parser = objectMapper.getFactory().createParser(in);
+    }
+
+    /**
+     * 读取下一个文档
+     *
+     * @return 文档，输入结束时返回null
+     * @throws JsonParseException 输入不是合法的JSON对象序列
+     */
+    @SuppressWarnings("unchecked")
+    public Document next() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object but found " + token);
+        }
+
+        Document.DocumentBuilder builder = Document.builder();
+        Map<String, Object> metadata = null;
+        String id = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = text(value);
+                case "title" -> builder.title(text(value));
+                case "content" -> builder.content(text(value));
+                case "source" -> builder.source(text(value));
+                case "parentId", "parent_id" -> builder.parentId(text(value));
+                case "metadata" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        metadata = parser.readValueAs(Map.class);
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        throw new JsonParseException(parser, "metadata must be a JSON object");
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        return builder
+                .id(id != null ? id : UUID.randomUUID().toString())
+                .metadata(metadata != null ? metadata : new HashMap<>())
+                .build();
+    }
+
+    /**
+     * 当前读取位置所在的行号（从1开始），用于报告错误
+     */
+    public int getLineNumber() {
+        return parser.getTokenLocation().getLineNr();
+    }
+
+    private String text(JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!value.isScalarValue()) {
+            throw new JsonParseException(parser, "Field '" + parser.getCurrentName() + "' must be a scalar value");
+        }
+        return parser.getValueAsString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
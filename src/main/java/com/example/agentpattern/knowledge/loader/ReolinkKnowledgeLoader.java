@@ -3,14 +3,15 @@ package com.example.agentpattern.knowledge.loader;
 import com.example.agentpattern.knowledge.base.Document;
 import com.example.agentpattern.knowledge.base.KnowledgeBase;
 import com.example.agentpattern.knowledge.base.KnowledgeBaseRegistry;
-import com.example.agentpattern.knowledge.vector.InMemoryVectorKnowledgeBase;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -23,9 +24,11 @@ import java.util.UUID;
 public class ReolinkKnowledgeLoader {
 
     private final KnowledgeBaseRegistry registry;
+    private final KnowledgeBaseFactory factory;
 
-    public ReolinkKnowledgeLoader(KnowledgeBaseRegistry registry) {
+    public ReolinkKnowledgeLoader(KnowledgeBaseRegistry registry, KnowledgeBaseFactory factory) {
         this.registry = registry;
+        this.factory = factory;
     }
 
     @PostConstruct
@@ -48,7 +51,7 @@ public class ReolinkKnowledgeLoader {
      * 加载 Reolink 产品手册知识库
      */
     private void loadReolinkProductManual() {
-        KnowledgeBase kb = new InMemoryVectorKnowledgeBase(
+        KnowledgeBase kb = factory.create(
                 "reolink-product-manual",
                 "Reolink 产品手册和功能说明"
         );
@@ -95,6 +98,7 @@ public class ReolinkKnowledgeLoader {
                         - 智能推送通知，异常情况及时提醒
                         """)
                 .source("Reolink 产品手册")
+                .metadata(metadata("battery-camera"))
                 .build());
 
         documents.add(Document.builder()
@@ -132,6 +136,7 @@ public class ReolinkKnowledgeLoader {
                         - 使用合格的国标网线
                         """)
                 .source("Reolink 产品手册")
+                .metadata(metadata("poe-camera"))
                 .build());
 
         documents.add(Document.builder()
@@ -176,6 +181,7 @@ public class ReolinkKnowledgeLoader {
                         - 免打扰时段设置
                         """)
                 .source("Reolink 产品手册")
+                .metadata(metadata("doorbell"))
                 .build());
 
         documents.add(Document.builder()
@@ -217,9 +223,10 @@ public class ReolinkKnowledgeLoader {
                         - 存储容量：建议256GB SD卡或NVR
                         """)
                 .source("Reolink 产品手册")
+                .metadata(metadata("ptz-camera"))
                 .build());
 
-        kb.addDocuments(documents);
+        factory.populate(kb, documents);
         registry.registerKnowledgeBase(kb);
 
         log.info("Loaded Reolink product manual knowledge base with {} documents", documents.size());
@@ -229,7 +236,7 @@ public class ReolinkKnowledgeLoader {
      * 加载 Reolink 技术支持知识库
      */
     private void loadReolinkTechSupport() {
-        KnowledgeBase kb = new InMemoryVectorKnowledgeBase(
+        KnowledgeBase kb = factory.create(
                 "reolink-tech-support",
                 "Reolink 常见技术问题与解决方案"
         );
@@ -287,6 +294,7 @@ public class ReolinkKnowledgeLoader {
                         - 使用信誉良好的路由器品牌
                         """)
                 .source("Reolink 技术支持")
+                .metadata(metadata("wifi"))
                 .build());
 
         documents.add(Document.builder()
@@ -346,6 +354,7 @@ public class ReolinkKnowledgeLoader {
                         - TrackMix: ColorX 夜视，追踪时自动开启聚光灯
                         """)
                 .source("Reolink 技术支持")
+                .metadata(metadata("night-vision"))
                 .build());
 
         documents.add(Document.builder()
@@ -424,9 +433,10 @@ public class ReolinkKnowledgeLoader {
                         - 备份重要录像到外部存储
                         """)
                 .source("Reolink 技术支持")
+                .metadata(metadata("nvr"))
                 .build());
 
-        kb.addDocuments(documents);
+        factory.populate(kb, documents);
         registry.registerKnowledgeBase(kb);
 
         log.info("Loaded Reolink tech support knowledge base with {} documents", documents.size());
@@ -436,7 +446,7 @@ public class ReolinkKnowledgeLoader {
      * 加载 Reolink 安装指南知识库
      */
     private void loadReolinkInstallationGuide() {
-        KnowledgeBase kb = new InMemoryVectorKnowledgeBase(
+        KnowledgeBase kb = factory.create(
                 "reolink-installation-guide",
                 "Reolink 产品安装指南与最佳实践"
         );
@@ -542,6 +552,7 @@ public class ReolinkKnowledgeLoader {
                         A: 1)添加WiFi中继器 2)更换为PoE有线型号 3)更换位置
                         """)
                 .source("Reolink 安装指南")
+                .metadata(metadata("installation"))
                 .build());
 
         documents.add(Document.builder()
@@ -649,11 +660,23 @@ public class ReolinkKnowledgeLoader {
                         - 预留备用：5-10%
                         """)
                 .source("Reolink 安装指南")
+                .metadata(metadata("system-design"))
                 .build());
 
-        kb.addDocuments(documents);
+        factory.populate(kb, documents);
         registry.registerKnowledgeBase(kb);
 
         log.info("Loaded Reolink installation guide knowledge base with {} documents", documents.size());
     }
+
+    /**
+     * 文档元数据，可作为知识库搜索的过滤条件
+     */
+    private static Map<String, Object> metadata(String category) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("brand", "Reolink");
+        metadata.put("category", category);
+        metadata.put("language", "zh");
+        return metadata;
+    }
 }
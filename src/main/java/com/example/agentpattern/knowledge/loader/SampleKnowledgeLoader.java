@@ -3,7 +3,6 @@ package com.example.agentpattern.knowledge.loader;
 import com.example.agentpattern.knowledge.base.Document;
 import com.example.agentpattern.knowledge.base.KnowledgeBase;
 import com.example.agentpattern.knowledge.base.KnowledgeBaseRegistry;
-import com.example.agentpattern.knowledge.vector.InMemoryVectorKnowledgeBase;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -21,9 +20,11 @@ import java.util.UUID;
 public class SampleKnowledgeLoader {
 
     private final KnowledgeBaseRegistry registry;
+    private final KnowledgeBaseFactory factory;
 
-    public SampleKnowledgeLoader(KnowledgeBaseRegistry registry) {
+    public SampleKnowledgeLoader(KnowledgeBaseRegistry registry, KnowledgeBaseFactory factory) {
         this.registry = registry;
+        this.factory = factory;
     }
 
     @PostConstruct
@@ -46,7 +47,7 @@ public class SampleKnowledgeLoader {
      * 加载产品手册知识库
      */
     private void loadProductManualKnowledgeBase() {
-        KnowledgeBase kb = new InMemoryVectorKnowledgeBase(
+        KnowledgeBase kb = factory.create(
                 "product-manual",
                 "产品使用手册和规格说明"
         );
@@ -138,7 +139,7 @@ public class SampleKnowledgeLoader {
                 .source("产品手册")
                 .build());
 
-        kb.addDocuments(documents);
+        factory.populate(kb, documents);
         registry.registerKnowledgeBase(kb);
 
         log.info("Loaded product manual knowledge base with {} documents", documents.size());
@@ -148,7 +149,7 @@ public class SampleKnowledgeLoader {
      * 加载技术支持知识库
      */
     private void loadTechSupportKnowledgeBase() {
-        KnowledgeBase kb = new InMemoryVectorKnowledgeBase(
+        KnowledgeBase kb = factory.create(
                 "tech-support",
                 "常见技术问题解决方案"
         );
@@ -221,7 +222,7 @@ public class SampleKnowledgeLoader {
                 .source("技术支持")
                 .build());
 
-        kb.addDocuments(documents);
+        factory.populate(kb, documents);
         registry.registerKnowledgeBase(kb);
 
         log.info("Loaded tech support knowledge base with {} documents", documents.size());
@@ -231,7 +232,7 @@ public class SampleKnowledgeLoader {
      * 加载公司政策知识库
      */
     private void loadCompanyPolicyKnowledgeBase() {
-        KnowledgeBase kb = new InMemoryVectorKnowledgeBase(
+        KnowledgeBase kb = factory.create(
                 "company-policy",
                 "公司服务政策和保修条款"
         );
@@ -308,7 +309,7 @@ public class SampleKnowledgeLoader {
                 .source("公司政策")
                 .build());
 
-        kb.addDocuments(documents);
+        factory.populate(kb, documents);
         registry.registerKnowledgeBase(kb);
 
         log.info("Loaded company policy knowledge base with {} documents", documents.size());
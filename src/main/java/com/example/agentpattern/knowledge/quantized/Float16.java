@@ -0,0 +1,74 @@
+package com.example.agentpattern.knowledge.quantized;
+
+/**
+ * float与IEEE 754半精度浮点数之间的转换（JDK 17没有 Float.floatToFloat16）
+ * 编码按最近偶数舍入；解码使用65536项的查找表。
+ */
+final class Float16 {
+
+    private static final float[] DECODE = new float[1 << 16];
+
+    static {
+        for (int i = 0; i < DECODE.length; i++) {
+            DECODE[i] = decode((short) i);
+        }
+    }
+
+    private Float16() {
+    }
+
+    static float toFloat(short half) {
+        return DECODE[half & 0xFFFF];
+    }
+
+    static short fromFloat(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        short sign = (short) ((bits & 0x8000_0000) >>> 16);
+        if (Float.isNaN(f)) {
+            return (short) (sign | 0x7e00);
+        }
+        float abs = Math.abs(f);
+        // 大于最大有限值与下一个2的幂的中点时溢出为无穷大
+        if (abs >= 0x1.ffep15f) {
+            return (short) (sign | 0x7c00);
+        }
+        // 不超过最小次正规数的一半时下溢为0
+        if (abs <= 0x1.0p-25f) {
+            return sign;
+        }
+
+        int exp = Math.getExponent(f);
+        int shift = 13;
+        int implicitBit = 0;
+        if (exp < -14) {
+            // 结果为次正规数，尾数需要额外右移并显式带上隐含位
+            shift += -14 - exp;
+            exp = -15;
+            implicitBit = 0x0080_0000;
+        }
+        int significand = (bits & 0x007f_ffff) | implicitBit;
+        int half = significand >> shift;
+        int lsb = significand & (1 << shift);
+        int round = significand & (1 << (shift - 1));
+        int sticky = significand & ((1 << (shift - 1)) - 1);
+        if (round != 0 && (lsb | sticky) != 0) {
+            half++;
+        }
+        // 尾数进位溢出时自然进到指数位
+        return (short) (sign | (((exp + 15) << 10) + half));
+    }
+
+    private static float decode(short half) {
+        int sign = half & 0x8000;
+        int exp = (half & 0x7c00) >> 10;
+        int significand = half & 0x03ff;
+        if (exp == 0) {
+            float value = 0x1.0p-24f * significand;
+            return sign != 0 ? -value : value;
+        }
+        if (exp == 0x1f) {
+            return Float.intBitsToFloat((sign << 16) | 0x7f80_0000 | (significand << 13));
+        }
+        return Float.intBitsToFloat((sign << 16) | ((exp - 15 + 127) << 23) | (significand << 13));
+    }
+}
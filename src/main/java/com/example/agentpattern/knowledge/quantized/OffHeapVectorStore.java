@@ -0,0 +1,143 @@
+package com.example.agentpattern.knowledge.quantized;
+
+import com.example.agentpattern.util.VectorKernels;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 堆外的全精度向量存储，用于对量化检索的候选做精确重排序
+ * 向量按页存放在直接内存中，或存放在内存映射的临时文件中（由操作系统按需换入换出，不占用堆和常驻内存）。
+ * 磁盘文件只在本存储的生命周期内有效，{@link #close()} 时删除。
+ * <p>
+ * 只支持追加，非线程安全，由调用方负责同步。
+ */
+public class OffHeapVectorStore implements AutoCloseable {
+
+    private static final int PAGE_SIZE = 1024;
+
+    private final int dimension;
+    private final long pageBytes;
+    private final Path file;
+    private final FileChannel channel;
+    private final List<FloatBuffer> pages = new ArrayList<>();
+    private int size;
+
+    private OffHeapVectorStore(int dimension, Path file, FileChannel channel) {
+        this.dimension = dimension;
+        this.pageBytes = (long) PAGE_SIZE * dimension * Float.BYTES;
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * 存放在直接内存中的存储
+     */
+    public static OffHeapVectorStore direct(int dimension) {
+        return new OffHeapVectorStore(dimension, null, null);
+    }
+
+    /**
+     * 存放在内存映射文件中的存储，文件已存在时被覆盖
+     */
+    public static OffHeapVectorStore mapped(int dimension, Path file) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            return new OffHeapVectorStore(dimension, file, channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create vector file " + file, e);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isMapped() {
+        return channel != null;
+    }
+
+    /**
+     * 追加向量
+     *
+     * @return 向量序号
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+        }
+        int ord = size;
+        int page = ord / PAGE_SIZE;
+        if (page == pages.size()) {
+            pages.add(allocatePage(page));
+        }
+        pages.get(page).put((ord % PAGE_SIZE) * dimension, vector);
+        size++;
+        return ord;
+    }
+
+    /**
+     * 将第 ord 个向量读入 dst
+     */
+    public void read(int ord, float[] dst) {
+        pages.get(ord / PAGE_SIZE).get((ord % PAGE_SIZE) * dimension, dst, 0, dimension);
+    }
+
+    /**
+     * 查询向量与第 ord 个向量的精确内积
+     *
+     * @param scratch 长度为维度的临时缓冲区
+     */
+    public float dot(float[] query, int ord, float[] scratch) {
+        read(ord, scratch);
+        return VectorKernels.dot(query, scratch);
+    }
+
+    /**
+     * 已分配的堆外空间（字节）
+     */
+    public long allocatedBytes() {
+        return pages.size() * pageBytes;
+    }
+
+    @Override
+    public void close() {
+        pages.clear();
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete vector file " + file, e);
+        }
+    }
+
+    private FloatBuffer allocatePage(int page) {
+        ByteBuffer buffer;
+        if (channel == null) {
+            buffer = ByteBuffer.allocateDirect((int) pageBytes);
+        } else {
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, page * pageBytes, pageBytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map vector file " + file, e);
+            }
+        }
+        return buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+}
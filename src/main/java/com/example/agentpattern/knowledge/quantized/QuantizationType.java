@@ -0,0 +1,38 @@
+package com.example.agentpattern.knowledge.quantized;
+
+/**
+ * 向量量化方式
+ */
+public enum QuantizationType {
+
+    /**
+     * 标量int8量化：每个分量用一个字节表示，每个向量另存一个float缩放系数
+     */
+    INT8(1),
+
+    /**
+     * IEEE 754 半精度浮点数
+     */
+    FLOAT16(2);
+
+    private final int bytesPerDimension;
+
+    QuantizationType(int bytesPerDimension) {
+        this.bytesPerDimension = bytesPerDimension;
+    }
+
+    public int getBytesPerDimension() {
+        return bytesPerDimension;
+    }
+
+    /**
+     * 按名称解析（不区分大小写，支持 int8、float16、fp16）
+     */
+    public static QuantizationType parse(String value) {
+        String normalized = value.trim().toUpperCase();
+        if ("FP16".equals(normalized) || "HALF".equals(normalized)) {
+            return FLOAT16;
+        }
+        return valueOf(normalized);
+    }
+}
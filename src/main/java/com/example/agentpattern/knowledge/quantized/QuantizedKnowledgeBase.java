@@ -0,0 +1,494 @@
+package com.example.agentpattern.knowledge.quantized;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.Filter;
+import com.example.agentpattern.knowledge.base.MetadataIndex;
+import com.example.agentpattern.knowledge.base.SearchResult;
+import com.example.agentpattern.knowledge.embedding.EmbeddingKnowledgeBase;
+import com.example.agentpattern.knowledge.embedding.EmbeddingModel;
+import com.example.agentpattern.knowledge.embedding.EmbeddingPipeline;
+import com.example.agentpattern.util.CompressedBitmap;
+import com.example.agentpattern.util.TopKHeap;
+import com.example.agentpattern.util.VectorKernels;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于量化向量的稠密检索知识库
+ * 文档向量归一化后以 int8 或 float16 保存在堆上，查询时在压缩形式上线性扫描选出 k * rerankFactor 个候选，
+ * 再用保存在堆外（直接内存或内存映射文件）的全精度向量精确重排序，取前 k 个。
+ * <p>
+ * 知识库保存的是不带 {@link Document#getEmbedding()} 的文档浅拷贝（调用方的文档不变），全精度向量只保留在堆外，
+ * 因此堆内存占用约为全精度 float[] 的 1/4（int8）或 1/2（float16）。
+ * 带元数据过滤条件的查询只扫描位图索引求出的文档。
+ */
+@Slf4j
+public class QuantizedKnowledgeBase implements EmbeddingKnowledgeBase, AutoCloseable {
+
+    private static final ThreadLocal<TopKHeap> CANDIDATES = ThreadLocal.withInitial(() -> new TopKHeap(64));
+    private static final ThreadLocal<TopKHeap> TOP_K = ThreadLocal.withInitial(() -> new TopKHeap(16));
+
+    private final String name;
+    private final String description;
+    private final EmbeddingModel embeddingModel;
+    private final QuantizationType quantization;
+    private final int rerankFactor;
+    private final Path exactVectorDirectory;
+    private final int dimension;
+
+    // 以下状态由读写锁保护
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private QuantizedVectorStore quantized;
+    private OffHeapVectorStore exact;
+    // 按向量序号排列的文档，已删除的位置为null
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final MetadataIndex metadata = new MetadataIndex();
+    // 重建存储的次数，用于为新的内存映射文件命名
+    private int generation;
+
+    private final AtomicLong version = new AtomicLong();
+
+    public QuantizedKnowledgeBase(String name, String description, EmbeddingModel embeddingModel,
+                                  QuantizationType quantization) {
+        this(name, description, embeddingModel, quantization, 4, null);
+    }
+
+    /**
+     * @param rerankFactor    重排序候选数相对 k 的倍数，不大于1时不做重排序
+     * @param exactVectorDirectory 全精度向量内存映射文件所在目录，为null时存放在直接内存中
+     */
+    public QuantizedKnowledgeBase(String name, String description, EmbeddingModel embeddingModel,
+                                  QuantizationType quantization, int rerankFactor, Path exactVectorDirectory) {
+        this.name = name;
+        this.description = description;
+        this.embeddingModel = embeddingModel;
+        this.quantization = quantization;
+        this.rerankFactor = rerankFactor;
+        this.exactVectorDirectory = exactVectorDirectory;
+        this.dimension = embeddingModel.dimension();
+        this.quantized = new QuantizedVectorStore(quantization, dimension);
+        this.exact = newExactStore();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String getType() {
+        return "VECTOR_QUANTIZED";
+    }
+
+    @Override
+    public EmbeddingModel getEmbeddingModel() {
+        return embeddingModel;
+    }
+
+    public QuantizationType getQuantization() {
+        return quantization;
+    }
+
+    @Override
+    public SearchResult search(String query, int topK) {
+        return search(query, topK, null);
+    }
+
+    @Override
+    public SearchResult search(String query, int topK, Filter filter) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            float[] q = embeddingModel.embed(query).clone();
+            VectorKernels.normalizeInPlace(q);
+
+            List<SearchResult.ScoredDocument> topResults;
+            lock.readLock().lock();
+            try {
+                CompressedBitmap allowed = null;
+                if (filter != null) {
+                    allowed = metadata.evaluate(filter);
+                    if (allowed == null) {
+                        // 索引不支持的过滤条件
+                        return EmbeddingKnowledgeBase.super.search(query, topK, filter);
+                    }
+                }
+                TopKHeap heap = TOP_K.get();
+                rank(q, topK, rerankFactor, allowed, heap);
+                heap.sortDescending();
+
+                topResults = new ArrayList<>(heap.size());
+                for (int i = 0; i < heap.size(); i++) {
+                    topResults.add(SearchResult.ScoredDocument.builder()
+                            .document(documents.get(heap.id(i)))
+                            .score(Math.max(heap.score(i), 0f))
+                            .rank(i + 1)
+                            .build());
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            long searchTime = System.currentTimeMillis() - startTime;
+            log.debug("Search completed in {}ms, found {} results", searchTime, topResults.size());
+
+            return SearchResult.builder()
+                    .query(query)
+                    .documents(topResults)
+                    .searchTimeMs(searchTime)
+                    .knowledgeBaseName(name)
+                    .build();
+
+        } catch (Exception e) {
+            log.error("Error searching knowledge base '{}'", name, e);
+            return SearchResult.builder()
+                    .query(query)
+                    .documents(Collections.emptyList())
+                    .searchTimeMs(System.currentTimeMillis() - startTime)
+                    .knowledgeBaseName(name)
+                    .build();
+        }
+    }
+
+    @Override
+    public void addDocument(Document document) {
+        if (document == null || document.getId() == null) {
+            throw new IllegalArgumentException("Document and document ID cannot be null");
+        }
+
+        // 嵌入计算在锁外进行
+        float[] vector = embed(document);
+
+        lock.writeLock().lock();
+        try {
+            insert(document, vector);
+            version.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.debug("Added document '{}' to knowledge base '{}'", document.getId(), name);
+    }
+
+    @Override
+    public void addDocuments(List<Document> docs) {
+        if (docs == null || docs.isEmpty()) {
+            return;
+        }
+
+        List<Document> accepted = new ArrayList<>(docs.size());
+        List<float[]> vectors = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            if (doc != null && doc.getId() != null) {
+                accepted.add(doc);
+                vectors.add(embed(doc));
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < accepted.size(); i++) {
+                insert(accepted.get(i), vectors.get(i));
+            }
+            version.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Added {} documents to knowledge base '{}'", accepted.size(), name);
+    }
+
+    @Override
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Document getDocument(String id) {
+        lock.readLock().lock();
+        try {
+            Integer ord = ordinals.get(id);
+            return ord == null ? null : documents.get(ord);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteDocument(String id) {
+        lock.writeLock().lock();
+        try {
+            if (remove(id)) {
+                version.incrementAndGet();
+                log.debug("Deleted document '{}' from knowledge base '{}'", id, name);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            exact.close();
+            quantized = new QuantizedVectorStore(quantization, dimension);
+            exact = newExactStore();
+            documents.clear();
+            ordinals.clear();
+            metadata.clear();
+            version.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Cleared knowledge base '{}'", name);
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return getDocumentCount() > 0;
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 释放堆外存储（删除内存映射文件）
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            exact.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 统计内存占用，并以库中抽样的向量为查询估计量化检索和重排序后的 recall@k
+     *
+     * @param sampleQueries 抽样查询数
+     * @param k             召回率评估的 k
+     */
+    public VectorStoreStats getStats(int sampleQueries, int k) {
+        lock.readLock().lock();
+        try {
+            int live = ordinals.size();
+            int samples = Math.min(sampleQueries, live);
+            int[] sampleOrds = new int[samples];
+            int n = 0;
+            for (int ord = 0, seen = 0; ord < documents.size() && n < samples; ord++) {
+                if (documents.get(ord) != null && (long) seen++ * samples / live == n) {
+                    sampleOrds[n++] = ord;
+                }
+            }
+
+            float[] q = new float[dimension];
+            TopKHeap expected = new TopKHeap(k);
+            TopKHeap actual = new TopKHeap(k);
+            long quantizedHits = 0;
+            long rerankedHits = 0;
+            long total = 0;
+            for (int i = 0; i < n; i++) {
+                exact.read(sampleOrds[i], q);
+                rank(q, k, 0, null, expected);
+                Set<Integer> truth = new HashSet<>();
+                for (int j = 0; j < expected.size(); j++) {
+                    truth.add(expected.id(j));
+                }
+                total += truth.size();
+
+                rank(q, k, 1, null, actual);
+                quantizedHits += countHits(actual, truth);
+                rank(q, k, rerankFactor, null, actual);
+                rerankedHits += countHits(actual, truth);
+            }
+
+            return VectorStoreStats.builder()
+                    .knowledgeBaseName(name)
+                    .quantization(quantization)
+                    .dimension(dimension)
+                    .vectorCount(live)
+                    .quantizedBytes(quantized.memoryBytes())
+                    .exactBytes(exact.allocatedBytes())
+                    .exactOnDisk(exact.isMapped())
+                    .float32HeapBytes((long) live * (16 + (long) dimension * Float.BYTES))
+                    .rerankFactor(rerankFactor)
+                    .k(k)
+                    .sampleQueries(n)
+                    .quantizedRecall(total == 0 ? 0.0 : (double) quantizedHits / total)
+                    .rerankedRecall(total == 0 ? 0.0 : (double) rerankedHits / total)
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 排序出与 q 最相似的 topK 个有效向量，结果写入 results（调用方持有读锁）
+     *
+     * @param factor 大于1时先按量化分数取 topK * factor 个候选再精确重排序；
+     *               为1时只用量化分数；为0时对所有向量精确线性扫描
+     * @param allowed 只对其中的文档打分，为null时扫描所有有效文档
+     */
+    private void rank(float[] q, int topK, int factor, CompressedBitmap allowed, TopKHeap results) {
+        results.reset(topK);
+        int size = documents.size();
+        if (factor == 0) {
+            float[] scratch = new float[dimension];
+            for (int ord = 0; ord < size; ord++) {
+                if (documents.get(ord) != null) {
+                    results.offer(ord, exact.dot(q, ord, scratch));
+                }
+            }
+            return;
+        }
+
+        TopKHeap candidates = factor > 1 ? CANDIDATES.get() : results;
+        candidates.reset(factor > 1 ? topK * factor : topK);
+        if (allowed != null) {
+            allowed.forEach(ord -> candidates.offer(ord, quantized.score(q, ord)));
+        } else {
+            for (int ord = 0; ord < size; ord++) {
+                if (documents.get(ord) != null) {
+                    candidates.offer(ord, quantized.score(q, ord));
+                }
+            }
+        }
+        if (factor <= 1) {
+            return;
+        }
+
+        float[] scratch = new float[dimension];
+        for (int i = 0; i < candidates.size(); i++) {
+            int ord = candidates.id(i);
+            results.offer(ord, exact.dot(q, ord, scratch));
+        }
+    }
+
+    private static int countHits(TopKHeap heap, Set<Integer> truth) {
+        int hits = 0;
+        for (int i = 0; i < heap.size(); i++) {
+            if (truth.contains(heap.id(i))) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 写入向量和文档（调用方持有写锁）。保存的是不带全精度向量的浅拷贝，调用方的文档不被修改
+     */
+    private void insert(Document document, float[] vector) {
+        remove(document.getId());
+        int ord = quantized.add(vector);
+        exact.add(vector);
+        documents.add(withoutEmbedding(document));
+        ordinals.put(document.getId(), ord);
+        metadata.add(ord, document.getMetadata());
+    }
+
+    private static Document withoutEmbedding(Document document) {
+        if (document.getEmbedding() == null) {
+            return document;
+        }
+        return Document.builder()
+                .id(document.getId())
+                .content(document.getContent())
+                .title(document.getTitle())
+                .metadata(document.getMetadata())
+                .source(document.getSource())
+                .parentId(document.getParentId())
+                .createdAt(document.getCreatedAt())
+                .build();
+    }
+
+    /**
+     * 删除文档，已删除的向量过多时重建存储（调用方持有写锁）
+     */
+    private boolean remove(String id) {
+        Integer ord = ordinals.remove(id);
+        if (ord == null) {
+            return false;
+        }
+        metadata.remove(ord, documents.get(ord).getMetadata());
+        documents.set(ord, null);
+        if (documents.size() - ordinals.size() > Math.max(1024, ordinals.size())) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * 只保留有效向量重建量化存储和全精度存储
+     */
+    private void compact() {
+        QuantizedVectorStore newQuantized = new QuantizedVectorStore(quantization, dimension);
+        OffHeapVectorStore newExact = newExactStore();
+        List<Document> live = new ArrayList<>(ordinals.size());
+        metadata.clear();
+        float[] vector = new float[dimension];
+        for (int ord = 0; ord < documents.size(); ord++) {
+            Document doc = documents.get(ord);
+            if (doc == null) {
+                continue;
+            }
+            exact.read(ord, vector);
+            newQuantized.add(vector);
+            newExact.add(vector);
+            ordinals.put(doc.getId(), live.size());
+            metadata.add(live.size(), doc.getMetadata());
+            live.add(doc);
+        }
+        exact.close();
+        quantized = newQuantized;
+        exact = newExact;
+        documents.clear();
+        documents.addAll(live);
+    }
+
+    private OffHeapVectorStore newExactStore() {
+        if (exactVectorDirectory == null) {
+            return OffHeapVectorStore.direct(dimension);
+        }
+        return OffHeapVectorStore.mapped(dimension, exactVectorDirectory.resolve("vectors-" + generation++ + ".f32"));
+    }
+
+    /**
+     * 文档自带维度匹配的嵌入向量时直接使用，否则由嵌入模型计算；返回归一化后的副本
+     */
+    private float[] embed(Document document) {
+        float[] embedding = document.getEmbedding();
+        if (embedding == null || embedding.length != dimension) {
+            embedding = embeddingModel.embed(EmbeddingPipeline.embeddingText(document));
+        }
+        float[] vector = embedding.clone();
+        VectorKernels.normalizeInPlace(vector);
+        return vector;
+    }
+}
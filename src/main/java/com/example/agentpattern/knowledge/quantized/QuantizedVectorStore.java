@@ -0,0 +1,123 @@
+package com.example.agentpattern.knowledge.quantized;
+
+import com.example.agentpattern.util.VectorKernels;
+
+import java.util.Arrays;
+
+/**
+ * 量化向量存储
+ * 向量按序号连续存放在固定大小的页中，查询时直接在压缩形式上计算与float查询向量的内积：
+ * int8 使用对称量化，每个向量的缩放系数为 max|v_i| / 127，内积为 scale * Σ q_i * code_i；
+ * float16 逐分量查表解码后累加。
+ * <p>
+ * 只支持追加，非线程安全，由调用方负责同步。
+ */
+public class QuantizedVectorStore {
+
+    private static final int PAGE_SIZE = 1024;
+
+    private final QuantizationType type;
+    private final int dimension;
+
+    private byte[][] bytePages = new byte[0][];
+    private short[][] halfPages = new short[0][];
+    private float[] scales = new float[0];
+    private int size;
+
+    public QuantizedVectorStore(QuantizationType type, int dimension) {
+        this.type = type;
+        this.dimension = dimension;
+    }
+
+    public QuantizationType getType() {
+        return type;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 量化并追加向量
+     *
+     * @return 向量序号
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+        }
+        int ord = size;
+        int page = ord / PAGE_SIZE;
+        int offset = (ord % PAGE_SIZE) * dimension;
+
+        if (type == QuantizationType.INT8) {
+            if (page == bytePages.length) {
+                bytePages = Arrays.copyOf(bytePages, page + 1);
+                bytePages[page] = new byte[PAGE_SIZE * dimension];
+                scales = Arrays.copyOf(scales, (page + 1) * PAGE_SIZE);
+            }
+            float maxAbs = 0f;
+            for (float v : vector) {
+                maxAbs = Math.max(maxAbs, Math.abs(v));
+            }
+            float scale = maxAbs / 127f;
+            float inv = scale == 0f ? 0f : 1f / scale;
+            byte[] codes = bytePages[page];
+            for (int i = 0; i < dimension; i++) {
+                codes[offset + i] = (byte) Math.round(vector[i] * inv);
+            }
+            scales[ord] = scale;
+        } else {
+            if (page == halfPages.length) {
+                halfPages = Arrays.copyOf(halfPages, page + 1);
+                halfPages[page] = new short[PAGE_SIZE * dimension];
+            }
+            short[] halves = halfPages[page];
+            for (int i = 0; i < dimension; i++) {
+                halves[offset + i] = Float16.fromFloat(vector[i]);
+            }
+        }
+
+        size++;
+        return ord;
+    }
+
+    /**
+     * 查询向量与第 ord 个量化向量的近似内积
+     */
+    public float score(float[] query, int ord) {
+        int page = ord / PAGE_SIZE;
+        int offset = (ord % PAGE_SIZE) * dimension;
+        if (type == QuantizationType.INT8) {
+            return scales[ord] * VectorKernels.dotInt8(query, bytePages[page], offset);
+        }
+        short[] halves = halfPages[page];
+        float s0 = 0f;
+        float s1 = 0f;
+        int i = 0;
+        for (int bound = dimension & ~1; i < bound; i += 2) {
+            s0 += query[i] * Float16.toFloat(halves[offset + i]);
+            s1 += query[i + 1] * Float16.toFloat(halves[offset + i + 1]);
+        }
+        if (i < dimension) {
+            s0 += query[i] * Float16.toFloat(halves[offset + i]);
+        }
+        return s0 + s1;
+    }
+
+    /**
+     * 量化数据占用的堆内存（字节）
+     */
+    public long memoryBytes() {
+        long pages = type == QuantizationType.INT8 ? bytePages.length : halfPages.length;
+        long bytes = pages * PAGE_SIZE * dimension * type.getBytesPerDimension();
+        if (type == QuantizationType.INT8) {
+            bytes += (long) scales.length * Float.BYTES;
+        }
+        return bytes;
+    }
+}
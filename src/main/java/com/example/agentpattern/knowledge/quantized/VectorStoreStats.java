@@ -0,0 +1,85 @@
+package com.example.agentpattern.knowledge.quantized;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 量化向量知识库的内存占用与召回率统计
+ * 召回率以全精度线性扫描的结果为基准，用库中已有向量作为查询抽样估计
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VectorStoreStats {
+
+    /**
+     * 知识库名称
+     */
+    private String knowledgeBaseName;
+
+    /**
+     * 量化方式
+     */
+    private QuantizationType quantization;
+
+    /**
+     * 向量维度
+     */
+    private int dimension;
+
+    /**
+     * 有效向量数
+     */
+    private int vectorCount;
+
+    /**
+     * 量化数据占用的堆内存（字节）
+     */
+    private long quantizedBytes;
+
+    /**
+     * 全精度向量占用的堆外空间（字节）
+     */
+    private long exactBytes;
+
+    /**
+     * 全精度向量是否存放在内存映射文件中
+     */
+    private boolean exactOnDisk;
+
+    /**
+     * 同样的向量以 float[] 保存在堆上时的估计占用（字节）
+     */
+    private long float32HeapBytes;
+
+    /**
+     * 重排序候选数相对 k 的倍数
+     */
+    private int rerankFactor;
+
+    /**
+     * 召回率评估的 k 和抽样查询数
+     */
+    private int k;
+    private int sampleQueries;
+
+    /**
+     * 只用量化向量排序时的 recall@k
+     */
+    private double quantizedRecall;
+
+    /**
+     * 量化召回后用全精度向量重排序的 recall@k
+     */
+    private double rerankedRecall;
+
+    /**
+     * 堆内存压缩比
+     */
+    public double getCompressionRatio() {
+        return quantizedBytes == 0 ? 0.0 : (double) float32HeapBytes / quantizedBytes;
+    }
+}
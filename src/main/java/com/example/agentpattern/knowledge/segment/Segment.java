@@ -0,0 +1,366 @@
+package com.example.agentpattern.knowledge.segment;
+
+import com.example.agentpattern.knowledge.base.Document;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 不可变的段文件
+ * 通过 {@link FileChannel#map} 映射到内存，所有读取都是对映射区的绝对位置访问，
+ * 打开段文件只需解析文件头，不会把词典、倒排列表或文档加载到堆上。
+ * <p>
+ * 文件格式（大端序）：
+ * <pre>
+ * 文件头     magic, 格式版本, 文档数, 词项数, 总词数, 各区起始偏移, 文件长度
+ * 词项表     每个词项 (字符偏移, 字符数, 倒排列表起始位置, 文档频率)，按字符序排列
+ * 词项字符   UTF-16
+ * 倒排列表   每项 (文档序号, 词频)，同一词项内按文档序号递增
+ * 文档表     每个文档 (存储区偏移, 文档长度)
+ * ID表       每个文档 (字符偏移, 字符数, 文档序号)，按ID排序
+ * ID字符     UTF-16
+ * 文档存储区  序列化的文档（ID、标题、内容、来源、所属原文档ID、创建时间、带类型标记的元数据）
+ * </pre>
+ * 格式版本1的文档表还保存了按段内统计量计算的TF-IDF向量模长（已不再使用），文档不含所属原文档ID，
+ * 元数据值均为字符串；仍可读取，合并时按当前版本重写。
+ * 不可变，可在线程间共享。
+ */
+public final class Segment {
+
+    static final int MAGIC = 0x4B534547;
+    static final int FORMAT_VERSION = 2;
+    static final int MIN_FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 4 * 4 + 8 * 9;
+    static final int TERM_ENTRY_BYTES = 16;
+    static final int POSTING_BYTES = 8;
+    static final int DOC_ENTRY_BYTES = 12;
+    static final int V1_DOC_ENTRY_BYTES = 16;
+    static final int ID_ENTRY_BYTES = 12;
+
+    // 元数据值的类型标记
+    static final byte VALUE_NULL = 0;
+    static final byte VALUE_STRING = 1;
+    static final byte VALUE_INT = 2;
+    static final byte VALUE_LONG = 3;
+    static final byte VALUE_DOUBLE = 4;
+    static final byte VALUE_BOOLEAN = 5;
+    static final byte VALUE_LIST = 6;
+    static final byte VALUE_MAP = 7;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int formatVersion;
+    private final int docEntryBytes;
+    private final int docCount;
+    private final int termCount;
+    private final long totalLength;
+    private final int termTableOffset;
+    private final int termCharsOffset;
+    private final int postingsOffset;
+    private final int docTableOffset;
+    private final int idTableOffset;
+    private final int idCharsOffset;
+    private final int docDataOffset;
+
+    private Segment(Path file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a segment file: " + file);
+        }
+        this.formatVersion = buffer.getInt(4);
+        if (formatVersion < MIN_FORMAT_VERSION || formatVersion > FORMAT_VERSION) {
+            throw new IOException("Unsupported segment format version " + formatVersion + ": " + file);
+        }
+        this.docEntryBytes = formatVersion >= 2 ? DOC_ENTRY_BYTES : V1_DOC_ENTRY_BYTES;
+        this.docCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.totalLength = buffer.getLong(16);
+        this.termTableOffset = (int) buffer.getLong(24);
+        this.termCharsOffset = (int) buffer.getLong(32);
+        this.postingsOffset = (int) buffer.getLong(40);
+        this.docTableOffset = (int) buffer.getLong(48);
+        this.idTableOffset = (int) buffer.getLong(56);
+        this.idCharsOffset = (int) buffer.getLong(64);
+        this.docDataOffset = (int) buffer.getLong(72);
+        if (buffer.getLong(80) != buffer.capacity()) {
+            throw new IOException("Truncated segment file: " + file);
+        }
+    }
+
+    /**
+     * 只读映射段文件
+     */
+    public static Segment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Segment exceeds 2GB: " + file);
+            }
+            // 映射在通道关闭后仍然有效
+            return new Segment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 段内文档数（包括已被标记删除的文档）
+     */
+    public int docCount() {
+        return docCount;
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    /**
+     * 段内所有文档的词数之和
+     */
+    public long totalLength() {
+        return totalLength;
+    }
+
+    /**
+     * 二分查找词项
+     *
+     * @return 词项序号，不存在时返回 -1
+     */
+    public int findTerm(char[] chars, int start, int length) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = termTableOffset + mid * TERM_ENTRY_BYTES;
+            int cmp = compare(termCharsOffset + 2 * buffer.getInt(entry), buffer.getInt(entry + 4),
+                    chars, start, length);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 词项的文本
+     */
+    public String term(int term) {
+        int entry = termTableOffset + term * TERM_ENTRY_BYTES;
+        int position = termCharsOffset + 2 * buffer.getInt(entry);
+        char[] chars = new char[buffer.getInt(entry + 4)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = buffer.getChar(position + 2 * i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 词项的文档频率（包括已被标记删除的文档）
+     */
+    public int docFreq(int term) {
+        return buffer.getInt(termTableOffset + term * TERM_ENTRY_BYTES + 12);
+    }
+
+    /**
+     * 词项倒排列表在倒排区中的起始位置
+     */
+    public int postingsStart(int term) {
+        return buffer.getInt(termTableOffset + term * TERM_ENTRY_BYTES + 8);
+    }
+
+    /**
+     * 倒排区第 p 项的文档序号
+     */
+    public int postingDoc(int p) {
+        return buffer.getInt(postingsOffset + p * POSTING_BYTES);
+    }
+
+    /**
+     * 倒排区第 p 项的词频
+     */
+    public int postingFreq(int p) {
+        return buffer.getInt(postingsOffset + p * POSTING_BYTES + 4);
+    }
+
+    /**
+     * 文档长度（词数）
+     */
+    public int docLength(int doc) {
+        return buffer.getInt(docTableOffset + doc * docEntryBytes + 8);
+    }
+
+    /**
+     * 按ID二分查找文档
+     *
+     * @return 文档序号，不存在时返回 -1
+     */
+    public int findDocument(String id) {
+        int low = 0;
+        int high = docCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = idTableOffset + mid * ID_ENTRY_BYTES;
+            int cmp = compare(idCharsOffset + 2 * buffer.getInt(entry), buffer.getInt(entry + 4), id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return buffer.getInt(entry + 8);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 文档ID（只解码ID字段）
+     */
+    public String documentId(int doc) {
+        return readString((int) (docDataOffset + buffer.getLong(docTableOffset + doc * docEntryBytes)));
+    }
+
+    /**
+     * 从文档存储区解码文档（每次调用都会创建新对象）
+     */
+    public Document document(int doc) {
+        int position = (int) (docDataOffset + buffer.getLong(docTableOffset + doc * docEntryBytes));
+        String[] fields = new String[formatVersion >= 2 ? 5 : 4];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = readString(position);
+            position += stringBytes(position);
+        }
+        long createdAt = buffer.getLong(position);
+        position += 8;
+
+        int metadataSize = buffer.getInt(position);
+        position += 4;
+        Map<String, Object> metadata = new HashMap<>();
+        int[] cursor = {position};
+        for (int i = 0; i < metadataSize; i++) {
+            String key = readString(cursor[0]);
+            cursor[0] += stringBytes(cursor[0]);
+            if (formatVersion >= 2) {
+                metadata.put(key, readValue(cursor));
+            } else {
+                metadata.put(key, readString(cursor[0]));
+                cursor[0] += stringBytes(cursor[0]);
+            }
+        }
+
+        return Document.builder()
+                .id(fields[0])
+                .title(fields[1])
+                .content(fields[2])
+                .source(fields[3])
+                .parentId(fields.length > 4 ? fields[4] : null)
+                .createdAt(createdAt)
+                .metadata(metadata)
+                .build();
+    }
+
+    /**
+     * 读取带类型标记的元数据值，cursor[0] 为读取位置，读取后移到值之后
+     */
+    private Object readValue(int[] cursor) {
+        byte type = buffer.get(cursor[0]++);
+        return switch (type) {
+            case VALUE_NULL -> null;
+            case VALUE_STRING -> {
+                String value = readString(cursor[0]);
+                cursor[0] += stringBytes(cursor[0]);
+                yield value;
+            }
+            case VALUE_INT -> {
+                int value = buffer.getInt(cursor[0]);
+                cursor[0] += 4;
+                yield value;
+            }
+            case VALUE_LONG -> {
+                long value = buffer.getLong(cursor[0]);
+                cursor[0] += 8;
+                yield value;
+            }
+            case VALUE_DOUBLE -> {
+                double value = buffer.getDouble(cursor[0]);
+                cursor[0] += 8;
+                yield value;
+            }
+            case VALUE_BOOLEAN -> buffer.get(cursor[0]++) != 0;
+            case VALUE_LIST -> {
+                int size = buffer.getInt(cursor[0]);
+                cursor[0] += 4;
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(cursor));
+                }
+                yield list;
+            }
+            case VALUE_MAP -> {
+                int size = buffer.getInt(cursor[0]);
+                cursor[0] += 4;
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    String key = readString(cursor[0]);
+                    cursor[0] += stringBytes(cursor[0]);
+                    map.put(key, readValue(cursor));
+                }
+                yield map;
+            }
+            default -> throw new IllegalStateException("Unknown metadata value type " + type + " in " + file);
+        };
+    }
+
+    private String readString(int position) {
+        int length = buffer.getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int stringBytes(int position) {
+        return 4 + Math.max(buffer.getInt(position), 0);
+    }
+
+    private int compare(int charPosition, int charLength, char[] chars, int start, int length) {
+        int n = Math.min(charLength, length);
+        for (int i = 0; i < n; i++) {
+            char a = buffer.getChar(charPosition + 2 * i);
+            char b = chars[start + i];
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return charLength - length;
+    }
+
+    private int compare(int charPosition, int charLength, String s) {
+        int n = Math.min(charLength, s.length());
+        for (int i = 0; i < n; i++) {
+            char a = buffer.getChar(charPosition + 2 * i);
+            char b = s.charAt(i);
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return charLength - s.length();
+    }
+}
@@ -0,0 +1,957 @@
+package com.example.agentpattern.knowledge.segment;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.base.SearchResult;
+import com.example.agentpattern.knowledge.vector.ScoreAccumulator;
+import com.example.agentpattern.knowledge.vector.TokenBuffer;
+import com.example.agentpattern.knowledge.vector.VectorSearchConfig;
+import com.example.agentpattern.util.TopKHeap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于内存映射段文件的知识库
+ * 文档以不可变段文件的形式保存在目录中，重启后只需映射已有段文件即可提供检索，无需重新建索引。
+ * 每次写入生成一个新段；删除以位图标记并持久化到段旁的删除文件；
+ * 小段数量达到阈值后在后台合并为一个段，合并过程中不阻塞检索和写入。
+ * <p>
+ * 目录中的 segments 清单记录当前有效的段，所有文件都先写临时文件再原子重命名，
+ * 清单中未列出的段文件在打开时清理。
+ * 检索与 {@code InMemoryVectorKnowledgeBase} 一样融合TF-IDF余弦相似度和BM25，
+ * 文档数、文档频率和平均文档长度跨所有段汇总，只统计存活文档（不含已标记删除但尚未合并掉的文档）。
+ * 文档TF-IDF向量的模长与查询使用同一IDF，保存在内存中：新段按写入时的统计量计算，
+ * 自上次整体计算以来增删的文档比例超过 idfDriftThreshold 时全部重新计算。
+ */
+@Slf4j
+public class SegmentKnowledgeBase implements KnowledgeBase, Closeable {
+
+    private static final String MANIFEST = "segments";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String DELETES_SUFFIX = ".del";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * 文档数少于该值的段视为小段
+     */
+    private static final int SMALL_SEGMENT_DOCS = 1000;
+
+    /**
+     * 小段数量达到该值时触发后台合并
+     */
+    private static final int MERGE_FACTOR = 8;
+
+    private static final ThreadLocal<TokenBuffer> QUERY_TOKENS = ThreadLocal.withInitial(TokenBuffer::new);
+    private static final ThreadLocal<ScoreAccumulator> BM25_SCORES = ThreadLocal.withInitial(ScoreAccumulator::new);
+    private static final ThreadLocal<ScoreAccumulator> DOT_PRODUCTS = ThreadLocal.withInitial(ScoreAccumulator::new);
+    private static final ThreadLocal<TopKHeap> TOP_K = ThreadLocal.withInitial(() -> new TopKHeap(16));
+    private static final ThreadLocal<TermHits> TERM_HITS = ThreadLocal.withInitial(TermHits::new);
+
+    private final String name;
+    private final String description;
+    private final Path directory;
+    private final VectorSearchConfig config;
+    private final SegmentWriter writer;
+
+    /**
+     * 当前有效的段，按写入先后排列。替换整个列表，读取时不需要复制
+     */
+    private volatile List<LiveSegment> segments;
+
+    /**
+     * 保护删除位图和段列表切换；写入段文件和合并都在锁外进行
+     */
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+    /**
+     * 串行化提交（新段、删除、合并结果、清单）
+     */
+    private final Object commitLock = new Object();
+
+    private long generation;
+
+    /**
+     * 上次整体计算文档向量模长时的存活文档数，以及此后增删的文档数（在 commitLock 内修改）
+     */
+    private int normsDocCount;
+    private int changesSinceNormRefresh;
+    private final AtomicLong version = new AtomicLong();
+    private ExecutorService mergeExecutor;
+    private boolean mergeScheduled;
+    private boolean closed;
+
+    private SegmentKnowledgeBase(String name, String description, Path directory, VectorSearchConfig config) {
+        this.name = name;
+        this.description = description;
+        this.directory = directory;
+        this.config = config;
+        this.writer = new SegmentWriter(config.getTokenizer());
+    }
+
+    /**
+     * 打开（或创建）目录中的知识库
+     */
+    public static SegmentKnowledgeBase open(String name, String description, Path directory,
+                                            VectorSearchConfig config) {
+        SegmentKnowledgeBase kb = new SegmentKnowledgeBase(name, description, directory, config);
+        try {
+            kb.load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open knowledge base '" + name + "' in " + directory, e);
+        }
+        return kb;
+    }
+
+    private void load() throws IOException {
+        long startTime = System.currentTimeMillis();
+        Files.createDirectories(directory);
+
+        List<String> names = new ArrayList<>();
+        Path manifest = directory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (line.startsWith("generation=")) {
+                    generation = Long.parseLong(line.substring("generation=".length()));
+                } else if (!line.isBlank() && !line.startsWith("#")) {
+                    names.add(line.trim());
+                }
+            }
+        }
+
+        List<LiveSegment> loaded = new ArrayList<>(names.size());
+        for (String segmentName : names) {
+            Segment segment = Segment.open(directory.resolve(segmentName + SEGMENT_SUFFIX));
+            loaded.add(new LiveSegment(segmentName, segment, readDeletes(segmentName, segment.docCount())));
+        }
+        segments = Collections.unmodifiableList(loaded);
+        refreshNorms();
+
+        // 清理未提交或已合并掉的残留文件
+        Set<String> live = new HashSet<>(names);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                if (fileName.equals(MANIFEST)) {
+                    continue;
+                }
+                String base = fileName.endsWith(TMP_SUFFIX) ? null : stripSuffix(fileName);
+                if (base == null || !live.contains(base)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        log.info("Opened knowledge base '{}' from {}: {} segments, {} documents in {}ms",
+                name, directory, loaded.size(), getDocumentCount(), System.currentTimeMillis() - startTime);
+        maybeScheduleMerge();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String getType() {
+        return "SEGMENT_MMAP";
+    }
+
+    @Override
+    public SearchResult search(String query, int topK) {
+        long startTime = System.currentTimeMillis();
+
+        indexLock.readLock().lock();
+        try {
+            List<LiveSegment> current = segments;
+            TokenBuffer queryTokens = QUERY_TOKENS.get();
+            queryTokens.clear();
+            config.getTokenizer().tokenize(query, queryTokens);
+
+            // 汇总各段的统计量；各段文档按段的先后连续编号，bases[s] 为第 s 段的起始编号
+            int[] bases = new int[current.size() + 1];
+            int liveDocs = 0;
+            long totalLength = 0;
+            for (int s = 0; s < current.size(); s++) {
+                LiveSegment live = current.get(s);
+                bases[s + 1] = bases[s] + live.segment.docCount();
+                liveDocs += live.liveCount;
+                totalLength += live.liveLength;
+            }
+            if (liveDocs == 0 || queryTokens.size() == 0) {
+                return emptyResult(query, startTime);
+            }
+            double avgDocLength = (double) totalLength / liveDocs;
+            double k1 = config.getBm25K1();
+            double b = config.getBm25B();
+
+            ScoreAccumulator bm25Scores = BM25_SCORES.get();
+            ScoreAccumulator dotProducts = DOT_PRODUCTS.get();
+            bm25Scores.reset();
+            dotProducts.reset();
+            double queryNormSquared = 0.0;
+
+            TermHits hits = TERM_HITS.get();
+            for (int i = 0; i < queryTokens.size(); i++) {
+                if (isRepeated(queryTokens, i)) {
+                    continue;
+                }
+                int queryFreq = 1;
+                for (int j = i + 1; j < queryTokens.size(); j++) {
+                    if (queryTokens.contentEquals(i, j)) {
+                        queryFreq++;
+                    }
+                }
+
+                // 每个词项的倒排列表只读一遍：先收集各段存活文档的命中，其个数即跨段的存活文档频率，
+                // 得到IDF后再累加分数
+                hits.clear();
+                for (int s = 0; s < current.size(); s++) {
+                    LiveSegment live = current.get(s);
+                    Segment segment = live.segment;
+                    int term = segment.findTerm(queryTokens.chars(), queryTokens.start(i), queryTokens.length(i));
+                    if (term < 0) {
+                        continue;
+                    }
+                    int start = segment.postingsStart(term);
+                    int end = start + segment.docFreq(term);
+                    for (int p = start; p < end; p++) {
+                        int doc = segment.postingDoc(p);
+                        if (!live.deleted.get(doc)) {
+                            hits.add(bases[s] + doc, segment.postingFreq(p), segment.docLength(doc));
+                        }
+                    }
+                }
+                if (hits.size == 0) {
+                    continue;
+                }
+
+                double idf = Math.log((double) liveDocs / hits.size);
+                double queryWeight = (double) queryFreq / queryTokens.size() * idf;
+                double bm25Weight = queryFreq * idf * (k1 + 1);
+                queryNormSquared += queryWeight * queryWeight;
+
+                for (int h = 0; h < hits.size; h++) {
+                    int termFreq = hits.freqs[h];
+                    int docLength = hits.lengths[h];
+                    double denominator = termFreq + k1 * (1 - b + b * docLength / avgDocLength);
+                    bm25Scores.add(hits.keys[h], bm25Weight * termFreq / denominator);
+                    dotProducts.add(hits.keys[h], queryWeight * ((double) termFreq / docLength * idf));
+                }
+            }
+
+            double queryNorm = Math.sqrt(queryNormSquared);
+            TopKHeap heap = TOP_K.get();
+            heap.reset(topK);
+            for (int i = 0; i < bm25Scores.size(); i++) {
+                int key = bm25Scores.ord(i);
+                int s = segmentOf(bases, key);
+
+                // 文档向量模长与点积使用同一IDF计算（误差不超过IDF漂移阈值）
+                double docNorm = current.get(s).norms[key - bases[s]];
+                double similarity = queryNorm == 0.0 || docNorm == 0.0 ? 0.0
+                        : dotProducts.score(key) / (queryNorm * docNorm);
+                double bm25Score = Math.min(bm25Scores.score(key) / config.getBm25Saturation(), 1.0);
+                double finalScore = config.getVectorWeight() * similarity
+                        + (1 - config.getVectorWeight()) * bm25Score;
+                heap.offer(key, (float) finalScore);
+            }
+
+            heap.sortDescending();
+            List<SearchResult.ScoredDocument> topResults = new ArrayList<>(heap.size());
+            for (int i = 0; i < heap.size(); i++) {
+                int s = segmentOf(bases, heap.id(i));
+                topResults.add(SearchResult.ScoredDocument.builder()
+                        .document(current.get(s).segment.document(heap.id(i) - bases[s]))
+                        .score(heap.score(i))
+                        .rank(i + 1)
+                        .build());
+            }
+
+            long searchTime = System.currentTimeMillis() - startTime;
+            log.debug("Search completed in {}ms, found {} results", searchTime, topResults.size());
+
+            return SearchResult.builder()
+                    .query(query)
+                    .documents(topResults)
+                    .searchTimeMs(searchTime)
+                    .knowledgeBaseName(name)
+                    .build();
+
+        } catch (Exception e) {
+            log.error("Error searching knowledge base '{}'", name, e);
+            return emptyResult(query, startTime);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void addDocument(Document document) {
+        if (document == null || document.getId() == null) {
+            throw new IllegalArgumentException("Document and document ID cannot be null");
+        }
+        addDocuments(List.of(document));
+    }
+
+    /**
+     * 将一批文档写入一个新段。已存在相同ID的文档会在旧段中标记删除
+     */
+    @Override
+    public void addDocuments(List<Document> docs) {
+        if (docs == null || docs.isEmpty()) {
+            return;
+        }
+
+        // 同一批次中ID重复时保留最后一个
+        Map<String, Document> unique = new LinkedHashMap<>();
+        for (Document doc : docs) {
+            if (doc != null && doc.getId() != null) {
+                unique.put(doc.getId(), doc);
+            }
+        }
+        if (unique.isEmpty()) {
+            return;
+        }
+
+        synchronized (commitLock) {
+            try {
+                String segmentName = nextSegmentName();
+                Path file = directory.resolve(segmentName + SEGMENT_SUFFIX);
+                writer.write(file, new ArrayList<>(unique.values()));
+                Segment segment = Segment.open(file);
+
+                indexLock.writeLock().lock();
+                try {
+                    Map<LiveSegment, BitSet> pending = new LinkedHashMap<>();
+                    for (String id : unique.keySet()) {
+                        collectDeletes(id, pending);
+                    }
+                    List<LiveSegment> next = new ArrayList<>(segments);
+                    next.add(new LiveSegment(segmentName, segment, new BitSet(segment.docCount())));
+                    // 先提交新段再持久化旧版本的删除标记：中途崩溃最多留下重复文档，不会丢失文档。
+                    // 清单写入失败时内存中的状态保持不变；清单写入成功后立即发布，删除文件写入失败不影响检索
+                    writeManifest(next);
+                    segments = Collections.unmodifiableList(next);
+                    for (Map.Entry<LiveSegment, BitSet> entry : pending.entrySet()) {
+                        changesSinceNormRefresh += entry.getKey().applyDeletes(entry.getValue());
+                    }
+                    // 新段的文档向量模长按当前统计量（已包含新段）计算
+                    LiveSegment added = next.get(next.size() - 1);
+                    added.norms = computeNorms(added, next);
+                    changesSinceNormRefresh += segment.docCount();
+                    version.incrementAndGet();
+                    for (LiveSegment live : pending.keySet()) {
+                        writeDeletes(live.name, live.deleted);
+                    }
+                } finally {
+                    indexLock.writeLock().unlock();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write segment for knowledge base '" + name + "'", e);
+            } finally {
+                refreshNormsIfDrifted();
+            }
+        }
+
+        log.info("Added {} documents to knowledge base '{}'", unique.size(), name);
+        maybeScheduleMerge();
+    }
+
+    @Override
+    public int getDocumentCount() {
+        indexLock.readLock().lock();
+        try {
+            int count = 0;
+            for (LiveSegment live : segments) {
+                count += live.liveCount;
+            }
+            return count;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Document getDocument(String id) {
+        indexLock.readLock().lock();
+        try {
+            List<LiveSegment> current = segments;
+            for (int s = current.size() - 1; s >= 0; s--) {
+                LiveSegment live = current.get(s);
+                int doc = live.segment.findDocument(id);
+                if (doc >= 0 && !live.deleted.get(doc)) {
+                    return live.segment.document(doc);
+                }
+            }
+            return null;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteDocument(String id) {
+        boolean removed;
+        synchronized (commitLock) {
+            indexLock.writeLock().lock();
+            removed = false;
+            try {
+                Map<LiveSegment, BitSet> pending = new LinkedHashMap<>();
+                collectDeletes(id, pending);
+                // 删除文件写入成功后才修改该段的内存位图，写入失败时内存与磁盘保持一致
+                for (Map.Entry<LiveSegment, BitSet> entry : pending.entrySet()) {
+                    LiveSegment live = entry.getKey();
+                    BitSet deleted = (BitSet) live.deleted.clone();
+                    deleted.or(entry.getValue());
+                    writeDeletes(live.name, deleted);
+                    changesSinceNormRefresh += live.applyDeletes(entry.getValue());
+                    removed = true;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to persist deletion in knowledge base '" + name + "'", e);
+            } finally {
+                if (removed) {
+                    version.incrementAndGet();
+                }
+                indexLock.writeLock().unlock();
+            }
+            if (removed) {
+                refreshNormsIfDrifted();
+            }
+        }
+        if (removed) {
+            log.debug("Deleted document '{}' from knowledge base '{}'", id, name);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (commitLock) {
+            indexLock.writeLock().lock();
+            try {
+                List<LiveSegment> old = segments;
+                writeManifest(Collections.emptyList());
+                segments = Collections.emptyList();
+                normsDocCount = 0;
+                changesSinceNormRefresh = 0;
+                version.incrementAndGet();
+                for (LiveSegment live : old) {
+                    deleteFiles(live.name);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to clear knowledge base '" + name + "'", e);
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+        log.info("Cleared knowledge base '{}'", name);
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return !segments.isEmpty();
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 当前段数量
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * 存储目录
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 停止后台合并。段文件的映射随对象回收释放
+     */
+    @Override
+    public void close() {
+        ExecutorService executor;
+        synchronized (commitLock) {
+            executor = mergeExecutor;
+            mergeExecutor = null;
+            closed = true;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 立即合并所有小段（在调用线程中执行）
+     *
+     * @return 是否执行了合并
+     */
+    public boolean mergeSmallSegments() {
+        List<LiveSegment> sources = new ArrayList<>();
+        List<BitSet> deletesAtStart = new ArrayList<>();
+        indexLock.readLock().lock();
+        try {
+            for (LiveSegment live : segments) {
+                if (live.segment.docCount() < SMALL_SEGMENT_DOCS) {
+                    sources.add(live);
+                    deletesAtStart.add((BitSet) live.deleted.clone());
+                }
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        if (sources.size() < 2) {
+            return false;
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            // 在锁外读取存活文档并写入合并段
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < sources.size(); i++) {
+                Segment segment = sources.get(i).segment;
+                for (int doc = 0; doc < segment.docCount(); doc++) {
+                    if (!deletesAtStart.get(i).get(doc)) {
+                        documents.add(segment.document(doc));
+                    }
+                }
+            }
+
+            // 源段中的文档全部已删除时直接丢弃源段
+            String mergedName = null;
+            Path file = null;
+            Segment merged = null;
+            if (!documents.isEmpty()) {
+                synchronized (commitLock) {
+                    mergedName = nextSegmentName();
+                }
+                file = directory.resolve(mergedName + SEGMENT_SUFFIX);
+                new SegmentWriter(config.getTokenizer()).write(file, documents);
+                merged = Segment.open(file);
+            }
+
+            synchronized (commitLock) {
+                indexLock.writeLock().lock();
+                try {
+                    List<LiveSegment> current = segments;
+                    if (!current.containsAll(sources)) {
+                        // 合并期间源段已被清空或被另一次合并替换
+                        if (file != null) {
+                            Files.deleteIfExists(file);
+                        }
+                        return false;
+                    }
+
+                    // 合并期间新增的删除需要转移到合并段
+                    LiveSegment mergedLive = null;
+                    if (merged != null) {
+                        BitSet mergedDeletes = new BitSet(merged.docCount());
+                        for (int i = 0; i < sources.size(); i++) {
+                            BitSet added = (BitSet) sources.get(i).deleted.clone();
+                            added.andNot(deletesAtStart.get(i));
+                            for (int doc = added.nextSetBit(0); doc >= 0; doc = added.nextSetBit(doc + 1)) {
+                                int mergedDoc = merged.findDocument(sources.get(i).segment.documentId(doc));
+                                if (mergedDoc >= 0) {
+                                    mergedDeletes.set(mergedDoc);
+                                }
+                            }
+                        }
+                        if (!mergedDeletes.isEmpty()) {
+                            writeDeletes(mergedName, mergedDeletes);
+                        }
+                        mergedLive = new LiveSegment(mergedName, merged, mergedDeletes);
+                    }
+
+                    // 合并段放在第一个源段的位置，保持段的先后顺序（新段中的同ID文档会覆盖旧段）
+                    List<LiveSegment> next = new ArrayList<>(current.size() - sources.size() + 1);
+                    boolean inserted = false;
+                    for (LiveSegment live : current) {
+                        if (sources.contains(live)) {
+                            if (!inserted && mergedLive != null) {
+                                next.add(mergedLive);
+                            }
+                            inserted = true;
+                        } else {
+                            next.add(live);
+                        }
+                    }
+                    if (mergedLive != null) {
+                        // 合并不改变存活文档，统计量与合并前相同
+                        mergedLive.norms = computeNorms(mergedLive, next);
+                    }
+                    writeManifest(next);
+                    segments = Collections.unmodifiableList(next);
+                    version.incrementAndGet();
+                } finally {
+                    indexLock.writeLock().unlock();
+                }
+                for (LiveSegment source : sources) {
+                    deleteFiles(source.name);
+                }
+            }
+
+            log.info("Merged {} segments ({} documents) of knowledge base '{}' in {}ms",
+                    sources.size(), documents.size(), name, System.currentTimeMillis() - startTime);
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to merge segments of knowledge base '{}'", name, e);
+            return false;
+        }
+    }
+
+    private void maybeScheduleMerge() {
+        int small = 0;
+        for (LiveSegment live : segments) {
+            if (live.segment.docCount() < SMALL_SEGMENT_DOCS) {
+                small++;
+            }
+        }
+        if (small < MERGE_FACTOR) {
+            return;
+        }
+
+        synchronized (commitLock) {
+            if (mergeScheduled || closed) {
+                return;
+            }
+            if (mergeExecutor == null) {
+                mergeExecutor = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "kb-merge-" + name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            mergeScheduled = true;
+            mergeExecutor.execute(() -> {
+                try {
+                    mergeSmallSegments();
+                } finally {
+                    synchronized (commitLock) {
+                        mergeScheduled = false;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 收集所有段中该ID的存活文档，记入 pending 中对应段的待删除位图（调用方持有写锁）。
+     * 只收集不修改删除位图，由调用方在持久化成功后应用
+     */
+    private void collectDeletes(String id, Map<LiveSegment, BitSet> pending) {
+        for (LiveSegment live : segments) {
+            int doc = live.segment.findDocument(id);
+            if (doc >= 0 && !live.deleted.get(doc)) {
+                pending.computeIfAbsent(live, l -> new BitSet(l.segment.docCount())).set(doc);
+            }
+        }
+    }
+
+    /**
+     * 自上次整体计算以来增删的文档比例超过阈值时，按当前统计量重新计算所有段的文档向量模长。
+     * 调用方持有 commitLock；计算只读取段和删除位图，在读写锁外进行，结果在写锁内替换
+     */
+    private void refreshNormsIfDrifted() {
+        if (changesSinceNormRefresh == 0
+                || (double) changesSinceNormRefresh / Math.max(normsDocCount, 1) <= config.getIdfDriftThreshold()) {
+            return;
+        }
+        refreshNorms();
+    }
+
+    /**
+     * 按当前统计量重新计算所有段的文档向量模长（调用方持有 commitLock，或在打开时调用）
+     */
+    private void refreshNorms() {
+        List<LiveSegment> current = segments;
+        List<float[]> norms = new ArrayList<>(current.size());
+        int liveDocs = 0;
+        for (LiveSegment live : current) {
+            norms.add(computeNorms(live, current));
+            liveDocs += live.liveCount;
+        }
+
+        indexLock.writeLock().lock();
+        try {
+            for (int s = 0; s < current.size(); s++) {
+                current.get(s).norms = norms.get(s);
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+        normsDocCount = liveDocs;
+        changesSinceNormRefresh = 0;
+    }
+
+    /**
+     * 按 current 中所有段的存活文档统计量计算 target 段各文档TF-IDF向量的模长，
+     * 权重与查询时相同：词频 / 文档长度 * log(存活文档数 / 存活文档频率)
+     */
+    private static float[] computeNorms(LiveSegment target, List<LiveSegment> current) {
+        int liveDocs = 0;
+        for (LiveSegment live : current) {
+            liveDocs += live.liveCount;
+        }
+
+        Segment segment = target.segment;
+        double[] sums = new double[segment.docCount()];
+        for (int term = 0; term < segment.termCount(); term++) {
+            int docFreq;
+            if (current.size() == 1) {
+                docFreq = target.liveDocFreq(term);
+            } else {
+                char[] chars = segment.term(term).toCharArray();
+                docFreq = 0;
+                for (LiveSegment live : current) {
+                    int ord = live == target ? term : live.segment.findTerm(chars, 0, chars.length);
+                    if (ord >= 0) {
+                        docFreq += live.liveDocFreq(ord);
+                    }
+                }
+            }
+            if (docFreq == 0) {
+                continue;
+            }
+
+            double idf = Math.log((double) liveDocs / docFreq);
+            int start = segment.postingsStart(term);
+            int end = start + segment.docFreq(term);
+            for (int p = start; p < end; p++) {
+                int doc = segment.postingDoc(p);
+                double weight = (double) segment.postingFreq(p) / segment.docLength(doc) * idf;
+                sums[doc] += weight * weight;
+            }
+        }
+
+        float[] norms = new float[sums.length];
+        for (int doc = 0; doc < sums.length; doc++) {
+            norms[doc] = (float) Math.sqrt(sums[doc]);
+        }
+        return norms;
+    }
+
+    private String nextSegmentName() {
+        return String.format("seg_%08d", ++generation);
+    }
+
+    /**
+     * 全局文档编号所在的段
+     */
+    private static int segmentOf(int[] bases, int key) {
+        int pos = Arrays.binarySearch(bases, key);
+        if (pos < 0) {
+            return -pos - 2;
+        }
+        // 跳过文档数为0的段
+        while (pos + 1 < bases.length && bases[pos + 1] == key) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private boolean isRepeated(TokenBuffer tokens, int i) {
+        for (int j = 0; j < i; j++) {
+            if (tokens.contentEquals(i, j)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private SearchResult emptyResult(String query, long startTime) {
+        return SearchResult.builder()
+                .query(query)
+                .documents(Collections.emptyList())
+                .searchTimeMs(System.currentTimeMillis() - startTime)
+                .knowledgeBaseName(name)
+                .build();
+    }
+
+    private BitSet readDeletes(String segmentName, int docCount) throws IOException {
+        BitSet deleted = new BitSet(docCount);
+        Path file = directory.resolve(segmentName + DELETES_SUFFIX);
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    deleted.set(in.readInt());
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private void writeDeletes(String segmentName, BitSet deleted) throws IOException {
+        Path file = directory.resolve(segmentName + DELETES_SUFFIX);
+        writeAtomically(file, out -> {
+            out.writeInt(deleted.cardinality());
+            for (int doc = deleted.nextSetBit(0); doc >= 0; doc = deleted.nextSetBit(doc + 1)) {
+                out.writeInt(doc);
+            }
+        });
+    }
+
+    private void writeManifest(List<LiveSegment> next) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# knowledge base: ").append(name).append('\n');
+        sb.append("generation=").append(generation).append('\n');
+        for (LiveSegment live : next) {
+            sb.append(live.name).append('\n');
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        writeAtomically(directory.resolve(MANIFEST), out -> out.write(bytes));
+    }
+
+    private void writeAtomically(Path file, FileContent content) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+            content.write(out);
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void deleteFiles(String segmentName) throws IOException {
+        Files.deleteIfExists(directory.resolve(segmentName + SEGMENT_SUFFIX));
+        Files.deleteIfExists(directory.resolve(segmentName + DELETES_SUFFIX));
+    }
+
+    private static String stripSuffix(String fileName) {
+        if (fileName.endsWith(SEGMENT_SUFFIX)) {
+            return fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length());
+        }
+        if (fileName.endsWith(DELETES_SUFFIX)) {
+            return fileName.substring(0, fileName.length() - DELETES_SUFFIX.length());
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    private interface FileContent {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * 段及其删除位图和文档向量模长
+     */
+    private static final class LiveSegment {
+        private final String name;
+        private final Segment segment;
+        private final BitSet deleted;
+
+        /**
+         * 存活文档数及其词数之和，随删除位图在写锁内更新，检索时直接读取
+         */
+        private int liveCount;
+        private long liveLength;
+
+        /**
+         * 各文档TF-IDF向量的模长，按段内文档序号索引（在写锁内替换）
+         */
+        private float[] norms;
+
+        private LiveSegment(String name, Segment segment, BitSet deleted) {
+            this.name = name;
+            this.segment = segment;
+            this.deleted = new BitSet(segment.docCount());
+            this.liveCount = segment.docCount();
+            this.liveLength = segment.totalLength();
+            applyDeletes(deleted);
+        }
+
+        /**
+         * 标记删除（调用方持有写锁，或段尚未发布）
+         *
+         * @return 新标记删除的文档数
+         */
+        private int applyDeletes(BitSet docs) {
+            int count = 0;
+            for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+                if (!deleted.get(doc)) {
+                    deleted.set(doc);
+                    liveCount--;
+                    liveLength -= segment.docLength(doc);
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 词项在本段存活文档中的文档频率，需要遍历倒排列表，只在计算文档向量模长时使用
+         */
+        private int liveDocFreq(int term) {
+            int docFreq = segment.docFreq(term);
+            if (deleted.isEmpty()) {
+                return docFreq;
+            }
+            int start = segment.postingsStart(term);
+            int live = 0;
+            for (int p = start; p < start + docFreq; p++) {
+                if (!deleted.get(segment.postingDoc(p))) {
+                    live++;
+                }
+            }
+            return live;
+        }
+    }
+
+    /**
+     * 一个查询词项在所有段的存活文档中的命中：全局文档编号、词频和文档长度，每个线程复用一个
+     */
+    private static final class TermHits {
+        private int[] keys = new int[64];
+        private int[] freqs = new int[64];
+        private int[] lengths = new int[64];
+        private int size;
+
+        private void clear() {
+            size = 0;
+        }
+
+        private void add(int key, int freq, int length) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            keys[size] = key;
+            freqs[size] = freq;
+            lengths[size] = length;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.agentpattern.knowledge.segment;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.vector.TokenBuffer;
+import com.example.agentpattern.knowledge.vector.Tokenizer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 段文件写入器
+ * 对一批文档分词并建立倒排索引，按 {@link Segment} 描述的格式写入一个不可变的段文件。
+ * 先写入临时文件并落盘，再原子重命名为目标文件，因此目标文件要么完整存在，要么不存在。
+ * <p>
+ * 非线程安全。
+ */
+public class SegmentWriter {
+
+    private final Tokenizer tokenizer;
+    private final TokenBuffer buffer = new TokenBuffer();
+
+    public SegmentWriter(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * 写入段文件
+     *
+     * @param file      目标文件
+     * @param documents 文档，ID必须互不相同
+     */
+    public void write(Path file, List<Document> documents) throws IOException {
+        int docCount = documents.size();
+
+        // 1. 分词并统计每个文档的词频
+        Map<String, TermPostings> terms = new HashMap<>();
+        int[] docLengths = new int[docCount];
+        long totalLength = 0;
+
+        for (int doc = 0; doc < docCount; doc++) {
+            Document document = documents.get(doc);
+            buffer.clear();
+            tokenizer.tokenize(document.getTitle(), buffer);
+            tokenizer.tokenize(document.getContent(), buffer);
+
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (int i = 0; i < buffer.size(); i++) {
+                counts.merge(buffer.toString(i), 1, Integer::sum);
+            }
+
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                terms.computeIfAbsent(count.getKey(), t -> new TermPostings()).append(doc, count.getValue());
+            }
+            docLengths[doc] = buffer.size();
+            totalLength += buffer.size();
+        }
+
+        // 2. 词项按字符序排列，读取时可直接与分词结果比较并二分查找
+        String[] sortedTerms = terms.keySet().toArray(new String[0]);
+        Arrays.sort(sortedTerms);
+
+        Integer[] idOrder = new Integer[docCount];
+        for (int i = 0; i < docCount; i++) {
+            idOrder[i] = i;
+        }
+        Arrays.sort(idOrder, Comparator.comparing(i -> documents.get(i).getId()));
+
+        long postingsCount = 0;
+        long termChars = 0;
+        for (String term : sortedTerms) {
+            postingsCount += terms.get(term).size;
+            termChars += term.length();
+        }
+        long idChars = 0;
+        for (Document document : documents) {
+            idChars += document.getId().length();
+        }
+
+        // 3. 文档存储区放在最后，先在内存中序列化以得到每个文档的偏移
+        ByteArrayOutputStream docData = new ByteArrayOutputStream();
+        long[] docOffsets = new long[docCount];
+        DataOutputStream docOut = new DataOutputStream(docData);
+        for (int doc = 0; doc < docCount; doc++) {
+            docOffsets[doc] = docOut.size();
+            writeDocument(docOut, documents.get(doc));
+        }
+        docOut.flush();
+
+        long termTableOffset = Segment.HEADER_BYTES;
+        long termCharsOffset = termTableOffset + (long) Segment.TERM_ENTRY_BYTES * sortedTerms.length;
+        long postingsOffset = termCharsOffset + 2 * termChars;
+        long docTableOffset = postingsOffset + (long) Segment.POSTING_BYTES * postingsCount;
+        long idTableOffset = docTableOffset + (long) Segment.DOC_ENTRY_BYTES * docCount;
+        long idCharsOffset = idTableOffset + (long) Segment.ID_ENTRY_BYTES * docCount;
+        long docDataOffset = idCharsOffset + 2 * idChars;
+        long fileLength = docDataOffset + docData.size();
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IOException("Segment exceeds 2GB, split the documents into smaller batches");
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            // 文件头
+            out.writeInt(Segment.MAGIC);
+            out.writeInt(Segment.FORMAT_VERSION);
+            out.writeInt(docCount);
+            out.writeInt(sortedTerms.length);
+            out.writeLong(totalLength);
+            out.writeLong(termTableOffset);
+            out.writeLong(termCharsOffset);
+            out.writeLong(postingsOffset);
+            out.writeLong(docTableOffset);
+            out.writeLong(idTableOffset);
+            out.writeLong(idCharsOffset);
+            out.writeLong(docDataOffset);
+            out.writeLong(fileLength);
+
+            // 词项表：字符偏移、字符数、倒排列表起始位置、文档频率
+            int charOffset = 0;
+            int postingStart = 0;
+            for (String term : sortedTerms) {
+                TermPostings postings = terms.get(term);
+                out.writeInt(charOffset);
+                out.writeInt(term.length());
+                out.writeInt(postingStart);
+                out.writeInt(postings.size);
+                charOffset += term.length();
+                postingStart += postings.size;
+            }
+            for (String term : sortedTerms) {
+                out.writeChars(term);
+            }
+
+            // 倒排列表：(文档序号, 词频)，按文档序号递增
+            for (String term : sortedTerms) {
+                TermPostings postings = terms.get(term);
+                for (int i = 0; i < postings.size; i++) {
+                    out.writeInt(postings.docs[i]);
+                    out.writeInt(postings.freqs[i]);
+                }
+            }
+
+            // 文档表：存储区偏移、文档长度
+            for (int doc = 0; doc < docCount; doc++) {
+                out.writeLong(docOffsets[doc]);
+                out.writeInt(docLengths[doc]);
+            }
+
+            // 文档ID表：按ID排序，用于按ID查找文档
+            charOffset = 0;
+            for (int doc : idOrder) {
+                String id = documents.get(doc).getId();
+                out.writeInt(charOffset);
+                out.writeInt(id.length());
+                out.writeInt(doc);
+                charOffset += id.length();
+            }
+            for (int doc : idOrder) {
+                out.writeChars(documents.get(doc).getId());
+            }
+
+            docData.writeTo(out);
+        }
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 序列化文档：ID、标题、内容、来源、所属原文档ID、创建时间和元数据（值带类型标记，见 {@link #writeValue}）
+     */
+    private static void writeDocument(DataOutputStream out, Document document) throws IOException {
+        writeString(out, document.getId());
+        writeString(out, document.getTitle());
+        writeString(out, document.getContent());
+        writeString(out, document.getSource());
+        writeString(out, document.getParentId());
+        out.writeLong(document.getCreatedAt());
+
+        Map<String, Object> metadata = document.getMetadata();
+        if (metadata == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * 元数据值以一个字节的类型标记 + 值写入，读取时还原为相同的类型。
+     * 整数保持 Integer/Long，其余数值按 Double 保存；集合按 List、映射按键为字符串的 Map 递归写入，
+     * 其他类型按 toString() 保存为字符串
+     */
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(Segment.VALUE_NULL);
+        } else if (value instanceof String string) {
+            out.writeByte(Segment.VALUE_STRING);
+            writeString(out, string);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(Segment.VALUE_INT);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long number) {
+            out.writeByte(Segment.VALUE_LONG);
+            out.writeLong(number);
+        } else if (value instanceof Number number) {
+            out.writeByte(Segment.VALUE_DOUBLE);
+            out.writeDouble(number.doubleValue());
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(Segment.VALUE_BOOLEAN);
+            out.writeBoolean(bool);
+        } else if (value instanceof Collection<?> collection) {
+            out.writeByte(Segment.VALUE_LIST);
+            out.writeInt(collection.size());
+            for (Object element : collection) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(Segment.VALUE_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            out.writeByte(Segment.VALUE_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    /**
+     * 字符串以 UTF-8 字节数 + 字节写入，null 记为 -1
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static final class TermPostings {
+        private int[] docs = new int[4];
+        private int[] freqs = new int[4];
+        private int size;
+
+        private void append(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.agentpattern.knowledge.snippet;
+
+import com.example.agentpattern.knowledge.vector.CjkBigramTokenizer;
+import com.example.agentpattern.knowledge.vector.Tokenizer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 摘要提取配置
+ * 预算以原文字符数计（CJK文本中一个字符约等于一个词项），不含高亮标记
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SnippetConfig {
+
+    /**
+     * 用于匹配查询词项的分词器，应与索引使用的分词器一致
+     */
+    @Builder.Default
+    private Tokenizer tokenizer = CjkBigramTokenizer.INSTANCE;
+
+    /**
+     * 每条结果的摘要最多包含的字符数
+     */
+    @Builder.Default
+    private int maxCharsPerResult = 300;
+
+    /**
+     * 一次格式化的所有结果摘要合计最多包含的字符数，用完后其余结果只列出标题
+     */
+    @Builder.Default
+    private int maxCharsTotal = 1200;
+
+    /**
+     * 是否高亮命中的查询词
+     */
+    @Builder.Default
+    private boolean highlight = false;
+
+    /**
+     * 高亮开始标记
+     */
+    @Builder.Default
+    private String highlightPrefix = "**";
+
+    /**
+     * 高亮结束标记
+     */
+    @Builder.Default
+    private String highlightSuffix = "**";
+
+    public static SnippetConfig defaults() {
+        return SnippetConfig.builder().build();
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.agentpattern.knowledge.snippet;
+
+import com.example.agentpattern.knowledge.vector.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 查询相关摘要提取器
+ * 把文档内容按空行切分为段落、按换行和句末标点切分为句子，按命中的不同查询词项给段落和句子打分
+ * （词项在文档中越少的段落出现权重越高）。在字符预算内按分数从高到低选取段落：放得下的段落整段保留，
+ * 放不下时只保留其中得分最高的句子；选中内容所在小节的标题在预算允许时一并保留。
+ * 结果按原文顺序输出，不相邻的句子之间以省略号分隔。
+ * 内容不超过预算时原样返回；没有句子命中查询时返回内容开头的部分。线程安全。
+ */
+public class SnippetExtractor {
+
+    private static final String ELLIPSIS = "…";
+    private static final String GAP = "\n" + ELLIPSIS + "\n";
+
+    private final SnippetConfig config;
+
+    public SnippetExtractor(SnippetConfig config) {
+        this.config = config;
+    }
+
+    public SnippetConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 查询文本的词项（去重，保持出现顺序）
+     */
+    public List<String> queryTerms(String query) {
+        TokenBuffer buffer = new TokenBuffer();
+        config.getTokenizer().tokenize(query, buffer);
+        Set<String> terms = new LinkedHashSet<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            terms.add(buffer.toString(i));
+        }
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * 提取摘要
+     *
+     * @param query    查询文本
+     * @param content  文档内容
+     * @param maxChars 摘要最多包含的原文字符数
+     */
+    public String extract(String query, String content, int maxChars) {
+        return extract(queryTerms(query), content, maxChars).text();
+    }
+
+    /**
+     * 用已分词的查询提取摘要，格式化多条结果时查询只需分词一次
+     *
+     * @param terms    {@link #queryTerms(String)} 的结果
+     * @param content  文档内容
+     * @param maxChars 摘要最多包含的原文字符数
+     */
+    public Snippet extract(List<String> terms, String content, int maxChars) {
+        if (content == null || maxChars <= 0) {
+            return new Snippet("", 0);
+        }
+        String text = content.strip();
+        if (text.length() <= maxChars) {
+            return new Snippet(highlight(text, terms), text.length());
+        }
+
+        List<int[]> sentences = sentences(text);
+        boolean[][] matches = matches(text, sentences, terms);
+        int blockCount = sentences.get(sentences.size() - 1)[2] + 1;
+        double[] weights = weights(sentences, matches, blockCount);
+        double[] sentenceScores = new double[sentences.size()];
+        double[] blockScores = new double[blockCount];
+        int[] blockLengths = new int[blockCount];
+        boolean[][] blockMatches = new boolean[blockCount][terms.size()];
+        for (int s = 0; s < sentences.size(); s++) {
+            int block = sentences.get(s)[2];
+            blockLengths[block] += length(sentences.get(s));
+            for (int t = 0; t < terms.size(); t++) {
+                if (matches[s][t]) {
+                    sentenceScores[s] += weights[t];
+                    if (!blockMatches[block][t]) {
+                        blockMatches[block][t] = true;
+                        blockScores[block] += weights[t];
+                    }
+                }
+            }
+        }
+
+        Integer[] blocks = order(blockScores, blockLengths);
+        if (blockScores[blocks[0]] == 0) {
+            return new Snippet(highlight(text.substring(0, maxChars), terms) + ELLIPSIS, maxChars);
+        }
+
+        // 按段落分数从高到低选取：放得下的段落整段保留，放不下时只保留段落中得分最高的句子
+        Integer[] bySentenceScore = order(sentenceScores, null);
+        boolean[] selected = new boolean[sentences.size()];
+        int used = 0;
+        for (int block : blocks) {
+            if (blockScores[block] == 0 || used == maxChars) {
+                break;
+            }
+            if (used + blockLengths[block] <= maxChars) {
+                for (int s = 0; s < sentences.size(); s++) {
+                    if (sentences.get(s)[2] == block) {
+                        selected[s] = true;
+                    }
+                }
+                used += blockLengths[block];
+                continue;
+            }
+            for (int s : bySentenceScore) {
+                int length = length(sentences.get(s));
+                if (sentenceScores[s] > 0 && sentences.get(s)[2] == block && used + length <= maxChars) {
+                    selected[s] = true;
+                    used += length;
+                }
+            }
+            if (used == 0) {
+                // 得分最高的段落中没有放得下的句子，截取其中第一个命中词附近的部分
+                for (int s : bySentenceScore) {
+                    if (sentences.get(s)[2] == block) {
+                        return window(text, sentences.get(s), terms, maxChars);
+                    }
+                }
+            }
+        }
+
+        // 补充选中内容所在小节的标题
+        int heading = -1;
+        for (int s = 0; s < selected.length; s++) {
+            if (isHeading(text, sentences.get(s))) {
+                heading = s;
+            } else if (selected[s] && heading >= 0 && !selected[heading]) {
+                int length = length(sentences.get(heading));
+                if (used + length <= maxChars) {
+                    selected[heading] = true;
+                    used += length;
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(used + 16);
+        int previous = -1;
+        for (int i = 0; i < selected.length; i++) {
+            if (!selected[i]) {
+                continue;
+            }
+            int[] sentence = sentences.get(i);
+            if (previous >= 0) {
+                // 相邻句子保留原文中的分隔（换行等），不相邻时插入省略号
+                sb.append(previous == i - 1 ? text.substring(sentences.get(previous)[1], sentence[0]) : GAP);
+            }
+            sb.append(highlight(text.substring(sentence[0], sentence[1]), terms));
+            previous = i;
+        }
+        return new Snippet(sb.toString(), used);
+    }
+
+    /**
+     * 按分数降序排列下标，分数相同时优先较短的（lengths 为null时不比较长度），再按原文顺序
+     */
+    private static Integer[] order(double[] scores, int[] lengths) {
+        Integer[] order = new Integer[scores.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingDouble(i -> -scores[i])
+                .thenComparingInt(i -> lengths != null ? lengths[i] : 0)
+                .thenComparingInt(i -> i));
+        return order;
+    }
+
+    /**
+     * 切分句子，返回各句子在文本中的 [开始, 结束) 位置（不含首尾空白）和所在段落的序号。
+     * 句子以换行和句末标点结束；段落以空行分隔，小节标题单独成为一个段落
+     */
+    private static List<int[]> sentences(String text) {
+        List<int[]> sentences = new ArrayList<>();
+        int block = 0;
+        int lineStart = 0;
+        while (lineStart <= text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            int before = sentences.size();
+            boolean blockHasSentences = before > 0 && sentences.get(before - 1)[2] == block;
+            if (isBlank(text, lineStart, lineEnd)) {
+                if (blockHasSentences) {
+                    block++;
+                }
+            } else if (isHeadingLine(text, lineStart)) {
+                if (blockHasSentences) {
+                    block++;
+                }
+                addSentence(text, lineStart, lineEnd, block, sentences);
+                block++;
+            } else {
+                int start = lineStart;
+                for (int i = lineStart; i < lineEnd; i++) {
+                    char c = text.charAt(i);
+                    if (c == '。' || c == '！' || c == '？' || c == '；' || c == '!' || c == '?' || c == ';') {
+                        addSentence(text, start, i + 1, block, sentences);
+                        start = i + 1;
+                    }
+                }
+                addSentence(text, start, lineEnd, block, sentences);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return sentences;
+    }
+
+    private static boolean isBlank(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addSentence(String text, int start, int end, int block, List<int[]> sentences) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (end > start) {
+            sentences.add(new int[]{start, end, block});
+        }
+    }
+
+    /**
+     * 每个句子命中了哪些查询词项
+     */
+    private boolean[][] matches(String text, List<int[]> sentences, List<String> terms) {
+        boolean[][] matches = new boolean[sentences.size()][terms.size()];
+        TokenBuffer buffer = new TokenBuffer();
+        for (int s = 0; s < sentences.size(); s++) {
+            int[] sentence = sentences.get(s);
+            buffer.clear();
+            config.getTokenizer().tokenize(text.subSequence(sentence[0], sentence[1]), buffer);
+            for (int i = 0; i < buffer.size(); i++) {
+                for (int t = 0; t < terms.size(); t++) {
+                    if (!matches[s][t] && buffer.contentEquals(i, terms.get(t))) {
+                        matches[s][t] = true;
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * 查询词项的权重：log(1 + 段落数 / 包含该词项的段落数)，在文档中越少见的词项权重越高
+     */
+    private static double[] weights(List<int[]> sentences, boolean[][] matches, int blockCount) {
+        int terms = matches.length == 0 ? 0 : matches[0].length;
+        double[] weights = new double[terms];
+        for (int t = 0; t < terms; t++) {
+            int blockFrequency = 0;
+            int lastBlock = -1;
+            for (int s = 0; s < sentences.size(); s++) {
+                int block = sentences.get(s)[2];
+                if (matches[s][t] && block != lastBlock) {
+                    blockFrequency++;
+                    lastBlock = block;
+                }
+            }
+            if (blockFrequency > 0) {
+                weights[t] = Math.log(1.0 + (double) blockCount / blockFrequency);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * 截取超长句子中第一个命中词附近不超过 maxChars 的部分
+     */
+    private Snippet window(String text, int[] sentence, List<String> terms, int maxChars) {
+        int first = sentence[0];
+        for (int i = sentence[0]; i < sentence[1]; i++) {
+            if (matchLength(text, i, sentence[1], terms) > 0) {
+                first = i;
+                break;
+            }
+        }
+        int start = Math.max(sentence[0], first - maxChars / 3);
+        int end = Math.min(sentence[1], start + maxChars);
+        start = Math.max(sentence[0], end - maxChars);
+
+        String snippet = (start > sentence[0] ? ELLIPSIS : "")
+                + highlight(text.substring(start, end), terms)
+                + (end < sentence[1] ? ELLIPSIS : "");
+        return new Snippet(snippet, end - start);
+    }
+
+    /**
+     * 高亮文本中出现的查询词项，相互重叠或相邻的命中合并为一段
+     */
+    private String highlight(String text, List<String> terms) {
+        if (!config.isHighlight() || terms.isEmpty()) {
+            return text;
+        }
+        boolean[] covered = new boolean[text.length()];
+        boolean any = false;
+        for (int i = 0; i < text.length(); i++) {
+            int length = matchLength(text, i, text.length(), terms);
+            for (int j = i; j < i + length; j++) {
+                covered[j] = true;
+                any = true;
+            }
+        }
+        if (!any) {
+            return text;
+        }
+
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            if (covered[i] && (i == 0 || !covered[i - 1])) {
+                sb.append(config.getHighlightPrefix());
+            }
+            sb.append(text.charAt(i));
+            if (covered[i] && (i == text.length() - 1 || !covered[i + 1])) {
+                sb.append(config.getHighlightSuffix());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 从位置 i 开始命中的最长查询词项的长度（忽略大小写），没有命中时返回0
+     */
+    private static int matchLength(String text, int i, int end, List<String> terms) {
+        int longest = 0;
+        for (String term : terms) {
+            if (term.length() > longest && i + term.length() <= end
+                    && text.regionMatches(true, i, term, 0, term.length())) {
+                longest = term.length();
+            }
+        }
+        return longest;
+    }
+
+    private static boolean isHeading(String text, int[] sentence) {
+        return isHeadingLine(text, sentence[0]);
+    }
+
+    /**
+     * 以"【"或"#"开头的行视为小节标题
+     */
+    private static boolean isHeadingLine(String text, int lineStart) {
+        int i = lineStart;
+        while (i < text.length() && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+            i++;
+        }
+        return i < text.length() && (text.charAt(i) == '【' || text.charAt(i) == '#');
+    }
+
+    private static int length(int[] sentence) {
+        return sentence[1] - sentence[0];
+    }
+
+    /**
+     * 提取的摘要
+     *
+     * @param text   摘要文本（含省略号和高亮标记）
+     * @param length 摘要包含的原文字符数，计入预算
+     */
+    public record Snippet(String text, int length) {
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.agentpattern.knowledge.vector;
+
+import com.example.agentpattern.util.CompressedBitmap;
+
+/**
+ * BM25打分器
+ * 每个倒排索引持有一个实例，维护文档总数和总长度。
+ * IDF和平均文档长度由调用方根据 {@link CorpusStatistics} 给出，分片时即为全局统计量。
+ * 对一个查询打分只需遍历查询词项的倒排列表，文档长度随倒排列表保存，打分时顺序读取。
+ * <p>
+ * 非线程安全；随所属的 {@link InvertedIndex} 一起复制，发布后只读。
+ */
+public class Bm25Scorer {
+
+    private final double k1;
+    private final double b;
+
+    private int docCount;
+    private long totalLength;
+
+    public Bm25Scorer(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    /**
+     * 记录新文档的长度
+     */
+    void onAdd(int length) {
+        docCount++;
+        totalLength += length;
+    }
+
+    /**
+     * 移除文档的长度统计
+     */
+    void onRemove(int length) {
+        docCount--;
+        totalLength -= length;
+    }
+
+    /**
+     * 复制当前统计量，副本与原打分器互不影响
+     */
+    Bm25Scorer copy() {
+        Bm25Scorer copy = new Bm25Scorer(k1, b);
+        copy.docCount = docCount;
+        copy.totalLength = totalLength;
+        return copy;
+    }
+
+    public int getDocCount() {
+        return docCount;
+    }
+
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    /**
+     * 将一个查询词项对其倒排列表中所有文档的BM25贡献累加到 scores
+     *
+     * @param postings     词项的倒排列表
+     * @param queryFreq    词项在查询中出现的次数
+     * @param idf          词项的逆文档频率
+     * @param avgDocLength 平均文档长度
+     * @param scores       按文档序号累计的BM25分数
+     * @param allowed      允许打分的文档序号，为null时不限制
+     */
+    public void accumulate(InvertedIndex.Postings postings, int queryFreq, double idf, double avgDocLength,
+                           ScoreAccumulator scores, CompressedBitmap allowed) {
+        double weight = queryFreq * idf * (k1 + 1);
+        double lengthFactor = b / avgDocLength;
+
+        for (int block = 0; block < postings.blockCount(); block++) {
+            InvertedIndex.Postings.Block docs = postings.block(block);
+            for (int i = 0; i < docs.size(); i++) {
+                int ord = docs.doc(i);
+                if (allowed != null && !allowed.contains(ord)) {
+                    continue;
+                }
+                int termFreq = docs.freq(i);
+                double denominator = termFreq + k1 * (1 - b + lengthFactor * docs.docLength(i));
+                scores.add(ord, weight * termFreq / denominator);
+            }
+        }
+    }
+
+    /**
+     * 单个查询词项对单个文档的BM25贡献
+     *
+     * @param docLength    文档长度
+     * @param termFreq     词项在文档中的词频
+     * @param idf          词项的逆文档频率
+     * @param avgDocLength 平均文档长度
+     * @param queryFreq    词项在查询中出现的次数
+     */
+    public double termScore(int docLength, int termFreq, double idf, double avgDocLength, int queryFreq) {
+        double weight = queryFreq * idf * (k1 + 1);
+        double denominator = termFreq + k1 * (1 - b + b / avgDocLength * docLength);
+        return weight * termFreq / denominator;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.agentpattern.knowledge.vector;
+
+/**
+ * 支持中日韩文字的分词器
+ * 单次扫描字符，不使用正则表达式，也不创建中间字符串：
+ * <ul>
+ *     <li>连续的拉丁字母/数字组成一个词，转换为小写，长度小于 minWordLength 的词被丢弃</li>
+ *     <li>连续的CJK字符输出相邻字符二元组（"夜视功能" -> "夜视"、"视功"、"功能"），
+ *     单独出现的CJK字符按单字输出</li>
+ *     <li>其他字符（空白、标点、符号）作为分隔符</li>
+ * </ul>
+ * 无状态，可在线程间共享。
+ */
+public class CjkBigramTokenizer implements Tokenizer {
+
+    /**
+     * 默认实例
+     */
+    public static final CjkBigramTokenizer INSTANCE = new CjkBigramTokenizer(2);
+
+    private final int minWordLength;
+
+    public CjkBigramTokenizer(int minWordLength) {
+        this.minWordLength = minWordLength;
+    }
+
+    @Override
+    public void tokenize(CharSequence text, TokenBuffer buffer) {
+        if (text == null) {
+            return;
+        }
+
+        int length = text.length();
+        // 当前CJK连续串中的前一个字符，以及连续串的长度
+        char previousCjk = 0;
+        int cjkRun = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (isCjk(c)) {
+                endWord(buffer);
+                if (cjkRun > 0) {
+                    buffer.begin();
+                    buffer.append(previousCjk);
+                    buffer.append(c);
+                    buffer.commit();
+                }
+                previousCjk = c;
+                cjkRun++;
+                continue;
+            }
+
+            endCjkRun(buffer, previousCjk, cjkRun);
+            cjkRun = 0;
+
+            char lower = toWordChar(c);
+            if (lower != 0) {
+                if (!buffer.inToken()) {
+                    buffer.begin();
+                }
+                buffer.append(lower);
+            } else {
+                endWord(buffer);
+            }
+        }
+
+        endCjkRun(buffer, previousCjk, cjkRun);
+        endWord(buffer);
+    }
+
+    /**
+     * 结束一个拉丁字母/数字词，过短的词被丢弃
+     */
+    private void endWord(TokenBuffer buffer) {
+        if (!buffer.inToken()) {
+            return;
+        }
+        if (buffer.pendingLength() >= minWordLength) {
+            buffer.commit();
+        } else {
+            buffer.rollback();
+        }
+    }
+
+    /**
+     * 结束一个CJK连续串：只有一个字符时输出单字，否则二元组已在扫描时输出
+     */
+    private static void endCjkRun(TokenBuffer buffer, char previousCjk, int cjkRun) {
+        if (cjkRun == 1) {
+            buffer.begin();
+            buffer.append(previousCjk);
+            buffer.commit();
+        }
+    }
+
+    /**
+     * 中日韩统一表意文字（含扩展A区）、平假名、片假名和韩文音节
+     */
+    static boolean isCjk(char c) {
+        return (c >= '\u4e00' && c <= '\u9fff')
+                || (c >= '\u3400' && c <= '\u4dbf')
+                || (c >= '\u3040' && c <= '\u30ff')
+                || (c >= '\uac00' && c <= '\ud7af');
+    }
+
+    /**
+     * 拉丁字母/数字返回其小写形式，其他字符返回0
+     */
+    private static char toWordChar(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+            return c;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        if (c < 0x80) {
+            return 0;
+        }
+        // 全角字母数字及其他语言的字母
+        if (c >= '\uff10' && c <= '\uff19') {
+            return (char) (c - '\uff10' + '0');
+        }
+        if (c >= '\uff21' && c <= '\uff3a') {
+            return (char) (c - '\uff21' + 'a');
+        }
+        if (c >= '\uff41' && c <= '\uff5a') {
+            return (char) (c - '\uff41' + 'a');
+        }
+        return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : 0;
+    }
+}
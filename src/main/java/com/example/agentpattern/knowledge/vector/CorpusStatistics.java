@@ -0,0 +1,40 @@
+package com.example.agentpattern.knowledge.vector;
+
+/**
+ * 语料统计量
+ * BM25和TF-IDF打分所需的文档总数、文档总长度和词项的文档频率。
+ * 单个 {@link InvertedIndex} 使用自身的统计量；分片知识库的各个分片共享一个汇总所有分片的全局统计量，
+ * 使分片上的分数与不分片时一致。
+ */
+public interface CorpusStatistics {
+
+    /**
+     * 文档总数
+     */
+    int getDocCount();
+
+    /**
+     * 所有文档的词项总数
+     */
+    long getTotalLength();
+
+    /**
+     * 包含词项的文档数
+     */
+    int getDocFreq(int termId);
+
+    default double getAvgDocLength() {
+        int docCount = getDocCount();
+        return docCount == 0 ? 0.0 : (double) getTotalLength() / docCount;
+    }
+
+    /**
+     * 逆文档频率 log(N / df)，与 TextSimilarity 的定义一致
+     */
+    default double idf(int docFreq) {
+        if (docFreq == 0) {
+            return 0.0;
+        }
+        return Math.log((double) getDocCount() / docFreq);
+    }
+}
@@ -1,32 +1,57 @@
 package com.example.agentpattern.knowledge.vector;
 
 import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.Filter;
 import com.example.agentpattern.knowledge.base.KnowledgeBase;
 import com.example.agentpattern.knowledge.base.SearchResult;
+import com.example.agentpattern.util.TopKHeap;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 /**
  * 基于内存的向量知识库
- * 使用TF-IDF和余弦相似度进行文档检索
+ * 使用倒排索引召回候选文档，结合TF-IDF余弦相似度和BM25进行排序。
+ * 带元数据过滤条件的查询先由位图索引求出允许的文档，再只对这些文档打分
+ * <p>
+ * 查询在不可变的索引快照上执行，快照通过一个原子引用发布：查询不加锁，
+ * 也不会看到写入到一半的索引。写入之间互斥，每次写入在当前索引的副本上修改后整体替换快照；
+ * 副本与旧快照共享全部结构（见 {@link InvertedIndex#copy()}），只复制被修改的部分，
+ * 因此单个文档的写入代价与索引中的文档数基本无关。
  */
 @Slf4j
 public class InMemoryVectorKnowledgeBase implements KnowledgeBase {
 
+    // 查询分词缓冲区，每个线程复用一个
+    private static final ThreadLocal<TokenBuffer> QUERY_TOKENS = ThreadLocal.withInitial(TokenBuffer::new);
+
+    // 候选文档的BM25累加器和TopK堆，每个线程复用一个
+    private static final ThreadLocal<ScoreAccumulator> CANDIDATES = ThreadLocal.withInitial(ScoreAccumulator::new);
+    private static final ThreadLocal<TopKHeap> TOP_K = ThreadLocal.withInitial(() -> new TopKHeap(16));
+
     private final String name;
     private final String description;
-    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+    private final VectorSearchConfig config;
     private volatile boolean initialized = false;
 
-    // 缓存的语料库（用于TF-IDF计算）
-    private volatile List<String> corpus = new ArrayList<>();
+    // 当前发布的索引快照，发布后不再修改
+    private final AtomicReference<IndexSnapshot> snapshot;
+
+    // 串行化写入：同一时刻只有一个写入者在构建下一个快照
+    private final ReentrantLock writeLock = new ReentrantLock();
 
     public InMemoryVectorKnowledgeBase(String name, String description) {
+        this(name, description, VectorSearchConfig.defaults());
+    }
+
+    public InMemoryVectorKnowledgeBase(String name, String description, VectorSearchConfig config) {
         this.name = name;
         this.description = description;
+        this.config = config;
+        this.snapshot = new AtomicReference<>(new IndexSnapshot(new InvertedIndex(config), 0));
     }
 
     @Override
@@ -46,9 +71,16 @@ public class InMemoryVectorKnowledgeBase implements KnowledgeBase {
 
     @Override
     public SearchResult search(String query, int topK) {
+        return search(query, topK, null);
+    }
+
+    @Override
+    public SearchResult search(String query, int topK, Filter filter) {
         long startTime = System.currentTimeMillis();
 
-        if (documents.isEmpty()) {
+        // 整个查询只读取这一个快照
+        InvertedIndex index = snapshot.get().index();
+        if (index.size() == 0) {
             log.warn("Knowledge base '{}' is empty", name);
             return SearchResult.builder()
                     .query(query)
@@ -59,52 +91,27 @@ public class InMemoryVectorKnowledgeBase implements KnowledgeBase {
         }
 
         try {
-            // 计算查询文本的向量
-            double[] queryVector = TextSimilarity.textToTfidfVector(query, corpus);
-
-            // 计算与所有文档的相似度
-            List<SearchResult.ScoredDocument> scoredDocs = new ArrayList<>();
-
-            for (Document doc : documents.values()) {
-                // 如果文档没有向量，计算它
-                if (doc.getEmbedding() == null) {
-                    double[] docVector = TextSimilarity.textToTfidfVector(
-                            doc.getTitle() + " " + doc.getContent(),
-                            corpus
-                    );
-                    doc.setEmbedding(docVector);
-                }
-
-                // 计算相似度
-                double similarity = TextSimilarity.cosineSimilarity(queryVector, doc.getEmbedding());
-
-                // 也可以使用BM25作为补充
-                double bm25Score = TextSimilarity.bm25Similarity(
-                        query,
-                        doc.getTitle() + " " + doc.getContent(),
-                        corpus
-                );
-
-                // 综合两种分数（可以调整权重）
-                double finalScore = 0.6 * similarity + 0.4 * Math.min(bm25Score / 10.0, 1.0);
-
-                scoredDocs.add(SearchResult.ScoredDocument.builder()
-                        .document(doc)
-                        .score(finalScore)
+            // 统计查询词频
+            TokenBuffer queryTokens = QUERY_TOKENS.get();
+            queryTokens.clear();
+            config.getTokenizer().tokenize(query, queryTokens);
+            TermFrequencies queryTerms = index.queryTerms(queryTokens);
+
+            // 召回并融合打分，用有界最小堆选出TopK，只有胜出的文档才创建结果对象
+            TopKHeap heap = TOP_K.get();
+            heap.reset(topK);
+            index.search(queryTerms, filter, CANDIDATES.get(), heap);
+
+            heap.sortDescending();
+            List<SearchResult.ScoredDocument> topResults = new ArrayList<>(heap.size());
+            for (int i = 0; i < heap.size(); i++) {
+                topResults.add(SearchResult.ScoredDocument.builder()
+                        .document(index.document(heap.id(i)))
+                        .score(heap.score(i))
+                        .rank(i + 1)
                         .build());
             }
 
-            // 按分数排序并取TopK
-            List<SearchResult.ScoredDocument> topResults = scoredDocs.stream()
-                    .sorted((a, b) -> Double.compare(b.getScore(), a.getScore()))
-                    .limit(topK)
-                    .collect(Collectors.toList());
-
-            // 设置排名
-            for (int i = 0; i < topResults.size(); i++) {
-                topResults.get(i).setRank(i + 1);
-            }
-
             long searchTime = System.currentTimeMillis() - startTime;
             log.debug("Search completed in {}ms, found {} results", searchTime, topResults.size());
 
@@ -132,8 +139,10 @@ public class InMemoryVectorKnowledgeBase implements KnowledgeBase {
             throw new IllegalArgumentException("Document and document ID cannot be null");
         }
 
-        documents.put(document.getId(), document);
-        rebuildCorpus();
+        update(index -> {
+            index.add(document);
+            return true;
+        });
         initialized = true;
 
         log.debug("Added document '{}' to knowledge base '{}'", document.getId(), name);
@@ -145,13 +154,15 @@ public class InMemoryVectorKnowledgeBase implements KnowledgeBase {
             return;
         }
 
-        for (Document doc : docs) {
-            if (doc != null && doc.getId() != null) {
-                documents.put(doc.getId(), doc);
+        // 分词在写锁之外（文档多时并行）完成，持锁期间只更新索引结构
+        List<Document> valid = docs.stream().filter(doc -> doc != null && doc.getId() != null).toList();
+        List<TermFrequencies> terms = snapshot.get().index().analyze(valid);
+        update(index -> {
+            for (int i = 0; i < valid.size(); i++) {
+                index.add(valid.get(i), terms.get(i));
             }
-        }
-
-        rebuildCorpus();
+            return true;
+        });
         initialized = true;
 
         log.info("Added {} documents to knowledge base '{}'", docs.size(), name);
@@ -159,28 +170,41 @@ public class InMemoryVectorKnowledgeBase implements KnowledgeBase {
 
     @Override
     public int getDocumentCount() {
-        return documents.size();
+        return snapshot.get().index().size();
     }
 
     @Override
     public Document getDocument(String id) {
-        return documents.get(id);
+        return snapshot.get().index().document(id);
+    }
+
+    /**
+     * 获取知识库中的所有文档（当前快照的副本）
+     */
+    public Collection<Document> getDocuments() {
+        return Collections.unmodifiableList(snapshot.get().index().documents());
     }
 
     @Override
     public void deleteDocument(String id) {
-        Document removed = documents.remove(id);
-        if (removed != null) {
-            rebuildCorpus();
+        // 文档不存在时无需复制索引
+        if (getDocument(id) == null) {
+            return;
+        }
+        if (update(index -> index.remove(id))) {
             log.debug("Deleted document '{}' from knowledge base '{}'", id, name);
         }
     }
 
     @Override
     public void clear() {
-        documents.clear();
-        corpus.clear();
-        initialized = false;
+        writeLock.lock();
+        try {
+            snapshot.set(new IndexSnapshot(new InvertedIndex(config), snapshot.get().version() + 1));
+            initialized = false;
+        } finally {
+            writeLock.unlock();
+        }
         log.info("Cleared knowledge base '{}'", name);
     }
 
@@ -189,15 +213,36 @@ public class InMemoryVectorKnowledgeBase implements KnowledgeBase {
         return initialized;
     }
 
+    @Override
+    public long getVersion() {
+        return snapshot.get().version();
+    }
+
     /**
-     * 重建语料库（用于TF-IDF计算）
+     * 在当前索引的副本上执行修改，修改成功时发布为新快照
+     *
+     * @param mutation 对副本的修改，返回是否有改动；没有改动时丢弃副本
+     * @return 是否发布了新快照
      */
-    private void rebuildCorpus() {
-        corpus = documents.values().stream()
-                .map(doc -> doc.getTitle() + " " + doc.getContent())
-                .collect(Collectors.toList());
+    private boolean update(Predicate<InvertedIndex> mutation) {
+        writeLock.lock();
+        try {
+            IndexSnapshot current = snapshot.get();
+            InvertedIndex next = current.index().copy();
+            if (!mutation.test(next)) {
+                return false;
+            }
+            next.refreshVectorsIfDrifted();
+            snapshot.set(new IndexSnapshot(next, current.version() + 1));
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-        // 清除所有文档的向量缓存，下次搜索时重新计算
-        documents.values().forEach(doc -> doc.setEmbedding(null));
+    /**
+     * 不可变的索引快照及其数据版本号
+     */
+    private record IndexSnapshot(InvertedIndex index, long version) {
     }
 }
@@ -0,0 +1,710 @@
+package com.example.agentpattern.knowledge.vector;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.Filter;
+import com.example.agentpattern.knowledge.base.MetadataIndex;
+import com.example.agentpattern.util.CompressedBitmap;
+import com.example.agentpattern.util.PersistentArray;
+import com.example.agentpattern.util.PersistentHashMap;
+import com.example.agentpattern.util.TopKHeap;
+
+import java.util.*;
+
+/**
+ * 倒排索引
+ * 维护 词项ID -> 倒排列表（文档序号 + 词频），查询时只需访问与查询共享词项的文档。
+ * 词项ID来自全局共享的 {@link TermDictionary}。
+ * 文档频率（倒排列表长度）以及 {@link Bm25Scorer} 中的文档总数和总长度随增删增量更新，
+ * 单次增删的代价与文档长度成正比。
+ * IDF和平均文档长度取自 {@link CorpusStatistics}：默认为索引自身的统计量，
+ * 作为分片时为所有分片的全局统计量（见 {@link #copy(CorpusStatistics)}）。
+ * 每个文档的TF-IDF稀疏向量在入库时计算并按文档序号保存在索引中，不修改 {@link Document} 本身。
+ * 文档元数据另建 {@link MetadataIndex}，用于在打分前按过滤条件筛选文档。
+ * <p>
+ * 写时复制：修改前先用 {@link #copy()} 得到副本。倒排列表表、文档表和文档ID表都是持久化结构
+ * （{@link PersistentArray}、{@link PersistentHashMap}），元数据索引同样按需复制（见 {@link MetadataIndex#copy()}），
+ * 复制本身只复制根引用；副本修改时只复制被增删触及的倒排列表块（及其块引用数组）和访问路径上的节点，
+ * 因此一次写入的代价主要与写入文档的长度成正比，而不随索引中的文档数和词项数线性增长。
+ * 原索引不受副本修改的影响，已发布、不再修改的索引可以被任意多个线程无锁并发查询。
+ * 单个实例的修改非线程安全，由调用方串行化。
+ */
+public class InvertedIndex implements CorpusStatistics {
+
+    /**
+     * 批量分词时达到该文档数才并行
+     */
+    private static final int PARALLEL_ANALYZE_THRESHOLD = 256;
+
+    /**
+     * 并行分词时各线程复用的缓冲区
+     */
+    private static final ThreadLocal<TokenBuffer> ANALYZE_TOKENS = ThreadLocal.withInitial(TokenBuffer::new);
+
+    /**
+     * 所有知识库共享的词项字典
+     */
+    private final TermDictionary dictionary = TermDictionary.global();
+
+    /**
+     * 词项ID -> 本索引的倒排列表（词项ID由全局字典连续分配，以其为下标）
+     */
+    private final PersistentArray<Postings> postings;
+
+    /**
+     * 按文档序号排列的文档及其词项和长度，已删除的位置为null
+     */
+    private PersistentArray<Entry> entries;
+
+    /**
+     * 每个文档的TF-IDF稀疏向量，已删除的位置为null。与 entries 分开保存，打分时直接取向量
+     */
+    private PersistentArray<SparseVector> vectors;
+
+    /**
+     * 文档ID -> 文档序号
+     */
+    private PersistentHashMap<String, Integer> ordinals;
+
+    /**
+     * 元数据位图索引，以文档序号为元素
+     */
+    private final MetadataIndex metadata;
+
+    /**
+     * 本索引创建的倒排列表持有的标记，用于判断倒排列表能否原地修改。
+     * 不直接引用索引本身，以免共享的倒排列表使旧版本索引无法回收；复制时双方都换上新标记
+     */
+    private Object owner = new Object();
+
+    private final Tokenizer tokenizer;
+
+    /**
+     * 写入路径复用的分词缓冲区（写入由调用方串行化）
+     */
+    private final TokenBuffer buffer = new TokenBuffer();
+
+    /**
+     * 文档长度、文档总数等BM25统计量
+     */
+    private final Bm25Scorer scorer;
+
+    /**
+     * 文档向量缓存允许的最大IDF漂移
+     */
+    private final double idfDriftThreshold;
+
+    /**
+     * TF-IDF余弦相似度与BM25分数的融合权重
+     */
+    private final double vectorWeight;
+    private final double bm25Saturation;
+
+    /**
+     * 打分和计算文档向量使用的语料统计量，不分片时为本索引自身
+     */
+    private final CorpusStatistics statistics;
+
+    /**
+     * 上次整体刷新文档向量时的文档数，以及此后发生的增删次数
+     */
+    private int vectorsDocCount;
+    private int changesSinceVectorRefresh;
+
+    public InvertedIndex(VectorSearchConfig config) {
+        this.tokenizer = config.getTokenizer();
+        this.idfDriftThreshold = config.getIdfDriftThreshold();
+        this.scorer = new Bm25Scorer(config.getBm25K1(), config.getBm25B());
+        this.vectorWeight = config.getVectorWeight();
+        this.bm25Saturation = config.getBm25Saturation();
+        this.statistics = this;
+        this.postings = new PersistentArray<>();
+        this.entries = new PersistentArray<>();
+        this.vectors = new PersistentArray<>();
+        this.ordinals = new PersistentHashMap<>();
+        this.metadata = new MetadataIndex();
+    }
+
+    private InvertedIndex(InvertedIndex source, CorpusStatistics statistics) {
+        this.tokenizer = source.tokenizer;
+        this.idfDriftThreshold = source.idfDriftThreshold;
+        this.vectorWeight = source.vectorWeight;
+        this.bm25Saturation = source.bm25Saturation;
+        this.statistics = statistics != null ? statistics : this;
+        this.scorer = source.scorer.copy();
+        this.postings = source.postings.copy();
+        this.entries = source.entries.copy();
+        this.vectors = source.vectors.copy();
+        this.ordinals = source.ordinals.copy();
+        this.metadata = source.metadata.copy();
+        source.owner = new Object();
+        this.vectorsDocCount = source.vectorsDocCount;
+        this.changesSinceVectorRefresh = source.changesSinceVectorRefresh;
+    }
+
+    /**
+     * 复制索引用于修改，代价与索引大小无关。倒排列表在副本第一次修改对应词项时才复制（只复制块引用），
+     * 同一副本上的后续修改原地进行，因此批量写入合并为一次复制时共享路径只复制一次
+     */
+    public InvertedIndex copy() {
+        return new InvertedIndex(this, null);
+    }
+
+    /**
+     * 复制索引用于修改，副本的打分和文档向量使用给定的语料统计量（如多个分片汇总的全局统计量）
+     */
+    public InvertedIndex copy(CorpusStatistics statistics) {
+        return new InvertedIndex(this, statistics);
+    }
+
+    /**
+     * 对文档参与索引的文本（标题 + 内容）分词，结果写入 buffer（先清空）
+     */
+    public void tokenize(Document doc, TokenBuffer buffer) {
+        buffer.clear();
+        tokenizer.tokenize(doc.getTitle(), buffer);
+        tokenizer.tokenize(doc.getContent(), buffer);
+    }
+
+    /**
+     * 对一批文档分词并解析为词频表，不修改索引，可以在持有写锁之前调用。
+     * 文档数达到阈值时在公共 ForkJoinPool 上并行分词，结果与输入顺序一致
+     */
+    public List<TermFrequencies> analyze(List<Document> docs) {
+        return (docs.size() >= PARALLEL_ANALYZE_THRESHOLD ? docs.parallelStream() : docs.stream())
+                .map(doc -> {
+                    TokenBuffer tokens = ANALYZE_TOKENS.get();
+                    tokenize(doc, tokens);
+                    return TermFrequencies.of(tokens, dictionary, true);
+                })
+                .toList();
+    }
+
+    /**
+     * 添加文档，已存在相同ID的文档时先删除旧版本
+     */
+    public void add(Document doc) {
+        tokenize(doc, buffer);
+        add(doc, TermFrequencies.of(buffer, dictionary, true));
+    }
+
+    /**
+     * 添加已由 {@link #analyze(List)} 分词的文档，已存在相同ID的文档时先删除旧版本
+     */
+    public void add(Document doc, TermFrequencies terms) {
+        remove(doc.getId());
+
+        int[] ids = terms.termIds();
+        int[] freqs = terms.freqs();
+        int length = terms.getTokenCount();
+
+        int ord = entries.size();
+        scorer.onAdd(length);
+        ordinals.put(doc.getId(), ord);
+        metadata.add(ord, doc.getMetadata());
+
+        for (int i = 0; i < ids.length; i++) {
+            mutablePostings(ids[i]).append(ord, freqs[i], length);
+        }
+
+        changesSinceVectorRefresh++;
+
+        // 新文档的向量基于当前统计量（已包含该文档）计算
+        entries.set(ord, new Entry(doc, ids, freqs, length));
+        vectors.set(ord, documentVector(ids, freqs, length));
+    }
+
+    /**
+     * 删除文档
+     *
+     * @return 文档是否存在
+     */
+    public boolean remove(String docId) {
+        Integer ord = ordinals.remove(docId);
+        if (ord == null) {
+            return false;
+        }
+
+        Entry entry = entries.get(ord);
+        for (int termId : entry.termIds()) {
+            mutablePostings(termId).remove(ord);
+        }
+
+        scorer.onRemove(entry.length());
+        metadata.remove(ord, entry.document().getMetadata());
+        changesSinceVectorRefresh++;
+
+        entries.set(ord, null);
+        vectors.set(ord, null);
+
+        if (entries.size() - size() > Math.max(64, size())) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * 当自上次刷新以来的IDF漂移超过阈值时，按当前统计量重新计算所有文档的向量
+     *
+     * @return 是否执行了刷新
+     */
+    public boolean refreshVectorsIfDrifted() {
+        if (idfDrift() <= idfDriftThreshold) {
+            return false;
+        }
+        refreshVectors();
+        return true;
+    }
+
+    /**
+     * 按当前统计量重新计算所有文档的向量
+     */
+    void refreshVectors() {
+        for (int ord = 0; ord < entries.size(); ord++) {
+            Entry entry = entries.get(ord);
+            if (entry != null) {
+                vectors.set(ord, documentVector(entry.termIds(), entry.termFreqs(), entry.length()));
+            }
+        }
+
+        vectorsDocCount = size();
+        changesSinceVectorRefresh = 0;
+    }
+
+    /**
+     * 估算的IDF漂移：自上次刷新以来增删的文档数占当时文档总数的比例。
+     * 每次增删只改变一个文档对各词项df的贡献，并使 log(N) 移动约 1/N。
+     */
+    public double idfDrift() {
+        if (changesSinceVectorRefresh == 0) {
+            return 0.0;
+        }
+        return (double) changesSinceVectorRefresh / Math.max(vectorsDocCount, 1);
+    }
+
+    /**
+     * 自上次刷新文档向量以来的增删次数
+     */
+    int getChangesSinceVectorRefresh() {
+        return changesSinceVectorRefresh;
+    }
+
+    /**
+     * 上次刷新文档向量时的文档数
+     */
+    int getVectorsDocCount() {
+        return vectorsDocCount;
+    }
+
+    /**
+     * 将查询分词结果解析为词频表，忽略字典中不存在的词项
+     */
+    public TermFrequencies queryTerms(TokenBuffer queryTokens) {
+        return TermFrequencies.of(queryTokens, dictionary, false);
+    }
+
+    /**
+     * 对查询打分，融合分数最高的文档序号及分数写入 heap（调用方已按需要的结果数重置，结果未排序）。
+     * 带过滤条件时先在位图索引上求出允许的文档，不满足条件的文档不参与打分
+     *
+     * @param query      查询词频表
+     * @param filter     元数据过滤条件，为null时不过滤
+     * @param candidates 候选文档的BM25累加器
+     * @param heap       TopK堆
+     */
+    public void search(TermFrequencies query, Filter filter, ScoreAccumulator candidates, TopKHeap heap) {
+        SparseVector queryVector = queryVector(query);
+        double avgDocLength = statistics.getAvgDocLength();
+
+        CompressedBitmap allowed = filter == null ? null : metadata.evaluate(filter);
+        candidates.reset();
+        if (allowed != null && allowed.cardinality() < postingsLength(query)) {
+            // 过滤后的文档少于需要遍历的倒排列表长度：逐个文档直接打分
+            allowed.forEach(ord -> scoreDocument(ord, query, avgDocLength, candidates));
+        } else {
+            // 只遍历查询词项的倒排列表，召回候选文档并累加BM25分数
+            for (int i = 0; i < query.size(); i++) {
+                Postings p = postings.get(query.termId(i));
+                if (p != null) {
+                    scorer.accumulate(p, query.freq(i), termIdf(query.termId(i)), avgDocLength,
+                            candidates, allowed);
+                }
+            }
+        }
+
+        for (int i = 0; i < candidates.size(); i++) {
+            int ord = candidates.ord(i);
+            if (filter != null && allowed == null && !filter.matches(document(ord))) {
+                // 索引不支持的过滤条件：逐个文档判断
+                continue;
+            }
+
+            // 余弦相似度：稀疏向量合并点积 / 预先计算的模长
+            double similarity = queryVector.cosine(vectors.get(ord));
+
+            // 按配置的权重融合两种分数，BM25分数先按饱和值归一化到[0, 1]
+            double bm25Score = Math.min(candidates.score(ord) / bm25Saturation, 1.0);
+            double finalScore = vectorWeight * similarity + (1 - vectorWeight) * bm25Score;
+
+            heap.offer(ord, (float) finalScore);
+        }
+    }
+
+    /**
+     * 将查询词频表转换为TF-IDF稀疏向量，忽略语料中不存在的词项
+     */
+    private SparseVector queryVector(TermFrequencies query) {
+        int[] ids = new int[query.size()];
+        float[] weights = new float[query.size()];
+        int n = 0;
+        for (int i = 0; i < query.size(); i++) {
+            int docFreq = statistics.getDocFreq(query.termId(i));
+            if (docFreq > 0) {
+                ids[n] = query.termId(i);
+                weights[n] = (float) ((double) query.freq(i) / query.getTokenCount() * statistics.idf(docFreq));
+                n++;
+            }
+        }
+        return SparseVector.of(Arrays.copyOf(ids, n), Arrays.copyOf(weights, n));
+    }
+
+    /**
+     * 查询词项对应的倒排列表总长度，即按倒排列表召回时需要访问的文档数
+     */
+    private long postingsLength(TermFrequencies query) {
+        long total = 0;
+        for (int i = 0; i < query.size(); i++) {
+            Postings p = postings.get(query.termId(i));
+            if (p != null) {
+                total += p.size;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 直接按文档的词项计算BM25分数并累加到 scores，只有与查询共享词项的文档才会被加入。
+     * 文档和查询的词项ID都有序，按归并方式求交集。过滤后的文档远少于倒排列表长度时比遍历倒排列表更快
+     */
+    private void scoreDocument(int ord, TermFrequencies query, double avgDocLength, ScoreAccumulator scores) {
+        Entry entry = entries.get(ord);
+        int[] ids = entry.termIds();
+        int[] freqs = entry.termFreqs();
+        int i = 0;
+        int j = 0;
+        while (i < ids.length && j < query.size()) {
+            int termId = query.termId(j);
+            if (ids[i] < termId) {
+                i++;
+            } else if (ids[i] > termId) {
+                j++;
+            } else {
+                scores.add(ord, scorer.termScore(entry.length(), freqs[i], termIdf(termId), avgDocLength,
+                        query.freq(j)));
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /**
+     * 索引中的文档数量
+     */
+    public int size() {
+        return scorer.getDocCount();
+    }
+
+    @Override
+    public int getDocCount() {
+        return scorer.getDocCount();
+    }
+
+    @Override
+    public long getTotalLength() {
+        return scorer.getTotalLength();
+    }
+
+    /**
+     * 本索引中包含词项的文档数
+     */
+    @Override
+    public int getDocFreq(int termId) {
+        Postings p = postings.get(termId);
+        return p == null ? 0 : p.size;
+    }
+
+    /**
+     * 根据序号获取文档
+     */
+    public Document document(int ord) {
+        Entry entry = entries.get(ord);
+        return entry == null ? null : entry.document();
+    }
+
+    /**
+     * 根据文档ID获取文档，不存在时返回null
+     */
+    public Document document(String docId) {
+        Integer ord = ordinals.get(docId);
+        return ord == null ? null : document(ord);
+    }
+
+    /**
+     * 所有有效文档，按文档序号排列
+     */
+    public List<Document> documents() {
+        List<Document> result = new ArrayList<>(size());
+        for (int ord = 0; ord < entries.size(); ord++) {
+            Entry entry = entries.get(ord);
+            if (entry != null) {
+                result.add(entry.document());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 根据序号获取文档的TF-IDF稀疏向量
+     */
+    public SparseVector vector(int ord) {
+        return vectors.get(ord);
+    }
+
+    /**
+     * 获取可由本索引修改的倒排列表：与其他索引共享的倒排列表先复制，不存在时创建
+     */
+    private Postings mutablePostings(int termId) {
+        Postings p = postings.get(termId);
+        if (p == null || p.owner != owner) {
+            p = p == null ? new Postings(owner) : p.copy(owner);
+            postings.set(termId, p);
+        }
+        return p;
+    }
+
+    private double termIdf(int termId) {
+        return statistics.idf(statistics.getDocFreq(termId));
+    }
+
+    /**
+     * 按当前统计量计算文档的TF-IDF稀疏向量
+     */
+    private SparseVector documentVector(int[] ids, int[] freqs, int length) {
+        float[] weights = new float[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            weights[i] = (float) ((double) freqs[i] / length * termIdf(ids[i]));
+        }
+        return SparseVector.of(ids, weights);
+    }
+
+    /**
+     * 回收已删除文档占用的序号。新序号保持原有顺序，因此倒排列表无需重新排序；
+     * 文档表和文档ID表重新建立，代价与文档数成正比，按删除比例摊销
+     */
+    private void compact() {
+        int[] remap = new int[entries.size()];
+        PersistentArray<Entry> compacted = new PersistentArray<>();
+        PersistentArray<SparseVector> compactedVectors = new PersistentArray<>();
+        PersistentHashMap<String, Integer> compactedOrdinals = new PersistentHashMap<>();
+        metadata.clear();
+        for (int ord = 0; ord < remap.length; ord++) {
+            Entry entry = entries.get(ord);
+            if (entry == null) {
+                remap[ord] = -1;
+                continue;
+            }
+            int next = compacted.size();
+            remap[ord] = next;
+            compacted.add(entry);
+            compactedVectors.add(vectors.get(ord));
+            compactedOrdinals.put(entry.document().getId(), next);
+            metadata.add(next, entry.document().getMetadata());
+        }
+        entries = compacted;
+        vectors = compactedVectors;
+        ordinals = compactedOrdinals;
+
+        postings.replaceAll(p -> p.remap(remap, owner));
+    }
+
+    /**
+     * 文档表的一项：文档、递增排列的词项ID及对应词频（用于删除文档和重新计算文档向量）和文档长度，创建后不再修改
+     */
+    private record Entry(Document document, int[] termIds, int[] termFreqs, int length) {
+    }
+
+    /**
+     * 倒排列表：按文档序号递增排列的 (文档序号, 词频, 文档长度)，文档长度随之保存以便BM25打分时顺序读取。
+     * 列表分为最多 {@link #BLOCK_SIZE} 个文档的块，复制倒排列表只复制块引用，修改时只复制被修改的块，
+     * 因此高频词项的一次增删代价与块大小而不是文档频率成正比
+     */
+    public static final class Postings {
+
+        static final int BLOCK_SIZE = 128;
+
+        /**
+         * 创建该倒排列表的索引的标记，只有该索引可以原地修改
+         */
+        private final Object owner;
+
+        private Block[] blocks;
+        private int blockCount;
+        private int size;
+
+        private Postings(Object owner) {
+            this.owner = owner;
+            this.blocks = new Block[1];
+        }
+
+        private Postings copy(Object newOwner) {
+            Postings copy = new Postings(newOwner);
+            copy.blocks = Arrays.copyOf(blocks, blockCount + 1);
+            copy.blockCount = blockCount;
+            copy.size = size;
+            return copy;
+        }
+
+        /**
+         * 追加文档，新文档的序号总是最大的
+         */
+        private void append(int doc, int freq, int docLength) {
+            Block last = blockCount == 0 ? null : blocks[blockCount - 1];
+            if (last == null || last.size == BLOCK_SIZE) {
+                if (blockCount == blocks.length) {
+                    blocks = Arrays.copyOf(blocks, blockCount * 2);
+                }
+                last = new Block(owner);
+                blocks[blockCount++] = last;
+            } else if (last.owner != owner) {
+                last = last.copy(owner);
+                blocks[blockCount - 1] = last;
+            }
+            last.append(doc, freq, docLength);
+            size++;
+        }
+
+        private void remove(int doc) {
+            if (blockCount == 0) {
+                return;
+            }
+            // 第一个最大文档序号不小于 doc 的块
+            int lo = 0;
+            int hi = blockCount - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (blocks[mid].docs[blocks[mid].size - 1] < doc) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            Block block = blocks[lo];
+            int i = Arrays.binarySearch(block.docs, 0, block.size, doc);
+            if (i < 0) {
+                return;
+            }
+            if (block.owner != owner) {
+                block = block.copy(owner);
+                blocks[lo] = block;
+            }
+            block.remove(i);
+            size--;
+            if (block.size == 0) {
+                System.arraycopy(blocks, lo + 1, blocks, lo, blockCount - lo - 1);
+                blocks[--blockCount] = null;
+            }
+        }
+
+        /**
+         * 按 remap 重新编号文档序号（保持顺序）后的新倒排列表，块重新填满
+         */
+        private Postings remap(int[] remap, Object newOwner) {
+            Postings remapped = new Postings(newOwner);
+            for (int b = 0; b < blockCount; b++) {
+                Block block = blocks[b];
+                for (int i = 0; i < block.size; i++) {
+                    remapped.append(remap[block.docs[i]], block.freqs[i], block.docLengths[i]);
+                }
+            }
+            return remapped;
+        }
+
+        /**
+         * 包含该词项的文档数（文档频率）
+         */
+        public int size() {
+            return size;
+        }
+
+        int blockCount() {
+            return blockCount;
+        }
+
+        Block block(int b) {
+            return blocks[b];
+        }
+
+        /**
+         * 倒排列表的一块，数组按需增长到 {@link #BLOCK_SIZE}
+         */
+        static final class Block {
+
+            private final Object owner;
+            private int[] docs;
+            private int[] freqs;
+            private int[] docLengths;
+            private int size;
+
+            private Block(Object owner) {
+                this(owner, new int[4], new int[4], new int[4], 0);
+            }
+
+            private Block(Object owner, int[] docs, int[] freqs, int[] docLengths, int size) {
+                this.owner = owner;
+                this.docs = docs;
+                this.freqs = freqs;
+                this.docLengths = docLengths;
+                this.size = size;
+            }
+
+            private Block copy(Object newOwner) {
+                return new Block(newOwner, docs.clone(), freqs.clone(), docLengths.clone(), size);
+            }
+
+            private void append(int doc, int freq, int docLength) {
+                if (size == docs.length) {
+                    int capacity = Math.min(size * 2, BLOCK_SIZE);
+                    docs = Arrays.copyOf(docs, capacity);
+                    freqs = Arrays.copyOf(freqs, capacity);
+                    docLengths = Arrays.copyOf(docLengths, capacity);
+                }
+                docs[size] = doc;
+                freqs[size] = freq;
+                docLengths[size] = docLength;
+                size++;
+            }
+
+            private void remove(int i) {
+                System.arraycopy(docs, i + 1, docs, i, size - i - 1);
+                System.arraycopy(freqs, i + 1, freqs, i, size - i - 1);
+                System.arraycopy(docLengths, i + 1, docLengths, i, size - i - 1);
+                size--;
+            }
+
+            int size() {
+                return size;
+            }
+
+            int doc(int i) {
+                return docs[i];
+            }
+
+            int freq(int i) {
+                return freqs[i];
+            }
+
+            int docLength(int i) {
+                return docLengths[i];
+            }
+        }
+    }
+}
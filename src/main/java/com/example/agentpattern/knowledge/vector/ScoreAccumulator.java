@@ -0,0 +1,77 @@
+package com.example.agentpattern.knowledge.vector;
+
+import java.util.Arrays;
+
+/**
+ * 按文档序号累加查询分数的稠密数组
+ * 代替 {@code Map<Integer, Double>}：累加不装箱，并记录被命中的序号以便只遍历候选文档。
+ * 通过代数标记区分本次查询写入的槽位，{@link #reset()} 为 O(1)，实例可在多次查询间复用。
+ * <p>
+ * 非线程安全，通常每个线程持有一个。
+ */
+public final class ScoreAccumulator {
+
+    private double[] scores = new double[64];
+    private int[] generations = new int[64];
+    private int[] touched = new int[64];
+    private int count;
+    private int generation = 1;
+
+    /**
+     * 开始新一轮累加
+     */
+    public void reset() {
+        count = 0;
+        if (++generation == 0) {
+            // 代数回绕时清空标记，避免误认旧槽位
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * 向文档累加分数
+     */
+    public void add(int ord, double delta) {
+        if (ord >= scores.length) {
+            grow(ord + 1);
+        }
+        if (generations[ord] != generation) {
+            generations[ord] = generation;
+            scores[ord] = delta;
+            if (count == touched.length) {
+                touched = Arrays.copyOf(touched, count * 2);
+            }
+            touched[count++] = ord;
+        } else {
+            scores[ord] += delta;
+        }
+    }
+
+    /**
+     * 本轮被命中的文档数
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 第 i 个被命中的文档序号（按首次命中顺序）
+     */
+    public int ord(int i) {
+        return touched[i];
+    }
+
+    /**
+     * 文档的累计分数
+     */
+    public double score(int ord) {
+        return ord < scores.length && generations[ord] == generation ? scores[ord] : 0.0;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, scores.length * 2);
+        scores = Arrays.copyOf(scores, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+    }
+}
@@ -0,0 +1,419 @@
+package com.example.agentpattern.knowledge.vector;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.Filter;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.base.SearchResult;
+import com.example.agentpattern.util.TopKHeap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 分片的内存向量知识库
+ * 文档按ID的哈希分布到多个 {@link InvertedIndex} 分片，查询时在 {@link ForkJoinPool} 上并行对各分片打分，
+ * 再归并各分片的TopK。所有分片共享汇总各分片的全局语料统计量（文档总数、平均长度、文档频率），
+ * 因此BM25分数和TF-IDF向量与不分片的 {@link InMemoryVectorKnowledgeBase} 一致。
+ * <p>
+ * 与 {@link InMemoryVectorKnowledgeBase} 相同，查询在通过原子引用发布的不可变快照上执行；
+ * 写入之间互斥，每次复制所有分片（全局统计量随之变化）、修改后整体替换快照；
+ * 分片副本与旧快照共享结构（见 {@link InvertedIndex#copy()}），复制每个分片的代价与分片大小无关。
+ */
+@Slf4j
+public class ShardedKnowledgeBase implements KnowledgeBase {
+
+    /**
+     * 总文档数低于该值时在调用线程上依次搜索各分片，并行调度的开销高于收益
+     */
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    // 查询分词缓冲区、BM25累加器和TopK堆，每个线程（包括ForkJoin工作线程）复用一个
+    private static final ThreadLocal<TokenBuffer> QUERY_TOKENS = ThreadLocal.withInitial(TokenBuffer::new);
+    private static final ThreadLocal<ScoreAccumulator> CANDIDATES = ThreadLocal.withInitial(ScoreAccumulator::new);
+    private static final ThreadLocal<TopKHeap> TOP_K = ThreadLocal.withInitial(() -> new TopKHeap(16));
+
+    private final String name;
+    private final String description;
+    private final VectorSearchConfig config;
+    private final ForkJoinPool pool;
+    private volatile boolean initialized = false;
+
+    // 当前发布的分片快照，发布后不再修改
+    private final AtomicReference<ShardSnapshot> snapshot;
+
+    // 串行化写入
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * @param shardCount 分片数
+     * @param pool       并行打分使用的线程池
+     */
+    public ShardedKnowledgeBase(String name, String description, VectorSearchConfig config,
+                                int shardCount, ForkJoinPool pool) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.name = name;
+        this.description = description;
+        this.config = config;
+        this.pool = pool;
+        this.snapshot = new AtomicReference<>(emptySnapshot(shardCount, 0));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String getType() {
+        return "VECTOR_SHARDED";
+    }
+
+    @Override
+    public SearchResult search(String query, int topK) {
+        return search(query, topK, null);
+    }
+
+    @Override
+    public SearchResult search(String query, int topK, Filter filter) {
+        long startTime = System.currentTimeMillis();
+
+        ShardSnapshot current = snapshot.get();
+        int docCount = current.statistics().getDocCount();
+        if (docCount == 0) {
+            log.warn("Knowledge base '{}' is empty", name);
+            return SearchResult.builder()
+                    .query(query)
+                    .documents(Collections.emptyList())
+                    .searchTimeMs(System.currentTimeMillis() - startTime)
+                    .knowledgeBaseName(name)
+                    .build();
+        }
+
+        try {
+            TokenBuffer queryTokens = QUERY_TOKENS.get();
+            queryTokens.clear();
+            config.getTokenizer().tokenize(query, queryTokens);
+            TermFrequencies queryTerms = current.shards()[0].queryTerms(queryTokens);
+
+            boolean parallel = docCount >= PARALLEL_THRESHOLD && current.shards().length > 1;
+            ShardSearchTask task = new ShardSearchTask(current.shards(), 0, current.shards().length,
+                    queryTerms, filter, topK, parallel);
+            List<Hit> hits = parallel ? pool.invoke(task) : task.compute();
+
+            List<SearchResult.ScoredDocument> topResults = new ArrayList<>(hits.size());
+            for (int i = 0; i < hits.size(); i++) {
+                topResults.add(SearchResult.ScoredDocument.builder()
+                        .document(hits.get(i).document())
+                        .score(hits.get(i).score())
+                        .rank(i + 1)
+                        .build());
+            }
+
+            long searchTime = System.currentTimeMillis() - startTime;
+            log.debug("Search across {} shards completed in {}ms, found {} results",
+                    current.shards().length, searchTime, topResults.size());
+
+            return SearchResult.builder()
+                    .query(query)
+                    .documents(topResults)
+                    .searchTimeMs(searchTime)
+                    .knowledgeBaseName(name)
+                    .build();
+
+        } catch (Exception e) {
+            log.error("Error searching knowledge base '{}'", name, e);
+            return SearchResult.builder()
+                    .query(query)
+                    .documents(Collections.emptyList())
+                    .searchTimeMs(System.currentTimeMillis() - startTime)
+                    .knowledgeBaseName(name)
+                    .build();
+        }
+    }
+
+    @Override
+    public void addDocument(Document document) {
+        if (document == null || document.getId() == null) {
+            throw new IllegalArgumentException("Document and document ID cannot be null");
+        }
+
+        update(shards -> {
+            shardFor(shards, document.getId()).add(document);
+            return true;
+        });
+        initialized = true;
+
+        log.debug("Added document '{}' to knowledge base '{}'", document.getId(), name);
+    }
+
+    @Override
+    public void addDocuments(List<Document> docs) {
+        if (docs == null || docs.isEmpty()) {
+            return;
+        }
+
+        // 分词在写锁之外完成（各分片使用相同的分词器）；
+        // 之后按原顺序逐个写入对应分片，文档向量计算时看到的全局统计量与不分片时相同
+        List<Document> valid = docs.stream().filter(doc -> doc != null && doc.getId() != null).toList();
+        List<TermFrequencies> terms = snapshot.get().shards()[0].analyze(valid);
+        update(shards -> {
+            for (int i = 0; i < valid.size(); i++) {
+                shardFor(shards, valid.get(i).getId()).add(valid.get(i), terms.get(i));
+            }
+            return true;
+        });
+        initialized = true;
+
+        log.info("Added {} documents to knowledge base '{}' across {} shards", docs.size(), name, getShardCount());
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return snapshot.get().statistics().getDocCount();
+    }
+
+    @Override
+    public Document getDocument(String id) {
+        return shardFor(snapshot.get().shards(), id).document(id);
+    }
+
+    @Override
+    public void deleteDocument(String id) {
+        // 文档不存在时无需复制索引
+        if (getDocument(id) == null) {
+            return;
+        }
+        if (update(shards -> shardFor(shards, id).remove(id))) {
+            log.debug("Deleted document '{}' from knowledge base '{}'", id, name);
+        }
+    }
+
+    @Override
+    public void clear() {
+        writeLock.lock();
+        try {
+            ShardSnapshot current = snapshot.get();
+            snapshot.set(emptySnapshot(current.shards().length, current.version() + 1));
+            initialized = false;
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("Cleared knowledge base '{}'", name);
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    @Override
+    public long getVersion() {
+        return snapshot.get().version();
+    }
+
+    public int getShardCount() {
+        return snapshot.get().shards().length;
+    }
+
+    /**
+     * 各分片的文档数
+     */
+    public int[] getShardSizes() {
+        InvertedIndex[] shards = snapshot.get().shards();
+        int[] sizes = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            sizes[i] = shards[i].size();
+        }
+        return sizes;
+    }
+
+    /**
+     * 复制所有分片并在副本上执行修改，修改成功时发布为新快照
+     *
+     * @param mutation 对分片副本的修改，返回是否有改动；没有改动时丢弃副本
+     * @return 是否发布了新快照
+     */
+    private boolean update(Predicate<InvertedIndex[]> mutation) {
+        writeLock.lock();
+        try {
+            ShardSnapshot current = snapshot.get();
+            InvertedIndex[] next = new InvertedIndex[current.shards().length];
+            ShardStatistics statistics = new ShardStatistics(next);
+            for (int i = 0; i < next.length; i++) {
+                next[i] = current.shards()[i].copy(statistics);
+            }
+            if (!mutation.test(next)) {
+                return false;
+            }
+            refreshVectorsIfDrifted(next);
+            snapshot.set(new ShardSnapshot(next, statistics, current.version() + 1));
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 按全局的IDF漂移决定是否刷新所有分片的文档向量，与不分片时的刷新时机一致
+     */
+    private void refreshVectorsIfDrifted(InvertedIndex[] shards) {
+        long changes = 0;
+        long vectorsDocCount = 0;
+        for (InvertedIndex shard : shards) {
+            changes += shard.getChangesSinceVectorRefresh();
+            vectorsDocCount += shard.getVectorsDocCount();
+        }
+        if (changes == 0 || (double) changes / Math.max(vectorsDocCount, 1) <= config.getIdfDriftThreshold()) {
+            return;
+        }
+        for (InvertedIndex shard : shards) {
+            shard.refreshVectors();
+        }
+    }
+
+    private ShardSnapshot emptySnapshot(int shardCount, long version) {
+        InvertedIndex[] shards = new InvertedIndex[shardCount];
+        ShardStatistics statistics = new ShardStatistics(shards);
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new InvertedIndex(config).copy(statistics);
+        }
+        return new ShardSnapshot(shards, statistics, version);
+    }
+
+    private static InvertedIndex shardFor(InvertedIndex[] shards, String docId) {
+        int h = docId.hashCode();
+        return shards[Math.floorMod(h ^ (h >>> 16), shards.length)];
+    }
+
+    /**
+     * 归并两个按分数降序排列的结果，最多保留 topK 个
+     */
+    private static List<Hit> merge(List<Hit> a, List<Hit> b, int topK) {
+        List<Hit> merged = new ArrayList<>(Math.min(a.size() + b.size(), topK));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < topK && (i < a.size() || j < b.size())) {
+            if (j == b.size() || (i < a.size() && a.get(i).score() >= b.get(j).score())) {
+                merged.add(a.get(i++));
+            } else {
+                merged.add(b.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 对 [from, to) 范围内的分片打分：范围内多于一个分片时对半拆分（并行时fork其中一半），再归并两半的TopK
+     */
+    private static final class ShardSearchTask extends RecursiveTask<List<Hit>> {
+
+        private final InvertedIndex[] shards;
+        private final int from;
+        private final int to;
+        private final TermFrequencies query;
+        private final Filter filter;
+        private final int topK;
+        private final boolean parallel;
+
+        ShardSearchTask(InvertedIndex[] shards, int from, int to, TermFrequencies query, Filter filter, int topK,
+                        boolean parallel) {
+            this.shards = shards;
+            this.from = from;
+            this.to = to;
+            this.query = query;
+            this.filter = filter;
+            this.topK = topK;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected List<Hit> compute() {
+            if (to - from == 1) {
+                return searchShard(shards[from]);
+            }
+            int mid = (from + to) >>> 1;
+            ShardSearchTask left = new ShardSearchTask(shards, from, mid, query, filter, topK, parallel);
+            ShardSearchTask right = new ShardSearchTask(shards, mid, to, query, filter, topK, parallel);
+            if (!parallel) {
+                return merge(left.compute(), right.compute(), topK);
+            }
+            left.fork();
+            List<Hit> rightHits = right.compute();
+            return merge(left.join(), rightHits, topK);
+        }
+
+        private List<Hit> searchShard(InvertedIndex shard) {
+            TopKHeap heap = TOP_K.get();
+            heap.reset(topK);
+            shard.search(query, filter, CANDIDATES.get(), heap);
+            heap.sortDescending();
+            List<Hit> hits = new ArrayList<>(heap.size());
+            for (int i = 0; i < heap.size(); i++) {
+                hits.add(new Hit(shard.document(heap.id(i)), heap.score(i)));
+            }
+            return hits;
+        }
+    }
+
+    /**
+     * 汇总一组分片的全局语料统计量
+     */
+    private static final class ShardStatistics implements CorpusStatistics {
+
+        private final InvertedIndex[] shards;
+
+        ShardStatistics(InvertedIndex[] shards) {
+            this.shards = shards;
+        }
+
+        @Override
+        public int getDocCount() {
+            int total = 0;
+            for (InvertedIndex shard : shards) {
+                total += shard.getDocCount();
+            }
+            return total;
+        }
+
+        @Override
+        public long getTotalLength() {
+            long total = 0;
+            for (InvertedIndex shard : shards) {
+                total += shard.getTotalLength();
+            }
+            return total;
+        }
+
+        @Override
+        public int getDocFreq(int termId) {
+            int total = 0;
+            for (InvertedIndex shard : shards) {
+                total += shard.getDocFreq(termId);
+            }
+            return total;
+        }
+    }
+
+    private record Hit(Document document, float score) {
+    }
+
+    /**
+     * 不可变的分片快照、其全局统计量及数据版本号
+     */
+    private record ShardSnapshot(InvertedIndex[] shards, ShardStatistics statistics, long version) {
+    }
+}
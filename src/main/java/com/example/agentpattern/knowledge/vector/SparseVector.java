@@ -0,0 +1,133 @@
+package com.example.agentpattern.knowledge.vector;
+
+import java.util.Arrays;
+
+/**
+ * 稀疏向量
+ * 只保存非零项：按词项ID递增排列的 int 下标 + float 权重，模长在构造时预先计算。
+ * 点积通过有序合并完成，代价与非零项数量成正比，而不是词汇表大小。
+ * <p>
+ * 不可变，可在线程间共享。
+ */
+public final class SparseVector {
+
+    public static final SparseVector EMPTY = new SparseVector(new int[0], new float[0]);
+
+    /**
+     * 两个向量长度相差超过该倍数时，改用二分查找代替线性合并
+     */
+    private static final int GALLOP_RATIO = 8;
+
+    private final int[] indices;
+    private final float[] values;
+    private final double norm;
+
+    private SparseVector(int[] indices, float[] values) {
+        this.indices = indices;
+        this.values = values;
+        double sum = 0.0;
+        for (float v : values) {
+            sum += (double) v * v;
+        }
+        this.norm = Math.sqrt(sum);
+    }
+
+    /**
+     * 创建稀疏向量
+     *
+     * @param indices 严格递增的下标（数组归新向量所有，调用方不应再修改）
+     * @param values  对应的权重
+     */
+    public static SparseVector of(int[] indices, float[] values) {
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException("Indices and values must have the same length");
+        }
+        for (int i = 1; i < indices.length; i++) {
+            if (indices[i] <= indices[i - 1]) {
+                throw new IllegalArgumentException("Indices must be strictly increasing");
+            }
+        }
+        return indices.length == 0 ? EMPTY : new SparseVector(indices, values);
+    }
+
+    /**
+     * 非零项数量
+     */
+    public int size() {
+        return indices.length;
+    }
+
+    public int index(int i) {
+        return indices[i];
+    }
+
+    public float value(int i) {
+        return values[i];
+    }
+
+    /**
+     * 预先计算的L2模长
+     */
+    public double norm() {
+        return norm;
+    }
+
+    /**
+     * 点积
+     */
+    public double dot(SparseVector other) {
+        if (other == null || indices.length == 0 || other.indices.length == 0) {
+            return 0.0;
+        }
+
+        SparseVector small = indices.length <= other.indices.length ? this : other;
+        SparseVector large = small == this ? other : this;
+        if (large.indices.length / small.indices.length >= GALLOP_RATIO) {
+            return small.dotBySearch(large);
+        }
+
+        double sum = 0.0;
+        int i = 0;
+        int j = 0;
+        while (i < indices.length && j < other.indices.length) {
+            int a = indices[i];
+            int b = other.indices[j];
+            if (a == b) {
+                sum += (double) values[i++] * other.values[j++];
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 在较长的向量中逐个二分查找本向量的下标，适用于短查询向量与长文档向量
+     */
+    private double dotBySearch(SparseVector large) {
+        double sum = 0.0;
+        int from = 0;
+        for (int i = 0; i < indices.length && from < large.indices.length; i++) {
+            int pos = Arrays.binarySearch(large.indices, from, large.indices.length, indices[i]);
+            if (pos >= 0) {
+                sum += (double) values[i] * large.values[pos];
+                from = pos + 1;
+            } else {
+                from = -pos - 1;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 余弦相似度
+     */
+    public double cosine(SparseVector other) {
+        if (other == null || norm == 0.0 || other.norm == 0.0) {
+            return 0.0;
+        }
+        return dot(other) / (norm * other.norm);
+    }
+}
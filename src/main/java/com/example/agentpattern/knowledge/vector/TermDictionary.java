@@ -0,0 +1,172 @@
+package com.example.agentpattern.knowledge.vector;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 全局词项字典
+ * 词项 -> int ID 的映射，所有知识库共享，使倒排列表、向量和词项统计都可以使用原始 int 作为键。
+ * <ul>
+ *     <li>只追加：ID一经分配永不改变或回收</li>
+ *     <li>读无锁：查找只读取 volatile 发布的数组，可与写入并发执行</li>
+ *     <li>写串行：新增词项在对象锁内完成</li>
+ * </ul>
+ * 支持直接按字符区间查找，查询路径上无需为词项创建字符串。
+ */
+public final class TermDictionary {
+
+    private static final TermDictionary GLOBAL = new TermDictionary();
+
+    /**
+     * 开放寻址哈希表，槽位保存 ID + 1，0 表示空槽
+     */
+    private volatile AtomicIntegerArray slots = new AtomicIntegerArray(1024);
+
+    /**
+     * ID -> 词项
+     */
+    private volatile String[] terms = new String[512];
+
+    /**
+     * 已分配的词项数量，只在锁内修改
+     */
+    private volatile int size;
+
+    /**
+     * 所有知识库共享的字典
+     */
+    public static TermDictionary global() {
+        return GLOBAL;
+    }
+
+    /**
+     * 查找词项ID，不存在时返回 -1（无锁）
+     */
+    public int lookup(char[] chars, int offset, int length) {
+        AtomicIntegerArray table = slots;
+        int mask = table.length() - 1;
+        for (int i = hash(chars, offset, length) & mask; ; i = (i + 1) & mask) {
+            int slot = table.get(i);
+            if (slot == 0) {
+                return -1;
+            }
+            if (matches(terms[slot - 1], chars, offset, length)) {
+                return slot - 1;
+            }
+        }
+    }
+
+    /**
+     * 查找词项ID，不存在时返回 -1（无锁）
+     */
+    public int lookup(String term) {
+        return lookup(term.toCharArray(), 0, term.length());
+    }
+
+    /**
+     * 查找词项ID，不存在时分配新ID
+     */
+    public int getOrAdd(char[] chars, int offset, int length) {
+        int id = lookup(chars, offset, length);
+        if (id >= 0) {
+            return id;
+        }
+        synchronized (this) {
+            // 持锁后重新查找，可能已被其他线程添加或表已扩容
+            id = lookup(chars, offset, length);
+            if (id >= 0) {
+                return id;
+            }
+            return add(new String(chars, offset, length));
+        }
+    }
+
+    /**
+     * 查找词项ID，不存在时分配新ID
+     */
+    public int getOrAdd(String term) {
+        return getOrAdd(term.toCharArray(), 0, term.length());
+    }
+
+    /**
+     * 根据ID获取词项
+     */
+    public String term(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown term id: " + id);
+        }
+        return terms[id];
+    }
+
+    /**
+     * 已分配的词项数量
+     */
+    public int size() {
+        return size;
+    }
+
+    private int add(String term) {
+        int id = size;
+        String[] currentTerms = terms;
+        if (id == currentTerms.length) {
+            currentTerms = Arrays.copyOf(currentTerms, id * 2);
+        }
+        currentTerms[id] = term;
+        // 先发布词项数组和数量，再写入槽位：读线程看到槽位后必然能看到对应的词项
+        terms = currentTerms;
+
+        size = id + 1;
+
+        AtomicIntegerArray table = slots;
+        if ((id + 1) * 2 > table.length()) {
+            table = rehash(table.length() * 2, id);
+        }
+        insert(table, term, id);
+        slots = table;
+        return id;
+    }
+
+    private AtomicIntegerArray rehash(int capacity, int count) {
+        AtomicIntegerArray table = new AtomicIntegerArray(capacity);
+        for (int id = 0; id < count; id++) {
+            insert(table, terms[id], id);
+        }
+        return table;
+    }
+
+    private static void insert(AtomicIntegerArray table, String term, int id) {
+        int mask = table.length() - 1;
+        int i = spread(term.hashCode()) & mask;
+        while (table.get(i) != 0) {
+            i = (i + 1) & mask;
+        }
+        table.set(i, id + 1);
+    }
+
+    /**
+     * 与 {@link String#hashCode()} 一致的哈希值
+     */
+    private static int hash(char[] chars, int offset, int length) {
+        int h = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        return spread(h);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String term, char[] chars, int offset, int length) {
+        if (term.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (term.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.agentpattern.knowledge.vector;
+
+import java.util.Arrays;
+
+/**
+ * 一段文本的词频表
+ * 按词项ID递增排列的 (词项ID, 词频)，由分词结果通过 {@link TermDictionary} 解析得到。
+ */
+public final class TermFrequencies {
+
+    private final int[] termIds;
+    private final int[] freqs;
+    private final int tokenCount;
+
+    private TermFrequencies(int[] termIds, int[] freqs, int tokenCount) {
+        this.termIds = termIds;
+        this.freqs = freqs;
+        this.tokenCount = tokenCount;
+    }
+
+    /**
+     * 统计分词结果的词频
+     *
+     * @param tokens      分词结果
+     * @param dictionary  词项字典
+     * @param addMissing  是否为字典中不存在的词项分配ID；为false时忽略这些词项（但仍计入总词数）
+     */
+    public static TermFrequencies of(TokenBuffer tokens, TermDictionary dictionary, boolean addMissing) {
+        int[] ids = new int[tokens.size()];
+        int n = 0;
+        char[] chars = tokens.chars();
+        for (int i = 0; i < tokens.size(); i++) {
+            int id = addMissing
+                    ? dictionary.getOrAdd(chars, tokens.start(i), tokens.length(i))
+                    : dictionary.lookup(chars, tokens.start(i), tokens.length(i));
+            if (id >= 0) {
+                ids[n++] = id;
+            }
+        }
+        Arrays.sort(ids, 0, n);
+
+        // 对有序ID做游程编码
+        int unique = 0;
+        int[] freqs = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (unique > 0 && ids[unique - 1] == ids[i]) {
+                freqs[unique - 1]++;
+            } else {
+                ids[unique] = ids[i];
+                freqs[unique] = 1;
+                unique++;
+            }
+        }
+        return new TermFrequencies(Arrays.copyOf(ids, unique), Arrays.copyOf(freqs, unique), tokens.size());
+    }
+
+    /**
+     * 不同词项的数量
+     */
+    public int size() {
+        return termIds.length;
+    }
+
+    public int termId(int i) {
+        return termIds[i];
+    }
+
+    public int freq(int i) {
+        return freqs[i];
+    }
+
+    /**
+     * 原文的总词数（含字典中不存在的词项）
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    int[] termIds() {
+        return termIds;
+    }
+
+    int[] freqs() {
+        return freqs;
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.agentpattern.knowledge.vector;
 
+import com.example.agentpattern.util.VectorKernels;
+
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -38,31 +40,57 @@ public class TextSimilarity {
     }
 
     /**
-     * 将文本转换为TF-IDF向量
+     * 计算稠密float向量的余弦相似度（SIMD加速，见 {@link VectorKernels}）。
+     * 重复比较同一批向量时应预先计算范数并调用 {@link VectorKernels#cosine(float[], float, float[], float)}
      */
-    public static double[] textToTfidfVector(String text, List<String> corpus) {
+    public static double cosineSimilarity(float[] vector1, float[] vector2) {
+        if (vector1 == null || vector2 == null) {
+            return 0.0;
+        }
+        return VectorKernels.cosine(vector1, vector2);
+    }
+
+    /**
+     * 计算稀疏向量的余弦相似度
+     */
+    public static double cosineSimilarity(SparseVector vector1, SparseVector vector2) {
+        if (vector1 == null || vector2 == null) {
+            return 0.0;
+        }
+        return vector1.cosine(vector2);
+    }
+
+    /**
+     * 将文本转换为TF-IDF稀疏向量
+     * 词项ID为该词在语料库词汇表（按字典序排列）中的位置，只保存文本中出现的词项
+     */
+    public static SparseVector textToTfidfVector(String text, List<String> corpus) {
         // 分词
         List<String> tokens = tokenize(text);
-        Set<String> uniqueTokens = new HashSet<>(tokens);
+        SortedSet<String> uniqueTokens = new TreeSet<>(tokens);
 
         // 构建词汇表
-        Set<String> vocabulary = new HashSet<>();
+        SortedSet<String> vocabulary = new TreeSet<>();
         for (String doc : corpus) {
             vocabulary.addAll(tokenize(doc));
         }
-
         List<String> vocabList = new ArrayList<>(vocabulary);
-        double[] vector = new double[vocabList.size()];
 
-        // 计算TF-IDF
-        for (int i = 0; i < vocabList.size(); i++) {
-            String term = vocabList.get(i);
-            double tf = termFrequency(term, tokens);
-            double idf = inverseDocumentFrequency(term, corpus);
-            vector[i] = tf * idf;
+        // 只计算文本中出现的词项的TF-IDF，两个集合都有序，因此下标递增
+        int[] indices = new int[uniqueTokens.size()];
+        float[] values = new float[uniqueTokens.size()];
+        int n = 0;
+        for (String term : uniqueTokens) {
+            int index = Collections.binarySearch(vocabList, term);
+            if (index < 0) {
+                continue;
+            }
+            indices[n] = index;
+            values[n] = (float) (termFrequency(term, tokens) * inverseDocumentFrequency(term, corpus));
+            n++;
         }
 
-        return vector;
+        return SparseVector.of(Arrays.copyOf(indices, n), Arrays.copyOf(values, n));
     }
 
     /**
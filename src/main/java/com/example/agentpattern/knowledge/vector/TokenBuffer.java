@@ -0,0 +1,194 @@
+package com.example.agentpattern.knowledge.vector;
+
+import java.util.Arrays;
+
+/**
+ * 可复用的词项缓冲区
+ * 所有词项的字符连续存放在一个 char 数组中，通过起始偏移区分，
+ * 清空后可重复使用而无需重新分配内存。
+ * <p>
+ * {@link Tokenizer} 实现通过 {@link #begin()}、{@link #append(char)}、{@link #commit()} 逐字符写入词项，
+ * 可用 {@link #rollback()} 放弃正在写入的词项；也可用 {@link #add(CharSequence, int, int)} 一次写入整个词项。
+ * 开始新词项时会丢弃未提交的字符，因此已提交的词项不会受未完成的写入影响。
+ * <p>
+ * 非线程安全，每个线程应使用自己的实例。
+ */
+public final class TokenBuffer {
+
+    private char[] chars;
+    private int[] starts;
+    private int count;
+    private int length;
+
+    /**
+     * 正在写入的词项的起始位置，-1 表示当前没有正在写入的词项
+     */
+    private int pending = -1;
+
+    public TokenBuffer() {
+        this(256, 32);
+    }
+
+    public TokenBuffer(int charCapacity, int tokenCapacity) {
+        this.chars = new char[Math.max(charCapacity, 16)];
+        this.starts = new int[Math.max(tokenCapacity, 4) + 1];
+    }
+
+    /**
+     * 清空缓冲区，保留已分配的容量
+     */
+    public void clear() {
+        count = 0;
+        length = 0;
+        pending = -1;
+    }
+
+    /**
+     * 词项数量
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 第 i 个词项的长度
+     */
+    public int length(int i) {
+        return starts[i + 1] - starts[i];
+    }
+
+    /**
+     * 第 i 个词项的第 j 个字符
+     */
+    public char charAt(int i, int j) {
+        return chars[starts[i] + j];
+    }
+
+    /**
+     * 底层字符数组，第 i 个词项位于 [start(i), start(i) + length(i))
+     */
+    public char[] chars() {
+        return chars;
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    /**
+     * 与 {@link String#hashCode()} 相同的哈希值，无需创建字符串
+     */
+    public int hash(int i) {
+        int h = 0;
+        for (int p = starts[i], end = starts[i + 1]; p < end; p++) {
+            h = 31 * h + chars[p];
+        }
+        return h;
+    }
+
+    /**
+     * 第 i 个词项是否与给定字符串相同
+     */
+    public boolean contentEquals(int i, String term) {
+        int len = length(i);
+        if (term.length() != len) {
+            return false;
+        }
+        int offset = starts[i];
+        for (int j = 0; j < len; j++) {
+            if (chars[offset + j] != term.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 第 i 个词项是否与第 j 个词项相同
+     */
+    public boolean contentEquals(int i, int j) {
+        int len = length(i);
+        if (length(j) != len) {
+            return false;
+        }
+        return Arrays.equals(chars, starts[i], starts[i] + len, chars, starts[j], starts[j] + len);
+    }
+
+    /**
+     * 将第 i 个词项转换为字符串（会分配内存）
+     */
+    public String toString(int i) {
+        return new String(chars, starts[i], length(i));
+    }
+
+    /**
+     * 开始一个新词项，未提交的字符被丢弃
+     */
+    public void begin() {
+        length = starts[count];
+        pending = length;
+    }
+
+    /**
+     * 向正在写入的词项追加字符
+     */
+    public void append(char c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        chars[length++] = c;
+    }
+
+    /**
+     * 结束正在写入的词项
+     *
+     * @throws IllegalStateException 没有正在写入的词项
+     */
+    public void commit() {
+        if (pending < 0) {
+            throw new IllegalStateException("commit() without begin()");
+        }
+        if (count + 1 == starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+        }
+        starts[count] = pending;
+        starts[++count] = length;
+        pending = -1;
+    }
+
+    /**
+     * 放弃正在写入的词项
+     */
+    public void rollback() {
+        if (pending < 0) {
+            return;
+        }
+        length = pending;
+        pending = -1;
+    }
+
+    /**
+     * 是否有正在写入的词项
+     */
+    public boolean inToken() {
+        return pending >= 0;
+    }
+
+    /**
+     * 正在写入的词项的当前长度
+     */
+    public int pendingLength() {
+        return length - pending;
+    }
+
+    /**
+     * 写入整个词项 text[start, end)
+     */
+    public void add(CharSequence text, int start, int end) {
+        begin();
+        for (int i = start; i < end; i++) {
+            append(text.charAt(i));
+        }
+        commit();
+    }
+}
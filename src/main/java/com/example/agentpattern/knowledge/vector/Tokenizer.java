@@ -0,0 +1,20 @@
+package com.example.agentpattern.knowledge.vector;
+
+/**
+ * 分词器接口
+ * 将文本切分为词项并追加到可复用的 {@link TokenBuffer} 中，
+ * 实现应避免为每个词项创建中间字符串。
+ * <p>
+ * 任何包中的实现都可以通过 {@link TokenBuffer} 的公开写入方法输出词项（begin/append/commit 或 add），
+ * 经 {@link VectorSearchConfig#getTokenizer()} 配置后索引和查询使用同一个分词器。
+ */
+public interface Tokenizer {
+
+    /**
+     * 对文本分词，词项追加到 buffer 末尾（不会先清空 buffer）
+     *
+     * @param text   待分词文本，为null时不产生词项
+     * @param buffer 输出缓冲区
+     */
+    void tokenize(CharSequence text, TokenBuffer buffer);
+}
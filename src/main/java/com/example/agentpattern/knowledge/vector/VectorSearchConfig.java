@@ -0,0 +1,60 @@
+package com.example.agentpattern.knowledge.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 向量知识库检索配置
+ * 每个知识库可以单独配置
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VectorSearchConfig {
+
+    /**
+     * 分词器，索引和查询使用同一个分词器
+     */
+    @Builder.Default
+    private Tokenizer tokenizer = CjkBigramTokenizer.INSTANCE;
+
+    /**
+     * 文档向量缓存允许的最大IDF漂移（自上次计算以来增删的文档占比），超过后重新计算所有文档向量
+     */
+    @Builder.Default
+    private double idfDriftThreshold = 0.1;
+
+    /**
+     * BM25词频饱和参数 k1
+     */
+    @Builder.Default
+    private double bm25K1 = 1.5;
+
+    /**
+     * BM25文档长度归一化参数 b
+     */
+    @Builder.Default
+    private double bm25B = 0.75;
+
+    /**
+     * 融合打分中TF-IDF余弦相似度的权重，BM25的权重为 1 - vectorWeight
+     */
+    @Builder.Default
+    private double vectorWeight = 0.6;
+
+    /**
+     * BM25分数的饱和值，融合前按 min(bm25 / bm25Saturation, 1) 归一化
+     */
+    @Builder.Default
+    private double bm25Saturation = 10.0;
+
+    /**
+     * 默认配置
+     */
+    public static VectorSearchConfig defaults() {
+        return VectorSearchConfig.builder().build();
+    }
+}
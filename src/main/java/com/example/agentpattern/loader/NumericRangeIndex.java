@@ -0,0 +1,146 @@
+package com.example.agentpattern.loader;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 数值属性的范围索引
+ * 按产品序号保存属性值的列，并把有值的产品按属性值排序，范围查询用两次二分查找定位，
+ * 耗时与命中的产品数成正比而与目录大小无关。
+ * <p>
+ * 建立后不可变。
+ */
+final class NumericRangeIndex {
+
+    /**
+     * 按产品序号的属性值，没有值时为 NaN
+     */
+    private final double[] values;
+
+    /**
+     * 有值的产品的属性值（升序）及对应的产品序号
+     */
+    private final double[] sortedValues;
+    private final int[] sortedOrds;
+
+    NumericRangeIndex(double[] values) {
+        this.values = values;
+        Integer[] order = new Integer[values.length];
+        int present = 0;
+        for (int ord = 0; ord < values.length; ord++) {
+            if (!Double.isNaN(values[ord])) {
+                order[present++] = ord;
+            }
+        }
+        Arrays.sort(order, 0, present, Comparator.comparingDouble(ord -> values[ord]));
+        this.sortedValues = new double[present];
+        this.sortedOrds = new int[present];
+        for (int i = 0; i < present; i++) {
+            sortedOrds[i] = order[i];
+            sortedValues[i] = values[order[i]];
+        }
+    }
+
+    /**
+     * 由快照文件中保存的列建立，不再排序
+     *
+     * @param sortedOrds 有值的产品序号，按属性值升序
+     */
+    NumericRangeIndex(double[] values, int[] sortedOrds) {
+        this.values = values;
+        this.sortedOrds = sortedOrds;
+        this.sortedValues = new double[sortedOrds.length];
+        for (int i = 0; i < sortedOrds.length; i++) {
+            sortedValues[i] = values[sortedOrds[i]];
+        }
+    }
+
+    /**
+     * 产品的属性值，没有值时为 NaN
+     */
+    double value(int ord) {
+        return values[ord];
+    }
+
+    /**
+     * 有值的产品数
+     */
+    int size() {
+        return sortedOrds.length;
+    }
+
+    /**
+     * 按属性值升序的第 i 个有值的产品序号
+     */
+    int ordAt(int i) {
+        return sortedOrds[i];
+    }
+
+    /**
+     * 产品的属性值是否在 [min, max] 内，没有值时为false
+     */
+    boolean contains(int ord, Double min, Double max) {
+        double value = values[ord];
+        return !Double.isNaN(value) && (min == null || value >= min) && (max == null || value <= max);
+    }
+
+    /**
+     * 属性值在 [min, max] 内的产品数
+     */
+    int count(Double min, Double max) {
+        int from = min == null ? 0 : lowerBound(min);
+        int to = max == null ? sortedValues.length : upperBound(max);
+        return Math.max(0, to - from);
+    }
+
+    /**
+     * 属性值在 [min, max] 内的产品序号（升序）
+     *
+     * @param min 下界（含），null 表示不限
+     * @param max 上界（含），null 表示不限
+     */
+    int[] range(Double min, Double max) {
+        int from = min == null ? 0 : lowerBound(min);
+        int to = max == null ? sortedValues.length : upperBound(max);
+        if (from >= to) {
+            return new int[0];
+        }
+        int[] ords = Arrays.copyOfRange(sortedOrds, from, to);
+        Arrays.sort(ords);
+        return ords;
+    }
+
+    /**
+     * 第一个不小于 value 的位置
+     */
+    private int lowerBound(double value) {
+        int lo = 0;
+        int hi = sortedValues.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedValues[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 第一个大于 value 的位置
+     */
+    private int upperBound(double value) {
+        int lo = 0;
+        int hi = sortedValues.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedValues[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
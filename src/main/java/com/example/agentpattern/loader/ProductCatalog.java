@@ -0,0 +1,900 @@
+package com.example.agentpattern.loader;
+
+import com.example.agentpattern.model.ProductAttribute;
+import com.example.agentpattern.model.ProductInfo;
+import com.example.agentpattern.model.ProductQuery;
+import com.example.agentpattern.model.ProductSearchResult;
+import com.example.agentpattern.util.TopKHeap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 产品目录及其索引
+ * 加载时一次性建立：按ID的哈希表、按品牌和类别的分组，以及可检索字段（名称、品牌、类别、标签、特性、描述）
+ * 预先转为小写后的字符 n-gram 倒排索引（单字和相邻二元组 → 产品序号的有序数组）。
+ * <p>
+ * 关键词包含的每个二元组都必须出现在产品的某个字段中，因此先求各二元组倒排列表的交集得到候选，
+ * 再只对候选用预先小写的字段做子串匹配和打分；单个关键词的结果与逐个调用 {@link ProductInfo#matchScore} 完全一致，
+ * 查询期间不为任何产品分配对象。
+ * <p>
+ * 价格和数值规格（{@link ProductAttribute}）在建立时解析为按产品序号的 double 列，并各自建立 {@link NumericRangeIndex}；
+ * 结构化查询（{@link ProductQuery}）从关键词候选或最有选择性的条件得到的有序产品序号出发，逐个产品检查其余条件，
+ * 同时统计品牌、类别、价格区间的分面计数。
+ * <p>
+ * 每个产品数据文件建立一个目录作为段，由 {@link ProductCatalogSnapshot} 组合，文件变化时只需重建对应的段。
+ * <p>
+ * 建立后不可变，可被多个线程同时查询；调用方不应再修改传入的 {@link ProductInfo}。
+ */
+public final class ProductCatalog {
+
+    private static final int[] EMPTY = new int[0];
+    private static final Pattern TERM_SEPARATOR = Pattern.compile("[\\s,，、;；]+");
+
+    /**
+     * 价格分面的区间边界（元）
+     */
+    private static final double[] PRICE_BANDS = {500, 1000, 2000, 5000, 10000};
+
+    private final ProductInfo[] products;
+    private final List<ProductInfo> productList;
+    private final Map<String, ProductInfo> byId;
+    private final Map<String, List<ProductInfo>> byBrand;
+    private final Map<String, int[]> ordsByLowerBrand;
+    private final List<String> brands;
+    private final List<String> categories;
+
+    /**
+     * 每个产品的品牌在 {@link #brands} 中的位置，没有品牌时为 -1
+     */
+    private final int[] brandOrds;
+
+    /**
+     * 每个产品的类别在 {@link #categories} 中的位置，没有类别时为 -1
+     */
+    private final int[] categoryOrds;
+    private final String[] lowerCategories;
+    private final int[][] ordsByCategory;
+
+    private final Map<ProductAttribute, NumericRangeIndex> numericIndexes = new EnumMap<>(ProductAttribute.class);
+
+    // 预先小写的可检索字段，按产品序号存放
+    private final String[] names;
+    private final String[] lowerBrands;
+    private final String[] descriptions;
+    private final String[][] tags;
+    private final String[][] features;
+
+    // 字符 n-gram 倒排索引：有序的 n-gram 键及对应的产品序号（升序）
+    private final int[] unigramKeys;
+    private final int[][] unigramPostings;
+    private final int[] bigramKeys;
+    private final int[][] bigramPostings;
+
+    public ProductCatalog(List<ProductInfo> products) {
+        this(products, null);
+    }
+
+    /**
+     * @param index 从快照文件读出的 n-gram 和数值索引，为null时由产品建立
+     */
+    ProductCatalog(List<ProductInfo> products, Index index) {
+        int n = products.size();
+        this.products = products.toArray(new ProductInfo[0]);
+        this.productList = Collections.unmodifiableList(Arrays.asList(this.products));
+        this.names = new String[n];
+        this.lowerBrands = new String[n];
+        this.descriptions = new String[n];
+        this.tags = new String[n][];
+        this.features = new String[n][];
+        this.brandOrds = new int[n];
+        this.categoryOrds = new int[n];
+
+        Map<String, ProductInfo> ids = new HashMap<>(n * 2);
+        Map<String, List<ProductInfo>> groups = new LinkedHashMap<>();
+        Map<String, List<Integer>> lowerBrandOrds = new HashMap<>();
+        Map<String, Integer> brandIndex = new HashMap<>();
+        Map<String, Integer> categoryIndex = new LinkedHashMap<>();
+        Map<ProductAttribute, double[]> numericValues = new EnumMap<>(ProductAttribute.class);
+        if (index == null) {
+            for (ProductAttribute attribute : ProductAttribute.values()) {
+                numericValues.put(attribute, new double[n]);
+            }
+        }
+        GramCollector unigrams = new GramCollector();
+        GramCollector bigrams = new GramCollector();
+
+        for (int ord = 0; ord < n; ord++) {
+            ProductInfo product = this.products[ord];
+            if (product.getId() != null) {
+                // 与按加载顺序线性查找一致，重复ID以先加载的为准
+                ids.putIfAbsent(product.getId(), product);
+            }
+            if (product.getBrand() != null) {
+                groups.computeIfAbsent(product.getBrand(), k -> new ArrayList<>()).add(product);
+                lowerBrandOrds.computeIfAbsent(product.getBrand().toLowerCase(), k -> new ArrayList<>()).add(ord);
+            }
+            brandOrds[ord] = product.getBrand() == null
+                    ? -1
+                    : brandIndex.computeIfAbsent(product.getBrand(), k -> brandIndex.size());
+            categoryOrds[ord] = product.getCategory() == null
+                    ? -1
+                    : categoryIndex.computeIfAbsent(product.getCategory(), k -> categoryIndex.size());
+
+            for (Map.Entry<ProductAttribute, double[]> entry : numericValues.entrySet()) {
+                entry.getValue()[ord] = entry.getKey().parse(product);
+            }
+
+            names[ord] = lower(product.getName());
+            lowerBrands[ord] = lower(product.getBrand());
+            descriptions[ord] = lower(product.getDescription());
+            tags[ord] = lower(product.getTags());
+            features[ord] = lower(product.getFeatures());
+
+            if (index != null) {
+                continue;
+            }
+            unigrams.startProduct();
+            bigrams.startProduct();
+            String category = lower(product.getCategory());
+            for (String field : new String[]{names[ord], lowerBrands[ord], category, descriptions[ord]}) {
+                addGrams(field, unigrams, bigrams);
+            }
+            for (String tag : tags[ord]) {
+                addGrams(tag, unigrams, bigrams);
+            }
+            for (String feature : features[ord]) {
+                addGrams(feature, unigrams, bigrams);
+            }
+            unigrams.endProduct(ord);
+            bigrams.endProduct(ord);
+        }
+
+        this.byId = ids;
+        groups.replaceAll((brand, list) -> Collections.unmodifiableList(list));
+        this.byBrand = groups;
+        this.ordsByLowerBrand = new HashMap<>(lowerBrandOrds.size() * 2);
+        lowerBrandOrds.forEach((brand, ords) ->
+                ordsByLowerBrand.put(brand, ords.stream().mapToInt(Integer::intValue).toArray()));
+        this.brands = List.copyOf(groups.keySet());
+        this.categories = List.copyOf(categoryIndex.keySet());
+        this.lowerCategories = categories.stream().map(String::toLowerCase).toArray(String[]::new);
+        this.ordsByCategory = groupOrds(categoryOrds, categories.size());
+
+        if (index == null) {
+            numericValues.forEach((attribute, values) -> numericIndexes.put(attribute, new NumericRangeIndex(values)));
+            this.unigramKeys = unigrams.keys();
+            this.unigramPostings = unigrams.postings();
+            this.bigramKeys = bigrams.keys();
+            this.bigramPostings = bigrams.postings();
+        } else {
+            numericIndexes.putAll(index.numericIndexes());
+            this.unigramKeys = index.unigramKeys();
+            this.unigramPostings = index.unigramPostings();
+            this.bigramKeys = index.bigramKeys();
+            this.bigramPostings = index.bigramPostings();
+        }
+    }
+
+    /**
+     * 建立目录时计算量最大的部分：n-gram 倒排索引和从展示文本解析出的数值属性索引，
+     * 由 {@link ProductCatalogFile} 写入快照文件，读回后直接用于建立目录
+     */
+    record Index(int[] unigramKeys, int[][] unigramPostings, int[] bigramKeys, int[][] bigramPostings,
+                 Map<ProductAttribute, NumericRangeIndex> numericIndexes) {
+    }
+
+    Index index() {
+        return new Index(unigramKeys, unigramPostings, bigramKeys, bigramPostings, numericIndexes);
+    }
+
+    /**
+     * 按加载顺序排列的全部产品（只读）
+     */
+    public List<ProductInfo> products() {
+        return productList;
+    }
+
+    public int size() {
+        return products.length;
+    }
+
+    public ProductInfo get(int ord) {
+        return products[ord];
+    }
+
+    public ProductInfo getById(String id) {
+        return id == null ? null : byId.get(id);
+    }
+
+    /**
+     * 指定品牌（区分大小写）的产品，按加载顺序（只读）
+     */
+    public List<ProductInfo> getByBrand(String brand) {
+        return brand == null ? List.of() : byBrand.getOrDefault(brand, List.of());
+    }
+
+    /**
+     * 所有品牌，按首次出现的顺序
+     */
+    public List<String> brands() {
+        return brands;
+    }
+
+    /**
+     * 所有类别，按首次出现的顺序
+     */
+    public List<String> categories() {
+        return categories;
+    }
+
+    /**
+     * 产品的数值属性，无法从展示文本解析时为 {@link Double#NaN}
+     */
+    public double value(int ord, ProductAttribute attribute) {
+        return numericIndexes.get(attribute).value(ord);
+    }
+
+    /**
+     * 结构化查询：品牌、类别、数值范围和关键词同时满足的产品中相关度最高的 limit 个
+     * 没有关键词时按加载顺序返回满足条件的产品；多个关键词时先要求包含全部关键词，没有这样的产品时退而要求包含任一关键词。
+     * 分面计数统计的是全部匹配产品，而不只是返回的产品。
+     */
+    public ProductSearchResult search(ProductQuery query, int limit) {
+        return search(List.of(this), query, limit);
+    }
+
+    /**
+     * 在按顺序排列的多个目录段上执行结构化查询，结果与把各段的产品按顺序合并成一个目录后查询相同
+     * 各段共用一个有界堆（堆中的序号是产品在所有段中的全局序号），分面计数按品牌、类别名称合并。
+     */
+    static ProductSearchResult search(List<ProductCatalog> segments, ProductQuery query, int limit) {
+        String phrase = query.getKeywords() == null ? "" : query.getKeywords().toLowerCase().trim();
+        String[] terms = terms(phrase);
+
+        TopKHeap heap = new TopKHeap(limit);
+        Facets[] facets = new Facets[segments.size()];
+        int total = collect(segments, query, terms, phrase, true, heap, facets);
+        boolean partialMatch = false;
+        if (total == 0 && terms.length > 1) {
+            total = collect(segments, query, terms, phrase, false, heap, facets);
+            partialMatch = total > 0;
+        }
+
+        heap.sortDescending();
+        List<ProductInfo> result = new ArrayList<>(heap.size());
+        for (int i = 0; i < heap.size(); i++) {
+            int ord = heap.id(i);
+            int segment = 0;
+            while (ord >= segments.get(segment).size()) {
+                ord -= segments.get(segment++).size();
+            }
+            result.add(segments.get(segment).get(ord));
+        }
+        return ProductSearchResult.builder()
+                .products(result)
+                .totalMatches(total)
+                .partialMatch(partialMatch)
+                .facets(facetMap(facets))
+                .build();
+    }
+
+    private static int collect(List<ProductCatalog> segments, ProductQuery query, String[] terms, String phrase,
+                               boolean requireAll, TopKHeap heap, Facets[] facets) {
+        int total = 0;
+        int base = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            ProductCatalog segment = segments.get(i);
+            facets[i] = segment.new Facets();
+            Conditions conditions = segment.conditions(query.getBrand(), query.getCategory(), query.getRanges());
+            total += segment.collect(terms, phrase, requireAll, conditions, heap, base, facets[i]);
+            base += segment.size();
+        }
+        return total;
+    }
+
+    /**
+     * 按相关度检索，把匹配的产品序号和得分放入 heap
+     * 查询按空白和常见分隔符拆成多个关键词，每个关键词按字段加权打分后求和，
+     * 整个查询作为短语命中时再加上短语的得分；只有一个关键词时与 {@link ProductInfo#matchScore} 相同。
+     *
+     * @param query       搜索关键词，不能为空白
+     * @param requireAll  是否要求产品包含全部关键词，否则包含任一关键词即可
+     * @param heap        接收结果的有界堆
+     * @return 匹配的产品总数
+     */
+    public int search(String query, boolean requireAll, TopKHeap heap) {
+        String phrase = query.toLowerCase().trim();
+        String[] terms = terms(phrase);
+        int total = 0;
+        for (int ord : candidates(terms, requireAll)) {
+            float score = score(ord, terms, phrase, requireAll);
+            if (score > 0) {
+                total++;
+                heap.offer(ord, score);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 包含全部关键词的产品，按加载顺序
+     *
+     * @param query 搜索关键词，不能为空白
+     */
+    public List<ProductInfo> matches(String query) {
+        String phrase = query.toLowerCase().trim();
+        String[] terms = terms(phrase);
+        List<ProductInfo> result = new ArrayList<>();
+        for (int ord : candidates(terms, true)) {
+            if (score(ord, terms, phrase, true) > 0) {
+                result.add(products[ord]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 拆分已小写的查询，去掉重复的关键词
+     */
+    static String[] terms(String phrase) {
+        return Arrays.stream(TERM_SEPARATOR.split(phrase))
+                .filter(term -> !term.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    /**
+     * 按品牌（不区分大小写，完全匹配）和类别（不区分大小写，包含即可）过滤，为null的条件不限制
+     */
+    public List<ProductInfo> filter(String brand, String category) {
+        Conditions conditions = conditions(brand, category, Map.of());
+        if (conditions == null) {
+            return new ArrayList<>(productList);
+        }
+        List<ProductInfo> result = new ArrayList<>();
+        for (int ord : conditions.driver()) {
+            if (conditions.test(ord)) {
+                result.add(products[ord]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 品牌、类别和数值范围条件，没有任何条件时返回null（不限制）
+     */
+    private Conditions conditions(String brand, String category, Map<ProductAttribute, ProductQuery.Range> ranges) {
+        boolean hasBrand = brand != null && !brand.isBlank();
+        boolean hasCategory = category != null && !category.isBlank();
+        if (!hasBrand && !hasCategory && (ranges == null || ranges.isEmpty())) {
+            return null;
+        }
+        return new Conditions(hasBrand ? brand.trim().toLowerCase() : null,
+                hasCategory ? category.trim().toLowerCase() : null,
+                ranges == null ? Map.of() : ranges);
+    }
+
+    /**
+     * 在满足条件（为null时不限制）的产品中按关键词打分，放入 heap 并统计分面
+     * 有关键词时遍历关键词的候选并逐个检查条件，否则从条件中最有选择性的一个得到的产品序号开始遍历
+     *
+     * @param base 放入 heap 的序号相对产品序号的偏移
+     * @return 匹配的产品总数
+     */
+    private int collect(String[] terms, String phrase, boolean requireAll, Conditions conditions,
+                        TopKHeap heap, int base, Facets facets) {
+        int[] ords;
+        if (terms.length > 0) {
+            ords = candidates(terms, requireAll);
+        } else {
+            ords = conditions == null ? null : conditions.driver();
+        }
+
+        int n = ords == null ? products.length : ords.length;
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            int ord = ords == null ? i : ords[i];
+            if (conditions != null && !conditions.test(ord)) {
+                continue;
+            }
+            float score = terms.length == 0 ? 1f : score(ord, terms, phrase, requireAll);
+            if (score > 0) {
+                total++;
+                heap.offer(base + ord, score);
+                facets.count(ord);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 产品对各关键词的得分之和，多个关键词时加上整个短语的得分；要求全部命中而有关键词未命中时为0
+     */
+    private float score(int ord, String[] terms, String phrase, boolean requireAll) {
+        float score = 0f;
+        for (String term : terms) {
+            float termScore = score(ord, term);
+            if (termScore == 0f && requireAll) {
+                return 0f;
+            }
+            score += termScore;
+        }
+        if (terms.length > 1 && score > 0) {
+            score += score(ord, phrase);
+        }
+        return score;
+    }
+
+    /**
+     * 计算产品与单个已小写关键词的相关度，权重与 {@link ProductInfo#matchScore} 相同：
+     * 名称（含型号）最高，其次是品牌和类别，标签、特性和描述依次递减
+     */
+    private float score(int ord, String q) {
+        float score = 0f;
+
+        String name = names[ord];
+        if (name != null) {
+            if (name.equals(q)) {
+                score += 5f;
+            } else if (name.contains(q)) {
+                score += 3f;
+            }
+        }
+        if (lowerBrands[ord] != null && lowerBrands[ord].contains(q)) {
+            score += 2f;
+        }
+        if (categoryOrds[ord] >= 0 && lowerCategories[categoryOrds[ord]].contains(q)) {
+            score += 2f;
+        }
+        if (containsAny(tags[ord], q)) {
+            score += 1.5f;
+        }
+        if (containsAny(features[ord], q)) {
+            score += 1f;
+        }
+        if (descriptions[ord] != null && descriptions[ord].contains(q)) {
+            score += 0.5f;
+        }
+        return score;
+    }
+
+    /**
+     * 可能匹配的产品序号（升序）：要求全部关键词时取各关键词候选的交集，否则取并集
+     */
+    private int[] candidates(String[] terms, boolean requireAll) {
+        if (terms.length == 0) {
+            return EMPTY;
+        }
+        if (requireAll || terms.length == 1) {
+            List<int[]> lists = new ArrayList<>();
+            for (String term : terms) {
+                if (!addPostings(term, lists)) {
+                    return EMPTY;
+                }
+            }
+            return intersect(lists);
+        }
+
+        int[][] perTerm = new int[terms.length][];
+        int size = 0;
+        for (int i = 0; i < terms.length; i++) {
+            List<int[]> lists = new ArrayList<>();
+            perTerm[i] = addPostings(terms[i], lists) ? intersect(lists) : EMPTY;
+            size += perTerm[i].length;
+        }
+        int[] union = new int[size];
+        int offset = 0;
+        for (int[] ords : perTerm) {
+            System.arraycopy(ords, 0, union, offset, ords.length);
+            offset += ords.length;
+        }
+        Arrays.sort(union);
+        int count = 0;
+        for (int i = 0; i < union.length; i++) {
+            if (i == 0 || union[i] != union[i - 1]) {
+                union[count++] = union[i];
+            }
+        }
+        return Arrays.copyOf(union, count);
+    }
+
+    /**
+     * 加入包含关键词的产品必然出现在其中的倒排列表：单字关键词为该字的列表，否则为其每个二元组的列表
+     *
+     * @return 关键词的某个 n-gram 不在索引中（没有产品能匹配）时返回false
+     */
+    private boolean addPostings(String term, List<int[]> lists) {
+        if (term.length() == 1) {
+            int[] postings = postings(unigramKeys, unigramPostings, term.charAt(0));
+            lists.add(postings);
+            return postings.length > 0;
+        }
+        for (int i = 0; i + 1 < term.length(); i++) {
+            int[] postings = postings(bigramKeys, bigramPostings, bigram(term.charAt(i), term.charAt(i + 1)));
+            if (postings.length == 0) {
+                return false;
+            }
+            lists.add(postings);
+        }
+        return true;
+    }
+
+    /**
+     * 有序倒排列表的交集：遍历最短的列表，其余列表各用一个游标前进
+     */
+    private static int[] intersect(List<int[]> lists) {
+        lists.sort(Comparator.comparingInt(list -> list.length));
+        int[] result = lists.get(0).clone();
+        int count = result.length;
+        for (int j = 1; j < lists.size() && count > 0; j++) {
+            int[] list = lists.get(j);
+            if (list == lists.get(j - 1)) {
+                continue;
+            }
+            int kept = 0;
+            int cursor = 0;
+            for (int i = 0; i < count && cursor < list.length; i++) {
+                int ord = result[i];
+                while (cursor < list.length && list[cursor] < ord) {
+                    cursor++;
+                }
+                if (cursor < list.length && list[cursor] == ord) {
+                    result[kept++] = ord;
+                }
+            }
+            count = kept;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 两个有序产品序号数组的并集
+     */
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length || j < b.length) {
+            int next = j == b.length || (i < a.length && a[i] <= b[j]) ? a[i] : b[j];
+            if (i < a.length && a[i] == next) {
+                i++;
+            }
+            if (j < b.length && b[j] == next) {
+                j++;
+            }
+            result[count++] = next;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 按分组位置（-1 表示不属于任何分组）把产品序号分组，组内升序
+     */
+    private static int[][] groupOrds(int[] groupOfOrd, int groups) {
+        int[] sizes = new int[groups];
+        for (int group : groupOfOrd) {
+            if (group >= 0) {
+                sizes[group]++;
+            }
+        }
+        int[][] result = new int[groups][];
+        for (int g = 0; g < groups; g++) {
+            result[g] = new int[sizes[g]];
+            sizes[g] = 0;
+        }
+        for (int ord = 0; ord < groupOfOrd.length; ord++) {
+            int group = groupOfOrd[ord];
+            if (group >= 0) {
+                result[group][sizes[group]++] = ord;
+            }
+        }
+        return result;
+    }
+
+    private static int[] postings(int[] keys, int[][] postings, int key) {
+        int i = Arrays.binarySearch(keys, key);
+        return i >= 0 ? postings[i] : EMPTY;
+    }
+
+    private static int bigram(char first, char second) {
+        return (first << 16) | second;
+    }
+
+    private static void addGrams(String field, GramCollector unigrams, GramCollector bigrams) {
+        if (field == null) {
+            return;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            unigrams.add(field.charAt(i));
+            if (i + 1 < field.length()) {
+                bigrams.add(bigram(field.charAt(i), field.charAt(i + 1)));
+            }
+        }
+    }
+
+    private static boolean containsAny(String[] values, String q) {
+        for (String value : values) {
+            if (value.contains(q)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String lower(String value) {
+        return value == null ? null : value.toLowerCase();
+    }
+
+    private static String[] lower(List<String> values) {
+        if (values == null) {
+            return new String[0];
+        }
+        return values.stream().filter(v -> v != null).map(String::toLowerCase).toArray(String[]::new);
+    }
+
+    /**
+     * 一次查询的品牌、类别和数值范围条件
+     * 每个条件都能按产品序号在 O(1) 内检查（比较预先小写的品牌、查类别允许表、读数值列），
+     * 也能给出满足它的产品序号的有序数组；遍历起点选这些数组中最短的一个，其余条件逐个产品检查。
+     */
+    private final class Conditions {
+        private final String lowerBrand;
+        private final boolean[] allowedCategories;
+        private final NumericRangeIndex[] rangeIndexes;
+        private final ProductQuery.Range[] ranges;
+
+        Conditions(String lowerBrand, String lowerCategory, Map<ProductAttribute, ProductQuery.Range> ranges) {
+            this.lowerBrand = lowerBrand;
+            if (lowerCategory != null) {
+                allowedCategories = new boolean[lowerCategories.length];
+                for (int i = 0; i < lowerCategories.length; i++) {
+                    allowedCategories[i] = lowerCategories[i].contains(lowerCategory);
+                }
+            } else {
+                allowedCategories = null;
+            }
+            this.rangeIndexes = new NumericRangeIndex[ranges.size()];
+            this.ranges = new ProductQuery.Range[ranges.size()];
+            int i = 0;
+            for (Map.Entry<ProductAttribute, ProductQuery.Range> entry : ranges.entrySet()) {
+                rangeIndexes[i] = numericIndexes.get(entry.getKey());
+                this.ranges[i++] = entry.getValue();
+            }
+        }
+
+        boolean test(int ord) {
+            if (lowerBrand != null && !lowerBrand.equals(lowerBrands[ord])) {
+                return false;
+            }
+            if (allowedCategories != null && (categoryOrds[ord] < 0 || !allowedCategories[categoryOrds[ord]])) {
+                return false;
+            }
+            for (int i = 0; i < ranges.length; i++) {
+                if (!rangeIndexes[i].contains(ord, ranges[i].min(), ranges[i].max())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 满足条件的产品必然在其中的最短有序产品序号数组
+         */
+        int[] driver() {
+            int[] brandOrds = lowerBrand == null ? null : ordsByLowerBrand.getOrDefault(lowerBrand, EMPTY);
+            int best = brandOrds == null ? Integer.MAX_VALUE : brandOrds.length;
+            int categorySize = Integer.MAX_VALUE;
+            if (allowedCategories != null) {
+                categorySize = 0;
+                for (int i = 0; i < allowedCategories.length; i++) {
+                    if (allowedCategories[i]) {
+                        categorySize += ordsByCategory[i].length;
+                    }
+                }
+            }
+            int bestRange = -1;
+            for (int i = 0; i < ranges.length; i++) {
+                int count = rangeIndexes[i].count(ranges[i].min(), ranges[i].max());
+                if (count < best && count < categorySize) {
+                    best = count;
+                    bestRange = i;
+                }
+            }
+
+            if (bestRange >= 0) {
+                return rangeIndexes[bestRange].range(ranges[bestRange].min(), ranges[bestRange].max());
+            }
+            if (categorySize < best) {
+                int[] result = EMPTY;
+                for (int i = 0; i < allowedCategories.length; i++) {
+                    if (allowedCategories[i]) {
+                        result = result.length == 0 ? ordsByCategory[i] : union(result, ordsByCategory[i]);
+                    }
+                }
+                return result;
+            }
+            return brandOrds;
+        }
+    }
+
+    /**
+     * 一次查询的分面计数：品牌、类别、价格区间各用一个计数数组，按产品序号直接定位
+     */
+    private final class Facets {
+        private final int[] brandCounts = new int[brands.size()];
+        private final int[] categoryCounts = new int[categories.size()];
+        private final int[] priceCounts = new int[PRICE_BANDS.length + 1];
+
+        void count(int ord) {
+            if (brandOrds[ord] >= 0) {
+                brandCounts[brandOrds[ord]]++;
+            }
+            if (categoryOrds[ord] >= 0) {
+                categoryCounts[categoryOrds[ord]]++;
+            }
+            double price = value(ord, ProductAttribute.PRICE);
+            if (!Double.isNaN(price)) {
+                int band = 0;
+                while (band < PRICE_BANDS.length && price >= PRICE_BANDS[band]) {
+                    band++;
+                }
+                priceCounts[band]++;
+            }
+        }
+
+        /**
+         * 按名称累加到合并的计数中
+         */
+        void addTo(Map<String, Integer> brandTotals, Map<String, Integer> categoryTotals, int[] priceTotals) {
+            for (int i = 0; i < brandCounts.length; i++) {
+                if (brandCounts[i] > 0) {
+                    brandTotals.merge(brands.get(i), brandCounts[i], Integer::sum);
+                }
+            }
+            for (int i = 0; i < categoryCounts.length; i++) {
+                if (categoryCounts[i] > 0) {
+                    categoryTotals.merge(categories.get(i), categoryCounts[i], Integer::sum);
+                }
+            }
+            for (int band = 0; band < priceCounts.length; band++) {
+                priceTotals[band] += priceCounts[band];
+            }
+        }
+    }
+
+    /**
+     * 合并各段的分面计数：维度名 → 取值 → 产品数
+     * 品牌和类别按产品数降序（相同时按首次出现的顺序），价格区间按价格升序，计数为0的取值省略
+     */
+    private static Map<String, Map<String, Integer>> facetMap(Facets[] segments) {
+        Map<String, Integer> brandTotals = new LinkedHashMap<>();
+        Map<String, Integer> categoryTotals = new LinkedHashMap<>();
+        int[] priceTotals = new int[PRICE_BANDS.length + 1];
+        for (Facets facets : segments) {
+            facets.addTo(brandTotals, categoryTotals, priceTotals);
+        }
+
+        Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+        facets.put("brand", byCount(brandTotals));
+        facets.put("category", byCount(categoryTotals));
+        Map<String, Integer> prices = new LinkedHashMap<>();
+        for (int band = 0; band < priceTotals.length; band++) {
+            if (priceTotals[band] > 0) {
+                prices.put(priceBand(band), priceTotals[band]);
+            }
+        }
+        facets.put("price", prices);
+        return facets;
+    }
+
+    private static Map<String, Integer> byCount(Map<String, Integer> counts) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    private static String priceBand(int band) {
+        if (band == 0) {
+            return "<" + (int) PRICE_BANDS[0];
+        }
+        if (band == PRICE_BANDS.length) {
+            return "≥" + (int) PRICE_BANDS[band - 1];
+        }
+        return (int) PRICE_BANDS[band - 1] + "-" + (int) PRICE_BANDS[band];
+    }
+
+    /**
+     * 建索引时收集 (n-gram, 产品序号) 对：每个产品的 n-gram 先去重，全部收集完后按 n-gram 排序分组
+     */
+    private static final class GramCollector {
+        private int[] productGrams = new int[256];
+        private int productSize;
+        private long[] pairs = new long[1024];
+        private int size;
+        private int[] keys;
+        private int[][] postings;
+
+        void startProduct() {
+            productSize = 0;
+        }
+
+        void add(int gram) {
+            if (productSize == productGrams.length) {
+                productGrams = Arrays.copyOf(productGrams, productSize * 2);
+            }
+            productGrams[productSize++] = gram;
+        }
+
+        void endProduct(int ord) {
+            Arrays.sort(productGrams, 0, productSize);
+            for (int i = 0; i < productSize; i++) {
+                if (i > 0 && productGrams[i] == productGrams[i - 1]) {
+                    continue;
+                }
+                if (size == pairs.length) {
+                    pairs = Arrays.copyOf(pairs, size * 2);
+                }
+                pairs[size++] = ((long) productGrams[i] << 32) | ord;
+            }
+        }
+
+        int[] keys() {
+            group();
+            return keys;
+        }
+
+        int[][] postings() {
+            group();
+            return postings;
+        }
+
+        private void group() {
+            if (keys != null) {
+                return;
+            }
+            Arrays.sort(pairs, 0, size);
+            int distinct = 0;
+            for (int i = 0; i < size; i = next(i)) {
+                distinct++;
+            }
+            keys = new int[distinct];
+            postings = new int[distinct][];
+            int k = 0;
+            for (int start = 0; start < size; ) {
+                int end = next(start);
+                int[] ords = new int[end - start];
+                for (int j = start; j < end; j++) {
+                    ords[j - start] = (int) pairs[j];
+                }
+                keys[k] = (int) (pairs[start] >> 32);
+                postings[k++] = ords;
+                start = end;
+            }
+            pairs = null;
+        }
+
+        /**
+         * 从 i 开始、n-gram 相同的一段之后的位置
+         */
+        private int next(int i) {
+            int gram = (int) (pairs[i] >> 32);
+            int j = i + 1;
+            while (j < size && (int) (pairs[j] >> 32) == gram) {
+                j++;
+            }
+            return j;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.agentpattern.loader;
+
+import com.example.agentpattern.model.ProductAttribute;
+import com.example.agentpattern.model.ProductInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 产品目录快照文件
+ * 把一个 {@link ProductCatalog} 段的产品和索引写成二进制文件，下次启动时若源数据文件的内容哈希相同，
+ * 通过 {@link FileChannel#map} 映射后按列批量读回，省去 JSON 解析、价格和规格文本解析以及 n-gram 索引的建立。
+ * 品牌、类别和规格名只在字符串表中保存一次，产品中以序号引用，读回的产品共享同一个字符串实例。
+ * <p>
+ * 文件格式（大端序）：
+ * <pre>
+ * 文件头     magic, 格式版本, 源文件SHA-256, 数值属性数, 产品数, 文件长度
+ * 字符串表   品牌、类别、规格名各一张：个数 + 字符串
+ * 产品列     每个产品的品牌序号、类别序号（没有时为 -1）
+ * 产品字段   每个产品 ID、名称、价格、描述；特性、标签（个数 + 字符串）；规格（个数 + (规格名序号, 值)）
+ * 数值列     每个 {@link ProductAttribute}：按产品序号的值 (double)，有值的产品数，按值升序的产品序号
+ * n-gram索引 单字、二元组各：键数，有序的键，每个键的倒排列表长度，依次排列的倒排列表
+ * </pre>
+ * 字符串以 UTF-8 字节数 + 字节保存，null 记为 -1；列表和规格为 null 时个数记为 -1。
+ * 解析规则或目录结构改变时需要增加格式版本，旧版本的快照会被忽略并重新生成。
+ */
+public final class ProductCatalogFile {
+
+    static final int MAGIC = 0x50524443;
+    static final int FORMAT_VERSION = 1;
+    static final int HASH_BYTES = 32;
+    static final int HEADER_BYTES = 4 * 2 + HASH_BYTES + 4 * 2 + 8;
+
+    private ProductCatalogFile() {
+    }
+
+    /**
+     * 数据文件内容的SHA-256，用于判断快照是否仍然有效
+     */
+    public static byte[] hash(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * 映射快照文件并读回目录
+     *
+     * @param sourceHash 当前数据文件内容的哈希
+     * @return 目录；快照不存在、格式版本不同或数据文件已改变时返回null
+     * @throws IOException 快照文件损坏或被截断
+     */
+    public static ProductCatalog read(Path file, byte[] sourceHash) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Product catalog snapshot exceeds 2GB: " + file);
+            }
+            // 映射在通道关闭后仍然有效
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a product catalog snapshot: " + file);
+        }
+        if (buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        byte[] hash = new byte[HASH_BYTES];
+        buffer.get(hash);
+        if (!Arrays.equals(hash, sourceHash) || buffer.getInt() != ProductAttribute.values().length) {
+            return null;
+        }
+        int count = buffer.getInt();
+        if (buffer.getLong() != buffer.capacity()) {
+            throw new IOException("Truncated product catalog snapshot: " + file);
+        }
+
+        try {
+            return readCatalog(buffer, count);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt product catalog snapshot: " + file, e);
+        }
+    }
+
+    private static ProductCatalog readCatalog(ByteBuffer buffer, int count) {
+        String[] brands = readStrings(buffer);
+        String[] categories = readStrings(buffer);
+        String[] specNames = readStrings(buffer);
+        int[] brandOrds = readInts(buffer, count);
+        int[] categoryOrds = readInts(buffer, count);
+
+        List<ProductInfo> products = new ArrayList<>(count);
+        for (int ord = 0; ord < count; ord++) {
+            ProductInfo.ProductInfoBuilder builder = ProductInfo.builder()
+                    .id(readString(buffer))
+                    .name(readString(buffer))
+                    .brand(brandOrds[ord] < 0 ? null : brands[brandOrds[ord]])
+                    .category(categoryOrds[ord] < 0 ? null : categories[categoryOrds[ord]])
+                    .price(readString(buffer))
+                    .description(readString(buffer))
+                    .features(readList(buffer))
+                    .tags(readList(buffer));
+            int specCount = buffer.getInt();
+            if (specCount >= 0) {
+                Map<String, String> specs = new LinkedHashMap<>(specCount * 2);
+                for (int i = 0; i < specCount; i++) {
+                    String name = specNames[buffer.getInt()];
+                    specs.put(name, readString(buffer));
+                }
+                builder.specs(specs);
+            }
+            products.add(builder.build());
+        }
+
+        Map<ProductAttribute, NumericRangeIndex> numericIndexes = new EnumMap<>(ProductAttribute.class);
+        for (ProductAttribute attribute : ProductAttribute.values()) {
+            double[] values = readDoubles(buffer, count);
+            int[] sortedOrds = readInts(buffer, buffer.getInt());
+            numericIndexes.put(attribute, new NumericRangeIndex(values, sortedOrds));
+        }
+
+        int[] unigramKeys = readInts(buffer, buffer.getInt());
+        int[][] unigramPostings = readPostings(buffer, unigramKeys.length);
+        int[] bigramKeys = readInts(buffer, buffer.getInt());
+        int[][] bigramPostings = readPostings(buffer, bigramKeys.length);
+
+        return new ProductCatalog(products, new ProductCatalog.Index(
+                unigramKeys, unigramPostings, bigramKeys, bigramPostings, numericIndexes));
+    }
+
+    /**
+     * 写入快照文件
+     * 先写入临时文件并落盘，再原子重命名为目标文件，因此目标文件要么完整存在，要么不存在。
+     *
+     * @param sourceHash 数据文件内容的哈希，见 {@link #hash}
+     */
+    public static void write(Path file, ProductCatalog catalog, byte[] sourceHash) throws IOException {
+        int count = catalog.size();
+        Map<String, Integer> brands = table(catalog.brands());
+        Map<String, Integer> categories = table(catalog.categories());
+        Map<String, Integer> specNames = new LinkedHashMap<>();
+        for (ProductInfo product : catalog.products()) {
+            if (product.getSpecs() != null) {
+                product.getSpecs().keySet().forEach(name -> specNames.putIfAbsent(name, specNames.size()));
+            }
+        }
+        ProductCatalog.Index index = catalog.index();
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            // 文件头，文件长度在写完后回填
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.write(sourceHash);
+            out.writeInt(ProductAttribute.values().length);
+            out.writeInt(count);
+            out.writeLong(0L);
+
+            // 字符串表
+            writeStrings(out, catalog.brands());
+            writeStrings(out, catalog.categories());
+            writeStrings(out, specNames.keySet());
+
+            // 产品列
+            for (ProductInfo product : catalog.products()) {
+                out.writeInt(product.getBrand() == null ? -1 : brands.get(product.getBrand()));
+            }
+            for (ProductInfo product : catalog.products()) {
+                out.writeInt(product.getCategory() == null ? -1 : categories.get(product.getCategory()));
+            }
+
+            // 产品字段
+            for (ProductInfo product : catalog.products()) {
+                writeString(out, product.getId());
+                writeString(out, product.getName());
+                writeString(out, product.getPrice());
+                writeString(out, product.getDescription());
+                writeList(out, product.getFeatures());
+                writeList(out, product.getTags());
+                Map<String, String> specs = product.getSpecs();
+                if (specs == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                out.writeInt(specs.size());
+                for (Map.Entry<String, String> spec : specs.entrySet()) {
+                    out.writeInt(specNames.get(spec.getKey()));
+                    writeString(out, spec.getValue());
+                }
+            }
+
+            // 数值列
+            for (ProductAttribute attribute : ProductAttribute.values()) {
+                NumericRangeIndex numeric = index.numericIndexes().get(attribute);
+                for (int ord = 0; ord < count; ord++) {
+                    out.writeDouble(numeric.value(ord));
+                }
+                out.writeInt(numeric.size());
+                for (int i = 0; i < numeric.size(); i++) {
+                    out.writeInt(numeric.ordAt(i));
+                }
+            }
+
+            // n-gram 索引
+            writePostings(out, index.unigramKeys(), index.unigramPostings());
+            writePostings(out, index.bigramKeys(), index.bigramPostings());
+        }
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            long length = channel.size();
+            channel.write(ByteBuffer.allocate(8).putLong(0, length), HEADER_BYTES - 8);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 字符串 → 在表中的序号
+     */
+    private static Map<String, Integer> table(List<String> values) {
+        Map<String, Integer> table = new HashMap<>(values.size() * 2);
+        for (String value : values) {
+            table.put(value, table.size());
+        }
+        return table;
+    }
+
+    private static void writePostings(DataOutputStream out, int[] keys, int[][] postings) throws IOException {
+        out.writeInt(keys.length);
+        for (int key : keys) {
+            out.writeInt(key);
+        }
+        for (int[] list : postings) {
+            out.writeInt(list.length);
+        }
+        for (int[] list : postings) {
+            for (int ord : list) {
+                out.writeInt(ord);
+            }
+        }
+    }
+
+    private static int[][] readPostings(ByteBuffer buffer, int keyCount) {
+        int[] lengths = readInts(buffer, keyCount);
+        int[][] postings = new int[keyCount][];
+        IntBuffer ints = buffer.asIntBuffer();
+        for (int k = 0; k < keyCount; k++) {
+            postings[k] = new int[lengths[k]];
+            ints.get(postings[k]);
+        }
+        buffer.position(buffer.position() + 4 * ints.position());
+        return postings;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    private static double[] readDoubles(ByteBuffer buffer, int count) {
+        double[] values = new double[count];
+        DoubleBuffer doubles = buffer.asDoubleBuffer();
+        doubles.get(values);
+        buffer.position(buffer.position() + 8 * count);
+        return values;
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        String[] values = new String[buffer.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(buffer);
+        }
+        return values;
+    }
+
+    private static void writeList(DataOutputStream out, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readList(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(buffer));
+        }
+        return values;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.agentpattern.loader;
+
+import com.example.agentpattern.model.ProductInfo;
+import com.example.agentpattern.model.ProductQuery;
+import com.example.agentpattern.model.ProductSearchResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * 产品目录快照
+ * 每个产品数据文件建立一个 {@link ProductCatalog} 作为段，快照是按文件名排序的各段的不可变组合；
+ * 查询在各段上依次执行后合并，结果与把所有文件的产品按文件名顺序放进一个目录后查询相同。
+ * <p>
+ * 某个文件变化时只为它重新建段，{@link #withSegment} 和 {@link #withoutSegment} 返回替换了该段的新快照，
+ * 其余段原样共享，因此重新加载的耗时取决于变化的文件而不是整个目录。
+ * 快照建立后不可变，持有旧快照的查询不受之后的重新加载影响。
+ */
+public final class ProductCatalogSnapshot {
+
+    private static final ProductCatalogSnapshot EMPTY = new ProductCatalogSnapshot(new TreeMap<>());
+
+    /**
+     * 数据文件名 → 该文件的目录段
+     */
+    private final SortedMap<String, ProductCatalog> segmentsBySource;
+    private final List<ProductCatalog> segments;
+    private final int size;
+    private final List<String> brands;
+    private final List<String> categories;
+
+    private ProductCatalogSnapshot(SortedMap<String, ProductCatalog> segmentsBySource) {
+        this.segmentsBySource = Collections.unmodifiableSortedMap(segmentsBySource);
+        this.segments = List.copyOf(segmentsBySource.values());
+        Set<String> allBrands = new LinkedHashSet<>();
+        Set<String> allCategories = new LinkedHashSet<>();
+        int total = 0;
+        for (ProductCatalog segment : segments) {
+            total += segment.size();
+            allBrands.addAll(segment.brands());
+            allCategories.addAll(segment.categories());
+        }
+        this.size = total;
+        this.brands = List.copyOf(allBrands);
+        this.categories = List.copyOf(allCategories);
+    }
+
+    public static ProductCatalogSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 加入或替换数据文件的目录段
+     *
+     * @return 新的快照，当前快照不变
+     */
+    public ProductCatalogSnapshot withSegment(String source, ProductCatalog segment) {
+        SortedMap<String, ProductCatalog> next = new TreeMap<>(segmentsBySource);
+        next.put(source, segment);
+        return new ProductCatalogSnapshot(next);
+    }
+
+    /**
+     * 去掉数据文件的目录段
+     *
+     * @return 新的快照，当前快照不变；没有该文件时返回当前快照
+     */
+    public ProductCatalogSnapshot withoutSegment(String source) {
+        if (!segmentsBySource.containsKey(source)) {
+            return this;
+        }
+        SortedMap<String, ProductCatalog> next = new TreeMap<>(segmentsBySource);
+        next.remove(source);
+        return new ProductCatalogSnapshot(next);
+    }
+
+    /**
+     * 已加载的数据文件名，按名称排序
+     */
+    public Set<String> sources() {
+        return segmentsBySource.keySet();
+    }
+
+    /**
+     * 数据文件的目录段，没有该文件时返回null
+     */
+    public ProductCatalog segment(String source) {
+        return segmentsBySource.get(source);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 全部产品，按文件名和文件中的顺序
+     */
+    public List<ProductInfo> products() {
+        List<ProductInfo> result = new ArrayList<>(size);
+        for (ProductCatalog segment : segments) {
+            result.addAll(segment.products());
+        }
+        return result;
+    }
+
+    /**
+     * 重复ID以排在前面的文件中的产品为准
+     */
+    public ProductInfo getById(String id) {
+        for (ProductCatalog segment : segments) {
+            ProductInfo product = segment.getById(id);
+            if (product != null) {
+                return product;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 指定品牌（区分大小写）的产品
+     */
+    public List<ProductInfo> getByBrand(String brand) {
+        List<ProductInfo> result = new ArrayList<>();
+        for (ProductCatalog segment : segments) {
+            result.addAll(segment.getByBrand(brand));
+        }
+        return result;
+    }
+
+    /**
+     * 所有品牌，按首次出现的顺序
+     */
+    public List<String> brands() {
+        return brands;
+    }
+
+    /**
+     * 所有类别，按首次出现的顺序
+     */
+    public List<String> categories() {
+        return categories;
+    }
+
+    /**
+     * 结构化查询，见 {@link ProductCatalog#search(ProductQuery, int)}
+     */
+    public ProductSearchResult search(ProductQuery query, int limit) {
+        return ProductCatalog.search(segments, query, limit);
+    }
+
+    /**
+     * 包含全部关键词的产品
+     *
+     * @param query 搜索关键词，不能为空白
+     */
+    public List<ProductInfo> matches(String query) {
+        List<ProductInfo> result = new ArrayList<>();
+        for (ProductCatalog segment : segments) {
+            result.addAll(segment.matches(query));
+        }
+        return result;
+    }
+
+    /**
+     * 按品牌（不区分大小写，完全匹配）和类别（不区分大小写，包含即可）过滤，为null的条件不限制
+     */
+    public List<ProductInfo> filter(String brand, String category) {
+        List<ProductInfo> result = new ArrayList<>();
+        for (ProductCatalog segment : segments) {
+            result.addAll(segment.filter(brand, category));
+        }
+        return result;
+    }
+}
@@ -1,36 +1,96 @@
 package com.example.agentpattern.loader;
 
 import com.example.agentpattern.model.ProductInfo;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.example.agentpattern.model.ProductQuery;
+import com.example.agentpattern.model.ProductSearchResult;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 产品数据加载器
- * 从配置文件加载产品数据，支持多品牌和动态扩展
+ * 从配置文件加载产品数据，支持多品牌和动态扩展。
+ * 每个数据文件建立一个 {@link ProductCatalog} 段，组合为不可变的 {@link ProductCatalogSnapshot}，
+ * 按ID、品牌、类别的查找和关键词搜索都由目录索引完成，不再遍历产品列表。
+ * <p>
+ * 配置了 products.directory 时从该文件系统目录加载，并用 {@link WatchService} 监视其中 *.json 文件的新增、修改和删除：
+ * 只重新解析变化的文件、重建它的段，再用 volatile 引用整体替换快照。正在执行的查询继续使用原来的快照，
+ * 解析失败的文件保留原有数据。
+ * <p>
+ * 每个数据文件成功解析后，其目录段（产品和索引）写入 products.snapshot.directory 下的二进制快照（{@link ProductCatalogFile}）；
+ * 之后加载同一文件时，若文件内容的哈希与快照记录的相同，直接映射快照读回目录段，不再解析 JSON 和重建索引。
  */
 @Slf4j
 @Component
 public class ProductDataLoader {
 
     private final ObjectMapper objectMapper;
-    private final Map<String, List<ProductInfo>> productsByBrand = new ConcurrentHashMap<>();
-    private final List<ProductInfo> allProducts = new ArrayList<>();
+    private volatile ProductCatalogSnapshot catalog = ProductCatalogSnapshot.empty();
 
-    // 产品数据文件路径模式
-    private static final String PRODUCT_FILES_PATTERN = "classpath:data/products/*.json";
+    /**
+     * 类路径中的产品数据文件路径模式，未配置 directory 时使用
+     */
+    @Value("${products.data-path:classpath:data/products/*.json}")
+    private String dataPath = "classpath:data/products/*.json";
+
+    /**
+     * 产品数据所在的文件系统目录，为空时从 dataPath 加载且不监视变化
+     */
+    @Value("${products.directory:}")
+    private String directory = "";
+
+    /**
+     * 是否监视 directory 中文件的变化并重新加载
+     */
+    @Value("${products.watch.enabled:true}")
+    private boolean watchEnabled = true;
+
+    /**
+     * 文件最后一次变化后等待的毫秒数，等写入完成再重新加载，同一批变化只替换一次快照
+     */
+    @Value("${products.watch.debounce-ms:500}")
+    private long watchDebounceMs = 500;
+
+    /**
+     * 是否为每个数据文件写入并优先使用二进制快照
+     */
+    @Value("${products.snapshot.enabled:true}")
+    private boolean snapshotEnabled = true;
+
+    /**
+     * 二进制快照所在的目录，每个数据文件一个快照文件
+     */
+    @Value("${products.snapshot.directory:data/products-snapshot}")
+    private String snapshotDirectory = "data/products-snapshot";
+
+    private WatchService watchService;
+    private Thread watcher;
 
     public ProductDataLoader(ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
@@ -40,67 +100,259 @@ public class ProductDataLoader {
     public void loadProducts() {
         log.info("开始加载产品数据...");
 
+        long start = System.nanoTime();
+        ProductCatalogSnapshot loaded;
         try {
-            ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
-            Resource[] resources = resolver.getResources(PRODUCT_FILES_PATTERN);
-
-            if (resources.length == 0) {
-                log.warn("未找到产品数据文件: {}", PRODUCT_FILES_PATTERN);
-                return;
+            if (directory == null || directory.isBlank()) {
+                loaded = loadClasspathProducts();
+            } else {
+                Path dir = Path.of(directory);
+                if (!Files.isDirectory(dir)) {
+                    log.warn("产品数据目录不存在: {}", dir.toAbsolutePath());
+                    return;
+                }
+                loaded = loadDirectory(dir);
+                if (watchEnabled) {
+                    startWatching(dir);
+                }
             }
+        } catch (IOException e) {
+            log.error("加载产品数据失败", e);
+            return;
+        }
+        catalog = loaded;
+
+        log.info("产品数据加载完成，共加载 {} 个品牌，{} 个产品，耗时 {}ms",
+                loaded.brands().size(), loaded.size(), (System.nanoTime() - start) / 1_000_000);
 
-            for (Resource resource : resources) {
-                loadProductFile(resource);
+        // 打印品牌统计
+        loaded.brands().forEach(brand ->
+            log.info("  - {}: {} 个产品", brand, loaded.getByBrand(brand).size())
+        );
+    }
+
+    @PreDestroy
+    public void stopWatching() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("关闭产品数据目录监视失败", e);
             }
+            watcher.interrupt();
+        }
+    }
 
-            log.info("产品数据加载完成，共加载 {} 个品牌，{} 个产品",
-                    productsByBrand.size(), allProducts.size());
+    private ProductCatalogSnapshot loadClasspathProducts() throws IOException {
+        ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        Resource[] resources = resolver.getResources(dataPath);
 
-            // 打印品牌统计
-            productsByBrand.forEach((brand, products) ->
-                log.info("  - {}: {} 个产品", brand, products.size())
-            );
+        if (resources.length == 0) {
+            log.warn("未找到产品数据文件: {}", dataPath);
+        }
 
-        } catch (IOException e) {
-            log.error("加载产品数据失败", e);
+        ProductCatalogSnapshot snapshot = ProductCatalogSnapshot.empty();
+        for (Resource resource : resources) {
+            String filename = resource.getFilename();
+            try (InputStream is = resource.getInputStream()) {
+                snapshot = snapshot.withSegment(filename, loadSegment(is, filename));
+            } catch (IOException e) {
+                log.error("加载产品文件失败: {}", filename, e);
+            }
+        }
+        return snapshot;
+    }
+
+    private ProductCatalogSnapshot loadDirectory(Path dir) throws IOException {
+        Set<String> filenames = productFiles(dir);
+        if (filenames.isEmpty()) {
+            log.warn("目录 {} 中未找到产品数据文件", dir.toAbsolutePath());
         }
+
+        ProductCatalogSnapshot snapshot = ProductCatalogSnapshot.empty();
+        for (String filename : filenames) {
+            try (InputStream is = Files.newInputStream(dir.resolve(filename))) {
+                snapshot = snapshot.withSegment(filename, loadSegment(is, filename));
+            } catch (IOException e) {
+                log.error("加载产品文件失败: {}", filename, e);
+            }
+        }
+        return snapshot;
     }
 
     /**
-     * 加载单个产品文件
+     * 目录中的产品数据文件名（*.json），按名称排序
      */
-    private void loadProductFile(Resource resource) {
-        try (InputStream is = resource.getInputStream()) {
-            String filename = resource.getFilename();
-            log.debug("加载产品文件: {}", filename);
+    private Set<String> productFiles(Path dir) throws IOException {
+        Set<String> filenames = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    filenames.add(file.getFileName().toString());
+                }
+            }
+        }
+        return filenames;
+    }
 
-            List<ProductInfo> products = objectMapper.readValue(
-                is,
-                new TypeReference<List<ProductInfo>>() {}
-            );
+    /**
+     * 读取一个数据文件的目录段：数据文件内容未变时从快照读回，否则解析 JSON、建立目录并写入新的快照
+     * 快照无法读取或写入时只记录日志，不影响加载
+     */
+    private ProductCatalog loadSegment(InputStream is, String filename) throws IOException {
+        byte[] content = is.readAllBytes();
+        if (!snapshotEnabled) {
+            return new ProductCatalog(readProducts(new ByteArrayInputStream(content), filename));
+        }
 
-            if (products == null || products.isEmpty()) {
-                log.warn("文件 {} 中没有产品数据", filename);
-                return;
+        byte[] hash = ProductCatalogFile.hash(content);
+        Path snapshot = snapshotFile(filename);
+        try {
+            ProductCatalog segment = ProductCatalogFile.read(snapshot, hash);
+            if (segment != null) {
+                log.info("从快照加载 {} 的 {} 个产品", filename, segment.size());
+                return segment;
             }
+        } catch (IOException e) {
+            log.warn("产品快照无法读取，重新解析数据文件: {}", snapshot, e);
+        }
 
-            for (ProductInfo product : products) {
-                // 添加到总列表
-                allProducts.add(product);
+        ProductCatalog segment = new ProductCatalog(readProducts(new ByteArrayInputStream(content), filename));
+        try {
+            Files.createDirectories(snapshot.getParent());
+            ProductCatalogFile.write(snapshot, segment, hash);
+        } catch (IOException e) {
+            log.warn("写入产品快照失败: {}", snapshot, e);
+        }
+        return segment;
+    }
 
-                // 按品牌分组
-                String brand = product.getBrand();
-                if (brand != null) {
-                    productsByBrand
-                        .computeIfAbsent(brand, k -> new ArrayList<>())
-                        .add(product);
+    private Path snapshotFile(String filename) {
+        return Path.of(snapshotDirectory).toAbsolutePath().resolve(filename + ".snapshot");
+    }
+
+    /**
+     * 用Jackson的流式解析器逐个读取产品数组中的产品
+     *
+     * @return 文件中的产品
+     * @throws JsonParseException 文件不是产品对象组成的JSON数组
+     */
+    private List<ProductInfo> readProducts(InputStream is, String filename) throws IOException {
+        log.debug("加载产品文件: {}", filename);
+
+        List<ProductInfo> products = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected a JSON array of products");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected a product object but found " + token);
                 }
+                products.add(parser.readValueAs(ProductInfo.class));
             }
+        }
 
+        if (products.isEmpty()) {
+            log.warn("文件 {} 中没有产品数据", filename);
+        } else {
             log.info("从 {} 加载了 {} 个产品", filename, products.size());
+        }
+        return products;
+    }
 
+    private void startWatching(Path dir) throws IOException {
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        watcher = new Thread(() -> watch(dir), "product-data-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("开始监视产品数据目录: {}", dir.toAbsolutePath());
+    }
+
+    /**
+     * 监视线程：收集变化的文件名，直到 watchDebounceMs 内没有新的变化，再一起重新加载
+     * 单次重新加载或重新扫描目录失败只记录日志，继续监视；只有被中断、监视服务关闭或目录不可访问时才退出
+     */
+    private void watch(Path dir) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<String> changed = new TreeSet<>();
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // 丢失了部分事件，检查所有文件
+                            changed.addAll(catalog.sources());
+                            try {
+                                changed.addAll(productFiles(dir));
+                            } catch (RuntimeException | IOException e) {
+                                log.error("重新扫描产品数据目录失败: {}", dir.toAbsolutePath(), e);
+                            }
+                        } else {
+                            String filename = ((Path) event.context()).getFileName().toString();
+                            if (filename.endsWith(".json")) {
+                                changed.add(filename);
+                            }
+                        }
+                    }
+                    if (!key.reset()) {
+                        log.warn("产品数据目录已不可访问，停止监视: {}", dir.toAbsolutePath());
+                        return;
+                    }
+                    key = watchService.poll(watchDebounceMs, TimeUnit.MILLISECONDS);
+                }
+                if (!changed.isEmpty()) {
+                    try {
+                        reload(dir, changed);
+                    } catch (RuntimeException e) {
+                        log.error("重新加载产品文件失败: {}", changed, e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("停止监视产品数据目录: {}", dir.toAbsolutePath());
+        }
+    }
+
+    /**
+     * 重新加载变化的文件：重新解析存在的文件并重建其段，去掉已删除文件的段，最后整体替换一次快照
+     * 解析失败的文件（例如仍在写入）保留原来的段，等下一次变化时再加载
+     */
+    synchronized void reload(Path dir, Set<String> filenames) {
+        long start = System.nanoTime();
+        ProductCatalogSnapshot next = catalog;
+        for (String filename : filenames) {
+            Path file = dir.resolve(filename);
+            if (!Files.isRegularFile(file)) {
+                if (next.segment(filename) != null) {
+                    log.info("产品文件 {} 已删除，移除其中的 {} 个产品", filename, next.segment(filename).size());
+                    next = next.withoutSegment(filename);
+                    deleteSnapshot(filename);
+                }
+                continue;
+            }
+            try (InputStream is = Files.newInputStream(file)) {
+                next = next.withSegment(filename, loadSegment(is, filename));
+            } catch (IOException e) {
+                log.error("重新加载产品文件失败，保留原有数据: {}", filename, e);
+            }
+        }
+        catalog = next;
+        log.info("产品目录已更新（{}），共 {} 个产品，耗时 {}ms",
+                String.join(", ", filenames), next.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void deleteSnapshot(String filename) {
+        if (!snapshotEnabled) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(snapshotFile(filename));
         } catch (IOException e) {
-            log.error("加载产品文件失败: {}", resource.getFilename(), e);
+            log.warn("删除产品快照失败: {}", snapshotFile(filename), e);
         }
     }
 
@@ -108,68 +360,79 @@ public class ProductDataLoader {
      * 获取所有产品
      */
     public List<ProductInfo> getAllProducts() {
-        return new ArrayList<>(allProducts);
+        return catalog.products();
     }
 
     /**
      * 按品牌获取产品
      */
     public List<ProductInfo> getProductsByBrand(String brand) {
-        return productsByBrand.getOrDefault(brand, new ArrayList<>());
+        return catalog.getByBrand(brand);
     }
 
     /**
      * 搜索产品
      *
-     * @param query 搜索关键词
-     * @return 匹配的产品列表
+     * @param query 搜索关键词，多个关键词以空白或逗号分隔
+     * @return 包含全部关键词的产品列表
      */
     public List<ProductInfo> searchProducts(String query) {
         if (query == null || query.trim().isEmpty()) {
             return getAllProducts();
         }
 
-        return allProducts.stream()
-                .filter(product -> product.matches(query))
-                .toList();
+        return catalog.matches(query);
+    }
+
+    /**
+     * 按相关度搜索产品，只返回得分最高的 limit 个
+     * 候选由目录索引给出，通过有界最小堆筛选，不对全部匹配结果排序。
+     * 查询包含多个关键词时先要求产品包含全部关键词，没有这样的产品时退而返回包含部分关键词的产品
+     *
+     * @param query 搜索关键词
+     * @param limit 最多返回的产品数
+     * @return 排序后的产品及匹配总数
+     */
+    public ProductSearchResult searchProducts(String query, int limit) {
+        return searchProducts(ProductQuery.builder().keywords(query).build(), limit);
+    }
+
+    /**
+     * 结构化搜索：关键词、品牌、类别和价格、规格数值范围同时满足的产品，按相关度返回前 limit 个，并给出分面计数
+     *
+     * @param query 查询条件，为空的条件不限制；所有条件都为空时按加载顺序返回所有产品
+     * @param limit 最多返回的产品数
+     * @return 排序后的产品、匹配总数和分面计数
+     */
+    public ProductSearchResult searchProducts(ProductQuery query, int limit) {
+        return catalog.search(query, limit);
     }
 
     /**
      * 按品牌和类别搜索
      */
     public List<ProductInfo> searchProducts(String brand, String category) {
-        return allProducts.stream()
-                .filter(p -> (brand == null || brand.equalsIgnoreCase(p.getBrand())))
-                .filter(p -> (category == null ||
-                             (p.getCategory() != null &&
-                              p.getCategory().toLowerCase().contains(category.toLowerCase()))))
-                .toList();
+        return catalog.filter(brand, category);
     }
 
     /**
      * 根据ID获取产品
      */
     public ProductInfo getProductById(String id) {
-        return allProducts.stream()
-                .filter(p -> id.equals(p.getId()))
-                .findFirst()
-                .orElse(null);
+        return catalog.getById(id);
     }
 
     /**
      * 获取所有品牌
      */
     public List<String> getAllBrands() {
-        return new ArrayList<>(productsByBrand.keySet());
+        return new ArrayList<>(catalog.brands());
     }
 
     /**
      * 获取所有类别
      */
     public List<String> getAllCategories() {
-        return allProducts.stream()
-                .map(ProductInfo::getCategory)
-                .distinct()
-                .toList();
+        return catalog.categories();
     }
 }
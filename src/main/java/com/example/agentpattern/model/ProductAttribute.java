@@ -0,0 +1,151 @@
+package com.example.agentpattern.model;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 可按数值范围查询的产品属性
+ * 价格和规格参数在数据文件中是展示用的文本（如 "¥1,099"、"4K (3840×2160)"、"最长18小时"），
+ * 加载时由 {@link #parse} 解析为数值；无法解析时为 {@link Double#NaN}，这样的产品不会出现在该属性的范围查询结果中。
+ */
+public enum ProductAttribute {
+
+    /**
+     * 价格（元）
+     */
+    PRICE("price", "元"),
+
+    /**
+     * 规格 resolution 的像素数（百万像素），"4K"、"1080P" 等按标准分辨率换算，取出现的最大值
+     */
+    RESOLUTION("resolution_mp", "MP"),
+
+    /**
+     * 规格 storage 中出现的最大容量（GB）
+     */
+    STORAGE("storage_gb", "GB"),
+
+    /**
+     * 规格 battery 中的第一个时长（小时）
+     */
+    BATTERY("battery_hours", "小时");
+
+    private static final Pattern NUMBER = Pattern.compile("\\d[\\d,]*(?:\\.\\d+)?");
+    private static final Pattern PIXELS = Pattern.compile("(\\d{3,5})\\s*[×xX*]\\s*(\\d{3,5})");
+    private static final Pattern MEGAPIXELS = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*MP", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NAMED_RESOLUTION = Pattern.compile("(?<![\\dA-Za-z])(8K|4K|2K|1440P|1080P|720P)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern CAPACITY = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(TB|GB)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HOURS = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(?:小时|hours?\\b|h\\b)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final String key;
+    private final String unit;
+
+    ProductAttribute(String key, String unit) {
+        this.key = key;
+        this.unit = unit;
+    }
+
+    /**
+     * 工具参数中使用的名称（min_/max_ 前缀之后的部分）
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * 按名称解析，名称未知时返回null
+     */
+    public static ProductAttribute fromKey(String key) {
+        for (ProductAttribute attribute : values()) {
+            if (attribute.key.equalsIgnoreCase(key)) {
+                return attribute;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从产品的展示文本中解析属性值
+     *
+     * @return 属性值，无法解析时返回 {@link Double#NaN}
+     */
+    public double parse(ProductInfo product) {
+        return switch (this) {
+            case PRICE -> parsePrice(product.getPrice());
+            case RESOLUTION -> parseMegapixels(spec(product, "resolution"));
+            case STORAGE -> parseCapacityGb(spec(product, "storage"));
+            case BATTERY -> parseHours(spec(product, "battery"));
+        };
+    }
+
+    static double parsePrice(String text) {
+        if (text == null) {
+            return Double.NaN;
+        }
+        Matcher m = NUMBER.matcher(text);
+        return m.find() ? Double.parseDouble(m.group().replace(",", "")) : Double.NaN;
+    }
+
+    static double parseMegapixels(String text) {
+        if (text == null) {
+            return Double.NaN;
+        }
+        double max = Double.NaN;
+        Matcher m = PIXELS.matcher(text);
+        while (m.find()) {
+            max = max(max, Double.parseDouble(m.group(1)) * Double.parseDouble(m.group(2)) / 1e6);
+        }
+        m = MEGAPIXELS.matcher(text);
+        while (m.find()) {
+            max = max(max, Double.parseDouble(m.group(1)));
+        }
+        m = NAMED_RESOLUTION.matcher(text);
+        while (m.find()) {
+            max = max(max, switch (m.group(1).toUpperCase()) {
+                case "8K" -> 7680 * 4320 / 1e6;
+                case "4K" -> 3840 * 2160 / 1e6;
+                case "2K", "1440P" -> 2560 * 1440 / 1e6;
+                case "1080P" -> 1920 * 1080 / 1e6;
+                default -> 1280 * 720 / 1e6;
+            });
+        }
+        return max;
+    }
+
+    static double parseCapacityGb(String text) {
+        if (text == null) {
+            return Double.NaN;
+        }
+        double max = Double.NaN;
+        Matcher m = CAPACITY.matcher(text);
+        while (m.find()) {
+            double value = Double.parseDouble(m.group(1));
+            max = max(max, m.group(2).equalsIgnoreCase("TB") ? value * 1024 : value);
+        }
+        return max;
+    }
+
+    static double parseHours(String text) {
+        if (text == null) {
+            return Double.NaN;
+        }
+        Matcher m = HOURS.matcher(text);
+        return m.find() ? Double.parseDouble(m.group(1)) : Double.NaN;
+    }
+
+    private static String spec(ProductInfo product, String name) {
+        Map<String, String> specs = product.getSpecs();
+        return specs == null ? null : specs.get(name);
+    }
+
+    private static double max(double current, double value) {
+        return Double.isNaN(current) ? value : Math.max(current, value);
+    }
+}
@@ -70,37 +70,50 @@ public class ProductInfo {
      * @return 是否匹配
      */
     public boolean matches(String query) {
+        return matchScore(query) > 0;
+    }
+
+    /**
+     * 计算产品与搜索关键词的相关度
+     * 名称命中权重最高，其次是品牌和类别，标签、特性和描述依次递减；完全匹配名称额外加分。
+     *
+     * @param query 搜索关键词
+     * @return 相关度，0 表示不匹配
+     */
+    public float matchScore(String query) {
         if (query == null || query.trim().isEmpty()) {
-            return false;
+            return 0f;
         }
 
         String lowerQuery = query.toLowerCase().trim();
+        float score = 0f;
 
         // 匹配名称
-        if (name != null && name.toLowerCase().contains(lowerQuery)) {
-            return true;
+        if (name != null) {
+            String lowerName = name.toLowerCase();
+            if (lowerName.equals(lowerQuery)) {
+                score += 5f;
+            } else if (lowerName.contains(lowerQuery)) {
+                score += 3f;
+            }
         }
 
         // 匹配品牌
         if (brand != null && brand.toLowerCase().contains(lowerQuery)) {
-            return true;
+            score += 2f;
         }
 
         // 匹配类别
         if (category != null && category.toLowerCase().contains(lowerQuery)) {
-            return true;
-        }
-
-        // 匹配描述
-        if (description != null && description.toLowerCase().contains(lowerQuery)) {
-            return true;
+            score += 2f;
         }
 
         // 匹配标签
         if (tags != null) {
             for (String tag : tags) {
                 if (tag.toLowerCase().contains(lowerQuery)) {
-                    return true;
+                    score += 1.5f;
+                    break;
                 }
             }
         }
@@ -109,12 +122,18 @@ public class ProductInfo {
         if (features != null) {
             for (String feature : features) {
                 if (feature.toLowerCase().contains(lowerQuery)) {
-                    return true;
+                    score += 1f;
+                    break;
                 }
             }
         }
 
-        return false;
+        // 匹配描述
+        if (description != null && description.toLowerCase().contains(lowerQuery)) {
+            score += 0.5f;
+        }
+
+        return score;
     }
 
     /**
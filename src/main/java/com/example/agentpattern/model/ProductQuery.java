@@ -0,0 +1,60 @@
+package com.example.agentpattern.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 结构化产品查询
+ * 关键词、品牌、类别和数值范围条件同时满足的产品才会返回，为空的条件不限制
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductQuery {
+
+    /**
+     * 搜索关键词，多个关键词以空白或逗号分隔
+     */
+    private String keywords;
+
+    /**
+     * 品牌（不区分大小写，完全匹配）
+     */
+    private String brand;
+
+    /**
+     * 类别（不区分大小写，包含即可）
+     */
+    private String category;
+
+    /**
+     * 数值属性的范围条件
+     */
+    @Builder.Default
+    private Map<ProductAttribute, Range> ranges = new EnumMap<>(ProductAttribute.class);
+
+    /**
+     * 添加数值范围条件
+     *
+     * @param min 下界（含），null 表示不限
+     * @param max 上界（含），null 表示不限
+     */
+    public ProductQuery range(ProductAttribute attribute, Double min, Double max) {
+        if (min != null || max != null) {
+            ranges.put(attribute, new Range(min, max));
+        }
+        return this;
+    }
+
+    /**
+     * 数值范围，边界为null表示不限
+     */
+    public record Range(Double min, Double max) {
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.agentpattern.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 产品排序搜索结果
+ * 只包含相关度最高的若干产品，同时给出匹配的产品总数
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSearchResult {
+
+    /**
+     * 按相关度降序排列的产品
+     */
+    private List<ProductInfo> products;
+
+    /**
+     * 匹配的产品总数
+     */
+    private int totalMatches;
+
+    /**
+     * 没有产品包含全部关键词，结果是只包含部分关键词的产品
+     */
+    private boolean partialMatch;
+
+    /**
+     * 全部匹配产品的分面计数：维度名（brand、category、price）→ 取值 → 产品数
+     */
+    @Builder.Default
+    private Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+
+    /**
+     * 是否还有未返回的匹配产品
+     */
+    public boolean hasMore() {
+        return totalMatches > (products == null ? 0 : products.size());
+    }
+}
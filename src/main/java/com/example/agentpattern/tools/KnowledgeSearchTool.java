@@ -2,20 +2,25 @@ package com.example.agentpattern.tools;
 
 import com.example.agentpattern.agent.tool.Tool;
 import com.example.agentpattern.agent.tool.ToolRegistry;
+import com.example.agentpattern.knowledge.base.FederatedSearchResult;
+import com.example.agentpattern.knowledge.base.Filter;
 import com.example.agentpattern.knowledge.base.KnowledgeBase;
 import com.example.agentpattern.knowledge.base.KnowledgeBaseRegistry;
 import com.example.agentpattern.knowledge.base.SearchResult;
+import com.example.agentpattern.knowledge.snippet.SnippetConfig;
+import com.example.agentpattern.knowledge.snippet.SnippetExtractor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * 知识库搜索工具
- * 允许Agent动态调用知识库进行信息检索
+ * 允许Agent动态调用知识库进行信息检索。
+ * 返回给Agent的观察结果会随草稿本在之后的每轮推理中重复发送，因此默认只包含每个文档中与查询相关的摘要
  */
 @Slf4j
 @Component
@@ -25,6 +30,32 @@ public class KnowledgeSearchTool implements Tool {
     private final KnowledgeBaseRegistry knowledgeBaseRegistry;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * 是否只返回与查询相关的摘要，关闭时返回文档全部内容
+     */
+    @Value("${knowledge.snippet.enabled:true}")
+    private boolean snippetEnabled = true;
+
+    /**
+     * 每条结果的摘要最多包含的字符数
+     */
+    @Value("${knowledge.snippet.max-chars-per-result:300}")
+    private int snippetMaxCharsPerResult = 300;
+
+    /**
+     * 一次搜索返回的摘要合计最多包含的字符数
+     */
+    @Value("${knowledge.snippet.max-chars-total:1200}")
+    private int snippetMaxCharsTotal = 1200;
+
+    /**
+     * 是否高亮摘要中命中的查询词
+     */
+    @Value("${knowledge.snippet.highlight:false}")
+    private boolean snippetHighlight = false;
+
+    private volatile SnippetExtractor snippetExtractor;
+
     public KnowledgeSearchTool(ToolRegistry toolRegistry, KnowledgeBaseRegistry knowledgeBaseRegistry) {
         this.toolRegistry = toolRegistry;
         this.knowledgeBaseRegistry = knowledgeBaseRegistry;
@@ -45,7 +76,9 @@ public class KnowledgeSearchTool implements Tool {
     public String getDescription() {
         StringBuilder desc = new StringBuilder();
         desc.append("Search the knowledge base for relevant information. ");
-        desc.append("Input should be a JSON object with 'query' (required) and optionally 'knowledge_base' (string) and 'top_k' (number). ");
+        desc.append("Input should be a JSON object with 'query' (required) and optionally 'knowledge_base' (string), 'top_k' (number) and 'filter' (object). ");
+        desc.append("'filter' restricts results by document metadata, e.g. {\"brand\": \"Reolink\", \"category\": [\"doorbell\", \"nvr\"]}; ");
+        desc.append("array values match any of the values, and \"$and\", \"$or\", \"$not\" combine conditions. ");
         desc.append("If knowledge_base is not specified, searches all available knowledge bases. ");
 
         // 列出可用的知识库
@@ -97,6 +130,10 @@ public class KnowledgeSearchTool implements Tool {
                     "top_k": {
                       "type": "number",
                       "description": "返回的结果数量（默认3）"
+                    },
+                    "filter": {
+                      "type": "object",
+                      "description": "按文档元数据过滤（可选），键为元数据名，值为字符串或字符串数组（任一匹配）；支持 $and、$or、$not 组合"
                     }
                   },
                   "required": ["query"]
@@ -107,28 +144,37 @@ public class KnowledgeSearchTool implements Tool {
     /**
      * 解析输入参数
      */
+    @SuppressWarnings("unchecked")
     private SearchRequest parseInput(String input) {
+        Map<String, Object> params;
         try {
             // 尝试解析JSON
-            @SuppressWarnings("unchecked")
-            Map<String, Object> params = objectMapper.readValue(input, Map.class);
-
-            String query = (String) params.get("query");
-            if (query == null || query.trim().isEmpty()) {
-                throw new IllegalArgumentException("Query cannot be empty");
-            }
-
-            String knowledgeBase = (String) params.get("knowledge_base");
-            Integer topK = params.containsKey("top_k") ?
-                    ((Number) params.get("top_k")).intValue() : 3;
-
-            return new SearchRequest(query.trim(), knowledgeBase, topK);
-
+            params = objectMapper.readValue(input, Map.class);
         } catch (Exception e) {
             // 如果不是JSON，当作纯文本查询
             log.debug("Input is not JSON, treating as plain text query");
-            return new SearchRequest(input.trim(), null, 3);
+            return new SearchRequest(input.trim(), null, 3, null);
         }
+
+        String query = (String) params.get("query");
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Query cannot be empty");
+        }
+
+        String knowledgeBase = (String) params.get("knowledge_base");
+        Integer topK = params.containsKey("top_k") ?
+                ((Number) params.get("top_k")).intValue() : 3;
+
+        // 过滤条件格式错误时直接报错，而不是静默忽略
+        Filter filter = null;
+        Object filterParam = params.get("filter");
+        if (filterParam instanceof Map<?, ?> filterMap && !filterMap.isEmpty()) {
+            filter = Filter.fromMap((Map<String, Object>) filterMap);
+        } else if (filterParam != null && !(filterParam instanceof Map<?, ?>)) {
+            throw new IllegalArgumentException("filter must be a JSON object");
+        }
+
+        return new SearchRequest(query.trim(), knowledgeBase, topK, filter);
     }
 
     /**
@@ -146,7 +192,7 @@ public class KnowledgeSearchTool implements Tool {
             );
         }
 
-        SearchResult result = kb.search(request.query, request.topK);
+        SearchResult result = kb.search(request.query, request.topK, request.filter);
 
         if (result.getDocuments().isEmpty()) {
             return ToolResult.success(
@@ -158,7 +204,7 @@ public class KnowledgeSearchTool implements Tool {
         String formattedResult = String.format(
                 "从知识库 '%s' 检索到的信息:\n\n%s",
                 request.knowledgeBase,
-                result.formatForLLM()
+                result.formatForLLM(snippetExtractor())
         );
 
         return ToolResult.success(formattedResult);
@@ -172,30 +218,38 @@ public class KnowledgeSearchTool implements Tool {
             return ToolResult.failure("没有可用的知识库。");
         }
 
-        Map<String, SearchResult> results = knowledgeBaseRegistry.searchAll(request.query, request.topK);
-
-        // 合并所有结果
-        StringBuilder output = new StringBuilder();
-        output.append(String.format("搜索所有知识库，查询: '%s'\n\n", request.query));
+        FederatedSearchResult result = knowledgeBaseRegistry.searchAll(request.query, request.topK, request.filter);
 
-        int totalResults = 0;
-        for (Map.Entry<String, SearchResult> entry : results.entrySet()) {
-            SearchResult result = entry.getValue();
-            if (!result.getDocuments().isEmpty()) {
-                output.append(String.format("=== 来自知识库: %s ===\n", entry.getKey()));
-                output.append(result.formatForLLM());
-                output.append("\n");
-                totalResults += result.getDocuments().size();
-            }
-        }
-
-        if (totalResults == 0) {
+        if (result.getDocuments().isEmpty()) {
             return ToolResult.success(
                     String.format("在所有知识库中均未找到与 '%s' 相关的信息。", request.query)
             );
         }
 
-        return ToolResult.success(output.toString());
+        String formattedResult = String.format(
+                "搜索所有知识库，查询: '%s'\n\n%s",
+                request.query,
+                result.formatForLLM(snippetExtractor())
+        );
+
+        return ToolResult.success(formattedResult);
+    }
+
+    /**
+     * 摘要提取器，关闭摘要时返回null（格式化时包含全部内容）
+     */
+    private SnippetExtractor snippetExtractor() {
+        if (!snippetEnabled) {
+            return null;
+        }
+        if (snippetExtractor == null) {
+            snippetExtractor = new SnippetExtractor(SnippetConfig.builder()
+                    .maxCharsPerResult(snippetMaxCharsPerResult)
+                    .maxCharsTotal(snippetMaxCharsTotal)
+                    .highlight(snippetHighlight)
+                    .build());
+        }
+        return snippetExtractor;
     }
 
     /**
@@ -205,11 +259,13 @@ public class KnowledgeSearchTool implements Tool {
         String query;
         String knowledgeBase;
         int topK;
+        Filter filter;
 
-        SearchRequest(String query, String knowledgeBase, int topK) {
+        SearchRequest(String query, String knowledgeBase, int topK, Filter filter) {
             this.query = query;
             this.knowledgeBase = knowledgeBase;
             this.topK = Math.max(1, Math.min(topK, 10)); // 限制在1-10之间
+            this.filter = filter;
         }
     }
 }
@@ -3,16 +3,26 @@ package com.example.agentpattern.tools;
 import com.example.agentpattern.agent.tool.Tool;
 import com.example.agentpattern.agent.tool.ToolRegistry;
 import com.example.agentpattern.loader.ProductDataLoader;
+import com.example.agentpattern.model.ProductAttribute;
 import com.example.agentpattern.model.ProductInfo;
+import com.example.agentpattern.model.ProductQuery;
+import com.example.agentpattern.model.ProductSearchResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 产品搜索工具
- * 支持多品牌产品搜索，从配置文件动态加载产品数据
+ * 支持多品牌产品搜索，从配置文件动态加载产品数据。
+ * 结果按相关度排序，只列出得分最高的若干个产品，并给出匹配总数。
+ * JSON输入还可以按品牌、类别和价格、分辨率、存储容量、续航的数值范围过滤，由产品目录的索引直接求出结果，
+ * 不需要把整个类别的产品交给LLM逐个筛选
  */
 @Slf4j
 @Component
@@ -20,6 +30,10 @@ public class ProductSearchTool implements Tool {
 
     private final ToolRegistry toolRegistry;
     private final ProductDataLoader productDataLoader;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final int DEFAULT_MAX_RESULTS = 10;
+    private static final int MAX_RESULTS_LIMIT = 20;
 
     public ProductSearchTool(ToolRegistry toolRegistry, ProductDataLoader productDataLoader) {
         this.toolRegistry = toolRegistry;
@@ -42,33 +56,39 @@ public class ProductSearchTool implements Tool {
     @Override
     public String getDescription() {
         return "Search for products by name, brand, or category. Supports multiple brands including Apple, Reolink, etc. " +
-               "Input should be a product name, brand, or category keyword (e.g., 'iPhone', 'Reolink', '摄像头', 'MacBook')";
+               "Input should be a product name, brand, or category keyword (e.g., 'iPhone', 'Reolink', '摄像头', 'MacBook'); " +
+               "separate several keywords with spaces to find products matching all of them (e.g., 'Reolink 4K 摄像头'). " +
+               "Results are ranked by relevance. " +
+               "For structured filtering pass a JSON object with optional brand, category and numeric ranges " +
+               "min_/max_ price (CNY), resolution_mp, storage_gb, battery_hours " +
+               "(e.g., {\"query\": \"摄像头\", \"brand\": \"Reolink\", \"max_price\": 1000, \"min_resolution_mp\": 8}).";
     }
 
     @Override
     public ToolResult execute(String input) {
         try {
-            String query = input.trim();
+            SearchRequest request = parseInput(input);
+            ProductQuery query = request.query();
+            int maxResults = request.maxResults();
             log.debug("Searching products with query: {}", query);
 
-            // 使用产品加载器搜索
-            List<ProductInfo> results = productDataLoader.searchProducts(query);
+            // 按相关度取前若干个产品，避免输出过长
+            ProductSearchResult searchResult = productDataLoader.searchProducts(query, maxResults);
 
-            if (results.isEmpty()) {
+            if (searchResult.getTotalMatches() == 0) {
                 // 提供搜索建议
                 String suggestion = buildSearchSuggestion();
                 return ToolResult.success("未找到匹配的产品。\n\n" + suggestion);
             }
 
-            // 限制返回结果数量，避免输出过长
-            int maxResults = 10;
-            boolean hasMore = results.size() > maxResults;
-            List<ProductInfo> limitedResults = results.stream()
-                    .limit(maxResults)
-                    .toList();
+            List<ProductInfo> limitedResults = searchResult.getProducts();
+            boolean hasMore = searchResult.hasMore();
 
             StringBuilder sb = new StringBuilder();
-            sb.append(String.format("找到 %d 个产品", results.size()));
+            if (searchResult.isPartialMatch()) {
+                sb.append("没有同时匹配全部关键词的产品，以下是匹配部分关键词的产品。\n");
+            }
+            sb.append(String.format("找到 %d 个产品", searchResult.getTotalMatches()));
             if (hasMore) {
                 sb.append(String.format("，显示前 %d 个", maxResults));
             }
@@ -77,7 +97,8 @@ public class ProductSearchTool implements Tool {
             for (int i = 0; i < limitedResults.size(); i++) {
                 ProductInfo product = limitedResults.get(i);
                 sb.append(String.format("%d. ", i + 1));
-                sb.append(product.toFormattedString(false));
+                // 按规格范围过滤时列出规格参数，便于核对
+                sb.append(product.toFormattedString(hasSpecRange(query)));
                 if (i < limitedResults.size() - 1) {
                     sb.append("\n");
                 }
@@ -85,8 +106,9 @@ public class ProductSearchTool implements Tool {
 
             if (hasMore) {
                 sb.append("\n提示: 还有 ")
-                  .append(results.size() - maxResults)
-                  .append(" 个产品未显示，请使用更具体的关键词缩小搜索范围。");
+                  .append(searchResult.getTotalMatches() - maxResults)
+                  .append(" 个产品未显示，请使用更具体的关键词或品牌、类别、价格条件缩小搜索范围。");
+                sb.append(formatFacets(searchResult.getFacets()));
             }
 
             return ToolResult.success(sb.toString());
@@ -105,14 +127,124 @@ public class ProductSearchTool implements Tool {
                   "properties": {
                     "query": {
                       "type": "string",
-                      "description": "产品名称、品牌或类别关键词"
+                      "description": "产品名称、品牌或类别关键词，多个关键词以空格分隔"
+                    },
+                    "brand": {
+                      "type": "string",
+                      "description": "品牌（可选，完全匹配）"
+                    },
+                    "category": {
+                      "type": "string",
+                      "description": "类别（可选，包含即可，如 摄像头）"
+                    },
+                    "min_price": { "type": "number", "description": "最低价格（元，可选）" },
+                    "max_price": { "type": "number", "description": "最高价格（元，可选）" },
+                    "min_resolution_mp": { "type": "number", "description": "最低分辨率（百万像素，4K约为8.3，可选）" },
+                    "max_resolution_mp": { "type": "number", "description": "最高分辨率（百万像素，可选）" },
+                    "min_storage_gb": { "type": "number", "description": "最小存储容量（GB，可选）" },
+                    "max_storage_gb": { "type": "number", "description": "最大存储容量（GB，可选）" },
+                    "min_battery_hours": { "type": "number", "description": "最短续航（小时，可选）" },
+                    "max_battery_hours": { "type": "number", "description": "最长续航（小时，可选）" },
+                    "top_k": {
+                      "type": "number",
+                      "description": "最多返回的产品数量（默认10，最多20）"
                     }
-                  },
-                  "required": ["query"]
+                  }
                 }
                 """;
     }
 
+    /**
+     * 解析输入参数，非JSON输入当作纯文本关键词
+     */
+    @SuppressWarnings("unchecked")
+    private SearchRequest parseInput(String input) {
+        String trimmed = input.trim();
+        if (!trimmed.startsWith("{")) {
+            return new SearchRequest(ProductQuery.builder().keywords(trimmed).build(), DEFAULT_MAX_RESULTS);
+        }
+
+        Map<String, Object> params;
+        try {
+            params = objectMapper.readValue(trimmed, Map.class);
+        } catch (Exception e) {
+            log.debug("Input is not JSON, treating as plain text query");
+            return new SearchRequest(ProductQuery.builder().keywords(trimmed).build(), DEFAULT_MAX_RESULTS);
+        }
+
+        ProductQuery query = ProductQuery.builder()
+                .keywords(text(params.get("query")))
+                .brand(text(params.get("brand")))
+                .category(text(params.get("category")))
+                .build();
+        for (ProductAttribute attribute : ProductAttribute.values()) {
+            query.range(attribute,
+                    number(params, "min_" + attribute.getKey()),
+                    number(params, "max_" + attribute.getKey()));
+        }
+        // 范围参数名写错时直接报错，而不是静默忽略
+        for (String key : params.keySet()) {
+            if ((key.startsWith("min_") || key.startsWith("max_"))
+                    && ProductAttribute.fromKey(key.substring(4)) == null) {
+                throw new IllegalArgumentException("Unknown range parameter '" + key + "', supported: " +
+                        Arrays.stream(ProductAttribute.values())
+                                .map(ProductAttribute::getKey)
+                                .collect(Collectors.joining(", ")));
+            }
+        }
+
+        int maxResults = params.get("top_k") instanceof Number topK
+                ? Math.max(1, Math.min(topK.intValue(), MAX_RESULTS_LIMIT))
+                : DEFAULT_MAX_RESULTS;
+        return new SearchRequest(query, maxResults);
+    }
+
+    private static String text(Object value) {
+        return value == null ? null : value.toString().trim();
+    }
+
+    private static Double number(Map<String, Object> params, String key) {
+        Object value = params.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        try {
+            return Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number");
+        }
+    }
+
+    private static boolean hasSpecRange(ProductQuery query) {
+        return query.getRanges().keySet().stream().anyMatch(attribute -> attribute != ProductAttribute.PRICE);
+    }
+
+    /**
+     * 把分面计数格式化为一行一个维度
+     */
+    private static String formatFacets(Map<String, Map<String, Integer>> facets) {
+        StringBuilder sb = new StringBuilder();
+        Map<String, String> names = Map.of("brand", "品牌", "category", "类别", "price", "价格");
+        facets.forEach((facet, counts) -> {
+            if (counts.size() > 1) {
+                sb.append("\n按").append(names.getOrDefault(facet, facet)).append(": ")
+                  .append(counts.entrySet().stream()
+                          .map(e -> e.getKey() + " (" + e.getValue() + ")")
+                          .collect(Collectors.joining(", ")));
+            }
+        });
+        return sb.toString();
+    }
+
+    /**
+     * 搜索请求模型
+     */
+    private record SearchRequest(ProductQuery query, int maxResults) {
+    }
+
     /**
      * 构建搜索建议
      */
@@ -0,0 +1,483 @@
+package com.example.agentpattern.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 压缩位图（Roaring Bitmap 的简化实现）
+ * 非负整数按高16位分块，每块按基数选择容器：不超过4096个元素时为有序 char 数组，否则为 65536 位的位图。
+ * 稀疏集合只占用约 2 字节/元素，稠密集合约 1 位/元素，交并差按容器逐块计算。
+ * <p>
+ * {@link #copy()} 与原位图共享容器，任一方修改某个容器时才复制该容器（容器记录可以原地修改它的位图）。
+ * 非线程安全。
+ */
+public final class CompressedBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private char[] keys;
+    private Object[] containers;
+    private int size;
+
+    /**
+     * 本位图的标记，容器的 owner 与之相同时才能原地修改
+     */
+    private Object owner = new Object();
+
+    public CompressedBitmap() {
+        this(new char[4], new Object[4], 0);
+    }
+
+    private CompressedBitmap(char[] keys, Object[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    /**
+     * 包含 [0, n) 的位图
+     */
+    public static CompressedBitmap range(int n) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < n; i++) {
+            bitmap.add(i);
+        }
+        return bitmap;
+    }
+
+    public void add(int value) {
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int i = findKey(key);
+        if (i >= 0) {
+            if (!containsIn(containers[i], low)) {
+                containers[i] = own(addTo(writable(containers[i]), low));
+            }
+            return;
+        }
+        insertContainer(-i - 1, key, new char[]{low}, 1);
+    }
+
+    public void remove(int value) {
+        int i = findKey((char) (value >>> 16));
+        if (i < 0 || !containsIn(containers[i], (char) value)) {
+            return;
+        }
+        Object container = own(removeFrom(writable(containers[i]), (char) value));
+        if (cardinality(container) == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            size--;
+            containers[size] = null;
+        } else {
+            containers[i] = container;
+        }
+    }
+
+    public boolean contains(int value) {
+        int i = findKey((char) (value >>> 16));
+        return i >= 0 && containsIn(containers[i], (char) value);
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += cardinality(containers[i]);
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 按升序遍历所有元素
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            Object container = containers[i];
+            if (container instanceof ArrayContainer array) {
+                for (int j = 0; j < array.cardinality; j++) {
+                    action.accept(high | array.values[j]);
+                }
+            } else {
+                long[] words = ((BitmapContainer) container).words;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 副本与原位图互不影响；容器在任一方第一次修改时才复制，因此复制的代价与容器数（元素范围 / 65536）成正比
+     */
+    public CompressedBitmap copy() {
+        owner = new Object();
+        return new CompressedBitmap(keys.clone(), containers.clone(), size);
+    }
+
+    /**
+     * 交集
+     */
+    public static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                result.appendIfNotEmpty(a.keys[i], and(a.containers[i], b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 并集
+     */
+    public static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.appendIfNotEmpty(a.keys[i], copyOf(a.containers[i]));
+                i++;
+            } else if (i == a.size || a.keys[i] > b.keys[j]) {
+                result.appendIfNotEmpty(b.keys[j], copyOf(b.containers[j]));
+                j++;
+            } else {
+                result.appendIfNotEmpty(a.keys[i], or(a.containers[i], b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 差集 a - b
+     */
+    public static CompressedBitmap andNot(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            if (j < b.size && b.keys[j] == a.keys[i]) {
+                result.appendIfNotEmpty(a.keys[i], andNot(a.containers[i], b.containers[j]));
+            } else {
+                result.appendIfNotEmpty(a.keys[i], copyOf(a.containers[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 容器占用的内存估计（字节）
+     */
+    public long sizeInBytes() {
+        long bytes = (long) keys.length * Character.BYTES + (long) containers.length * 8;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i] instanceof ArrayContainer array
+                    ? (long) array.values.length * Character.BYTES
+                    : (long) BITMAP_WORDS * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    private int findKey(char key) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else if (keys[mid] > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private void insertContainer(int index, char key, char[] values, int cardinality) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = own(new ArrayContainer(values, cardinality));
+        size++;
+    }
+
+    /**
+     * 可由本位图原地修改的容器：与其他位图共享的容器先复制
+     */
+    private Object writable(Object container) {
+        Object containerOwner = container instanceof ArrayContainer array
+                ? array.owner
+                : ((BitmapContainer) container).owner;
+        return containerOwner == owner ? container : copyOf(container);
+    }
+
+    private Object own(Object container) {
+        if (container instanceof ArrayContainer array) {
+            array.owner = owner;
+        } else {
+            ((BitmapContainer) container).owner = owner;
+        }
+        return container;
+    }
+
+    private void appendIfNotEmpty(char key, Object container) {
+        if (cardinality(container) == 0) {
+            return;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+    }
+
+    // ---- 容器操作 ----
+
+    private static final class ArrayContainer {
+        private char[] values;
+        private int cardinality;
+        private Object owner;
+
+        private ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+    }
+
+    private static final class BitmapContainer {
+        private final long[] words;
+        private int cardinality;
+        private Object owner;
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        private static BitmapContainer of(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            return new BitmapContainer(words, cardinality);
+        }
+    }
+
+    private static int cardinality(Object container) {
+        return container instanceof ArrayContainer array
+                ? array.cardinality
+                : ((BitmapContainer) container).cardinality;
+    }
+
+    private static boolean containsIn(Object container, char value) {
+        if (container instanceof ArrayContainer array) {
+            return Arrays.binarySearch(array.values, 0, array.cardinality, value) >= 0;
+        }
+        return (((BitmapContainer) container).words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    private static Object addTo(Object container, char value) {
+        if (container instanceof BitmapContainer bitmap) {
+            long bit = 1L << value;
+            if ((bitmap.words[value >>> 6] & bit) == 0) {
+                bitmap.words[value >>> 6] |= bit;
+                bitmap.cardinality++;
+            }
+            return bitmap;
+        }
+        ArrayContainer array = (ArrayContainer) container;
+        int i = Arrays.binarySearch(array.values, 0, array.cardinality, value);
+        if (i >= 0) {
+            return array;
+        }
+        if (array.cardinality == ARRAY_MAX) {
+            BitmapContainer bitmap = toBitmap(array);
+            bitmap.words[value >>> 6] |= 1L << value;
+            bitmap.cardinality++;
+            return bitmap;
+        }
+        int insert = -i - 1;
+        if (array.cardinality == array.values.length) {
+            array.values = Arrays.copyOf(array.values, Math.min(ARRAY_MAX, array.cardinality * 2));
+        }
+        System.arraycopy(array.values, insert, array.values, insert + 1, array.cardinality - insert);
+        array.values[insert] = value;
+        array.cardinality++;
+        return array;
+    }
+
+    private static Object removeFrom(Object container, char value) {
+        if (container instanceof BitmapContainer bitmap) {
+            long bit = 1L << value;
+            if ((bitmap.words[value >>> 6] & bit) != 0) {
+                bitmap.words[value >>> 6] &= ~bit;
+                bitmap.cardinality--;
+            }
+            return bitmap.cardinality <= ARRAY_MAX ? toArray(bitmap) : bitmap;
+        }
+        ArrayContainer array = (ArrayContainer) container;
+        int i = Arrays.binarySearch(array.values, 0, array.cardinality, value);
+        if (i >= 0) {
+            System.arraycopy(array.values, i + 1, array.values, i, array.cardinality - i - 1);
+            array.cardinality--;
+        }
+        return array;
+    }
+
+    private static Object and(Object a, Object b) {
+        if (a instanceof BitmapContainer x && b instanceof BitmapContainer y) {
+            long[] words = new long[BITMAP_WORDS];
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] = x.words[w] & y.words[w];
+            }
+            return normalize(BitmapContainer.of(words));
+        }
+        // 至少一方是数组：遍历数组一方，逐个检查另一方
+        ArrayContainer array = a instanceof ArrayContainer ? (ArrayContainer) a : (ArrayContainer) b;
+        Object other = array == a ? b : a;
+        char[] values = new char[array.cardinality];
+        int n = 0;
+        for (int i = 0; i < array.cardinality; i++) {
+            if (containsIn(other, array.values[i])) {
+                values[n++] = array.values[i];
+            }
+        }
+        return new ArrayContainer(values, n);
+    }
+
+    private static Object or(Object a, Object b) {
+        if (a instanceof ArrayContainer x && b instanceof ArrayContainer y
+                && x.cardinality + y.cardinality <= ARRAY_MAX) {
+            char[] values = new char[x.cardinality + y.cardinality];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < x.cardinality || j < y.cardinality) {
+                if (j == y.cardinality || (i < x.cardinality && x.values[i] < y.values[j])) {
+                    values[n++] = x.values[i++];
+                } else if (i == x.cardinality || x.values[i] > y.values[j]) {
+                    values[n++] = y.values[j++];
+                } else {
+                    values[n++] = x.values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(values, n);
+        }
+        long[] words = toWords(a);
+        orInto(words, b);
+        return normalize(BitmapContainer.of(words));
+    }
+
+    private static Object andNot(Object a, Object b) {
+        if (a instanceof ArrayContainer array) {
+            char[] values = new char[array.cardinality];
+            int n = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (!containsIn(b, array.values[i])) {
+                    values[n++] = array.values[i];
+                }
+            }
+            return new ArrayContainer(values, n);
+        }
+        long[] words = ((BitmapContainer) a).words.clone();
+        if (b instanceof BitmapContainer other) {
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] &= ~other.words[w];
+            }
+        } else {
+            ArrayContainer other = (ArrayContainer) b;
+            for (int i = 0; i < other.cardinality; i++) {
+                char v = other.values[i];
+                words[v >>> 6] &= ~(1L << v);
+            }
+        }
+        return normalize(BitmapContainer.of(words));
+    }
+
+    private static long[] toWords(Object container) {
+        if (container instanceof BitmapContainer bitmap) {
+            return bitmap.words.clone();
+        }
+        long[] words = new long[BITMAP_WORDS];
+        orInto(words, container);
+        return words;
+    }
+
+    private static void orInto(long[] words, Object container) {
+        if (container instanceof BitmapContainer bitmap) {
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] |= bitmap.words[w];
+            }
+        } else {
+            ArrayContainer array = (ArrayContainer) container;
+            for (int i = 0; i < array.cardinality; i++) {
+                char v = array.values[i];
+                words[v >>> 6] |= 1L << v;
+            }
+        }
+    }
+
+    private static BitmapContainer toBitmap(ArrayContainer array) {
+        long[] words = new long[BITMAP_WORDS];
+        orInto(words, array);
+        return new BitmapContainer(words, array.cardinality);
+    }
+
+    private static ArrayContainer toArray(BitmapContainer bitmap) {
+        char[] values = new char[Math.max(bitmap.cardinality, 1)];
+        int n = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = bitmap.words[w];
+            while (word != 0) {
+                values[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return new ArrayContainer(values, n);
+    }
+
+    /**
+     * 基数不超过阈值的位图容器转换为数组容器
+     */
+    private static Object normalize(BitmapContainer bitmap) {
+        return bitmap.cardinality <= ARRAY_MAX ? toArray(bitmap) : bitmap;
+    }
+
+    private static Object copyOf(Object container) {
+        if (container instanceof ArrayContainer array) {
+            return new ArrayContainer(Arrays.copyOf(array.values, Math.max(array.cardinality, 1)), array.cardinality);
+        }
+        BitmapContainer bitmap = (BitmapContainer) container;
+        return new BitmapContainer(bitmap.words.clone(), bitmap.cardinality);
+    }
+}
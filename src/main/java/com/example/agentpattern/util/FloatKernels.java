@@ -0,0 +1,37 @@
+package com.example.agentpattern.util;
+
+/**
+ * float向量计算内核，由 {@link VectorKernels} 在启动时选择实现
+ */
+interface FloatKernels {
+
+    /**
+     * a[aOffset..aOffset+length) 与 b[bOffset..bOffset+length) 的内积
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * 欧氏距离的平方
+     */
+    float l2Squared(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * 查询向量与 codes[offset..offset+query.length) 中int8编码的向量的内积（未乘缩放系数）
+     */
+    float dotInt8(float[] query, byte[] codes, int offset);
+
+    /**
+     * 查询向量与 block 中连续存放的 count 个向量逐一求内积，结果写入 out[0..count)
+     */
+    default void dotBlock(float[] query, float[] block, int blockOffset, int count, float[] out) {
+        int dimension = query.length;
+        for (int j = 0, offset = blockOffset; j < count; j++, offset += dimension) {
+            out[j] = dot(query, 0, block, offset, dimension);
+        }
+    }
+
+    /**
+     * 实现名称
+     */
+    String name();
+}
@@ -0,0 +1,138 @@
+package com.example.agentpattern.util;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * 以非负 int 为下标的持久化数组（32叉前缀树）
+ * {@link #copy()} 只复制根引用，副本与原数组共享所有节点；之后任一方修改某个下标时，
+ * 只复制从根到该下标路径上的节点（约 log32(n) 个、每个32个槽位），其余节点继续共享。
+ * 因此每个版本的修改代价与修改的元素数成正比，而与数组长度无关。
+ * <p>
+ * 每个实例持有一个编辑标记，节点（长度33的数组，最后一个槽位）记录创建它的实例的标记，只有标记相同的节点才能原地修改；
+ * {@link #copy()} 为双方换上新标记，共享的节点对双方都只读。
+ * 下标可以超出当前长度，中间未写入的位置为null，因此也可以作为稀疏的 int 键映射。
+ * 单个实例的修改非线程安全，已发布、不再修改的实例可以被多个线程无锁并发读取。
+ */
+public final class PersistentArray<T> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private Object edit = new Object();
+    private Object[] root;
+    private int shift;
+    private int size;
+
+    public PersistentArray() {
+        this.root = newNode();
+    }
+
+    private PersistentArray(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    /**
+     * 共享全部节点的副本，双方之后的修改互不影响
+     */
+    public PersistentArray<T> copy() {
+        edit = new Object();
+        return new PersistentArray<>(root, shift, size);
+    }
+
+    /**
+     * 已写入的最大下标 + 1
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 下标处的元素，未写入或超出长度时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index >= size) {
+            return null;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (T) node[index & MASK];
+    }
+
+    public void add(T value) {
+        set(size, value);
+    }
+
+    /**
+     * 写入下标处的元素，下标超出长度时数组随之变长
+     */
+    public void set(int index, T value) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        while (shift < Integer.SIZE - BITS && index >>> (shift + BITS) != 0) {
+            Object[] parent = newNode();
+            parent[0] = root;
+            root = parent;
+            shift += BITS;
+        }
+        root = editable(root);
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            int slot = (index >>> level) & MASK;
+            Object[] child = (Object[]) node[slot];
+            child = child == null ? newNode() : editable(child);
+            node[slot] = child;
+            node = child;
+        }
+        node[index & MASK] = value;
+        if (index >= size) {
+            size = index + 1;
+        }
+    }
+
+    /**
+     * 用 function 的返回值替换每个非null元素
+     */
+    public void replaceAll(UnaryOperator<T> function) {
+        root = replaceAll(root, shift, function);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object[] replaceAll(Object[] node, int level, UnaryOperator<T> function) {
+        node = editable(node);
+        for (int i = 0; i < WIDTH; i++) {
+            Object slot = node[i];
+            if (slot != null) {
+                node[i] = level > 0 ? replaceAll((Object[]) slot, level - BITS, function) : function.apply((T) slot);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * 新节点：32个槽位加上本实例的编辑标记
+     */
+    private Object[] newNode() {
+        Object[] node = new Object[WIDTH + 1];
+        node[WIDTH] = edit;
+        return node;
+    }
+
+    private Object[] editable(Object[] node) {
+        if (node[WIDTH] == edit) {
+            return node;
+        }
+        Object[] copy = node.clone();
+        copy[WIDTH] = edit;
+        return copy;
+    }
+}
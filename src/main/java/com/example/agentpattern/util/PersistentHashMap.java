@@ -0,0 +1,220 @@
+package com.example.agentpattern.util;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * 持久化哈希表（按键的哈希值逐5位分叉的32叉前缀树）
+ * 与 {@link PersistentArray} 相同，{@link #copy()} 只复制根引用，之后的修改只复制被触及路径上的节点，
+ * 单次读写访问的节点数不超过7个。键和值都不能为null，哈希值完全相同的键保存在同一个叶子数组中。
+ * 删除只清空槽位，不回收变空的节点。
+ * <p>
+ * 单个实例的修改非线程安全，已发布、不再修改的实例可以被多个线程无锁并发读取。
+ */
+public final class PersistentHashMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private Object edit = new Object();
+    private Node root;
+    private int size;
+
+    public PersistentHashMap() {
+        this.root = new Node(edit);
+    }
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * 共享全部节点的副本，双方之后的修改互不影响
+     */
+    public PersistentHashMap<K, V> copy() {
+        edit = new Object();
+        return new PersistentHashMap<>(root, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            Object slot = node.slots[(hash >>> shift) & MASK];
+            if (slot instanceof Node child) {
+                node = child;
+                continue;
+            }
+            if (slot instanceof Entry<?, ?> entry) {
+                return entry.hash == hash && entry.key.equals(key) ? (V) entry.value : null;
+            }
+            if (slot instanceof Entry<?, ?>[] collisions) {
+                int i = indexOf(collisions, key);
+                return i < 0 ? null : (V) collisions[i].value;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return 键原来对应的值，没有时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        int hash = hash(key);
+        Entry<K, V> added = new Entry<>(key, value, hash);
+        root = editable(root);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            int i = (hash >>> shift) & MASK;
+            Object slot = node.slots[i];
+            if (slot == null) {
+                node.slots[i] = added;
+                size++;
+                return null;
+            }
+            if (slot instanceof Node child) {
+                Node next = editable(child);
+                node.slots[i] = next;
+                node = next;
+                continue;
+            }
+            int slotHash = slot instanceof Entry<?, ?> entry ? entry.hash : ((Entry<?, ?>[]) slot)[0].hash;
+            if (slotHash != hash) {
+                // 哈希值在更高的位上不同：下推为子节点后继续
+                Node child = new Node(edit);
+                child.slots[(slotHash >>> (shift + BITS)) & MASK] = slot;
+                node.slots[i] = child;
+                node = child;
+                continue;
+            }
+            if (slot instanceof Entry<?, ?> entry) {
+                if (entry.key.equals(key)) {
+                    node.slots[i] = added;
+                    return (V) entry.value;
+                }
+                node.slots[i] = new Entry<?, ?>[]{entry, added};
+                size++;
+                return null;
+            }
+            Entry<?, ?>[] collisions = (Entry<?, ?>[]) slot;
+            int existing = indexOf(collisions, key);
+            Entry<?, ?>[] replaced = Arrays.copyOf(collisions, existing < 0 ? collisions.length + 1 : collisions.length);
+            replaced[existing < 0 ? collisions.length : existing] = added;
+            node.slots[i] = replaced;
+            if (existing < 0) {
+                size++;
+                return null;
+            }
+            return (V) collisions[existing].value;
+        }
+    }
+
+    /**
+     * @return 被删除的值，键不存在时返回null（此时不复制任何节点）
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(K key) {
+        V previous = get(key);
+        if (previous == null) {
+            return null;
+        }
+        int hash = hash(key);
+        root = editable(root);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            int i = (hash >>> shift) & MASK;
+            Object slot = node.slots[i];
+            if (slot instanceof Node child) {
+                Node next = editable(child);
+                node.slots[i] = next;
+                node = next;
+                continue;
+            }
+            if (slot instanceof Entry<?, ?>) {
+                node.slots[i] = null;
+            } else {
+                Entry<?, ?>[] collisions = (Entry<?, ?>[]) slot;
+                int existing = indexOf(collisions, key);
+                if (collisions.length == 2) {
+                    node.slots[i] = collisions[1 - existing];
+                } else {
+                    Entry<?, ?>[] remaining = new Entry<?, ?>[collisions.length - 1];
+                    System.arraycopy(collisions, 0, remaining, 0, existing);
+                    System.arraycopy(collisions, existing + 1, remaining, existing, remaining.length - existing);
+                    node.slots[i] = remaining;
+                }
+            }
+            size--;
+            return previous;
+        }
+    }
+
+    /**
+     * 遍历所有键值对，顺序不确定
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        forEach(root, action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void forEach(Node node, BiConsumer<? super K, ? super V> action) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Node child) {
+                forEach(child, action);
+            } else if (slot instanceof Entry<?, ?> entry) {
+                action.accept((K) entry.key, (V) entry.value);
+            } else if (slot instanceof Entry<?, ?>[] collisions) {
+                for (Entry<?, ?> entry : collisions) {
+                    action.accept((K) entry.key, (V) entry.value);
+                }
+            }
+        }
+    }
+
+    private Node editable(Node node) {
+        return node.edit == edit ? node : new Node(edit, node.slots.clone());
+    }
+
+    private static int indexOf(Entry<?, ?>[] collisions, Object key) {
+        for (int i = 0; i < collisions.length; i++) {
+            if (collisions[i].key.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private record Entry<K, V>(K key, V value, int hash) {
+    }
+
+    private static final class Node {
+
+        /**
+         * 创建该节点的实例的编辑标记
+         */
+        private final Object edit;
+        private final Object[] slots;
+
+        private Node(Object edit) {
+            this(edit, new Object[WIDTH]);
+        }
+
+        private Node(Object edit, Object[] slots) {
+            this.edit = edit;
+            this.slots = slots;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.agentpattern.util;
+
+import java.util.Arrays;
+
+/**
+ * 有界最小堆，用于从大量候选中选出分数最高的 K 个
+ * 元素为 (int ID, float 分数)，全部保存在原始类型数组中，插入不产生对象分配。
+ * 堆顶是当前 K 个候选中分数最低的一个，新候选只有超过堆顶时才会进入，总代价 O(N log K)。
+ * 分数相同时ID较小者优先，保证结果稳定。
+ * <p>
+ * 可通过 {@link #reset(int)} 复用；非线程安全。
+ */
+public final class TopKHeap {
+
+    private int[] ids;
+    private float[] scores;
+    private int capacity;
+    private int size;
+
+    public TopKHeap(int capacity) {
+        this.ids = new int[Math.max(capacity, 1)];
+        this.scores = new float[Math.max(capacity, 1)];
+        this.capacity = Math.max(capacity, 0);
+    }
+
+    /**
+     * 清空堆并设置新的容量
+     */
+    public void reset(int capacity) {
+        if (capacity > ids.length) {
+            ids = new int[capacity];
+            scores = new float[capacity];
+        }
+        this.capacity = Math.max(capacity, 0);
+        this.size = 0;
+    }
+
+    /**
+     * 提交一个候选
+     *
+     * @return 候选是否进入了堆
+     */
+    public boolean offer(int id, float score) {
+        if (size < capacity) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (size == 0 || !better(id, score, ids[0], scores[0])) {
+            return false;
+        }
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * 当前进入堆的最低分数，堆未满时返回负无穷
+     */
+    public float threshold() {
+        return size < capacity || size == 0 ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 将堆原地排成分数降序，之后可通过 {@link #id(int)} / {@link #score(int)} 按名次读取。
+     * 排序后不应再调用 {@link #offer(int, float)}，需先 {@link #reset(int)}
+     */
+    public void sortDescending() {
+        // 堆排序：依次把堆顶（最低分）换到末尾，最终得到降序排列
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    public int id(int i) {
+        return ids[i];
+    }
+
+    public float score(int i) {
+        return scores[i];
+    }
+
+    /**
+     * 按分数降序返回堆中的ID（会排序堆）
+     */
+    public int[] toSortedIds() {
+        sortDescending();
+        return Arrays.copyOf(ids, size);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(ids[parent], scores[parent], ids[i], scores[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        siftDown(i, size);
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= end) {
+                break;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < end && better(ids[left], scores[left], ids[right], scores[right])) {
+                worst = right;
+            }
+            if (!better(ids[i], scores[i], ids[worst], scores[worst])) {
+                break;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    /**
+     * (id1, s1) 是否排在 (id2, s2) 之前
+     */
+    private static boolean better(int id1, float s1, int id2, float s2) {
+        return s1 > s2 || (s1 == s2 && id1 < id2);
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.agentpattern.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 稠密float向量的相似度计算
+ * 以 simd profile 构建且JVM加载了 jdk.incubator.vector 模块时使用SIMD实现，否则使用循环展开的标量实现；
+ * 可通过系统属性 {@code -Dagentpattern.simd=false} 强制使用标量实现。
+ * <p>
+ * 余弦相似度的范数应在入库时预先计算（或直接存储归一化向量），查询时只需一次内积。
+ */
+@Slf4j
+public final class VectorKernels {
+
+    private static final FloatKernels KERNELS = load();
+
+    private VectorKernels() {
+    }
+
+    /**
+     * 当前使用的实现名称（scalar 或 simd-位宽）
+     */
+    public static String implementation() {
+        return KERNELS.name();
+    }
+
+    public static boolean isSimd() {
+        return KERNELS != ScalarFloatKernels.INSTANCE;
+    }
+
+    public static float dot(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        return KERNELS.dot(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * a[aOffset..aOffset+length) 与 b[bOffset..bOffset+length) 的内积，用于连续存放的向量
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNELS.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * 查询向量与int8编码向量的内积（未乘缩放系数），编码向量维度与查询相同，从 codes[offset] 开始连续存放
+     */
+    public static float dotInt8(float[] query, byte[] codes, int offset) {
+        return KERNELS.dotInt8(query, codes, offset);
+    }
+
+    public static float l2Squared(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        return KERNELS.l2Squared(a, 0, b, 0, a.length);
+    }
+
+    public static float norm(float[] v) {
+        return (float) Math.sqrt(KERNELS.dot(v, 0, v, 0, v.length));
+    }
+
+    /**
+     * 余弦相似度，任一向量为零向量时返回0
+     */
+    public static float cosine(float[] a, float[] b) {
+        return cosine(a, norm(a), b, norm(b));
+    }
+
+    /**
+     * 使用预先计算的范数求余弦相似度
+     */
+    public static float cosine(float[] a, float normA, float[] b, float normB) {
+        if (normA == 0f || normB == 0f) {
+            return 0f;
+        }
+        return dot(a, b) / (normA * normB);
+    }
+
+    /**
+     * 一个查询向量与连续存放的一组向量逐一求内积
+     *
+     * @param query       查询向量，维度即 query.length
+     * @param block       按行连续存放的向量
+     * @param blockOffset 第一个向量在 block 中的起始位置
+     * @param count       向量个数
+     * @param out         输出，out[j] 为查询与第 j 个向量的内积
+     */
+    public static void dotBlock(float[] query, float[] block, int blockOffset, int count, float[] out) {
+        if (blockOffset + (long) count * query.length > block.length || count > out.length) {
+            throw new IndexOutOfBoundsException("Block too small for " + count + " vectors");
+        }
+        KERNELS.dotBlock(query, block, blockOffset, count, out);
+    }
+
+    /**
+     * 将向量就地归一化为单位长度，返回原始范数
+     */
+    public static float normalizeInPlace(float[] v) {
+        float norm = norm(v);
+        if (norm > 0f) {
+            float inv = 1f / norm;
+            for (int i = 0; i < v.length; i++) {
+                v[i] *= inv;
+            }
+        }
+        return norm;
+    }
+
+    private static void checkLength(int a, int b) {
+        if (a != b) {
+            throw new IllegalArgumentException("Vectors must have the same dimension");
+        }
+    }
+
+    private static FloatKernels load() {
+        if (!Boolean.parseBoolean(System.getProperty("agentpattern.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return ScalarFloatKernels.INSTANCE;
+        }
+        try {
+            FloatKernels kernels = (FloatKernels) Class.forName("com.example.agentpattern.util.SimdFloatKernels")
+                    .getDeclaredConstructor()
+                    .newInstance();
+            log.info("Using {} vector kernels", kernels.name());
+            return kernels;
+        } catch (Throwable e) {
+            log.warn("Vector API unavailable, falling back to scalar kernels: {}", e.toString());
+            return ScalarFloatKernels.INSTANCE;
+        }
+    }
+}
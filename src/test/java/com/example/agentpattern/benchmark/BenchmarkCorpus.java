@@ -0,0 +1,75 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.base.KnowledgeBaseRegistry;
+import com.example.agentpattern.knowledge.loader.KnowledgeBaseFactory;
+import com.example.agentpattern.knowledge.loader.ReolinkKnowledgeLoader;
+import com.example.agentpattern.knowledge.loader.SampleKnowledgeLoader;
+import com.example.agentpattern.knowledge.vector.InMemoryVectorKnowledgeBase;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试使用的语料
+ * 不启动Spring容器，直接运行示例数据和Reolink数据的加载器
+ */
+public final class BenchmarkCorpus {
+
+    /**
+     * 答案为Reolink知识库中某个短语的问题：{问题, 答案短语}
+     */
+    public static final String[][] QUESTIONS = {
+            {"门铃的 microSD 卡最大支持多大容量", "最大128GB"},
+            {"单个 PoE 摄像头需要多少供电功率", "12-15W"},
+            {"怎么重置设备", "长按 Reset 按钮10秒"},
+            {"夜视距离有多远", "10-30米"},
+            {"镜头多久清洁一次", "每月一次"},
+            {"PoE 网线最长可以多长", "网线最长100米"},
+            {"安装时墙面打孔深度是多少", "5-6厘米"},
+            {"门铃预录功能能录按铃前几秒", "按铃前3秒"},
+            {"NVR 录像时间不准怎么办", "NTP 自动对时"},
+            {"TrackMix 支持几倍变焦", "6倍混合变焦"},
+            {"RLK16-800D8 套装多少钱", "¥6,299"},
+            {"摄像头安装高度多少合适", "2.5-3.5米"},
+            {"用 DDNS 远程访问 NVR 还需要设置什么", "设置端口转发"},
+    };
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * 加载示例知识库和Reolink知识库（整篇文档，不切分段落）
+     *
+     * @return 知识库名称 -> 文档列表
+     */
+    public static Map<String, List<Document>> loadKnowledgeCorpora() {
+        KnowledgeBaseRegistry registry = new KnowledgeBaseRegistry();
+        KnowledgeBaseFactory factory = new KnowledgeBaseFactory();
+        factory.setChunkingEnabled(false);
+        new SampleKnowledgeLoader(registry, factory).loadSampleData();
+        new ReolinkKnowledgeLoader(registry, factory).loadReolinkKnowledge();
+
+        Map<String, List<Document>> corpora = new LinkedHashMap<>();
+        for (KnowledgeBase kb : registry.getAllKnowledgeBases()) {
+            if (kb.unwrap() instanceof InMemoryVectorKnowledgeBase vectorKb) {
+                corpora.put(kb.getName(), new ArrayList<>(vectorKb.getDocuments()));
+            }
+        }
+        return corpora;
+    }
+
+    /**
+     * 文档参与索引的文本
+     */
+    public static List<String> texts(List<Document> documents) {
+        List<String> texts = new ArrayList<>(documents.size());
+        for (Document doc : documents) {
+            texts.add(doc.getTitle() + " " + doc.getContent());
+        }
+        return texts;
+    }
+}
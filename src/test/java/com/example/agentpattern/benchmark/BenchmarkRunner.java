@@ -0,0 +1,77 @@
+package com.example.agentpattern.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.LongSupplier;
+
+/**
+ * 简单的微基准测试工具
+ * 先预热再计时，报告每次操作的平均耗时和线程内存分配量。
+ * 用于在没有JMH的情况下对比同一进程内不同实现的相对性能，不追求绝对精度。
+ */
+public final class BenchmarkRunner {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * 测量结果
+     *
+     * @param name         名称
+     * @param nanosPerOp   每次操作的平均耗时（纳秒）
+     * @param bytesPerOp   每次操作的平均内存分配（字节）
+     * @param checksum     操作返回值之和，防止JIT消除无用计算
+     */
+    public record Result(String name, double nanosPerOp, double bytesPerOp, long checksum) {
+
+        public double opsPerSecond() {
+            return 1_000_000_000.0 / nanosPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %12.1f ns/op %12.1f B/op %14.1f ops/s",
+                    name, nanosPerOp, bytesPerOp, opsPerSecond());
+        }
+    }
+
+    /**
+     * 运行基准测试
+     *
+     * @param name       名称
+     * @param warmupMs   预热时长（毫秒）
+     * @param measureMs  计时时长（毫秒）
+     * @param operation  被测操作，返回值会被累加以防止被优化掉
+     */
+    public static Result run(String name, long warmupMs, long measureMs, LongSupplier operation) {
+        long checksum = loop(warmupMs, operation)[1];
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long[] stats = loop(measureMs, operation);
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        long ops = Math.max(stats[0], 1);
+        return new Result(name, (double) elapsed / ops, (double) allocated / ops, checksum + stats[1]);
+    }
+
+    /**
+     * 在给定时长内重复执行操作，返回 {执行次数, 返回值之和}
+     */
+    private static long[] loop(long durationMs, LongSupplier operation) {
+        long deadline = System.nanoTime() + durationMs * 1_000_000L;
+        long ops = 0;
+        long checksum = 0;
+        do {
+            for (int i = 0; i < 16; i++) {
+                checksum += operation.getAsLong();
+            }
+            ops += 16;
+        } while (System.nanoTime() < deadline);
+        return new long[]{ops, checksum};
+    }
+}
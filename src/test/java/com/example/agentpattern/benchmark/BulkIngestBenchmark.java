@@ -0,0 +1,132 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.KnowledgeBaseRegistry;
+import com.example.agentpattern.knowledge.loader.BulkDocumentIngester;
+import com.example.agentpattern.knowledge.loader.BulkIngestReport;
+import com.example.agentpattern.knowledge.loader.KnowledgeBaseFactory;
+import com.example.agentpattern.knowledge.vector.InMemoryVectorKnowledgeBase;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * NDJSON批量导入的吞吐量基准测试
+ * 由生成器按需产生NDJSON输入（不在内存中构造整个请求体），经 {@link BulkDocumentIngester} 导入新建的内存知识库，
+ * 报告总吞吐量、各批吞吐量的分布、输入字节数和导入结束时的堆内存占用；
+ * 并以逐个调用 addDocument（每个文档发布一次快照）导入前若干个文档作为对照。
+ * <p>
+ * 运行方式：mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.agentpattern.benchmark.BulkIngestBenchmark
+ * 可选参数：文档数 每批文档数 逐个导入的对照文档数（默认 100000 1000 5000）
+ */
+public class BulkIngestBenchmark {
+
+    private static final String[] WORDS = {
+            "摄像头", "夜视", "门铃", "电池", "录像", "无线", "连接", "安装", "追踪", "双镜头", "存储", "告警",
+            "camera", "wifi", "poe", "nvr", "4k", "solar", "firmware", "reset", "motion", "detection"
+    };
+    private static final int DOC_LENGTH = 80;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int singleCount = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+
+        KnowledgeBaseFactory factory = new KnowledgeBaseFactory();
+        BulkDocumentIngester ingester = new BulkDocumentIngester(new KnowledgeBaseRegistry(), factory,
+                new ObjectMapper());
+        NdjsonGenerator input = new NdjsonGenerator(count);
+        BulkIngestReport report = ingester.ingest("bulk", "", input, batchSize);
+
+        double[] rates = report.getBatches().stream()
+                .mapToDouble(BulkIngestReport.BatchStats::getDocumentsPerSecond)
+                .sorted()
+                .toArray();
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.out.printf("bulk: %d documents, %.1f MB NDJSON, %d batches of %d: %d ms, %.0f docs/s overall%n",
+                report.getDocuments(), input.bytes / 1e6, rates.length, batchSize,
+                report.getElapsedMs(), report.getDocumentsPerSecond());
+        System.out.printf("  batch commit docs/s: min %.0f, median %.0f, max %.0f (first %.0f, last %.0f)%n",
+                rates[0], rates[rates.length / 2], rates[rates.length - 1],
+                report.getBatches().get(0).getDocumentsPerSecond(),
+                report.getBatches().get(report.getBatches().size() - 1).getDocumentsPerSecond());
+        System.out.printf("  heap used after ingest: %.1f MB%n",
+                (runtime.totalMemory() - runtime.freeMemory()) / 1e6);
+
+        InMemoryVectorKnowledgeBase single = new InMemoryVectorKnowledgeBase("single", "");
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < singleCount; i++) {
+            single.addDocument(Document.builder().id("doc-" + i).title("").content(text(random)).build());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("addDocument one at a time: %d documents in %.0f ms, %.0f docs/s%n",
+                singleCount, seconds * 1000, singleCount / seconds);
+    }
+
+    private static String text(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < DOC_LENGTH; i++) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 按需逐行生成NDJSON的输入流
+     */
+    private static final class NdjsonGenerator extends InputStream {
+        private final int count;
+        private final Random random = new Random(42);
+        private int next;
+        private byte[] line = new byte[0];
+        private int position;
+        private long bytes;
+
+        NdjsonGenerator(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public int read() {
+            if (!fill()) {
+                return -1;
+            }
+            return line[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, line.length - position);
+            System.arraycopy(line, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean fill() {
+            if (position < line.length) {
+                return true;
+            }
+            if (next == count) {
+                return false;
+            }
+            String json = "{\"id\":\"doc-" + next + "\",\"title\":\"文档 " + next + "\",\"content\":\"" + text(random)
+                    + "\",\"metadata\":{\"category\":\"" + WORDS[next % WORDS.length] + "\"}}\n";
+            line = json.getBytes(StandardCharsets.UTF_8);
+            position = 0;
+            bytes += line.length;
+            next++;
+            return true;
+        }
+    }
+}
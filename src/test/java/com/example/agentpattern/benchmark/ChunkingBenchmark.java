@@ -0,0 +1,91 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.base.SearchResult;
+import com.example.agentpattern.knowledge.chunk.ChunkingConfig;
+import com.example.agentpattern.knowledge.chunk.ParentCollapsingKnowledgeBase;
+import com.example.agentpattern.knowledge.chunk.PassageChunker;
+import com.example.agentpattern.knowledge.vector.InMemoryVectorKnowledgeBase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 段落切分的检索质量与提示词体积对比
+ * 把示例知识库和Reolink知识库的全部文档分别以整篇文档、切分段落、切分后按原文档合并三种方式建库，
+ * 对一组答案为文中某个短语的问题检索，报告：
+ * <ul>
+ *     <li>hit@1：第一条结果包含答案短语的问题比例</li>
+ *     <li>precision@K：返回的结果中包含答案短语的比例</li>
+ *     <li>每条结果的字节数：formatForLLM 输出的 UTF-8 字节数除以结果条数</li>
+ *     <li>有效字节占比：包含答案的结果内容的字节数占 formatForLLM 输出字节数的比例（越高说明提示词中无关内容越少）</li>
+ * </ul>
+ * <p>
+ * 运行方式：mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.agentpattern.benchmark.ChunkingBenchmark
+ * 可选参数：段落最大词项数 重叠词项数 TopK（默认 200 40 3）
+ */
+public class ChunkingBenchmark {
+
+    public static void main(String[] args) {
+        int maxTokens = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int overlapTokens = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        int topK = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        List<Document> documents = new ArrayList<>();
+        for (Map.Entry<String, List<Document>> corpus : BenchmarkCorpus.loadKnowledgeCorpora().entrySet()) {
+            documents.addAll(corpus.getValue());
+        }
+        PassageChunker chunker = new PassageChunker(ChunkingConfig.builder()
+                .maxTokens(maxTokens)
+                .overlapTokens(overlapTokens)
+                .build());
+        List<Document> passages = chunker.split(documents);
+        System.out.printf("%d documents -> %d passages (max %d tokens, overlap %d), top %d%n",
+                documents.size(), passages.size(), maxTokens, overlapTokens, topK);
+
+        InMemoryVectorKnowledgeBase whole = new InMemoryVectorKnowledgeBase("whole", "");
+        whole.addDocuments(documents);
+        InMemoryVectorKnowledgeBase chunked = new InMemoryVectorKnowledgeBase("chunked", "");
+        chunked.addDocuments(passages);
+
+        report("whole documents", whole, topK);
+        report("passages", chunked, topK);
+        report("passages, collapsed", new ParentCollapsingKnowledgeBase(chunked, 2), topK);
+    }
+
+    private static void report(String name, KnowledgeBase kb, int topK) {
+        int hits = 0;
+        int relevant = 0;
+        long bytes = 0;
+        long answerBytes = 0;
+        long results = 0;
+        for (String[] question : BenchmarkCorpus.QUESTIONS) {
+            SearchResult result = kb.search(question[0], topK);
+            List<SearchResult.ScoredDocument> documents = result.getDocuments();
+            if (!documents.isEmpty() && documents.get(0).getDocument().getContent().contains(question[1])) {
+                hits++;
+            }
+            bytes += utf8Length(result.formatForLLM());
+            results += documents.size();
+            for (SearchResult.ScoredDocument scored : documents) {
+                if (scored.getDocument().getContent().contains(question[1])) {
+                    relevant++;
+                    answerBytes += utf8Length(scored.getDocument().getContent());
+                }
+            }
+        }
+        System.out.printf("  %-20s hit@1 %5.1f%%, precision@%d %5.1f%%, %6.0f prompt bytes/result, "
+                        + "%5.1f%% of prompt bytes in results containing the answer%n",
+                name, 100.0 * hits / BenchmarkCorpus.QUESTIONS.length, topK,
+                100.0 * relevant / Math.max(1, results),
+                bytes / (double) Math.max(1, results),
+                100.0 * answerBytes / Math.max(1, bytes));
+    }
+
+    private static int utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
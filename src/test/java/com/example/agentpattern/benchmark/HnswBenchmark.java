@@ -0,0 +1,148 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.knowledge.hnsw.HnswConfig;
+import com.example.agentpattern.knowledge.hnsw.HnswIndex;
+import com.example.agentpattern.util.TopKHeap;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HNSW索引的召回率与延迟基准测试
+ * 生成带聚类结构的随机向量（模拟文本嵌入的分布），多线程并发建索引，
+ * 再以线性扫描的精确结果为基准，测量不同 efSearch 下的 recall@k 和单次查询耗时。
+ * <p>
+ * 运行方式：mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.agentpattern.benchmark.HnswBenchmark
+ * 可选参数：向量数 维度 查询数（默认 20000 128 500）
+ */
+public class HnswBenchmark {
+
+    private static final int K = 10;
+    private static final int CLUSTERS = 200;
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        int queryCount = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        Random random = new Random(42);
+        float[][] centers = new float[CLUSTERS][];
+        for (int i = 0; i < CLUSTERS; i++) {
+            centers[i] = gaussian(random, dimension, 1.0f);
+        }
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = perturb(random, centers[random.nextInt(CLUSTERS)], 0.5f);
+        }
+        float[][] queries = new float[queryCount][];
+        for (int i = 0; i < queryCount; i++) {
+            queries[i] = perturb(random, vectors[random.nextInt(count)], 0.3f);
+        }
+
+        HnswConfig config = HnswConfig.defaults();
+        HnswIndex index = new HnswIndex(dimension, config);
+        int threads = Runtime.getRuntime().availableProcessors();
+        long buildStart = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                    index.add(vectors[i]);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        double buildSeconds = (System.nanoTime() - buildStart) / 1e9;
+
+        System.out.printf("== HNSW vectors=%d dimension=%d M=%d efConstruction=%d ==%n",
+                count, dimension, config.getM(), config.getEfConstruction());
+        System.out.printf("build: %.2fs with %d threads (%.0f inserts/s)%n%n", buildSeconds, threads, count / buildSeconds);
+
+        // 精确结果
+        int[][] truth = new int[queryCount][];
+        TopKHeap heap = new TopKHeap(K);
+        for (int q = 0; q < queryCount; q++) {
+            index.exactSearch(queries[q], K, heap);
+            truth[q] = heap.toSortedIds();
+        }
+
+        AtomicInteger cursor = new AtomicInteger();
+        BenchmarkRunner.Result exact = BenchmarkRunner.run("exact scan", 500, 2000, () -> {
+            index.exactSearch(queries[cursor.getAndIncrement() % queryCount], K, heap);
+            return heap.size();
+        });
+        System.out.printf("  %s  recall@%d=1.000%n", exact, K);
+
+        for (int ef : new int[]{16, 32, 64, 128, 256}) {
+            int hits = 0;
+            for (int q = 0; q < queryCount; q++) {
+                index.search(queries[q], K, ef, heap);
+                Set<Integer> expected = new HashSet<>();
+                for (int id : truth[q]) {
+                    expected.add(id);
+                }
+                for (int id : heap.toSortedIds()) {
+                    if (expected.contains(id)) {
+                        hits++;
+                    }
+                }
+            }
+            double recall = (double) hits / (queryCount * K);
+
+            BenchmarkRunner.Result result = BenchmarkRunner.run("hnsw efSearch=" + ef, 500, 2000, () -> {
+                index.search(queries[cursor.getAndIncrement() % queryCount], K, ef, heap);
+                return heap.size();
+            });
+            System.out.printf("  %s  recall@%d=%.3f  speedup=%.1fx%n",
+                    result, K, recall, exact.nanosPerOp() / result.nanosPerOp());
+        }
+
+        // 删除10%后，结果中不应出现已删除节点
+        for (int i = 0; i < count; i += 10) {
+            index.markDeleted(i);
+        }
+        int leaked = 0;
+        int hits = 0;
+        for (int q = 0; q < queryCount; q++) {
+            index.exactSearch(queries[q], K, heap);
+            Set<Integer> expected = new HashSet<>();
+            for (int id : heap.toSortedIds()) {
+                expected.add(id);
+            }
+            index.search(queries[q], K, config.getEfSearch(), heap);
+            for (int id : heap.toSortedIds()) {
+                if (index.isDeleted(id)) {
+                    leaked++;
+                }
+                if (expected.contains(id)) {
+                    hits++;
+                }
+            }
+        }
+        System.out.printf("%nafter deleting %d nodes: recall@%d=%.3f (efSearch=%d), deleted nodes returned=%d%n",
+                index.deletedCount(), K, (double) hits / (queryCount * K), config.getEfSearch(), leaked);
+    }
+
+    private static float[] gaussian(Random random, int dimension, float scale) {
+        float[] v = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            v[i] = (float) random.nextGaussian() * scale;
+        }
+        return v;
+    }
+
+    private static float[] perturb(Random random, float[] base, float scale) {
+        float[] v = new float[base.length];
+        for (int i = 0; i < base.length; i++) {
+            v[i] = base[i] + (float) random.nextGaussian() * scale;
+        }
+        return v;
+    }
+}
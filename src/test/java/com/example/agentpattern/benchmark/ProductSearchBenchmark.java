@@ -0,0 +1,275 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.loader.ProductCatalog;
+import com.example.agentpattern.loader.ProductCatalogSnapshot;
+import com.example.agentpattern.model.ProductAttribute;
+import com.example.agentpattern.model.ProductInfo;
+import com.example.agentpattern.model.ProductQuery;
+import com.example.agentpattern.model.ProductSearchResult;
+import com.example.agentpattern.util.TopKHeap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 产品目录索引的基准测试
+ * 生成多品牌的合成产品目录，比较逐个调用 {@link ProductInfo#matchScore} 的线性扫描与 {@link ProductCatalog}
+ * 的 n-gram 索引在不同选择性查询下的TopK检索耗时、按ID查找和列出类别的耗时，并校验两者的匹配数和TopK完全一致；
+ * 另报告多关键词查询（要求包含全部关键词）的匹配数和耗时，以及品牌、类别、价格和规格范围组合的结构化查询
+ * 与逐个解析价格和规格文本过滤的对照（校验两者匹配数一致）；最后把产品分成多个数据文件的段组成
+ * {@link ProductCatalogSnapshot}，比较替换一个文件的段与重建整个目录的耗时，并校验分段查询与整体查询的结果一致。
+ * <p>
+ * 运行方式：mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.agentpattern.benchmark.ProductSearchBenchmark
+ * 可选参数：产品数（默认 50000）
+ */
+public class ProductSearchBenchmark {
+
+    private static final int K = 10;
+    private static final String[] BRANDS = {
+            "Reolink", "Apple", "Hikvision", "Dahua", "Eufy", "Arlo", "Ring", "Wyze", "TP-Link", "Xiaomi",
+            "Ezviz", "Imou", "Amcrest", "Lorex", "Swann", "Annke", "Blink", "Nest", "Tapo", "Uniview"
+    };
+    private static final String[] CATEGORIES = {
+            "无线摄像头", "有线摄像头", "室内云台", "双目摄像头", "追踪摄像头", "监控套装", "智能门铃", "泛光灯摄像头",
+            "手机", "笔记本电脑", "平板电脑", "耳机", "智能手表", "网络录像机", "存储卡", "太阳能板"
+    };
+    private static final String[] WORDS = {
+            "4K", "8MP", "5MP", "超高清", "双镜头", "超广角", "ColorX", "全彩夜视", "红外夜视", "双频WiFi", "PoE",
+            "太阳能", "电池供电", "人形检测", "车辆检测", "双向语音", "IP66防水", "智能追踪", "3倍变焦", "本地存储",
+            "云存储", "警报器", "泛光灯", "180°全景", "钛金属", "A17芯片", "OLED", "降噪", "长续航", "快充"
+    };
+    private static final String[] QUERIES = {
+            "摄像头", "Reolink", "4k", "夜视", "智能门铃", "Argus", "双频wifi", "model-12345", "耳机", "ip66防水",
+            "不存在的产品"
+    };
+    private static final String[] MULTI_TERM_QUERIES = {
+            "Reolink 4K 摄像头", "夜视 门铃", "Argus 太阳能 ip66防水", "Apple 耳机 降噪"
+    };
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        Random random = new Random(42);
+        List<ProductInfo> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(product(i, random));
+        }
+
+        long start = System.nanoTime();
+        ProductCatalog catalog = new ProductCatalog(products);
+        System.out.printf("%d products, catalog index built in %d ms%n",
+                count, (System.nanoTime() - start) / 1_000_000);
+
+        TopKHeap expected = new TopKHeap(K);
+        TopKHeap actual = new TopKHeap(K);
+        for (String query : QUERIES) {
+            expected.reset(K);
+            int linearTotal = linearSearch(products, query, expected);
+            actual.reset(K);
+            int indexedTotal = catalog.search(query, true, actual);
+            boolean same = linearTotal == indexedTotal && sameTopK(expected, actual);
+
+            BenchmarkRunner.Result linear = BenchmarkRunner.run("linear", 200, 1000, () -> {
+                expected.reset(K);
+                return linearSearch(products, query, expected);
+            });
+            BenchmarkRunner.Result indexed = BenchmarkRunner.run("indexed", 200, 1000, () -> {
+                actual.reset(K);
+                return catalog.search(query, true, actual);
+            });
+            System.out.printf("  %-14s %6d matches: linear %9.1f us, indexed %8.1f us, x%6.1f, %s%n",
+                    query, indexedTotal, linear.nanosPerOp() / 1000, indexed.nanosPerOp() / 1000,
+                    linear.nanosPerOp() / indexed.nanosPerOp(), same ? "same top-K" : "MISMATCH");
+        }
+
+        for (String query : MULTI_TERM_QUERIES) {
+            actual.reset(K);
+            int total = catalog.search(query, true, actual);
+            BenchmarkRunner.Result indexed = BenchmarkRunner.run("indexed", 200, 1000, () -> {
+                actual.reset(K);
+                return catalog.search(query, true, actual);
+            });
+            System.out.printf("  %-22s %6d match all keywords: indexed %8.1f us%n",
+                    query, total, indexed.nanosPerOp() / 1000);
+        }
+
+        ProductQuery[] structured = {
+                new ProductQuery().range(ProductAttribute.PRICE, 500d, 1000d),
+                ProductQuery.builder().brand("Reolink").category("摄像头").build()
+                        .range(ProductAttribute.PRICE, null, 1000d)
+                        .range(ProductAttribute.RESOLUTION, 8d, null),
+                ProductQuery.builder().keywords("夜视").build()
+                        .range(ProductAttribute.STORAGE, 256d, null)
+                        .range(ProductAttribute.BATTERY, 12d, null),
+                ProductQuery.builder().category("门铃").build().range(ProductAttribute.PRICE, 9000d, 9100d)
+        };
+        for (ProductQuery query : structured) {
+            int expectedTotal = linearFilter(products, query);
+            ProductSearchResult result = catalog.search(query, K);
+            BenchmarkRunner.Result linear = BenchmarkRunner.run("linear", 200, 1000,
+                    () -> linearFilter(products, query));
+            BenchmarkRunner.Result indexed = BenchmarkRunner.run("indexed", 200, 1000,
+                    () -> catalog.search(query, K).getTotalMatches());
+            System.out.printf("  %-60s %6d matches: linear %9.1f us, indexed %8.1f us, x%6.1f, %s%n",
+                    describe(query), result.getTotalMatches(), linear.nanosPerOp() / 1000,
+                    indexed.nanosPerOp() / 1000, linear.nanosPerOp() / indexed.nanosPerOp(),
+                    expectedTotal == result.getTotalMatches() ? "same matches" : "MISMATCH");
+        }
+
+        int files = 10;
+        ProductCatalogSnapshot snapshot = ProductCatalogSnapshot.empty();
+        int perFile = (count + files - 1) / files;
+        for (int f = 0; f < files; f++) {
+            List<ProductInfo> segment = products.subList(Math.min(count, f * perFile), Math.min(count, (f + 1) * perFile));
+            snapshot = snapshot.withSegment(String.format("products-%02d.json", f), new ProductCatalog(segment));
+        }
+        boolean sameResults = true;
+        for (ProductQuery query : structured) {
+            sameResults &= sameResult(catalog.search(query, K), snapshot.search(query, K));
+        }
+        for (String query : MULTI_TERM_QUERIES) {
+            ProductQuery keywords = ProductQuery.builder().keywords(query).build();
+            sameResults &= sameResult(catalog.search(keywords, K), snapshot.search(keywords, K));
+        }
+        ProductCatalogSnapshot base = snapshot;
+        List<ProductInfo> changed = products.subList(0, Math.min(count, perFile));
+        BenchmarkRunner.Result full = BenchmarkRunner.run("rebuild catalog", 1000, 3000,
+                () -> new ProductCatalog(products).size());
+        BenchmarkRunner.Result segment = BenchmarkRunner.run("replace segment", 1000, 3000,
+                () -> base.withSegment("products-00.json", new ProductCatalog(changed)).size());
+        System.out.printf("  reload 1 of %d files: rebuild catalog %8.1f ms, replace segment %7.1f ms, x%5.1f, %s%n",
+                files, full.nanosPerOp() / 1e6, segment.nanosPerOp() / 1e6,
+                full.nanosPerOp() / segment.nanosPerOp(), sameResults ? "same results" : "MISMATCH");
+
+        int[] next = {0};
+        System.out.println("  " + BenchmarkRunner.run("getById linear", 200, 1000, () -> {
+            String id = "sku-" + (next[0]++ * 7919L % count);
+            return products.stream().filter(p -> id.equals(p.getId())).findFirst().orElseThrow().getName().length();
+        }));
+        System.out.println("  " + BenchmarkRunner.run("getById indexed", 200, 1000,
+                () -> catalog.getById("sku-" + (next[0]++ * 7919L % count)).getName().length()));
+        System.out.println("  " + BenchmarkRunner.run("categories linear", 200, 1000,
+                () -> products.stream().map(ProductInfo::getCategory).distinct().toList().size()));
+        System.out.println("  " + BenchmarkRunner.run("categories indexed", 200, 1000,
+                () -> catalog.categories().size()));
+    }
+
+    /**
+     * 原实现：对每个产品调用 matchScore
+     */
+    private static int linearSearch(List<ProductInfo> products, String query, TopKHeap heap) {
+        int total = 0;
+        for (int i = 0; i < products.size(); i++) {
+            float score = products.get(i).matchScore(query);
+            if (score > 0) {
+                total++;
+                heap.offer(i, score);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 对照：逐个产品比较品牌、类别，解析价格和规格文本后比较范围，关键词逐个调用 matchScore
+     */
+    private static int linearFilter(List<ProductInfo> products, ProductQuery query) {
+        int total = 0;
+        for (ProductInfo product : products) {
+            if (query.getBrand() != null && !query.getBrand().equalsIgnoreCase(product.getBrand())) {
+                continue;
+            }
+            if (query.getCategory() != null && (product.getCategory() == null
+                    || !product.getCategory().toLowerCase().contains(query.getCategory().toLowerCase()))) {
+                continue;
+            }
+            if (query.getKeywords() != null && product.matchScore(query.getKeywords()) == 0) {
+                continue;
+            }
+            boolean inRange = true;
+            for (var entry : query.getRanges().entrySet()) {
+                double value = entry.getKey().parse(product);
+                ProductQuery.Range range = entry.getValue();
+                if (Double.isNaN(value) || (range.min() != null && value < range.min())
+                        || (range.max() != null && value > range.max())) {
+                    inRange = false;
+                    break;
+                }
+            }
+            if (inRange) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    private static String describe(ProductQuery query) {
+        StringBuilder sb = new StringBuilder();
+        if (query.getKeywords() != null) {
+            sb.append(query.getKeywords()).append(' ');
+        }
+        if (query.getBrand() != null) {
+            sb.append("brand=").append(query.getBrand()).append(' ');
+        }
+        if (query.getCategory() != null) {
+            sb.append("category=").append(query.getCategory()).append(' ');
+        }
+        query.getRanges().forEach((attribute, range) -> sb.append(attribute.getKey()).append('[')
+                .append(range.min() == null ? "" : range.min().intValue()).append(',')
+                .append(range.max() == null ? "" : range.max().intValue()).append("] "));
+        return sb.toString().trim();
+    }
+
+    private static boolean sameResult(ProductSearchResult a, ProductSearchResult b) {
+        return a.getProducts().equals(b.getProducts()) && a.getTotalMatches() == b.getTotalMatches()
+                && a.isPartialMatch() == b.isPartialMatch() && a.getFacets().equals(b.getFacets());
+    }
+
+    private static boolean sameTopK(TopKHeap a, TopKHeap b) {
+        a.sortDescending();
+        b.sortDescending();
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.score(i) != b.score(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 合成产品，{@link ProductStartupBenchmark} 也使用
+     */
+    static ProductInfo product(int i, Random random) {
+        String brand = BRANDS[random.nextInt(BRANDS.length)];
+        String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+        List<String> features = new ArrayList<>();
+        for (int f = 0; f < 6; f++) {
+            features.add(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]);
+        }
+        List<String> tags = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            tags.add(WORDS[random.nextInt(WORDS.length)]);
+        }
+        StringBuilder description = new StringBuilder();
+        for (int d = 0; d < 8; d++) {
+            description.append(WORDS[random.nextInt(WORDS.length)]).append('，');
+        }
+        return ProductInfo.builder()
+                .id("sku-" + i)
+                .name(brand + " " + (i % 97 == 0 ? "Argus " : "") + "Model-" + (10000 + i))
+                .brand(brand)
+                .category(category)
+                .price("¥" + (199 + random.nextInt(9800)))
+                .description(description.toString())
+                .features(features)
+                .specs(Map.of(
+                        "resolution", WORDS[random.nextInt(3)],
+                        "storage", "microSD卡(最大" + (64 << random.nextInt(3)) + "GB)",
+                        "battery", "最长" + (4 + random.nextInt(24)) + "小时"))
+                .tags(tags)
+                .build();
+    }
+}
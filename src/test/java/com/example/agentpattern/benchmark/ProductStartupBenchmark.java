@@ -0,0 +1,99 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.loader.ProductCatalog;
+import com.example.agentpattern.loader.ProductCatalogFile;
+import com.example.agentpattern.model.ProductInfo;
+import com.example.agentpattern.model.ProductQuery;
+import com.example.agentpattern.model.ProductSearchResult;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 产品目录启动耗时的基准测试
+ * 生成合成产品的 JSON 数据文件，比较加载一个数据文件的两种方式：读取并计算内容哈希后用 Jackson 解析、建立 {@link ProductCatalog}，
+ * 与读取并计算内容哈希后映射 {@link ProductCatalogFile} 快照读回目录；另报告写入快照的耗时、两种文件的大小，
+ * 并校验两种方式得到的目录对一组查询返回相同的结果。每种方式重复若干次，取最短耗时。
+ * <p>
+ * 运行方式：mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.agentpattern.benchmark.ProductStartupBenchmark
+ * 可选参数：以逗号分隔的产品数（默认 10000,100000） 重复次数（默认 3）
+ */
+public class ProductStartupBenchmark {
+
+    private static final String[] QUERIES = {"摄像头", "Reolink 4K 摄像头", "Argus", "model-12345", "夜视 门铃"};
+
+    public static void main(String[] args) throws IOException {
+        String[] sizes = (args.length > 0 ? args[0] : "10000,100000").split(",");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        ObjectMapper objectMapper = new ObjectMapper();
+        Path dir = Files.createTempDirectory("product-startup");
+
+        for (String size : sizes) {
+            int count = Integer.parseInt(size.trim());
+            Random random = new Random(42);
+            List<ProductInfo> generated = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                generated.add(ProductSearchBenchmark.product(i, random));
+            }
+            Path json = dir.resolve("products-" + count + ".json");
+            Path snapshot = dir.resolve("products-" + count + ".json.snapshot");
+            objectMapper.writeValue(json.toFile(), generated);
+
+            long jsonNanos = Long.MAX_VALUE;
+            long writeNanos = Long.MAX_VALUE;
+            long snapshotNanos = Long.MAX_VALUE;
+            ProductCatalog fromJson = null;
+            ProductCatalog fromSnapshot = null;
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                byte[] content = Files.readAllBytes(json);
+                byte[] hash = ProductCatalogFile.hash(content);
+                fromJson = new ProductCatalog(objectMapper.readValue(content, new TypeReference<List<ProductInfo>>() {}));
+                jsonNanos = Math.min(jsonNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                ProductCatalogFile.write(snapshot, fromJson, hash);
+                writeNanos = Math.min(writeNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                content = Files.readAllBytes(json);
+                fromSnapshot = ProductCatalogFile.read(snapshot, ProductCatalogFile.hash(content));
+                snapshotNanos = Math.min(snapshotNanos, System.nanoTime() - start);
+            }
+
+            boolean same = fromSnapshot != null && fromSnapshot.size() == fromJson.size();
+            for (String query : QUERIES) {
+                ProductQuery keywords = ProductQuery.builder().keywords(query).build();
+                same = same && sameResult(fromJson.search(keywords, 10), fromSnapshot.search(keywords, 10));
+            }
+            System.out.printf("%d products: JSON %.1f MB, snapshot %.1f MB%n",
+                    count, Files.size(json) / 1e6, Files.size(snapshot) / 1e6);
+            System.out.printf("  JSON parse + index %8.0f ms, snapshot load %6.0f ms, x%5.1f, snapshot write %6.0f ms, %s%n",
+                    jsonNanos / 1e6, snapshotNanos / 1e6, (double) jsonNanos / snapshotNanos, writeNanos / 1e6,
+                    same ? "same results" : "MISMATCH");
+
+            Files.delete(json);
+            Files.delete(snapshot);
+        }
+        Files.delete(dir);
+    }
+
+    private static boolean sameResult(ProductSearchResult a, ProductSearchResult b) {
+        if (a.getTotalMatches() != b.getTotalMatches() || a.getProducts().size() != b.getProducts().size()
+                || !a.getFacets().equals(b.getFacets())) {
+            return false;
+        }
+        for (int i = 0; i < a.getProducts().size(); i++) {
+            if (!a.getProducts().get(i).getId().equals(b.getProducts().get(i).getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.embedding.EmbeddingModel;
+import com.example.agentpattern.knowledge.quantized.QuantizationType;
+import com.example.agentpattern.knowledge.quantized.QuantizedKnowledgeBase;
+import com.example.agentpattern.knowledge.quantized.VectorStoreStats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 量化向量存储的内存与召回率基准测试
+ * 对带聚类结构的随机向量分别以 int8、float16 建库，报告堆内存压缩比、
+ * 只用量化分数以及精确重排序后的 recall@10，和单次查询耗时。
+ * <p>
+ * 运行方式：mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.agentpattern.benchmark.QuantizationBenchmark
+ * 可选参数：向量数 维度（默认 50000 384）
+ */
+public class QuantizationBenchmark {
+
+    private static final int CLUSTERS = 200;
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 384;
+
+        Random random = new Random(42);
+        float[][] centers = new float[CLUSTERS][];
+        for (int i = 0; i < CLUSTERS; i++) {
+            centers[i] = gaussian(random, dimension, 1.0f);
+        }
+
+        // 查询文本 "q<i>" 映射到预先生成的查询向量
+        Map<String, float[]> queryVectors = new HashMap<>();
+        for (int i = 0; i < QUERIES; i++) {
+            queryVectors.put("q" + i, perturb(random, centers[random.nextInt(CLUSTERS)], 0.6f));
+        }
+        EmbeddingModel model = new EmbeddingModel() {
+            @Override
+            public int dimension() {
+                return dimension;
+            }
+
+            @Override
+            public float[] embed(String text) {
+                return queryVectors.get(text);
+            }
+        };
+
+        for (QuantizationType type : QuantizationType.values()) {
+            Random docRandom = new Random(7);
+            List<Document> documents = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                documents.add(Document.builder()
+                        .id("doc-" + i)
+                        .title("doc-" + i)
+                        .content("")
+                        .embedding(perturb(docRandom, centers[docRandom.nextInt(CLUSTERS)], 0.5f))
+                        .build());
+            }
+
+            try (QuantizedKnowledgeBase kb = new QuantizedKnowledgeBase("bench-" + type, "", model, type, 4, null)) {
+                long buildStart = System.nanoTime();
+                kb.addDocuments(documents);
+                long buildMs = (System.nanoTime() - buildStart) / 1_000_000;
+
+                VectorStoreStats stats = kb.getStats(QUERIES, 10);
+
+                int[] next = {0};
+                BenchmarkRunner.Result search = BenchmarkRunner.run("search " + type, 500, 2000,
+                        () -> kb.search("q" + (next[0]++ % QUERIES), 10).getDocuments().size());
+
+                System.out.printf("%s: build %d ms, heap %.1f MB (float[] %.1f MB, x%.1f), off-heap %.1f MB, "
+                                + "recall@10 quantized=%.3f reranked=%.3f%n",
+                        type, buildMs, stats.getQuantizedBytes() / 1048576.0, stats.getFloat32HeapBytes() / 1048576.0,
+                        stats.getCompressionRatio(), stats.getExactBytes() / 1048576.0,
+                        stats.getQuantizedRecall(), stats.getRerankedRecall());
+                System.out.println("  " + search);
+            }
+        }
+    }
+
+    private static float[] gaussian(Random random, int dimension, float scale) {
+        float[] v = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            v[i] = (float) random.nextGaussian() * scale;
+        }
+        return v;
+    }
+
+    private static float[] perturb(Random random, float[] center, float noise) {
+        float[] v = gaussian(random, center.length, noise);
+        for (int i = 0; i < v.length; i++) {
+            v[i] += center[i];
+        }
+        return v;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.base.SearchResult;
+import com.example.agentpattern.knowledge.vector.InMemoryVectorKnowledgeBase;
+import com.example.agentpattern.knowledge.vector.ShardedKnowledgeBase;
+import com.example.agentpattern.knowledge.vector.VectorSearchConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 分片并行打分的扩展性基准测试
+ * 生成词频近似Zipf分布的合成语料，分别用不分片的 InMemoryVectorKnowledgeBase 和
+ * 1、2、4、8、16个分片的 ShardedKnowledgeBase（ForkJoinPool线程数等于分片数）建库，
+ * 报告单个查询的延迟和相对不分片的加速比，并检查每个查询的TopK文档和分数与不分片时一致。
+ * 线程数超过CPU核数的结果只反映线程切换的开销，不代表扩展性，输出中会标出；
+ * 扩展性需要在核数不少于16的机器上运行。
+ * <p>
+ * 运行方式：mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.agentpattern.benchmark.ShardedSearchBenchmark
+ * 可选参数：文档数 词表大小 最大分片数（默认 200000 20000 16）
+ */
+public class ShardedSearchBenchmark {
+
+    private static final int K = 10;
+    private static final int QUERIES = 200;
+    private static final int DOC_LENGTH = 60;
+    private static final int MAX_SHARDS = 16;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int vocabulary = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int maxShards = args.length > 2 ? Integer.parseInt(args[2]) : MAX_SHARDS;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        Random random = new Random(42);
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(Document.builder()
+                    .id("doc-" + i)
+                    .title("")
+                    .content(text(random, vocabulary, DOC_LENGTH))
+                    .build());
+        }
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = text(random, vocabulary / 10, 3);
+        }
+
+        InMemoryVectorKnowledgeBase baseline = new InMemoryVectorKnowledgeBase("baseline", "");
+        baseline.addDocuments(documents);
+        List<SearchResult> expected = new ArrayList<>(QUERIES);
+        for (String query : queries) {
+            expected.add(baseline.search(query, K));
+        }
+        BenchmarkRunner.Result unsharded = measure("unsharded", baseline, queries);
+        System.out.printf("%d documents, %d CPU cores%n", count, cores);
+        System.out.println("  " + unsharded);
+
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(shards);
+            try {
+                ShardedKnowledgeBase kb = new ShardedKnowledgeBase("sharded-" + shards, "",
+                        VectorSearchConfig.defaults(), shards, pool);
+                kb.addDocuments(documents);
+
+                int mismatches = 0;
+                for (int i = 0; i < QUERIES; i++) {
+                    if (!sameResults(expected.get(i), kb.search(queries[i], K))) {
+                        mismatches++;
+                    }
+                }
+
+                BenchmarkRunner.Result result = measure(shards + " shards", kb, queries);
+                System.out.printf("  %s, speedup x%.2f, %d/%d queries differ from unsharded%s%n",
+                        result, unsharded.nanosPerOp() / result.nanosPerOp(), mismatches, QUERIES,
+                        shards > cores ? " (more workers than cores)" : "");
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static BenchmarkRunner.Result measure(String name, KnowledgeBase kb, String[] queries) {
+        int[] next = {0};
+        return BenchmarkRunner.run(name, 1000, 3000,
+                () -> kb.search(queries[next[0]++ % queries.length], K).getDocuments().size());
+    }
+
+    /**
+     * 逐个排名比较分数（分数相同的文档顺序可以不同）
+     */
+    private static boolean sameResults(SearchResult expected, SearchResult actual) {
+        List<SearchResult.ScoredDocument> a = expected.getDocuments();
+        List<SearchResult.ScoredDocument> b = actual.getDocuments();
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).getScore() != b.get(i).getScore()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 以近似Zipf分布抽取词项组成文本
+     */
+    private static String text(Random random, int vocabulary, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            int word = (int) Math.pow(vocabulary, random.nextDouble());
+            sb.append("w").append(word).append(' ');
+        }
+        return sb.toString();
+    }
+}
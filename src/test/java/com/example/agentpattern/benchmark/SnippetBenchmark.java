@@ -0,0 +1,86 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.base.SearchResult;
+import com.example.agentpattern.knowledge.chunk.ChunkingConfig;
+import com.example.agentpattern.knowledge.chunk.ParentCollapsingKnowledgeBase;
+import com.example.agentpattern.knowledge.chunk.PassageChunker;
+import com.example.agentpattern.knowledge.snippet.SnippetConfig;
+import com.example.agentpattern.knowledge.snippet.SnippetExtractor;
+import com.example.agentpattern.knowledge.vector.CjkBigramTokenizer;
+import com.example.agentpattern.knowledge.vector.InMemoryVectorKnowledgeBase;
+import com.example.agentpattern.knowledge.vector.TokenBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 摘要提取对知识库搜索观察结果体积的影响
+ * 对 {@link BenchmarkCorpus#QUESTIONS} 中的问题分别在整篇文档和切分后按原文档合并的知识库中检索，
+ * 比较 formatForLLM 输出全部内容与只输出摘要时每次观察的字节数、词项数（近似提示词token数）、
+ * 输出中仍包含答案短语的问题比例，以及格式化的耗时。
+ * <p>
+ * 运行方式：mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.agentpattern.benchmark.SnippetBenchmark
+ * 可选参数：单条结果字符预算 合计字符预算 TopK（默认 300 1200 3）
+ */
+public class SnippetBenchmark {
+
+    public static void main(String[] args) {
+        int perResult = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int total = args.length > 1 ? Integer.parseInt(args[1]) : 1200;
+        int topK = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        List<Document> documents = new ArrayList<>();
+        BenchmarkCorpus.loadKnowledgeCorpora().values().forEach(documents::addAll);
+        InMemoryVectorKnowledgeBase whole = new InMemoryVectorKnowledgeBase("whole", "");
+        whole.addDocuments(documents);
+        InMemoryVectorKnowledgeBase chunked = new InMemoryVectorKnowledgeBase("chunked", "");
+        chunked.addDocuments(new PassageChunker(ChunkingConfig.defaults()).split(documents));
+        KnowledgeBase collapsed = new ParentCollapsingKnowledgeBase(chunked, 2);
+
+        SnippetExtractor extractor = new SnippetExtractor(SnippetConfig.builder()
+                .maxCharsPerResult(perResult)
+                .maxCharsTotal(total)
+                .build());
+        System.out.printf("%d questions, top %d, snippet budget %d chars/result, %d chars/call%n",
+                BenchmarkCorpus.QUESTIONS.length, topK, perResult, total);
+
+        for (KnowledgeBase kb : List.of(whole, collapsed)) {
+            List<SearchResult> results = new ArrayList<>();
+            for (String[] question : BenchmarkCorpus.QUESTIONS) {
+                results.add(kb.search(question[0], topK));
+            }
+            System.out.println(kb == whole ? "whole documents:" : "passages, collapsed:");
+            report("full content", results, SearchResult::formatForLLM);
+            report("snippets", results, result -> result.formatForLLM(extractor));
+        }
+    }
+
+    private static void report(String name, List<SearchResult> results, Function<SearchResult, String> format) {
+        long bytes = 0;
+        long tokens = 0;
+        int answered = 0;
+        TokenBuffer buffer = new TokenBuffer();
+        for (int i = 0; i < results.size(); i++) {
+            String observation = format.apply(results.get(i));
+            bytes += observation.getBytes(StandardCharsets.UTF_8).length;
+            buffer.clear();
+            CjkBigramTokenizer.INSTANCE.tokenize(observation, buffer);
+            tokens += buffer.size();
+            if (observation.contains(BenchmarkCorpus.QUESTIONS[i][1])) {
+                answered++;
+            }
+        }
+
+        int[] next = {0};
+        BenchmarkRunner.Result timing = BenchmarkRunner.run(name, 200, 2000,
+                () -> format.apply(results.get(next[0]++ % results.size())).length());
+        System.out.printf("  %-13s %6.0f bytes/observation, %5.0f tokens/observation, answer kept %5.1f%%, "
+                        + "%.1f us/format%n",
+                name, bytes / (double) results.size(), tokens / (double) results.size(),
+                100.0 * answered / results.size(), timing.nanosPerOp() / 1000);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.vector.CjkBigramTokenizer;
+import com.example.agentpattern.knowledge.vector.TextSimilarity;
+import com.example.agentpattern.knowledge.vector.TokenBuffer;
+import com.example.agentpattern.knowledge.vector.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分词器吞吐量基准测试
+ * 在示例知识库和Reolink知识库语料上对比 TextSimilarity.tokenize（正则实现）与 CjkBigramTokenizer。
+ * <p>
+ * 运行方式：mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.agentpattern.benchmark.TokenizerBenchmark
+ */
+public class TokenizerBenchmark {
+
+    public static void main(String[] args) {
+        Map<String, List<Document>> corpora = BenchmarkCorpus.loadKnowledgeCorpora();
+
+        List<String> sample = new ArrayList<>();
+        List<String> reolink = new ArrayList<>();
+        corpora.forEach((name, docs) -> (name.startsWith("reolink") ? reolink : sample)
+                .addAll(BenchmarkCorpus.texts(docs)));
+
+        System.out.println("== Tokenizer throughput ==");
+        benchmark("sample", sample);
+        benchmark("reolink", reolink);
+
+        System.out.println();
+        System.out.println("== Query tokens ==");
+        printTokens("夜视功能怎么样");
+        printTokens("Argus 4 Pro 夜视");
+        printTokens("RLC-810A 支持PoE吗？");
+    }
+
+    private static void benchmark(String corpusName, List<String> texts) {
+        long chars = texts.stream().mapToLong(String::length).sum();
+        System.out.printf("corpus=%s documents=%d chars=%d%n", corpusName, texts.size(), chars);
+
+        BenchmarkRunner.Result legacy = BenchmarkRunner.run(corpusName + " / TextSimilarity.tokenize", 1000, 3000, () -> {
+            long tokens = 0;
+            for (String text : texts) {
+                tokens += TextSimilarity.tokenize(text).size();
+            }
+            return tokens;
+        });
+
+        Tokenizer tokenizer = CjkBigramTokenizer.INSTANCE;
+        TokenBuffer buffer = new TokenBuffer();
+        BenchmarkRunner.Result scanner = BenchmarkRunner.run(corpusName + " / CjkBigramTokenizer", 1000, 3000, () -> {
+            long tokens = 0;
+            for (String text : texts) {
+                buffer.clear();
+                tokenizer.tokenize(text, buffer);
+                tokens += buffer.size();
+            }
+            return tokens;
+        });
+
+        for (BenchmarkRunner.Result result : List.of(legacy, scanner)) {
+            System.out.printf("  %s  %8.1f MB/s%n", result, chars * 2 / (result.nanosPerOp() / 1e9) / 1e6);
+        }
+        System.out.printf("  speedup: %.2fx%n%n", legacy.nanosPerOp() / scanner.nanosPerOp());
+    }
+
+    private static void printTokens(String text) {
+        TokenBuffer buffer = new TokenBuffer();
+        CjkBigramTokenizer.INSTANCE.tokenize(text, buffer);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            tokens.add(buffer.toString(i));
+        }
+        System.out.printf("  %-24s legacy=%s bigram=%s%n", text, TextSimilarity.tokenize(text), tokens);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.agentpattern.benchmark;
+
+import com.example.agentpattern.knowledge.vector.TextSimilarity;
+import com.example.agentpattern.util.VectorKernels;
+
+import java.util.Random;
+
+/**
+ * 稠密向量相似度内核基准测试
+ * 在 128–1536 维上对比：原有的 double 余弦实现（每次重新计算两个范数）、
+ * 使用预计算范数的 float 余弦，以及一个查询对连续存放的一组向量的批量内积。
+ * <p>
+ * 运行方式：mvn -q -Psimd test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="--add-modules jdk.incubator.vector -cp %classpath com.example.agentpattern.benchmark.VectorKernelBenchmark"
+ * 去掉 --add-modules（或加 -Dagentpattern.simd=false）即得到标量实现的结果，两次运行对比即可看出SIMD的收益。
+ */
+public class VectorKernelBenchmark {
+
+    private static final int[] DIMENSIONS = {128, 256, 384, 768, 1024, 1536};
+    private static final int BLOCK_VECTORS = 256;
+    private static final long WARMUP_MS = 300;
+    private static final long MEASURE_MS = 1000;
+
+    public static void main(String[] args) {
+        System.out.println("Vector kernels: " + VectorKernels.implementation());
+        Random random = new Random(42);
+
+        for (int dimension : DIMENSIONS) {
+            float[] query = randomVector(random, dimension);
+            float[][] vectors = new float[BLOCK_VECTORS][];
+            float[] norms = new float[BLOCK_VECTORS];
+            double[][] doubleVectors = new double[BLOCK_VECTORS][];
+            float[] block = new float[BLOCK_VECTORS * dimension];
+            for (int i = 0; i < BLOCK_VECTORS; i++) {
+                vectors[i] = randomVector(random, dimension);
+                norms[i] = VectorKernels.norm(vectors[i]);
+                doubleVectors[i] = toDouble(vectors[i]);
+                System.arraycopy(vectors[i], 0, block, i * dimension, dimension);
+            }
+            double[] doubleQuery = toDouble(query);
+            float queryNorm = VectorKernels.norm(query);
+            float[] scores = new float[BLOCK_VECTORS];
+
+            System.out.println();
+            System.out.println("dimension=" + dimension + " (ns/op = 一次查询对 " + BLOCK_VECTORS + " 个向量打分)");
+
+            BenchmarkRunner.Result baseline = BenchmarkRunner.run("double cosine (norms per call)", WARMUP_MS, MEASURE_MS, () -> {
+                double sum = 0;
+                for (double[] v : doubleVectors) {
+                    sum += TextSimilarity.cosineSimilarity(doubleQuery, v);
+                }
+                return (long) (sum * 1000);
+            });
+            BenchmarkRunner.Result cosine = BenchmarkRunner.run("float cosine (precomputed norms)", WARMUP_MS, MEASURE_MS, () -> {
+                float sum = 0;
+                for (int i = 0; i < BLOCK_VECTORS; i++) {
+                    sum += VectorKernels.cosine(query, queryNorm, vectors[i], norms[i]);
+                }
+                return (long) (sum * 1000);
+            });
+            BenchmarkRunner.Result batch = BenchmarkRunner.run("float dot block (contiguous)", WARMUP_MS, MEASURE_MS, () -> {
+                VectorKernels.dotBlock(query, block, 0, BLOCK_VECTORS, scores);
+                return (long) (scores[0] * 1000);
+            });
+
+            System.out.println(baseline);
+            System.out.println(cosine + String.format("  x%.1f", baseline.nanosPerOp() / cosine.nanosPerOp()));
+            System.out.println(batch + String.format("  x%.1f", baseline.nanosPerOp() / batch.nanosPerOp()));
+        }
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] v = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+
+    private static double[] toDouble(float[] v) {
+        double[] d = new double[v.length];
+        for (int i = 0; i < v.length; i++) {
+            d[i] = v[i];
+        }
+        return d;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.agentpattern.knowledge.chunk;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.KnowledgeBase;
+import com.example.agentpattern.knowledge.base.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParentCollapsingKnowledgeBaseTest {
+
+    @Test
+    void parentScoreCombinesAllMatchingPassages() {
+        // b 的最高段落略高，但 a 有三个命中的段落
+        FixedResultKnowledgeBase delegate = new FixedResultKnowledgeBase(List.of(
+                passage("b", 2, 0.50),
+                passage("a", 2, 0.49),
+                passage("b", 3, 0.32),
+                passage("a", 3, 0.27),
+                passage("a", 0, 0.17)));
+        ParentCollapsingKnowledgeBase kb = new ParentCollapsingKnowledgeBase(delegate, 2);
+
+        List<SearchResult.ScoredDocument> results = kb.search("query", 2).getDocuments();
+
+        assertEquals(List.of("a", "b"), results.stream().map(r -> r.getDocument().getId()).toList());
+        assertEquals(1 - 0.51 * 0.73 * 0.83, results.get(0).getScore(), 1e-9);
+        assertEquals(1 - 0.50 * 0.68, results.get(1).getScore(), 1e-9);
+        assertTrue(results.get(0).getScore() <= 1.0);
+        // 内容为得分最高的两个段落，按原文顺序排列
+        assertEquals("a-2\n…\na-3", results.get(0).getDocument().getContent());
+        assertEquals(1, results.get(0).getRank());
+        assertEquals(2, results.get(1).getRank());
+    }
+
+    @Test
+    void delegateResultIsNotModified() {
+        FixedResultKnowledgeBase delegate = new FixedResultKnowledgeBase(List.of(
+                passage("a", 0, 0.6),
+                passage("a", 1, 0.5),
+                passage("b", 0, 0.4)));
+        ParentCollapsingKnowledgeBase kb = new ParentCollapsingKnowledgeBase(delegate, 2);
+
+        SearchResult collapsed = kb.search("query", 2);
+
+        assertNotSame(delegate.last, collapsed);
+        assertEquals(3, delegate.last.getDocuments().size());
+        assertEquals("a#0", delegate.last.getDocuments().get(0).getDocument().getId());
+        assertEquals(2, collapsed.getDocuments().size());
+        assertEquals("fixed", collapsed.getKnowledgeBaseName());
+        assertEquals("query", collapsed.getQuery());
+    }
+
+    private static SearchResult.ScoredDocument passage(String parentId, int chunk, double score) {
+        Document doc = Document.builder()
+                .id(parentId + "#" + chunk)
+                .parentId(parentId)
+                .title(parentId)
+                .content(parentId + "-" + chunk)
+                .build();
+        doc.addMetadata(PassageChunker.CHUNK_KEY, chunk);
+        return SearchResult.ScoredDocument.builder().document(doc).score(score).build();
+    }
+
+    /**
+     * 对任何查询都返回同一组段落（按给定顺序，截取前 topK 个）的知识库
+     */
+    private static final class FixedResultKnowledgeBase implements KnowledgeBase {
+
+        private final List<SearchResult.ScoredDocument> passages;
+        private SearchResult last;
+
+        private FixedResultKnowledgeBase(List<SearchResult.ScoredDocument> passages) {
+            this.passages = passages;
+        }
+
+        @Override
+        public String getName() {
+            return "fixed";
+        }
+
+        @Override
+        public String getDescription() {
+            return "";
+        }
+
+        @Override
+        public String getType() {
+            return "FIXED";
+        }
+
+        @Override
+        public SearchResult search(String query, int topK) {
+            last = SearchResult.builder()
+                    .query(query)
+                    .documents(new ArrayList<>(passages.subList(0, Math.min(topK, passages.size()))))
+                    .knowledgeBaseName(getName())
+                    .build();
+            return last;
+        }
+
+        @Override
+        public void addDocument(Document document) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addDocuments(List<Document> documents) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getDocumentCount() {
+            return passages.size();
+        }
+
+        @Override
+        public Document getDocument(String id) {
+            return null;
+        }
+
+        @Override
+        public void deleteDocument(String id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isInitialized() {
+            return true;
+        }
+    }
+}
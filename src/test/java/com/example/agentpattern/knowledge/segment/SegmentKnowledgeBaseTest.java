@@ -0,0 +1,204 @@
+package com.example.agentpattern.knowledge.segment;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.SearchResult;
+import com.example.agentpattern.knowledge.vector.VectorSearchConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 段文件格式的往返测试：写入后重新打开目录，文档、删除标记和检索结果（含分数）都应保持不变。
+ * segment-v1.seg 是由第 1 版写入器生成的段文件（三个文档、字符串元数据、没有 parentId），用于检查旧格式的读取兼容
+ */
+class SegmentKnowledgeBaseTest {
+
+    // 每次增删后都重新计算文档向量模长，使写入时与重新打开后的分数可以逐一比较
+    private static final VectorSearchConfig CONFIG = VectorSearchConfig.builder().idfDriftThreshold(0).build();
+    private static final String[] WORDS = {
+            "摄像头", "夜视", "门铃", "电池", "录像", "无线", "连接", "安装", "追踪", "双镜头", "存储", "告警"
+    };
+    private static final String[] QUERIES = {"共同", "夜视 摄像头", "电池 无线 告警", "门铃 录像 存储"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void documentsSurviveReopen() {
+        Document doc = Document.builder()
+                .id("doc-1#0")
+                .parentId("doc-1")
+                .title("Video Doorbell")
+                .content("门铃 支持 夜视")
+                .source("test")
+                .createdAt(1700000000000L)
+                .build();
+        doc.addMetadata("name", "doorbell");
+        doc.addMetadata("chunk", 3);
+        doc.addMetadata("size", 1L << 40);
+        doc.addMetadata("price", 99.5);
+        doc.addMetadata("battery", true);
+        doc.addMetadata("tags", List.of("wifi", 2));
+        doc.addMetadata("spec", Map.of("fps", 30));
+        doc.addMetadata("missing", null);
+
+        SegmentKnowledgeBase kb = open();
+        kb.addDocument(doc);
+        kb.close();
+
+        Document read = open().getDocument("doc-1#0");
+        assertNotNull(read);
+        assertEquals("doc-1", read.getParentId());
+        assertEquals("Video Doorbell", read.getTitle());
+        assertEquals("门铃 支持 夜视", read.getContent());
+        assertEquals("test", read.getSource());
+        assertEquals(1700000000000L, read.getCreatedAt());
+        assertEquals(doc.getMetadata(), read.getMetadata());
+    }
+
+    @Test
+    void deletesAndReplacementsSurviveReopen() {
+        Random random = new Random(1);
+        SegmentKnowledgeBase kb = open();
+        kb.addDocuments(documents(0, 20, random));
+        kb.deleteDocument("doc-3");
+        // 同一ID的新版本写入新段，旧版本在第一个段中标记删除
+        kb.addDocuments(List.of(document("doc-5", random), document("doc-30", random)));
+        kb.deleteDocument("doc-30");
+        String before = signature(kb);
+        Document replaced = kb.getDocument("doc-5");
+        kb.close();
+
+        assertTrue(Files.exists(directory.resolve("seg_00000001.del")));
+        assertTrue(Files.exists(directory.resolve("seg_00000002.del")));
+
+        SegmentKnowledgeBase reopened = open();
+        assertEquals(before, signature(reopened));
+        assertEquals(19, reopened.getDocumentCount());
+        assertNull(reopened.getDocument("doc-3"));
+        assertNull(reopened.getDocument("doc-30"));
+        assertEquals(replaced.getContent(), reopened.getDocument("doc-5").getContent());
+    }
+
+    @Test
+    void mergeKeepsResultsAndDeletes() {
+        Random random = new Random(2);
+        SegmentKnowledgeBase kb = open();
+        // 少于自动合并的段数，避免后台合并与测试交错
+        for (int batch = 0; batch < 6; batch++) {
+            kb.addDocuments(documents(batch * 10, 15, random));
+            kb.deleteDocument("doc-" + (batch * 10 + 1));
+        }
+        String before = signature(kb);
+        int count = kb.getDocumentCount();
+
+        assertTrue(kb.mergeSmallSegments());
+        assertEquals(1, kb.getSegmentCount());
+        assertEquals(before, signature(kb));
+        kb.close();
+
+        SegmentKnowledgeBase reopened = open();
+        assertEquals(1, reopened.getSegmentCount());
+        assertEquals(count, reopened.getDocumentCount());
+        assertEquals(before, signature(reopened));
+        assertFalse(reopened.mergeSmallSegments());
+    }
+
+    @Test
+    void readsVersion1Segments() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("segment-v1.seg")) {
+            assertNotNull(in);
+            Files.copy(in, directory.resolve("seg_00000001.seg"));
+        }
+        Files.writeString(directory.resolve("segments"), "generation=1\nseg_00000001\n", StandardCharsets.UTF_8);
+        assertEquals(1, formatVersion("seg_00000001"));
+
+        SegmentKnowledgeBase kb = open();
+        assertEquals(3, kb.getDocumentCount());
+        Document doorbell = kb.getDocument("v1-doorbell");
+        assertEquals("Video Doorbell 视频门铃", doorbell.getTitle());
+        assertEquals("legacy", doorbell.getSource());
+        assertEquals(1700000000000L, doorbell.getCreatedAt());
+        assertNull(doorbell.getParentId());
+        assertEquals(Map.of("category", "doorbell", "battery", "true"), doorbell.getMetadata());
+        assertEquals(List.of("v1-doorbell", "v1-camera"), ids(kb.search("夜视", 5)));
+
+        // 在旧格式段上删除，合并后写成新格式
+        kb.deleteDocument("v1-nvr");
+        kb.addDocument(Document.builder().id("v2-hub").title("Hub").content("夜视 存储 录像").build());
+        String before = signature(kb);
+        assertTrue(kb.mergeSmallSegments());
+        kb.close();
+
+        SegmentKnowledgeBase reopened = open();
+        assertEquals(before, signature(reopened));
+        assertEquals(3, reopened.getDocumentCount());
+        assertNull(reopened.getDocument("v1-nvr"));
+        assertEquals(Map.of("category", "camera"), reopened.getDocument("v1-camera").getMetadata());
+        assertEquals(Segment.FORMAT_VERSION, formatVersion("seg_00000003"));
+    }
+
+    private SegmentKnowledgeBase open() {
+        return SegmentKnowledgeBase.open("segment-test", "", directory, CONFIG);
+    }
+
+    private int formatVersion(String segmentName) throws IOException {
+        byte[] header = Files.readAllBytes(directory.resolve(segmentName + ".seg"));
+        return ByteBuffer.wrap(header).getInt(4);
+    }
+
+    private static List<Document> documents(int first, int count, Random random) {
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            documents.add(document("doc-" + i, random));
+        }
+        return documents;
+    }
+
+    private static Document document(String id, Random random) {
+        StringBuilder content = new StringBuilder("共同");
+        int length = 3 + random.nextInt(15);
+        for (int i = 0; i < length; i++) {
+            content.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        Document doc = Document.builder().id(id).title(id).content(content.toString()).build();
+        doc.addMetadata("group", random.nextInt(4));
+        return doc;
+    }
+
+    private static List<String> ids(SearchResult result) {
+        return result.getDocuments().stream().map(r -> r.getDocument().getId()).toList();
+    }
+
+    /**
+     * 文档数和若干查询的全部结果及分数
+     */
+    private static String signature(SegmentKnowledgeBase kb) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(kb.getDocumentCount()).append('\n');
+        for (String query : QUERIES) {
+            sb.append(query).append(':');
+            for (SearchResult.ScoredDocument scored : kb.search(query, 1000).getDocuments()) {
+                sb.append(scored.getDocument().getId()).append('=').append(scored.getScore()).append(' ');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.agentpattern.knowledge.vector;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.SearchResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 并发写入与查询的一致性压力测试
+ * 知识库中的文档成对出现（内容相同的两个文档），写线程每次用一次 addDocuments 整批替换若干对文档的内容，
+ * 读线程同时用所有文档都包含的词查询全部文档，并检查：
+ * <ul>
+ *     <li>结果恰好包含每对文档各一次，文档数不变（没有看到删除了旧版本、还未加入新版本的状态）</li>
+ *     <li>同一对文档的版本号相同（没有看到只写入了一半的批次）</li>
+ *     <li>查询前后数据版本号相同时，同一版本上的结果和分数完全一致</li>
+ * </ul>
+ * 运行时间固定，任何一次违反都使测试失败。
+ */
+class InMemoryVectorKnowledgeBaseConcurrencyTest {
+
+    private static final String QUERY = "共同 词项";
+    private static final String[] WORDS = {
+            "摄像头", "夜视", "门铃", "电池", "录像", "无线", "连接", "安装", "追踪", "双镜头", "存储", "告警"
+    };
+    private static final int PAIRS = 500;
+    private static final int READERS = 4;
+    private static final int WRITERS = 2;
+    private static final int BATCH_PAIRS = 16;
+    private static final long RUN_MILLIS = 2000;
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void searchesNeverSeeTornOrUnstableSnapshots() throws InterruptedException {
+        InMemoryVectorKnowledgeBase kb = new InMemoryVectorKnowledgeBase("stress", "");
+        Random random = new Random(42);
+        List<Document> initial = new ArrayList<>(PAIRS * 2);
+        for (int pair = 0; pair < PAIRS; pair++) {
+            initial.addAll(twins(pair, 0, random));
+        }
+        kb.addDocuments(initial);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong searches = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+        Map<Long, String> resultsByVersion = new ConcurrentHashMap<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            int writerId = w;
+            threads.add(new Thread(() -> {
+                Random writerRandom = new Random(writerId);
+                int revision = 0;
+                while (running.get()) {
+                    revision++;
+                    List<Document> batch = new ArrayList<>(BATCH_PAIRS * 2);
+                    for (int i = 0; i < BATCH_PAIRS; i++) {
+                        // 不同写线程负责不同的文档对，版本号在线程内递增
+                        int pair = writerRandom.nextInt(PAIRS / WRITERS) * WRITERS + writerId;
+                        batch.addAll(twins(pair, revision, writerRandom));
+                    }
+                    kb.addDocuments(batch);
+                    writes.incrementAndGet();
+                }
+            }, "stress-writer-" + w));
+        }
+
+        for (int r = 0; r < READERS; r++) {
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    long before = kb.getVersion();
+                    SearchResult result = kb.search(QUERY, PAIRS * 2);
+                    long after = kb.getVersion();
+                    String violation = check(result);
+                    if (violation == null && before == after) {
+                        String signature = signature(result);
+                        String previous = resultsByVersion.putIfAbsent(before, signature);
+                        if (previous != null && !previous.equals(signature)) {
+                            violation = "different results for version " + before;
+                        }
+                    }
+                    if (violation == null && kb.getDocumentCount() != PAIRS * 2) {
+                        violation = "document count " + kb.getDocumentCount();
+                    }
+                    if (violation != null) {
+                        violations.add(violation);
+                    }
+                    searches.incrementAndGet();
+                }
+            }, "stress-reader-" + r));
+        }
+
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> failures.put(t.getName(), e));
+            thread.start();
+        }
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.isEmpty(), () -> "threads failed: " + failures);
+        assertTrue(violations.isEmpty(), () -> violations.size() + " violations, first: "
+                + violations.stream().limit(10).toList());
+        assertTrue(searches.get() > 0 && writes.get() > 0,
+                () -> "no concurrent work: " + searches.get() + " searches, " + writes.get() + " writes");
+        assertEquals(PAIRS * 2, kb.search(QUERY, PAIRS * 2).getDocuments().size());
+    }
+
+    /**
+     * 检查一次查询结果的一致性，返回违反的描述，没有问题时返回null
+     */
+    private static String check(SearchResult result) {
+        List<SearchResult.ScoredDocument> documents = result.getDocuments();
+        if (documents.size() != PAIRS * 2) {
+            return "expected " + PAIRS * 2 + " documents, got " + documents.size();
+        }
+        Map<Object, Object> revisions = new HashMap<>();
+        Map<String, Boolean> seen = new HashMap<>();
+        for (SearchResult.ScoredDocument scored : documents) {
+            Document doc = scored.getDocument();
+            if (seen.put(doc.getId(), Boolean.TRUE) != null) {
+                return "duplicate document " + doc.getId();
+            }
+            Object pair = doc.getMetadata("pair");
+            Object revision = revisions.putIfAbsent(pair, doc.getMetadata("revision"));
+            if (revision != null && !revision.equals(doc.getMetadata("revision"))) {
+                return "pair " + pair + " mixes revisions " + revision + " and " + doc.getMetadata("revision");
+            }
+        }
+        return null;
+    }
+
+    private static String signature(SearchResult result) {
+        StringBuilder sb = new StringBuilder();
+        for (SearchResult.ScoredDocument scored : result.getDocuments()) {
+            sb.append(scored.getDocument().getId()).append(':').append(scored.getScore()).append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 内容相同的一对文档
+     */
+    private static List<Document> twins(int pair, int revision, Random random) {
+        StringBuilder content = new StringBuilder("共同 词项");
+        int length = 5 + random.nextInt(20);
+        for (int i = 0; i < length; i++) {
+            content.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        List<Document> twins = new ArrayList<>(2);
+        for (String suffix : new String[]{"a", "b"}) {
+            Document doc = Document.builder()
+                    .id("pair-" + pair + "-" + suffix)
+                    .title("pair " + pair)
+                    .content(content.toString())
+                    .build();
+            doc.addMetadata("pair", pair);
+            doc.addMetadata("revision", revision);
+            twins.add(doc);
+        }
+        return twins;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.agentpattern.knowledge.vector;
+
+import com.example.agentpattern.knowledge.base.Document;
+import com.example.agentpattern.knowledge.base.Filter;
+import com.example.agentpattern.util.TopKHeap;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * {@link InvertedIndex#copy()} 的写时复制：副本与原索引共享倒排列表块、文档表和元数据位图，
+ * 任一方的写入（增删、替换、压缩序号、刷新文档向量）都不能改变另一方的查询结果和统计量
+ */
+class InvertedIndexTest {
+
+    private static final VectorSearchConfig CONFIG = VectorSearchConfig.defaults();
+    private static final String[] WORDS = {
+            "摄像头", "夜视", "门铃", "电池", "录像", "无线", "连接", "安装", "追踪", "双镜头", "存储", "告警"
+    };
+    private static final String[] QUERIES = {"共同", "夜视 摄像头", "电池 无线 告警", "门铃 录像 新增"};
+
+    // 超过一个倒排列表块（128个文档），使"共同"的倒排列表跨多个块
+    private static final int DOCS = 400;
+
+    @Test
+    void writesToCopyLeaveSnapshotUnchanged() {
+        InvertedIndex snapshot = index(DOCS);
+        String before = signature(snapshot);
+
+        InvertedIndex copy = snapshot.copy();
+        mutate(copy, new Random(1));
+
+        assertEquals(before, signature(snapshot));
+        assertNotEquals(before, signature(copy));
+    }
+
+    @Test
+    void writesToSourceLeaveCopyUnchanged() {
+        // 复制后原索引换上新标记，继续在原索引上写入时同样不能原地修改共享的倒排列表
+        InvertedIndex source = index(DOCS);
+        InvertedIndex copy = source.copy();
+        String before = signature(copy);
+
+        mutate(source, new Random(2));
+
+        assertEquals(before, signature(copy));
+    }
+
+    @Test
+    void everyGenerationKeepsItsOwnState() {
+        InvertedIndex first = index(DOCS);
+        String firstSignature = signature(first);
+        InvertedIndex second = first.copy();
+        mutate(second, new Random(3));
+        String secondSignature = signature(second);
+        InvertedIndex third = second.copy();
+        mutate(third, new Random(4));
+
+        assertEquals(firstSignature, signature(first));
+        assertEquals(secondSignature, signature(second));
+    }
+
+    @Test
+    void compactionOnCopyLeavesSnapshotUnchanged() {
+        InvertedIndex snapshot = index(DOCS);
+        String before = signature(snapshot);
+
+        // 删除过半文档触发序号压缩，压缩会重建文档表并重映射所有倒排列表
+        InvertedIndex copy = snapshot.copy();
+        for (int i = 0; i < DOCS * 3 / 4; i++) {
+            copy.remove("doc-" + i);
+        }
+
+        assertEquals(DOCS / 4, copy.size());
+        assertEquals(before, signature(snapshot));
+        assertEquals(DOCS, snapshot.documents().size());
+    }
+
+    /**
+     * 替换、删除、新增文档，并刷新文档向量
+     */
+    private static void mutate(InvertedIndex index, Random random) {
+        for (int i = 0; i < 50; i++) {
+            index.add(document("doc-" + random.nextInt(DOCS), random));
+        }
+        for (int i = 0; i < 50; i++) {
+            index.remove("doc-" + random.nextInt(DOCS));
+        }
+        for (int i = 0; i < 20; i++) {
+            Document doc = document("new-" + i, random);
+            doc.setContent(doc.getContent() + " 新增");
+            index.add(doc);
+        }
+        index.refreshVectors();
+    }
+
+    private static InvertedIndex index(int count) {
+        Random random = new Random(42);
+        InvertedIndex index = new InvertedIndex(CONFIG);
+        for (int i = 0; i < count; i++) {
+            index.add(document("doc-" + i, random));
+        }
+        return index;
+    }
+
+    private static Document document(String id, Random random) {
+        StringBuilder content = new StringBuilder("共同");
+        int length = 3 + random.nextInt(15);
+        for (int i = 0; i < length; i++) {
+            content.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        Document doc = Document.builder().id(id).title(id).content(content.toString()).build();
+        doc.addMetadata("group", random.nextInt(4));
+        return doc;
+    }
+
+    /**
+     * 索引对外可见的状态：文档数、统计量、所有文档，以及若干查询（含元数据过滤）的结果和分数
+     */
+    private static String signature(InvertedIndex index) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(index.size()).append('/').append(index.getTotalLength()).append('\n');
+        for (Document doc : index.documents()) {
+            sb.append(doc.getId()).append(' ');
+        }
+        sb.append('\n');
+        for (String query : QUERIES) {
+            search(index, query, null, sb);
+            search(index, query, Filter.eq("group", 1), sb);
+        }
+        return sb.toString();
+    }
+
+    private static void search(InvertedIndex index, String query, Filter filter, StringBuilder sb) {
+        TokenBuffer tokens = new TokenBuffer();
+        CONFIG.getTokenizer().tokenize(query, tokens);
+        TermFrequencies terms = index.queryTerms(tokens);
+        List<Document> documents = index.documents();
+        TopKHeap heap = new TopKHeap(documents.size() + 1);
+        heap.reset(documents.size() + 1);
+        index.search(terms, filter, new ScoreAccumulator(), heap);
+        heap.sortDescending();
+        sb.append(query).append(':');
+        for (int i = 0; i < heap.size(); i++) {
+            sb.append(index.document(heap.id(i)).getId()).append('=').append(heap.score(i)).append(' ');
+        }
+        sb.append('\n');
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.agentpattern.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PersistentArrayTest {
+
+    // 超过 32 * 32，使前缀树有三层
+    private static final int SIZE = 5000;
+
+    @Test
+    void getReturnsWrittenValuesAndNullForGaps() {
+        PersistentArray<String> array = new PersistentArray<>();
+        array.add("a");
+        array.set(100, "b");
+
+        assertEquals(101, array.size());
+        assertEquals("a", array.get(0));
+        assertEquals("b", array.get(100));
+        assertNull(array.get(50));
+        assertNull(array.get(101));
+        assertNull(array.get(Integer.MAX_VALUE));
+        assertThrows(IndexOutOfBoundsException.class, () -> array.set(-1, "c"));
+    }
+
+    @Test
+    void writesToCopyLeaveOriginalUnchanged() {
+        PersistentArray<Integer> original = filled();
+
+        PersistentArray<Integer> copy = original.copy();
+        for (int i = 0; i < SIZE; i += 7) {
+            copy.set(i, -i);
+        }
+        copy.set(SIZE * 40, 1);
+        copy.replaceAll(v -> v + 1);
+
+        assertFilled(original);
+        assertEquals(-6, copy.get(7));
+        assertEquals(2, copy.get(1));
+        assertEquals(2, copy.get(SIZE * 40));
+        assertEquals(SIZE * 40 + 1, copy.size());
+    }
+
+    @Test
+    void writesToOriginalLeaveCopyUnchanged() {
+        PersistentArray<Integer> original = filled();
+        PersistentArray<Integer> copy = original.copy();
+
+        for (int i = 0; i < SIZE; i += 3) {
+            original.set(i, null);
+        }
+        original.add(-1);
+        original.replaceAll(v -> v * 2);
+
+        assertFilled(copy);
+        assertNull(original.get(3));
+        assertEquals(2, original.get(1));
+    }
+
+    @Test
+    void everyCopyIsIndependent() {
+        PersistentArray<Integer> first = filled();
+        PersistentArray<Integer> second = first.copy();
+        second.set(10, -10);
+        PersistentArray<Integer> third = second.copy();
+        third.set(10, -20);
+        third.set(11, -11);
+
+        assertEquals(10, first.get(10));
+        assertEquals(-10, second.get(10));
+        assertEquals(11, second.get(11));
+        assertEquals(-20, third.get(10));
+        assertEquals(-11, third.get(11));
+    }
+
+    private static PersistentArray<Integer> filled() {
+        PersistentArray<Integer> array = new PersistentArray<>();
+        for (int i = 0; i < SIZE; i++) {
+            array.add(i);
+        }
+        return array;
+    }
+
+    private static void assertFilled(PersistentArray<Integer> array) {
+        assertEquals(SIZE, array.size());
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(i, array.get(i));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.agentpattern.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PersistentHashMapTest {
+
+    private static final int SIZE = 5000;
+
+    @Test
+    void putGetAndRemove() {
+        PersistentHashMap<String, Integer> map = new PersistentHashMap<>();
+
+        assertNull(map.put("a", 1));
+        assertEquals(1, map.put("a", 2));
+        assertNull(map.put("b", 3));
+        assertEquals(2, map.size());
+        assertEquals(2, map.get("a"));
+        assertEquals(2, map.remove("a"));
+        assertNull(map.remove("a"));
+        assertNull(map.get("a"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void collidingKeysAreKeptApart() {
+        PersistentHashMap<Key, String> map = new PersistentHashMap<>();
+        for (int i = 0; i < 4; i++) {
+            map.put(new Key(i, 7), "v" + i);
+        }
+        map.put(new Key(9, 7 + (1 << 25)), "high bits differ");
+
+        assertEquals(5, map.size());
+        assertEquals("v2", map.get(new Key(2, 7)));
+        assertEquals("high bits differ", map.get(new Key(9, 7 + (1 << 25))));
+        assertEquals("v1", map.remove(new Key(1, 7)));
+        assertNull(map.get(new Key(1, 7)));
+        assertEquals("v3", map.get(new Key(3, 7)));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    void writesToCopyLeaveOriginalUnchanged() {
+        PersistentHashMap<String, Integer> original = filled();
+
+        PersistentHashMap<String, Integer> copy = original.copy();
+        for (int i = 0; i < SIZE; i += 3) {
+            copy.remove("key-" + i);
+        }
+        for (int i = 1; i < SIZE; i += 3) {
+            copy.put("key-" + i, -i);
+        }
+        copy.put("added", 1);
+
+        assertFilled(original);
+        assertNull(original.get("added"));
+        assertNull(copy.get("key-0"));
+        assertEquals(-1, copy.get("key-1"));
+        assertEquals(2, copy.get("key-2"));
+        assertEquals(SIZE - (SIZE + 2) / 3 + 1, copy.size());
+    }
+
+    @Test
+    void writesToOriginalLeaveCopyUnchanged() {
+        PersistentHashMap<String, Integer> original = filled();
+        PersistentHashMap<String, Integer> copy = original.copy();
+
+        for (int i = 0; i < SIZE; i += 2) {
+            original.put("key-" + i, -i);
+        }
+        original.remove("key-1");
+
+        assertFilled(copy);
+        assertEquals(-2, original.get("key-2"));
+        assertNull(original.get("key-1"));
+    }
+
+    @Test
+    void collisionsOnCopyLeaveOriginalUnchanged() {
+        PersistentHashMap<Key, String> original = new PersistentHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            original.put(new Key(i, 42), "v" + i);
+        }
+
+        PersistentHashMap<Key, String> copy = original.copy();
+        copy.remove(new Key(0, 42));
+        copy.put(new Key(1, 42), "changed");
+        copy.put(new Key(3, 42), "v3");
+
+        assertEquals(3, original.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("v" + i, original.get(new Key(i, 42)));
+        }
+        assertNull(original.get(new Key(3, 42)));
+        assertNull(copy.get(new Key(0, 42)));
+        assertEquals("changed", copy.get(new Key(1, 42)));
+        assertEquals(3, copy.size());
+    }
+
+    private static PersistentHashMap<String, Integer> filled() {
+        PersistentHashMap<String, Integer> map = new PersistentHashMap<>();
+        for (int i = 0; i < SIZE; i++) {
+            map.put("key-" + i, i);
+        }
+        return map;
+    }
+
+    private static void assertFilled(PersistentHashMap<String, Integer> map) {
+        assertEquals(SIZE, map.size());
+        Map<String, Integer> entries = new HashMap<>();
+        map.forEach(entries::put);
+        assertEquals(SIZE, entries.size());
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(i, map.get("key-" + i));
+            assertEquals(i, entries.get("key-" + i));
+        }
+    }
+
+    /**
+     * 哈希值可以指定的键，用于构造哈希冲突
+     */
+    private record Key(int id, int hash) {
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}